@@ -0,0 +1,119 @@
+package org.broadinstitute.macarthurlab.matchbox;
+
+import org.broadinstitute.macarthurlab.matchbox.config.GeneSymbolMappingConfig;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.frequency.PopulationFrequencyProvider;
+import org.broadinstitute.macarthurlab.matchbox.synthetic.SyntheticPatientGenerator;
+import org.monarchinitiative.exomiser.core.phenotype.Model;
+import org.monarchinitiative.exomiser.core.phenotype.ModelPhenotypeMatch;
+import org.monarchinitiative.exomiser.core.phenotype.ModelScorer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Patients and stand-ins for the benchmarks. Patients are made from a fixed seed, so every
+ * run of a benchmark works on the same patients.
+ *
+ * @author harindra
+ */
+public class BenchmarkData {
+
+    public static final long SEED = SyntheticPatientGenerator.DEFAULT_SEED;
+
+    private static final String GENE_SYMBOL_TO_ID_MAPPINGS = "config/gene_symbol_to_ensembl_id_map.txt";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @return gene symbol to Ensembl ID, as the server reads it
+     */
+    public static Map<String, String> geneSymbolToEnsemblId() {
+        try {
+            return GeneSymbolMappingConfig.readGeneSymbolToEnsemblId(Paths.get(GENE_SYMBOL_TO_ID_MAPPINGS));
+        } catch (IOException e) {
+            throw new UncheckedIOException("benchmarks are run from the project directory", e);
+        }
+    }
+
+    /**
+     * @param size number of patients
+     * @return synthetic patients, the same ones for every run
+     */
+    public static List<Patient> corpus(int size) {
+        return SyntheticPatientGenerator.create(geneSymbolToEnsemblId(), null, SEED, "SYN").generate(size);
+    }
+
+    /**
+     * @return a synthetic patient that is not one of the corpus patients
+     */
+    public static Patient queryPatient() {
+        Patient queryPatient = SyntheticPatientGenerator.create(geneSymbolToEnsemblId(), null, SEED + 1, "Q").next();
+        //carries the most common gene, so that there are always matches to rank
+        queryPatient.getGenomicFeatures().get(0).getGene().put("id", SyntheticPatientGenerator.COMMON_GENES.get(0));
+        return queryPatient;
+    }
+
+    /**
+     * Stands in for gnomAD, so the benchmarks measure matchbox and not the network
+     */
+    public static class StubPopulationFrequencyProvider implements PopulationFrequencyProvider {
+
+        @Override
+        public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases) {
+            //about half of the variants are not known to gnomAD
+            return position % 2 == 0 ? -1 : 1.0 / (1 + position % 100_000);
+        }
+
+        @Override
+        public Map<String, Double> findGeneConstraintScores(String gene) {
+            Map<String, Double> scores = new HashMap<>();
+            double z = (gene.hashCode() & 0xff) / 64.0;
+            scores.put(PLI, z / 4);
+            scores.put(SYN_Z, z - 2);
+            scores.put(MIS_Z, z);
+            return scores;
+        }
+    }
+
+    /**
+     * Stands in for the exomiser Phenodigm scorer, which needs the exomiser phenotype database.
+     * Like Phenodigm it finds the best match of each query term among the model terms, so the
+     * work grows with the number of terms on both sides.
+     */
+    public static class StubModelScorer implements ModelScorer {
+
+        private final List<String> queryPhenotypeIds;
+
+        public StubModelScorer(List<String> queryPhenotypeIds) {
+            this.queryPhenotypeIds = queryPhenotypeIds;
+        }
+
+        @Override
+        public ModelPhenotypeMatch scoreModel(Model model) {
+            double total = 0;
+            for (String queryPhenotypeId : this.queryPhenotypeIds) {
+                double best = 0;
+                for (String modelPhenotypeId : model.getPhenotypeIds()) {
+                    best = Math.max(best, similarity(queryPhenotypeId, modelPhenotypeId));
+                }
+                total += best;
+            }
+            double score = this.queryPhenotypeIds.isEmpty() ? 0 : total / this.queryPhenotypeIds.size();
+            return ModelPhenotypeMatch.of(score, model, Collections.emptyList());
+        }
+
+        private static double similarity(String queryPhenotypeId, String modelPhenotypeId) {
+            if (queryPhenotypeId.equals(modelPhenotypeId)) {
+                return 1.0;
+            }
+            return ((queryPhenotypeId.hashCode() ^ modelPhenotypeId.hashCode()) & 0xff) / 512.0;
+        }
+    }
+}
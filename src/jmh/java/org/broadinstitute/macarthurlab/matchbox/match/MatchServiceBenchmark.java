@@ -0,0 +1,61 @@
+package org.broadinstitute.macarthurlab.matchbox.match;
+
+import org.broadinstitute.macarthurlab.matchbox.BenchmarkData;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One query patient matched against every patient of a node, with gnomAD and the exomiser
+ * phenotype scorer stood in for.
+ *
+ * @author harindra
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MatchServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int corpusSize;
+
+    private MatchService matchService;
+    private Patient queryPatient;
+    private List<Patient> patients;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GenotypeSimilarityServiceImpl genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(BenchmarkData.geneSymbolToEnsemblId()));
+        genotypeSimilarityService.setPopulationFrequencyProvider(new BenchmarkData.StubPopulationFrequencyProvider());
+        this.queryPatient = BenchmarkData.queryPatient();
+        this.patients = BenchmarkData.corpus(this.corpusSize);
+        PatientModelCache patientModelCache = new PatientModelCache();
+        patientModelCache.patientsReloaded(new PatientSnapshot(this.patients));
+        PhenotypeSimilarityService phenotypeSimilarityService = patient ->
+                new PhenotypeSimilarityScorerImpl(new BenchmarkData.StubModelScorer(PhenotypeSimilarityService.getObservedPhenotypeIds(patient)), patientModelCache);
+        this.matchService = new MatchServiceImpl(genotypeSimilarityService, phenotypeSimilarityService);
+    }
+
+    @Benchmark
+    public List<MatchmakerResult> match() {
+        return this.matchService.match(this.queryPatient, this.patients);
+    }
+}
@@ -0,0 +1,79 @@
+package org.broadinstitute.macarthurlab.matchbox.match;
+
+import org.broadinstitute.macarthurlab.matchbox.BenchmarkData;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The genotype and phenotype comparison of one query patient with one node patient, timed
+ * over the same {@value #PAIRS} node patients each time and reported per pair.
+ *
+ * @author harindra
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SimilarityScoringBenchmark {
+
+    private static final int PAIRS = 1000;
+
+    private GenotypeSimilarityServiceImpl genotypeSimilarityService;
+    private PhenotypeSimilarityScorer phenotypeSimilarityScorer;
+    private Patient queryPatient;
+    private List<Patient> patients;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(BenchmarkData.geneSymbolToEnsemblId()));
+        this.genotypeSimilarityService.setPopulationFrequencyProvider(new BenchmarkData.StubPopulationFrequencyProvider());
+        this.queryPatient = BenchmarkData.queryPatient();
+        this.patients = BenchmarkData.corpus(PAIRS);
+        PatientModelCache patientModelCache = new PatientModelCache();
+        patientModelCache.patientsReloaded(new PatientSnapshot(this.patients));
+        this.phenotypeSimilarityScorer = new PhenotypeSimilarityScorerImpl(
+                new BenchmarkData.StubModelScorer(PhenotypeSimilarityService.getObservedPhenotypeIds(this.queryPatient)), patientModelCache);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void findGenomicFeatureMatches(Blackhole blackhole) {
+        for (Patient patient : this.patients) {
+            blackhole.consume(this.genotypeSimilarityService.findGenomicFeatureMatches(this.queryPatient, patient));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void scoreGenotypes(Blackhole blackhole) {
+        for (Patient patient : this.patients) {
+            blackhole.consume(this.genotypeSimilarityService.scoreGenotypes(this.queryPatient, patient));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void scorePhenotypes(Blackhole blackhole) {
+        for (Patient patient : this.patients) {
+            blackhole.consume(this.phenotypeSimilarityScorer.scorePhenotypes(this.queryPatient, patient));
+        }
+    }
+}
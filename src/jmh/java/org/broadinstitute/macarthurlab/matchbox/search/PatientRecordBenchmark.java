@@ -0,0 +1,72 @@
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.BenchmarkData;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a patient record from a request and writing one into a response, with the older
+ * json-simple and string building code next to the streaming code that replaced it.
+ *
+ * @author harindra
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PatientRecordBenchmark {
+
+    private final PatientRecordUtility patientRecordUtility = new PatientRecordUtility();
+    private final PatientRecordParser patientRecordParser = new PatientRecordParser();
+    private final MatchmakerResultWriter matchmakerResultWriter = new MatchmakerResultWriter();
+
+    private Patient patient;
+    private MatchmakerResult result;
+    private String record;
+    private byte[] requestBody;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.patient = BenchmarkData.queryPatient();
+        this.result = new MatchmakerResult(Collections.singletonMap("patient", 0.9), this.patient);
+        this.record = "{\"patient\":" + this.patient.getEmptyFieldsRemovedJson() + "}";
+        this.requestBody = this.record.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Patient parsePatientInformation() {
+        return this.patientRecordUtility.parsePatientInformation(this.record);
+    }
+
+    @Benchmark
+    public Patient parsePatientStreaming() throws PatientParseException {
+        return this.patientRecordParser.parse(this.requestBody);
+    }
+
+    @Benchmark
+    public String getEmptyFieldsRemovedJson() {
+        return this.patient.getEmptyFieldsRemovedJson();
+    }
+
+    @Benchmark
+    public String writeResultStreaming() {
+        return this.matchmakerResultWriter.toJson(this.result);
+    }
+}
@@ -13,6 +13,9 @@
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.PostConstruct;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -22,6 +25,7 @@
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.broadinstitute.macarthurlab.matchbox.entities.AuthorizedToken;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.stereotype.Component;
@@ -32,11 +36,15 @@
 public class AuthenticationFilter implements Filter{
 	private static final String X_AUTH_TOKEN_HEADER="X-Auth-Token";
 	private static final String ACCEPT_HEADER="Accept";
+	private static final int TOO_MANY_REQUESTS=429;
 	private AccessAuthorizedNode accessAuthorizedNode;	
 	private final List<String> authorizedTokens;
 	private final Logger logger = LoggerFactory.getLogger(this.getClass());
 	private final Map<String,String> tokenToMMECenterMapping;
 	
+	@Autowired
+	private NodeRequestLimiter nodeRequestLimiter;
+	
 
 		
 	/**
@@ -58,6 +66,20 @@ public AuthenticationFilter(){
 	}
 	
 
+	/**
+	 * Gives the centers with limits of their own in config.xml those limits
+	 */
+	@PostConstruct
+	public void applyNodeLimits() {
+		for (AuthorizedToken authorizeNode : this.getAccessAuthorizedNode().getAccessAuthorizedNodes()){
+			if (authorizeNode.getRequestsPerSecond() >= 0 || authorizeNode.getBurst() >= 0 || authorizeNode.getMaxInFlight() >= 0){
+				this.nodeRequestLimiter.setNodeLimits(authorizeNode.getCenterName(),
+						authorizeNode.getRequestsPerSecond(), authorizeNode.getBurst(), authorizeNode.getMaxInFlight());
+			}
+		}
+	}
+	
+
 	@Override
     public void destroy() {
     }
@@ -88,13 +110,79 @@ public void doFilter(ServletRequest req, ServletResponse res,
                 }
                 //OK everything looks good, move forward with this request
                 else{
-                	this.getLogger().info("request passes access criteria, processing: " + validationResult.get("originMatchmakerNodeName"));
-                	chain.doFilter(request, response);
+                	String originMatchmakerNodeName = validationResult.get("originMatchmakerNodeName");
+                	NodeRequestLimiter.Decision decision = this.nodeRequestLimiter.tryAcquire(originMatchmakerNodeName);
+                	if (decision == NodeRequestLimiter.Decision.RATE_LIMITED){
+                		this.getLogger().warn("rate limit reached for node: " + originMatchmakerNodeName);
+                		response.setHeader("Retry-After", Integer.toString(this.nodeRequestLimiter.getRetryAfterSeconds(originMatchmakerNodeName)));
+                		response.sendError(TOO_MANY_REQUESTS,"too many requests from " + originMatchmakerNodeName);
+                		return;
+                	}
+                	if (decision == NodeRequestLimiter.Decision.TOO_MANY_IN_FLIGHT){
+                		this.getLogger().warn("in-flight request quota reached for node: " + originMatchmakerNodeName);
+                		response.setHeader("Retry-After", "1");
+                		response.sendError(TOO_MANY_REQUESTS,"too many requests in flight from " + originMatchmakerNodeName);
+                		return;
+                	}
+                	this.getLogger().info("request passes access criteria, processing: " + originMatchmakerNodeName);
+                	boolean released = false;
+                	try {
+                		chain.doFilter(request, response);
+                		if (request.isAsyncStarted()){
+                			//still being worked on, /match answers from its own pool
+                			request.getAsyncContext().addListener(new ReleasingListener(originMatchmakerNodeName));
+                			released = true;
+                		}
+                	}
+                	finally {
+                		if (!released){
+                			this.nodeRequestLimiter.release(originMatchmakerNodeName);
+                		}
+                	}
                 }
             }
     }
 
     
+    /**
+     * Gives back a node's in-flight slot once an asynchronous request is done
+     */
+    private final class ReleasingListener implements AsyncListener {
+    	private final String originMatchmakerNodeName;
+    	private boolean released;
+
+    	private ReleasingListener(String originMatchmakerNodeName) {
+    		this.originMatchmakerNodeName = originMatchmakerNodeName;
+    	}
+
+    	private synchronized void release() {
+    		if (!this.released){
+    			this.released = true;
+    			nodeRequestLimiter.release(this.originMatchmakerNodeName);
+    		}
+    	}
+
+    	@Override
+    	public void onComplete(AsyncEvent event) {
+    		this.release();
+    	}
+
+    	@Override
+    	public void onTimeout(AsyncEvent event) {
+    		this.release();
+    	}
+
+    	@Override
+    	public void onError(AsyncEvent event) {
+    		this.release();
+    	}
+
+    	@Override
+    	public void onStartAsync(AsyncEvent event) {
+    	}
+    }
+    
+    
     /**
      * Validate this accept header
      * @param acceptHeader	An accept header from a request
@@ -180,6 +268,14 @@ public Logger getLogger() {
 	public Map<String, String> getTokenToMMECenterMapping() {
 		return tokenToMMECenterMapping;
 	}
+
+
+	/**
+	 * @param nodeRequestLimiter the nodeRequestLimiter to set
+	 */
+	public void setNodeRequestLimiter(NodeRequestLimiter nodeRequestLimiter) {
+		this.nodeRequestLimiter = nodeRequestLimiter;
+	}
 	
 	
 	
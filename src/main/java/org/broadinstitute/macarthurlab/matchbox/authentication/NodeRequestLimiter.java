@@ -0,0 +1,232 @@
+/**
+ * Rate limits and in-flight quotas for each partner node
+ */
+package org.broadinstitute.macarthurlab.matchbox.authentication;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Each node gets a token bucket that fills at requests-per-second up to burst tokens, one token
+ * taken per request, and may have at most max-in-flight requests being worked on at once. A
+ * request over either limit is turned away before anything else is done with it, so one node
+ * re-querying in bulk only slows itself down. A rate or quota of 0 or less is no limit. Nodes
+ * can be given limits of their own in config.xml, see {@link org.broadinstitute.macarthurlab.matchbox.entities.AuthorizedToken}.
+ *
+ * @author harindra
+ */
+@Component
+public class NodeRequestLimiter {
+
+    public enum Decision {
+        /**
+         * The request may go ahead, and has to be released when done
+         */
+        ADMITTED,
+        /**
+         * The node has used up its bucket
+         */
+        RATE_LIMITED,
+        /**
+         * The node has as many requests in flight as it may
+         */
+        TOO_MANY_IN_FLIGHT
+    }
+
+    @Value("${matchbox.node-limits.requests-per-second:0}")
+    private double requestsPerSecond;
+
+    @Value("${matchbox.node-limits.burst:0}")
+    private int burst;
+
+    @Value("${matchbox.node-limits.max-in-flight:0}")
+    private int maxInFlight;
+
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentMap<String, NodeLimits> overrides = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, NodeState> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     */
+    public NodeRequestLimiter() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock what time it is, in nanoseconds
+     */
+    NodeRequestLimiter(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Gives a node limits of its own. Limits less than 0 are the defaults for every node.
+     * @param node              the node's name
+     * @param requestsPerSecond how fast the node's bucket fills
+     * @param burst             most tokens in the node's bucket
+     * @param maxInFlight       most requests the node has in flight
+     */
+    public void setNodeLimits(String node, double requestsPerSecond, int burst, int maxInFlight) {
+        this.overrides.put(node, new NodeLimits(requestsPerSecond, burst, maxInFlight));
+        this.nodes.remove(node);
+    }
+
+    /**
+     * Takes a token and an in-flight slot for a request from this node, if it has both
+     * @param node the node the request came from
+     * @return whether the request may go ahead
+     */
+    public Decision tryAcquire(String node) {
+        return this.nodes.computeIfAbsent(node, this::newState).tryAcquire(this.nanoClock.getAsLong());
+    }
+
+    /**
+     * Gives back the in-flight slot of an admitted request that is done
+     * @param node the node the request came from
+     */
+    public void release(String node) {
+        NodeState state = this.nodes.get(node);
+        if (state != null) {
+            state.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param node a node that was just rate limited
+     * @return seconds until the node's bucket has a token again, at least 1
+     */
+    public int getRetryAfterSeconds(String node) {
+        NodeState state = this.nodes.get(node);
+        return state == null ? 1 : state.secondsUntilToken(this.nanoClock.getAsLong());
+    }
+
+    /**
+     * @return admitted, rate limited, over quota and in-flight counts of each node that sent a request
+     */
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new TreeMap<>();
+        for (Map.Entry<String, NodeState> node : this.nodes.entrySet()) {
+            stats.put(node.getKey(), node.getValue().toMap());
+        }
+        return stats;
+    }
+
+    private NodeState newState(String node) {
+        NodeLimits limits = this.overrides.get(node);
+        double rate = limits == null || limits.requestsPerSecond < 0 ? this.requestsPerSecond : limits.requestsPerSecond;
+        int burst = limits == null || limits.burst < 0 ? this.burst : limits.burst;
+        int maxInFlight = limits == null || limits.maxInFlight < 0 ? this.maxInFlight : limits.maxInFlight;
+        //a bucket holds at least one request's worth, or nothing would get through
+        return new NodeState(rate, Math.max(1, burst), maxInFlight, this.nanoClock.getAsLong());
+    }
+
+    /**
+     * Limits set for one node
+     */
+    private static final class NodeLimits {
+        private final double requestsPerSecond;
+        private final int burst;
+        private final int maxInFlight;
+
+        private NodeLimits(double requestsPerSecond, int burst, int maxInFlight) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    /**
+     * The bucket, quota and counters of one node
+     */
+    private static final class NodeState {
+        private final double requestsPerSecond;
+        private final int burst;
+        private final int maxInFlight;
+        private double tokens;
+        private long refilledAt;
+        private final AtomicLong inFlight = new AtomicLong();
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rateLimited = new AtomicLong();
+        private final AtomicLong tooManyInFlight = new AtomicLong();
+
+        private NodeState(double requestsPerSecond, int burst, int maxInFlight, long now) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+            this.maxInFlight = maxInFlight;
+            this.tokens = burst;
+            this.refilledAt = now;
+        }
+
+        private synchronized Decision tryAcquire(long now) {
+            if (this.maxInFlight > 0 && this.inFlight.get() >= this.maxInFlight) {
+                this.tooManyInFlight.incrementAndGet();
+                return Decision.TOO_MANY_IN_FLIGHT;
+            }
+            if (this.requestsPerSecond > 0) {
+                this.refill(now);
+                if (this.tokens < 1) {
+                    this.rateLimited.incrementAndGet();
+                    return Decision.RATE_LIMITED;
+                }
+                this.tokens--;
+            }
+            this.inFlight.incrementAndGet();
+            this.admitted.incrementAndGet();
+            return Decision.ADMITTED;
+        }
+
+        private void refill(long now) {
+            double elapsedSeconds = (now - this.refilledAt) / 1e9;
+            this.tokens = Math.min(this.burst, this.tokens + elapsedSeconds * this.requestsPerSecond);
+            this.refilledAt = now;
+        }
+
+        private synchronized int secondsUntilToken(long now) {
+            if (this.requestsPerSecond <= 0) {
+                return 1;
+            }
+            this.refill(now);
+            return (int) Math.max(1, Math.ceil((1 - this.tokens) / this.requestsPerSecond));
+        }
+
+        private Map<String, Long> toMap() {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            counts.put("inFlight", this.inFlight.get());
+            counts.put("admitted", this.admitted.get());
+            counts.put("rateLimited", this.rateLimited.get());
+            counts.put("tooManyInFlight", this.tooManyInFlight.get());
+            return counts;
+        }
+    }
+
+    /**
+     * @param requestsPerSecond how fast each node's bucket fills, by default
+     */
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * @param burst most tokens in each node's bucket, by default
+     */
+    public void setBurst(int burst) {
+        this.burst = burst;
+    }
+
+    /**
+     * @param maxInFlight most requests each node has in flight, by default
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+}
@@ -11,6 +11,7 @@
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -33,6 +34,21 @@ public Map<String,String> geneSymbolToEnsemblId() {
         String geneSymbolToEnsemblIdName = environment.getProperty("matchbox.gene-symbol-to-id-mappings");
         Path geneSymbolToEnsemblIdFile = Paths.get(geneSymbolToEnsemblIdName);
         logger.info("Loading Gene symbol to Id mappings from {}", geneSymbolToEnsemblIdFile);
+        try {
+            return readGeneSymbolToEnsemblId(geneSymbolToEnsemblIdFile);
+        } catch (Exception e){
+            logger.error("Error reading gene symbol to emsembl id map:"+e.toString() + " : " + e.getMessage());
+            //This is bad. Really bad. Don't start the server without these.
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param geneSymbolToEnsemblIdFile the HGNC ID, symbol and Ensembl ID of each gene, one per row
+     * @return gene symbol to Ensembl ID, of the genes that have one
+     * @throws IOException if the file can't be read
+     */
+    public static Map<String,String> readGeneSymbolToEnsemblId(Path geneSymbolToEnsemblIdFile) throws IOException {
         Map<String,String> geneSymbolToEnsemblId = new HashMap<>();
         try (Stream<String> lines = Files.lines(geneSymbolToEnsemblIdFile)) {
             lines.forEach(line -> {
@@ -49,10 +65,6 @@ public Map<String,String> geneSymbolToEnsemblId() {
                         }
                     }
             );
-        } catch (Exception e){
-            logger.error("Error reading gene symbol to emsembl id map:"+e.toString() + " : " + e.getMessage());
-            //This is bad. Really bad. Don't start the server without these.
-            throw new RuntimeException(e);
         }
         return geneSymbolToEnsemblId;
     }
@@ -0,0 +1,60 @@
+/**
+ * To configure the pooled HTTP clients used for outbound calls
+ */
+package org.broadinstitute.macarthurlab.matchbox.config;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.broadinstitute.macarthurlab.matchbox.network.PooledHttpClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Both clients are closed by spring on shutdown
+ *
+ * @author harindra
+ */
+@Configuration
+public class HttpClientConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientConfig.class);
+
+    @Autowired
+    private Environment environment;
+
+    /**
+     * @return the client for calls to MME nodes and gnomAD
+     */
+    @Bean
+    public CloseableHttpClient httpClient() {
+        return this.buildClient(false);
+    }
+
+    /**
+     * @return the client for MME nodes configured with self signed certificates (staging servers)
+     */
+    @Bean
+    public CloseableHttpClient selfSignedCertificateHttpClient() {
+        return this.buildClient(true);
+    }
+
+    private CloseableHttpClient buildClient(boolean trustSelfSignedCertificates) {
+        int maxConnections = environment.getProperty("matchbox.http.max-connections", Integer.class, PooledHttpClients.DEFAULT_MAX_CONNECTIONS);
+        int maxConnectionsPerRoute = environment.getProperty("matchbox.http.max-connections-per-route", Integer.class, PooledHttpClients.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        int connectTimeoutMs = environment.getProperty("matchbox.http.connect-timeout-ms", Integer.class, PooledHttpClients.DEFAULT_CONNECT_TIMEOUT_MS);
+        int readTimeoutMs = environment.getProperty("matchbox.http.read-timeout-ms", Integer.class, PooledHttpClients.DEFAULT_READ_TIMEOUT_MS);
+        int poolAcquireTimeoutMs = environment.getProperty("matchbox.http.pool-acquire-timeout-ms", Integer.class, PooledHttpClients.DEFAULT_POOL_ACQUIRE_TIMEOUT_MS);
+        long keepAliveMs = environment.getProperty("matchbox.http.keep-alive-ms", Long.class, PooledHttpClients.DEFAULT_KEEP_ALIVE_MS);
+        logger.info("HTTP client pool (self signed certificates: {}) of {} connections, {} per host", trustSelfSignedCertificates, maxConnections, maxConnectionsPerRoute);
+        return PooledHttpClients.create(maxConnections,
+                maxConnectionsPerRoute,
+                connectTimeoutMs,
+                readTimeoutMs,
+                poolAcquireTimeoutMs,
+                keepAliveMs,
+                trustSelfSignedCertificates);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * To configure where normal population frequencies come from
+ */
+package org.broadinstitute.macarthurlab.matchbox.config;
+
+import org.broadinstitute.macarthurlab.matchbox.frequency.CachingPopulationFrequencyProvider;
+import org.broadinstitute.macarthurlab.matchbox.frequency.GeneConstraintTable;
+import org.broadinstitute.macarthurlab.matchbox.frequency.GnomadApiPopulationFrequencyProvider;
+import org.broadinstitute.macarthurlab.matchbox.frequency.LocalFilePopulationFrequencyProvider;
+import org.broadinstitute.macarthurlab.matchbox.frequency.PopulationFrequencyProvider;
+import org.broadinstitute.macarthurlab.matchbox.frequency.VariantFrequencyTable;
+import org.broadinstitute.macarthurlab.matchbox.network.Communication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * matchbox.population-frequency.source is either "gnomad-api" (the default) to query the gnomAD
+ * API over the network, or "local" to read the variant and gene constraint tables named by
+ * matchbox.population-frequency.variant-table and matchbox.population-frequency.gene-constraint-table.
+ * Either way lookups are cached as set by the matchbox.population-frequency.cache.* properties.
+ * Lookups for a whole match are made in batches, sized by matchbox.population-frequency.gnomad-api.*
+ * when the API is used.
+ *
+ * @author harindra
+ */
+@Configuration
+public class PopulationFrequencyConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(PopulationFrequencyConfig.class);
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private Communication httpCommunication;
+
+    @Bean
+    public PopulationFrequencyProvider populationFrequencyProvider() {
+        PopulationFrequencyProvider provider = this.sourcePopulationFrequencyProvider();
+        int maxEntries = environment.getProperty("matchbox.population-frequency.cache.max-entries", Integer.class, 100000);
+        if (maxEntries <= 0) {
+            return provider;
+        }
+        long ttlMinutes = environment.getProperty("matchbox.population-frequency.cache.ttl-minutes", Long.class, 0L);
+        long negativeTtlMinutes = environment.getProperty("matchbox.population-frequency.cache.negative-ttl-minutes", Long.class, 60L);
+        String persistenceFileName = environment.getProperty("matchbox.population-frequency.cache.persistence-file", "");
+        logger.info("Caching up to {} variant and {} gene population frequency lookups", maxEntries, maxEntries);
+        //closed (and so saved) by spring on shutdown
+        return new CachingPopulationFrequencyProvider(provider,
+                maxEntries,
+                TimeUnit.MINUTES.toMillis(ttlMinutes),
+                TimeUnit.MINUTES.toMillis(negativeTtlMinutes),
+                persistenceFileName.isEmpty() ? null : Paths.get(persistenceFileName));
+    }
+
+    private PopulationFrequencyProvider sourcePopulationFrequencyProvider() {
+        String source = environment.getProperty("matchbox.population-frequency.source", "gnomad-api");
+        if ("gnomad-api".equals(source)) {
+            int batchSize = environment.getProperty("matchbox.population-frequency.gnomad-api.batch-size", Integer.class, 50);
+            int concurrency = environment.getProperty("matchbox.population-frequency.gnomad-api.concurrency", Integer.class, 4);
+            logger.info("Using the gnomAD API for normal population frequencies, {} lookups per query and {} queries at once", batchSize, concurrency);
+            return new GnomadApiPopulationFrequencyProvider(httpCommunication, batchSize, concurrency);
+        }
+        if (!"local".equals(source)) {
+            throw new IllegalStateException("unknown matchbox.population-frequency.source: " + source);
+        }
+        String variantTableName = environment.getProperty("matchbox.population-frequency.variant-table", "");
+        String geneConstraintTableName = environment.getProperty("matchbox.population-frequency.gene-constraint-table", "");
+        VariantFrequencyTable variantFrequencyTable = null;
+        GeneConstraintTable geneConstraintTable = null;
+        try {
+            if (!variantTableName.isEmpty()) {
+                variantFrequencyTable = VariantFrequencyTable.open(Paths.get(variantTableName));
+                logger.info("Loaded {} variant allele frequencies from {}", variantFrequencyTable.size(), variantTableName);
+            }
+            if (!geneConstraintTableName.isEmpty()) {
+                geneConstraintTable = GeneConstraintTable.load(Paths.get(geneConstraintTableName));
+                logger.info("Loaded constraint scores for {} gene identifiers from {}", geneConstraintTable.size(), geneConstraintTableName);
+            }
+        } catch (Exception e) {
+            logger.error("error reading population frequency files: " + e);
+            //a half configured node would score genotypes differently from how it was asked to
+            throw new RuntimeException(e);
+        }
+        return new LocalFilePopulationFrequencyProvider(variantFrequencyTable, geneConstraintTable);
+    }
+}
@@ -4,7 +4,12 @@
  */
 package org.broadinstitute.macarthurlab.matchbox.controllers;
 
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalSearchResults;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.search.MatchRequestExecutor;
+import org.broadinstitute.macarthurlab.matchbox.search.MatchmakerResultWriter;
+import org.broadinstitute.macarthurlab.matchbox.search.PatientParseException;
 import org.broadinstitute.macarthurlab.matchbox.search.PatientRecordUtility;
 import org.broadinstitute.macarthurlab.matchbox.search.SearchService;
 import org.slf4j.Logger;
@@ -15,10 +20,16 @@
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 
 /**
@@ -29,11 +40,18 @@
 @CrossOrigin(origins = "*")
 public class MatchController {
 
+    private static final String MATCH_ENDPOINT = "/match";
+    private static final String EXTERNAL_MATCH_ENDPOINT = "/match/external";
+
     @Autowired
     private SearchService searcher;
 
+    @Autowired
+    private MatchRequestExecutor matchRequestExecutor;
+
     private final PatientRecordUtility patientUtility;
-    private final String CONTENT_TYPE_HEADER = "application/vnd.ga4gh.matchmaker.v1.0+json ";
+    private final MatchmakerResultWriter resultWriter;
+    private final String CONTENT_TYPE_HEADER = "application/vnd.ga4gh.matchmaker.v1.0+json";
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     /**
@@ -41,98 +59,160 @@ public class MatchController {
      */
     public MatchController() {
         this.patientUtility = new PatientRecordUtility();
+        this.resultWriter = new MatchmakerResultWriter();
     }
 
 
     /**
-     * Controller for /match POST end-point. ONLY SEARCHES INSIDE LOCAL DATABASE
+     * Controller for /match POST end-point. ONLY SEARCHES INSIDE LOCAL DATABASE. The request is
+     * parsed, matched and recorded on the match pool, freeing this thread for other requests.
+     * If the pool is busy, or the match takes too long, the node answers 503 with Retry-After.
+     * The results are serialized straight to the response, not built up in memory first.
      *
      * @param patient A patient structure sent as JSON through the API
+     * @param maxResults optional, most results wanted. Can only lower the configured maximum.
      * @return A list of result patients found in the local database that match input
      * patient
-     * @throws IOException
      */
     @RequestMapping(method = RequestMethod.POST, value = "/match")
-    public ResponseEntity<?> match(@RequestBody String requestString, HttpServletRequest request) {
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> match(@RequestBody byte[] requestBody,
+                      @RequestParam(value = "maxResults", required = false, defaultValue = "0") int maxResults,
+                      HttpServletRequest request) {
         String originMatchmakerNodeName = request.getAttribute("originMatchmakerNodeName").toString();
-        Patient queryPatient = null;
-        try {
-            String decodedRequestString = java.net.URLDecoder.decode(requestString, "UTF-8");
-            String inputData = decodedRequestString;
-            if ('=' == inputData.charAt(decodedRequestString.length() - 1)) {
-                inputData = decodedRequestString.substring(0, decodedRequestString.length() - 1);
-            }
-            boolean inputDataValid = patientUtility.areAllRequiredFieldsPresent(inputData);
-            if (inputDataValid) {
-                queryPatient = patientUtility.parsePatientInformation(inputData);
-                StringBuilder msg = new StringBuilder();
-                msg.append("matchmaker request from:");
-                msg.append(queryPatient.getContact().toString());
-                msg.append(", orignating from matchmaker node:");
-                msg.append(originMatchmakerNodeName);
-                logger.warn("{}",msg);
-            } else {
-                logger.warn("input data invalid: {}",inputData);
-                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        return this.dispatch(MATCH_ENDPOINT, () -> {
+            Patient queryPatient = null;
+            try {
+                queryPatient = patientUtility.parsePatient(requestBody);
+            } catch (PatientParseException e) {
+                logger.warn("input data invalid from matchmaker node {}: {}", originMatchmakerNodeName, e.getMessage());
+                return this.message(HttpStatus.BAD_REQUEST, e.asJson());
             }
-        } catch (Exception e) {
-            logger.error("error parsing patient in /match :" + e.toString() + " : " + e.getMessage());
-        }
-        String matches = searcher.searchInLocalDatabaseOnly(queryPatient, originMatchmakerNodeName).toString();
-        StringBuilder resultsBuilder = new StringBuilder();
-        resultsBuilder.append("{");
-        resultsBuilder.append("\"results\":");
-        resultsBuilder.append(matches);
-        resultsBuilder.append(",");
-        resultsBuilder.append("\"_disclaimer\":");
-        resultsBuilder.append("\"" + patientUtility.getDisclaimer() + "\"");
-        resultsBuilder.append("}");
-
-        final HttpHeaders httpHeaders = new HttpHeaders();
-        httpHeaders.setContentType(MediaType.valueOf(this.CONTENT_TYPE_HEADER));
-        return new ResponseEntity<>(resultsBuilder.toString(), httpHeaders, HttpStatus.OK);
+            StringBuilder msg = new StringBuilder();
+            msg.append("matchmaker request from:");
+            msg.append(queryPatient.getContact().toString());
+            msg.append(", orignating from matchmaker node:");
+            msg.append(originMatchmakerNodeName);
+            logger.warn("{}",msg);
+            List<MatchmakerResult> matches = searcher.findLocalMatches(queryPatient, originMatchmakerNodeName, maxResults);
+            return this.body(HttpStatus.OK, out -> this.resultWriter.writeResults(out, matches));
+        });
     }
 
 
     /**
-     * ONLY SEARCHES IN EXTERNAL MME NODES, and NOT in local node. This is really a MME client
+     * ONLY SEARCHES IN EXTERNAL MME NODES, and NOT in local node. This is really a MME client.
+     * Runs on the match pool, as /match does.
      *
      * @param patient A patient structure sent as JSON through the API
      * @return A list of result patients found in the other MME nodes in the
-     * network that match input patient
+     * network that match input patient, and how the search of each node went
      */
     @RequestMapping(method = RequestMethod.POST, value = "/match/external")
-    public ResponseEntity<?> individualMatch(@RequestBody String requestString) {
-        final HttpHeaders httpHeaders = new HttpHeaders();
-        httpHeaders.setContentType(MediaType.valueOf(this.CONTENT_TYPE_HEADER));
-        Patient patient = null;
-        try {
-            String decodedRequestString = java.net.URLDecoder.decode(requestString, "UTF-8");
-            String inputData = decodedRequestString;
-            if ('=' == inputData.charAt(decodedRequestString.length() - 1)) {
-                inputData = decodedRequestString.substring(0, decodedRequestString.length() - 1);
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> individualMatch(@RequestBody byte[] requestBody) {
+        return this.dispatch(EXTERNAL_MATCH_ENDPOINT, () -> {
+            Patient patient = null;
+            try {
+                patient = patientUtility.parsePatient(requestBody);
+            } catch (PatientParseException e) {
+                logger.warn("input data invalid: {}", e.getMessage());
+                return this.message(HttpStatus.BAD_REQUEST, e.asJson());
             }
-            boolean inputDataValid = patientUtility.areAllRequiredFieldsPresent(inputData);
-            if (inputDataValid) {
-                patient = patientUtility.parsePatientInformation(inputData);
-            } else {
-                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            ExternalSearchResults matchmakerResults;
+            try {
+                matchmakerResults = searcher.searchExternalMatchmakerNodes(patient);
+            } catch (Exception e) {
+                logger.error("error occurred in match controller :" + e.toString() + " : " + e.toString());
+                return this.message(HttpStatus.INTERNAL_SERVER_ERROR, "{\"message\":\"error occurred searching external nodes\"}");
             }
-            List<String> matchmakerResults = searcher.searchInExternalMatchmakerNodesOnly(patient);
-            StringBuilder resultsBuilder = new StringBuilder();
-            resultsBuilder.append("{");
-            resultsBuilder.append("\"results\":");
-            resultsBuilder.append(matchmakerResults);
-            resultsBuilder.append(",");
-            resultsBuilder.append("\"_disclaimer\":");
-            resultsBuilder.append("\"" + patientUtility.getDisclaimer() + "\"");
-            resultsBuilder.append("}");
-            return new ResponseEntity<>(resultsBuilder.toString(), httpHeaders, HttpStatus.OK);
-        } catch (Exception e) {
-            logger.error("error occurred in match controller :" + e.toString() + " : " + e.toString());
-            return new ResponseEntity<>("{\"message\":\"error occurred searching external nodes\"}", httpHeaders, HttpStatus.INTERNAL_SERVER_ERROR);
+            return this.body(HttpStatus.OK, out -> this.resultWriter.writeResults(out,
+                    matchmakerResults.getMatchmakerResults(), matchmakerResults.getNodeStatuses()));
+        });
+    }
+
+
+    /**
+     * Runs the work of a request on the match pool. The request is answered 503 if the pool is
+     * full or the work isn't done in time, and 500 if the work fails. Work given up on is
+     * cancelled: if it is still queued it never runs, and if it is running its thread is
+     * interrupted, which scoring checks for between candidates so the thread is freed early.
+     *
+     * @param endpoint the endpoint, to count the request under
+     * @param work     builds the response
+     * @return the response, once there is one
+     */
+    private DeferredResult<ResponseEntity<StreamingResponseBody>> dispatch(String endpoint, Supplier<ResponseEntity<StreamingResponseBody>> work) {
+        DeferredResult<ResponseEntity<StreamingResponseBody>> deferred = new DeferredResult<>(this.matchRequestExecutor.getTimeoutMs());
+        CompletableFuture<ResponseEntity<StreamingResponseBody>> future;
+        try {
+            future = this.matchRequestExecutor.submit(endpoint, () -> deferred.isSetOrExpired() ? null : work.get());
+        } catch (RejectedExecutionException e) {
+            deferred.setResult(this.busy());
+            return deferred;
         }
+        deferred.onTimeout(() -> {
+            logger.warn("gave up waiting on a {} request after {}ms", endpoint, this.matchRequestExecutor.getTimeoutMs());
+            future.cancel(true);
+            this.matchRequestExecutor.timedOut(endpoint);
+            deferred.setResult(this.busy());
+        });
+        future.whenComplete((response, error) -> {
+            if (error instanceof CancellationException) {
+                return;
+            }
+            if (error != null) {
+                logger.error("error answering a {} request: {}", endpoint, error.toString());
+                deferred.setResult(this.message(HttpStatus.INTERNAL_SERVER_ERROR, "{\"message\":\"error occurred matching\"}"));
+            } else if (response != null) {
+                deferred.setResult(response);
+            }
+        });
+        return deferred;
+    }
+
+
+    /**
+     * @return a 503 asking the client to try again later
+     */
+    private ResponseEntity<StreamingResponseBody> busy() {
+        byte[] json = "{\"message\":\"too many match requests, try again later\"}".getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Integer.toString(this.matchRequestExecutor.getRetryAfterSeconds()))
+                .contentType(MediaType.valueOf(this.CONTENT_TYPE_HEADER))
+                .body(out -> out.write(json));
+    }
+
+
+    /**
+     * A short JSON message, such as an error, as the response
+     */
+    private ResponseEntity<StreamingResponseBody> message(HttpStatus status, String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return this.body(status, out -> out.write(bytes));
+    }
+
+
+    /**
+     * The body is written straight to the response once the status and headers are sent, so the
+     * results are serialized as they are written rather than built up in memory first
+     */
+    private ResponseEntity<StreamingResponseBody> body(HttpStatus status, StreamingResponseBody body) {
+        return ResponseEntity.status(status).contentType(MediaType.valueOf(this.CONTENT_TYPE_HEADER)).body(body);
+    }
+
+
+    /**
+     * @param searcher the searcher to set
+     */
+    public void setSearcher(SearchService searcher) {
+        this.searcher = searcher;
+    }
+
 
+    /**
+     * @param matchRequestExecutor the matchRequestExecutor to set
+     */
+    public void setMatchRequestExecutor(MatchRequestExecutor matchRequestExecutor) {
+        this.matchRequestExecutor = matchRequestExecutor;
     }
 
 }
@@ -6,8 +6,12 @@
 import java.util.HashMap;
 import java.util.Map;
 
+import org.broadinstitute.macarthurlab.matchbox.authentication.NodeRequestLimiter;
 import org.broadinstitute.macarthurlab.matchbox.entities.Metric;
+import org.broadinstitute.macarthurlab.matchbox.frequency.CachingPopulationFrequencyProvider;
+import org.broadinstitute.macarthurlab.matchbox.frequency.PopulationFrequencyProvider;
 import org.broadinstitute.macarthurlab.matchbox.metrics.MetricService;
+import org.broadinstitute.macarthurlab.matchbox.search.MatchRequestExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,6 +41,15 @@ public class MetricsController {
 	@Qualifier("publicMetricServiceImpl")
 	private MetricService publicMetric;
 	
+	@Autowired
+	private PopulationFrequencyProvider populationFrequencyProvider;
+	
+	@Autowired
+	private MatchRequestExecutor matchRequestExecutor;
+	
+	@Autowired
+	private NodeRequestLimiter nodeRequestLimiter;
+	
 	private final Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	/**
@@ -81,6 +94,42 @@ public Map<String,Metric> publicMatch() {
 	}
 
 
+	/**
+	 * Controller for /metrics/population-frequency-cache GET end-point. Returns the hit, miss
+	 * and eviction counts of the allele frequency and gene constraint caches, and is meant
+	 * for INTERNAL VIEWING ONLY
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/metrics/population-frequency-cache")
+	public Map<String,Map<String,Long>> populationFrequencyCache() {
+		if (this.populationFrequencyProvider instanceof CachingPopulationFrequencyProvider){
+			return ((CachingPopulationFrequencyProvider)this.populationFrequencyProvider).getStats();
+		}
+		return new HashMap<String,Map<String,Long>>();
+	}
+
+
+	/**
+	 * Controller for /metrics/match-requests GET end-point. Returns how many /match and
+	 * /match/external requests are in flight, and how many were turned away as the node was
+	 * busy, and is meant for INTERNAL VIEWING ONLY
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/metrics/match-requests")
+	public Map<String,Map<String,Long>> matchRequests() {
+		return this.matchRequestExecutor.getStats();
+	}
+
+
+	/**
+	 * Controller for /metrics/node-limits GET end-point. Returns how many requests each partner
+	 * node has in flight, and how many of its requests were admitted or turned away by its rate
+	 * limit or in-flight quota, and is meant for INTERNAL VIEWING ONLY
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/metrics/node-limits")
+	public Map<String,Map<String,Long>> nodeLimits() {
+		return this.nodeRequestLimiter.getStats();
+	}
+
+
 	/**
 	 * @return the cONTENT_TYPE_HEADER
 	 */
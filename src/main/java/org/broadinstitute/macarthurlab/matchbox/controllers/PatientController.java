@@ -5,20 +5,40 @@
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientCache;
 import org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb.PatientMongoRepository;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb.PatientUpsertResult;
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.match.GeneIdentifierResolver;
+import org.broadinstitute.macarthurlab.matchbox.search.PatientParseException;
+import org.broadinstitute.macarthurlab.matchbox.search.PatientRecordReader;
 import org.broadinstitute.macarthurlab.matchbox.search.PatientRecordUtility;
 import org.broadinstitute.macarthurlab.matchbox.search.SearchService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 
@@ -33,6 +53,36 @@ public class PatientController {
 	@Autowired
 	private SearchService searcher;
 	
+	@Autowired
+	private PatientCache patientCache;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	@Autowired
+	private GeneIdentifierResolver geneIdentifierResolver;
+	
+	/**
+	 * Most patients written to MongoDB at once by /patient/bulk-add
+	 */
+	@Value("${matchbox.patient.bulk-add.batch-size:1000}")
+	private int bulkAddBatchSize;
+	
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final String FORMAT_JSON = "json";
+	private static final String FORMAT_NDJSON = "ndjson";
+	
+	/**
+	 * Patient fields /patient/view can be asked to keep
+	 */
+	private static final Set<String> PATIENT_FIELDS = new LinkedHashSet<String>(Arrays.asList(
+			"id", "label", "contact", "species", "sex", "ageOfOnset", "inheritanceMode", "disorders", "features", "genomicFeatures"));
+	
+	private static final String STATUS_INSERTED = "inserted";
+	private static final String STATUS_REPLACED = "replaced";
+	private static final String STATUS_INVALID = "invalid";
+	private static final String STATUS_FAILED = "failed";
+	
 	private final Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	
@@ -52,37 +102,25 @@ public PatientController(){
 	 * @return a success message or error message
 	 */
 	@RequestMapping(method = RequestMethod.POST, value = "/patient/add")
-	public ResponseEntity<String> add(@RequestBody String requestString) {
+	public ResponseEntity<String> add(@RequestBody byte[] requestBody) {
 		String jsonMessage = "{\"message\":\"insertion OK\",\"status_code\":200}";
 		Patient patient = null;
 		try {
-			String decodedRequestString = java.net.URLDecoder.decode(requestString, "UTF-8");
-			String inputData=decodedRequestString;
-			if ('=' == inputData.charAt(decodedRequestString.length() - 1)){
-				inputData=decodedRequestString.substring(0, decodedRequestString.length() - 1);
-			}
-			boolean inputDataValid=this.getPatientUtility().areAllRequiredFieldsPresent(inputData);
-			if (!inputDataValid) {
-				StringBuilder msg = new StringBuilder();
-				msg.append("add to MME request has invalid JSON data:");
-				msg.append(decodedRequestString);
-				this.getLogger().info(" {} ",msg);
-				return new ResponseEntity<>(msg.toString(),HttpStatus.BAD_REQUEST);
-			}
-			//if the patient doesn't exist already, add them
-			patient = this.getPatientUtility().parsePatientInformation(inputData);
-			Patient recordInDb = this.patientMongoRepository.findOne(patient.getId());
-			if (null == recordInDb) {
-				this.patientMongoRepository.insert(patient);
+			//add the patient, or replace the record with the same ID, in one write
+			patient = this.getPatientUtility().parsePatient(requestBody);
+			this.geneIdentifierResolver.normalize(patient);
+			PatientUpsertResult result = this.patientMongoRepository.upsert(patient);
+			this.patientCache.patientSaved(patient);
+			if (result.getStatus() == PatientUpsertResult.Status.INSERTED) {
 				this.getLogger().info("inserting new patient for the first time: {}", patient);
 			} else {
-				//let's delete the existing record and add in the new one.
-				this.patientMongoRepository.delete(recordInDb);
-				this.patientMongoRepository.insert(patient);
-				this.getLogger().info("deleting existing patient record and inserting new patient record: {} ",patient);
+				this.getLogger().info("replacing existing patient record with new patient record: {} ",patient);
 				jsonMessage = "{\"message\":\"That patient record (specifically that ID) had already been submitted in the past, it  already exists in Broad system. We are deleting that record and updating it with this new submission\",\"status_code\":200}";
 				return new ResponseEntity<>(jsonMessage, HttpStatus.CONFLICT);
 			}
+		} catch (PatientParseException e) {
+			this.getLogger().info("add to MME request has invalid JSON data: {}", e.getMessage());
+			return new ResponseEntity<>(e.asJson(), HttpStatus.BAD_REQUEST);
 		} catch (Exception e) {
 			this.getLogger().error(e.getMessage());
 			jsonMessage = "{\"message\":\"unable to insert, an unknown error occurred.\",\"status_code\":442, \"error_message\":\""
@@ -94,18 +132,218 @@ public ResponseEntity<String> add(@RequestBody String requestString) {
 	
 	
 	/**
-	 * Controller for /individual/view end-point
-	 * @return	a list of patients found in Beamr data model
+	 * Controller for /patient/bulk-add end-point. Adds or replaces many patients in one call, such
+	 * as when re-syncing a whole cohort. The body is a JSON array of patient records, or one record
+	 * per line (NDJSON), and is read as it arrives. Valid patients are written batch-size at a time
+	 * and the response has what happened to each record, in the order sent, such as
+	 * {"results":[{"index":0,"id":"P1","status":"inserted"},...],"inserted":1,"replaced":0,"invalid":0,"failed":0}
+	 * 
+	 * @param request	the request, read as a stream
+	 * @param response	the response, written as each batch is done
+	 */
+	@RequestMapping(method = RequestMethod.POST, value = "/patient/bulk-add")
+	public void bulkAdd(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Map<String,Integer> counts = new LinkedHashMap<String,Integer>();
+		counts.put(STATUS_INSERTED, 0);
+		counts.put(STATUS_REPLACED, 0);
+		counts.put(STATUS_INVALID, 0);
+		counts.put(STATUS_FAILED, 0);
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType("application/json");
+		try (PatientRecordReader reader = this.getPatientUtility().readPatients(request.getInputStream());
+			 JsonGenerator json = JSON_FACTORY.createGenerator(response.getOutputStream())) {
+			json.writeStartObject();
+			json.writeArrayFieldStart("results");
+			List<Patient> batch = new ArrayList<Patient>();
+			List<Integer> batchIndexes = new ArrayList<Integer>();
+			Set<String> batchIds = new HashSet<String>();
+			while (true) {
+				Patient patient;
+				try {
+					patient = reader.next();
+				} catch (PatientParseException e) {
+					this.writeInvalid(json, reader.getIndex(), e);
+					counts.merge(STATUS_INVALID, 1, Integer::sum);
+					continue;
+				}
+				if (patient == null) {
+					break;
+				}
+				//the same patient twice in one bulk write could be written in either order
+				if (batch.size() >= this.bulkAddBatchSize || batchIds.contains(patient.getId())) {
+					this.writeBatch(json, batch, batchIndexes, counts);
+					batch.clear();
+					batchIndexes.clear();
+					batchIds.clear();
+				}
+				try {
+					this.geneIdentifierResolver.normalize(patient);
+				} catch (RuntimeException e) {
+					this.getLogger().error("unable to resolve the genes of patient {}: {}", patient.getId(), e.toString());
+					this.writeFailed(json, reader.getIndex(), patient.getId(), e);
+					counts.merge(STATUS_FAILED, 1, Integer::sum);
+					continue;
+				}
+				batch.add(patient);
+				batchIndexes.add(reader.getIndex());
+				batchIds.add(patient.getId());
+			}
+			this.writeBatch(json, batch, batchIndexes, counts);
+			json.writeEndArray();
+			for (Map.Entry<String,Integer> count : counts.entrySet()) {
+				json.writeNumberField(count.getKey(), count.getValue());
+			}
+			json.writeEndObject();
+		}
+		this.getLogger().info("bulk add of patients done: {}", counts);
+	}
+	
+	
+	/**
+	 * Upserts a batch of patients and writes what happened to each
+	 */
+	private void writeBatch(JsonGenerator json, List<Patient> batch, List<Integer> batchIndexes, Map<String,Integer> counts) throws IOException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		List<PatientUpsertResult> results;
+		try {
+			results = this.patientMongoRepository.upsertAll(batch);
+		} catch (Exception e) {
+			this.getLogger().error("unable to write a batch of {} patients: {}", batch.size(), e.getMessage());
+			results = new ArrayList<PatientUpsertResult>();
+			for (Patient patient : batch) {
+				results.add(new PatientUpsertResult(patient.getId(), PatientUpsertResult.Status.FAILED, e.getMessage()));
+			}
+		}
+		List<Patient> saved = new ArrayList<Patient>(batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			if (results.get(i).getStatus() != PatientUpsertResult.Status.FAILED) {
+				saved.add(batch.get(i));
+			}
+		}
+		//one new snapshot for the batch, rather than a copy of every patient for each one saved
+		this.patientCache.patientsSaved(saved);
+		for (int i = 0; i < batch.size(); i++) {
+			PatientUpsertResult result = results.get(i);
+			String status = result.getStatus().name().toLowerCase();
+			counts.merge(status, 1, Integer::sum);
+			json.writeStartObject();
+			json.writeNumberField("index", batchIndexes.get(i));
+			json.writeStringField("id", result.getPatientId());
+			json.writeStringField("status", status);
+			if (result.getErrorMessage() != null) {
+				json.writeStringField("message", result.getErrorMessage());
+			}
+			json.writeEndObject();
+		}
+		json.flush();
+	}
+	
+	
+	/**
+	 * Writes a record that was read but could not be prepared for writing
+	 */
+	private void writeFailed(JsonGenerator json, int index, String patientId, Exception e) throws IOException {
+		json.writeStartObject();
+		json.writeNumberField("index", index);
+		json.writeStringField("id", patientId);
+		json.writeStringField("status", STATUS_FAILED);
+		json.writeStringField("message", String.valueOf(e.getMessage()));
+		json.writeEndObject();
+	}
+	
+	
+	private void writeInvalid(JsonGenerator json, int index, PatientParseException e) throws IOException {
+		json.writeStartObject();
+		json.writeNumberField("index", index);
+		json.writeStringField("status", STATUS_INVALID);
+		json.writeStringField("message", e.getMessage());
+		if (e.getLine() > 0) {
+			json.writeNumberField("line", e.getLine());
+			json.writeNumberField("column", e.getColumn());
+		}
+		json.writeEndObject();
+	}
+	
+	
+	/**
+	 * Controller for /patient/view end-point. Patients are written in ID order as they are read
+	 * from the database, as a JSON array, or one patient per line with format=ndjson. A page of
+	 * patients is asked for with limit, and the next page with after set to the last ID seen;
+	 * a page with fewer than limit patients is the last. fields keeps only some of each patient,
+	 * such as fields=id,contact
+	 * 
+	 * @param after	only patients with an ID after this one
+	 * @param limit	most patients to write, or 0 for all of them
+	 * @param fields	comma separated patient fields to write, or all of them
+	 * @param format	json or ndjson
+	 * @param response	the response, written as patients are read
 	 */
 	@RequestMapping(method = RequestMethod.GET, value="/patient/view")
-    public List<Patient>  view() {
-		List<Patient> patients = new ArrayList<Patient>();
-		try{
-			patients = this.patientMongoRepository.findAll();
-		}catch(Exception e){
-			this.getLogger().error(e.getMessage());
+    public void view(@RequestParam(value = "after", required = false) String after,
+                     @RequestParam(value = "limit", required = false, defaultValue = "0") int limit,
+                     @RequestParam(value = "fields", required = false) String fields,
+                     @RequestParam(value = "format", required = false, defaultValue = FORMAT_JSON) String format,
+                     HttpServletResponse response) throws IOException {
+		Set<String> keep = new LinkedHashSet<String>();
+		if (fields != null) {
+			for (String field : fields.split(",")) {
+				if (!field.trim().isEmpty()) {
+					keep.add(field.trim());
+				}
+			}
+		}
+		String badRequest = null;
+		if (limit < 0) {
+			badRequest = "limit can't be negative";
+		} else if (!FORMAT_JSON.equals(format) && !FORMAT_NDJSON.equals(format)) {
+			badRequest = "format should be " + FORMAT_JSON + " or " + FORMAT_NDJSON;
+		} else if (!PATIENT_FIELDS.containsAll(keep)) {
+			badRequest = "fields should be some of " + PATIENT_FIELDS;
+		}
+		if (badRequest != null) {
+			response.setStatus(HttpStatus.BAD_REQUEST.value());
+			response.setContentType("application/json");
+			try (JsonGenerator json = JSON_FACTORY.createGenerator(response.getOutputStream())) {
+				json.writeStartObject();
+				json.writeStringField("message", badRequest);
+				json.writeNumberField("status_code", HttpStatus.BAD_REQUEST.value());
+				json.writeEndObject();
+			}
+			return;
+		}
+		boolean ndjson = FORMAT_NDJSON.equals(format);
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType(ndjson ? "application/x-ndjson" : "application/json");
+		int written = 0;
+		try (JsonGenerator json = this.objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+			if (!ndjson) {
+				json.writeStartArray();
+			}
+			try (CloseableIterator<Patient> patients = this.patientMongoRepository.streamPatients(after, limit, keep)) {
+				while (patients.hasNext()) {
+					Patient patient = patients.next();
+					if (keep.isEmpty()) {
+						json.writeObject(patient);
+					} else {
+						ObjectNode node = this.objectMapper.valueToTree(patient);
+						node.retain(keep);
+						json.writeTree(node);
+					}
+					if (ndjson) {
+						json.writeRaw('\n');
+					}
+					written++;
+				}
+			} catch (RuntimeException e) {
+				//too late to change the status, so end what was written so it is still valid
+				this.getLogger().error("unable to read patients after {} written: {}", written, e.getMessage());
+			}
+			if (!ndjson) {
+				json.writeEndArray();
+			}
 		}
-        return patients;
     }
 	
 
@@ -121,6 +359,9 @@ public ResponseEntity<String> delete(@RequestBody String requestString) {
 			String decodedRequestString = java.net.URLDecoder.decode(requestString, "UTF-8");
 			Map<String,String> delInfo = this.patientUtility.parsePatientIdFromDeleteCall(decodedRequestString);
 			Long numDeleted=this.patientMongoRepository.deletePatientById(delInfo.get("id"));
+			if (numDeleted>0){
+				this.patientCache.patientDeleted(delInfo.get("id"));
+			}
 			if (numDeleted==1){
 				jsonMessage = "{\"message\":\"deleted " + Long.toString(numDeleted) + " patient.\",\"status_code\":200}";
 			}
@@ -185,6 +426,38 @@ public void setPatientMongoRepository(PatientMongoRepository patientMongoReposit
 	public void setSearcher(SearchService searcher) {
 		this.searcher = searcher;
 	}
+
+
+	/**
+	 * @param patientCache the patientCache to set
+	 */
+	public void setPatientCache(PatientCache patientCache) {
+		this.patientCache = patientCache;
+	}
+
+
+	/**
+	 * @param objectMapper the objectMapper to set
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+
+	/**
+	 * @param geneIdentifierResolver the geneIdentifierResolver to set
+	 */
+	public void setGeneIdentifierResolver(GeneIdentifierResolver geneIdentifierResolver) {
+		this.geneIdentifierResolver = geneIdentifierResolver;
+	}
+
+
+	/**
+	 * @param bulkAddBatchSize the bulkAddBatchSize to set
+	 */
+	public void setBulkAddBatchSize(int bulkAddBatchSize) {
+		this.bulkAddBatchSize = bulkAddBatchSize;
+	}
 	
 	
 
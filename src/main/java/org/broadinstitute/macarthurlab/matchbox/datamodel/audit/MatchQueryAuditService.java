@@ -0,0 +1,17 @@
+/**
+ * Keeps a record of each match query from another node and the results sent back
+ */
+package org.broadinstitute.macarthurlab.matchbox.datamodel.audit;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalMatchQuery;
+
+/**
+ * @author harindra
+ */
+public interface MatchQueryAuditService {
+
+    /**
+     * Records a match query. The record may be written to the database after this returns.
+     */
+    public void record(ExternalMatchQuery externalMatchQuery);
+}
@@ -0,0 +1,468 @@
+/**
+ * Writes match query records to MongoDB off the request thread
+ */
+package org.broadinstitute.macarthurlab.matchbox.datamodel.audit;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+import org.bson.types.ObjectId;
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalMatchQuery;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.entities.Variant;
+import org.broadinstitute.macarthurlab.matchbox.metrics.MetricAggregateService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records are put on a bounded queue and a single writer thread inserts whatever has built up
+ * in one bulk insert, so a partner's /match response does not wait on MongoDB. When the queue
+ * is full, the request thread waits a short while for room and then appends the record to a
+ * spill file instead. Records of a batch MongoDB does not take are spilled the same way, and the
+ * spill file is written to MongoDB once it is taking inserts again, or at the next start up. With
+ * no spill file they are saved one at a time instead.
+ *
+ * @author harindra
+ */
+@Service
+public class MatchQueryAuditServiceImpl implements MatchQueryAuditService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchQueryAuditServiceImpl.class);
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Autowired
+    private MongoOperations operator;
+
+    @Autowired
+    private MetricAggregateService metricAggregateService;
+
+    /**
+     * Write records on a background thread, otherwise each is saved before returning
+     */
+    @Value("${matchbox.match-audit.write-behind.enabled:true}")
+    private boolean writeBehind;
+
+    /**
+     * Most records waiting to be written
+     */
+    @Value("${matchbox.match-audit.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    /**
+     * Most records in one insert
+     */
+    @Value("${matchbox.match-audit.write-behind.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * How long a request waits for room on a full queue before spilling its record
+     */
+    @Value("${matchbox.match-audit.write-behind.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    /**
+     * Where records go when the queue is full or MongoDB fails, empty to save them on the
+     * request thread instead
+     */
+    @Value("${matchbox.match-audit.write-behind.spill-file:}")
+    private String spillFileName;
+
+    /**
+     * Keep only the ID, genes and score of each result patient, rather than a full copy
+     */
+    @Value("${matchbox.match-audit.compact-results:false}")
+    private boolean compactResults;
+
+    private BlockingQueue<ExternalMatchQuery> queue;
+
+    private ExecutorService writer;
+
+    private volatile boolean running;
+
+    private Path spillFile;
+
+    /**
+     * Guards the spill file, only ever held while it is read or written, never while writing to
+     * MongoDB
+     */
+    private final Object spillLock = new Object();
+
+    private volatile boolean spilled;
+
+    /**
+     * Starts the writer, if writing behind
+     */
+    @PostConstruct
+    public void init() {
+        this.spillFile = this.spillFileName == null || this.spillFileName.isEmpty() ? null : Paths.get(this.spillFileName);
+        this.spilled = this.spillFile != null && (Files.exists(this.spillFile) || Files.exists(this.replayFile()));
+        if (this.writeBehind) {
+            this.queue = new ArrayBlockingQueue<>(this.queueCapacity);
+            this.running = true;
+            this.writer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "match-audit-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.writer.execute(this::writeBatches);
+        }
+    }
+
+    /**
+     * Writes what is still on the queue before stopping
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (this.writer == null) {
+            return;
+        }
+        this.running = false;
+        this.writer.shutdown();
+        try {
+            if (!this.writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.error("match audit writer did not stop, {} records left unwritten", this.queue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void record(ExternalMatchQuery externalMatchQuery) {
+        this.metricAggregateService.matchQuerySaved(externalMatchQuery);
+        ExternalMatchQuery auditRecord = this.compactResults ? compact(externalMatchQuery) : externalMatchQuery;
+        if (!this.writeBehind) {
+            this.operator.save(auditRecord);
+            return;
+        }
+        try {
+            if (this.queue.offer(auditRecord, this.offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //MongoDB is not keeping up
+        if (this.spillFile != null) {
+            this.spill(Collections.singletonList(this.toDocument(auditRecord)));
+        } else {
+            this.operator.save(auditRecord);
+        }
+    }
+
+    /**
+     * Runs on the writer thread until shut down and the queue is empty
+     */
+    private void writeBatches() {
+        if (this.spilled) {
+            this.replaySpilled();
+        }
+        while (this.running || !this.queue.isEmpty()) {
+            ExternalMatchQuery first;
+            try {
+                first = this.queue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                first = this.queue.poll();
+            }
+            if (first == null) {
+                continue;
+            }
+            List<ExternalMatchQuery> batch = new ArrayList<>(this.batchSize);
+            batch.add(first);
+            this.queue.drainTo(batch, this.batchSize - 1);
+            this.write(batch);
+        }
+    }
+
+    /**
+     * Inserts a batch, spilling or saving one at a time the records that weren't written
+     */
+    void write(List<ExternalMatchQuery> batch) {
+        List<DBObject> documents = new ArrayList<>(batch.size());
+        for (ExternalMatchQuery record : batch) {
+            documents.add(this.toDocument(record));
+        }
+        List<DBObject> unwritten = this.insertUnordered(documents);
+        if (!unwritten.isEmpty()) {
+            logger.error("unable to write {} of {} match audit records", unwritten.size(), batch.size());
+            if (this.spillFile != null) {
+                this.spill(unwritten);
+            } else {
+                this.saveEach(unwritten);
+            }
+            return;
+        }
+        if (this.spilled) {
+            this.replaySpilled();
+        }
+    }
+
+    /**
+     * Inserts documents in one unordered bulk write, so one bad document doesn't stop the others.
+     * Every document is given its ID first, so one written again after a failure is reported as a
+     * duplicate key, which counts as written, rather than being stored twice.
+     * @param documents documents to insert
+     * @return the documents that were not written
+     */
+    private List<DBObject> insertUnordered(List<DBObject> documents) {
+        if (documents.isEmpty()) {
+            return documents;
+        }
+        try {
+            BulkWriteOperation bulk = this.operator.getCollection(this.operator.getCollectionName(ExternalMatchQuery.class))
+                    .initializeUnorderedBulkOperation();
+            for (DBObject document : documents) {
+                if (document.get("_id") == null) {
+                    document.put("_id", new ObjectId());
+                }
+                bulk.insert(document);
+            }
+            bulk.execute();
+            return Collections.emptyList();
+        } catch (BulkWriteException e) {
+            if (e.getWriteConcernError() != null) {
+                //can't tell which were written, writing them all again is safe
+                logger.error("match audit write concern error: {}", e.getWriteConcernError().getMessage());
+                return documents;
+            }
+            List<DBObject> unwritten = new ArrayList<>();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    logger.error("unable to write a match audit record: {}", error.getMessage());
+                    unwritten.add(documents.get(error.getIndex()));
+                }
+            }
+            return unwritten;
+        } catch (Exception e) {
+            logger.error("unable to write {} match audit records: {}", documents.size(), e.getMessage());
+            return documents;
+        }
+    }
+
+    /**
+     * With nowhere to spill them, saves records one at a time on the writer thread, as record()
+     * does when the queue is full
+     */
+    private void saveEach(List<DBObject> documents) {
+        DBCollection collection = this.operator.getCollection(this.operator.getCollectionName(ExternalMatchQuery.class));
+        for (DBObject document : documents) {
+            try {
+                collection.save(document);
+            } catch (Exception e) {
+                logger.error("match audit record lost, unable to save it: {}", e.getMessage());
+            }
+        }
+    }
+
+    private DBObject toDocument(ExternalMatchQuery record) {
+        DBObject document = new BasicDBObject();
+        this.operator.getConverter().write(record, document);
+        return document;
+    }
+
+    /**
+     * Appends records to the spill file, one JSON document per line, as they would be stored
+     * in MongoDB
+     */
+    private void spill(List<DBObject> documents) {
+        synchronized (this.spillLock) {
+            try (BufferedWriter spillWriter = Files.newBufferedWriter(this.spillFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (DBObject document : documents) {
+                    spillWriter.write(JSON.serialize(document));
+                    spillWriter.newLine();
+                }
+                this.spilled = true;
+            } catch (Exception e) {
+                logger.error("unable to spill {} match audit records to {}: {}", documents.size(), this.spillFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Inserts the spilled records in batches. The spill file is first moved aside under the lock,
+     * so records can still be spilled while the moved file is written to MongoDB, and those not
+     * inserted are appended to the spill file again. A moved file left by a replay that didn't
+     * finish is replayed before the spill file is taken.
+     */
+    void replaySpilled() {
+        Path replayFile = this.replayFile();
+        synchronized (this.spillLock) {
+            try {
+                if (!Files.exists(replayFile)) {
+                    if (!Files.exists(this.spillFile)) {
+                        this.spilled = false;
+                        return;
+                    }
+                    Files.move(this.spillFile, replayFile);
+                    this.spilled = false;
+                }
+            } catch (IOException e) {
+                logger.error("unable to move spilled match audit records in {} aside: {}", this.spillFile, e.getMessage());
+                return;
+            }
+        }
+        List<DBObject> unwritten = new ArrayList<>();
+        int written = 0;
+        try (BufferedReader reader = Files.newBufferedReader(replayFile)) {
+            List<DBObject> batch = this.readBatch(reader);
+            while (!batch.isEmpty()) {
+                List<DBObject> failed = this.insertUnordered(batch);
+                written += batch.size() - failed.size();
+                unwritten.addAll(failed);
+                if (failed.size() == batch.size()) {
+                    //MongoDB is still not taking inserts, keep the rest for next time
+                    for (batch = this.readBatch(reader); !batch.isEmpty(); batch = this.readBatch(reader)) {
+                        unwritten.addAll(batch);
+                    }
+                    break;
+                }
+                batch = this.readBatch(reader);
+            }
+        } catch (IOException e) {
+            logger.error("unable to read spilled match audit records from {}: {}", replayFile, e.getMessage());
+            return;
+        }
+        if (!unwritten.isEmpty()) {
+            this.spill(unwritten);
+        }
+        try {
+            Files.deleteIfExists(replayFile);
+        } catch (IOException e) {
+            logger.error("unable to delete replayed match audit records in {}: {}", replayFile, e.getMessage());
+            return;
+        }
+        if (written > 0) {
+            logger.info("wrote {} spilled match audit records, {} left in {}", written, unwritten.size(), this.spillFile);
+        }
+    }
+
+    /**
+     * @return up to a batch of the spilled records, none once they have all been read
+     */
+    private List<DBObject> readBatch(BufferedReader reader) throws IOException {
+        List<DBObject> batch = new ArrayList<>(this.batchSize);
+        String line;
+        while (batch.size() < this.batchSize && (line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                batch.add((DBObject) JSON.parse(line));
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @return where the spill file is moved while it is being replayed
+     */
+    private Path replayFile() {
+        return this.spillFile.resolveSibling(this.spillFile.getFileName() + ".replaying");
+    }
+
+    /**
+     * Keeps the incoming query as it was sent, but only the ID, genes and score of each result,
+     * enough to tell which patients and genes were sent back
+     */
+    static ExternalMatchQuery compact(ExternalMatchQuery externalMatchQuery) {
+        List<MatchmakerResult> results = new ArrayList<>();
+        for (MatchmakerResult result : externalMatchQuery.getResults()) {
+            List<GenomicFeature> genes = new ArrayList<>();
+            for (GenomicFeature genomicFeature : result.getPatient().getGenomicFeatures()) {
+                genes.add(new GenomicFeature(genomicFeature.getGene(), new Variant("", "", -1L, -1L, "", "", false), -1L, new HashMap<>()));
+            }
+            Patient patient = new Patient(result.getPatient().getId(), "", new HashMap<>(), "", "", "", "",
+                    new ArrayList<>(), new ArrayList<>(), genes);
+            results.add(new MatchmakerResult(result.getScore(), patient));
+        }
+        return new ExternalMatchQuery(externalMatchQuery.getIncomingQuery(),
+                results,
+                externalMatchQuery.getRequestOriginHostname(),
+                externalMatchQuery.getInstitution(),
+                externalMatchQuery.isMatchFound());
+    }
+
+    /**
+     * @param operator the operator to set
+     */
+    public void setOperator(MongoOperations operator) {
+        this.operator = operator;
+    }
+
+    /**
+     * @param metricAggregateService the metricAggregateService to set
+     */
+    public void setMetricAggregateService(MetricAggregateService metricAggregateService) {
+        this.metricAggregateService = metricAggregateService;
+    }
+
+    /**
+     * @param writeBehind the writeBehind to set
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * @param queueCapacity the queueCapacity to set
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param batchSize the batchSize to set
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param offerTimeoutMs the offerTimeoutMs to set
+     */
+    public void setOfferTimeoutMs(long offerTimeoutMs) {
+        this.offerTimeoutMs = offerTimeoutMs;
+    }
+
+    /**
+     * @param spillFileName the spillFileName to set
+     */
+    public void setSpillFileName(String spillFileName) {
+        this.spillFileName = spillFileName;
+    }
+
+    /**
+     * @param compactResults the compactResults to set
+     */
+    public void setCompactResults(boolean compactResults) {
+        this.compactResults = compactResults;
+    }
+}
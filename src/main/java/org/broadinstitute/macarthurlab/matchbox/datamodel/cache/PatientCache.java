@@ -0,0 +1,40 @@
+/**
+ * An in-memory cache of the patients in this node
+ */
+package org.broadinstitute.macarthurlab.matchbox.datamodel.cache;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+
+import java.util.Collection;
+
+/**
+ * @author harindra
+ */
+public interface PatientCache {
+
+    /**
+     * @return the current snapshot of patients, reading it never blocks. Always empty in low-memory mode.
+     */
+    public PatientSnapshot getSnapshot();
+
+    /**
+     * Must be called after a patient is inserted or replaced in the database
+     */
+    public void patientSaved(Patient patient);
+
+    /**
+     * Must be called after a batch of patients is inserted or replaced in the database. Publishes
+     * one new snapshot for the whole batch.
+     */
+    public void patientsSaved(Collection<Patient> patients);
+
+    /**
+     * Must be called after a patient is deleted from the database
+     */
+    public void patientDeleted(String patientId);
+
+    /**
+     * Throws away the cached patients and loads them again from the database
+     */
+    public void reload();
+}
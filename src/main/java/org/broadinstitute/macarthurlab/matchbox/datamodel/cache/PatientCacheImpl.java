@@ -0,0 +1,203 @@
+/**
+ * Keeps an in-memory snapshot of all the patients in this node
+ */
+package org.broadinstitute.macarthurlab.matchbox.datamodel.cache;
+
+import org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb.PatientMongoRepository;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches and metrics read the current snapshot without locking or going to MongoDB. Writers
+ * (add, delete, reload) are serialized and publish a new snapshot, then tell the listeners.
+ * Since patients can also be changed in MongoDB directly, the snapshot can optionally be
+ * reconciled against the database on a schedule.
+ * 
+ * In low-memory mode, for nodes with more patients than fit in heap, the snapshot is always
+ * empty. Patients are streamed from MongoDB to the listeners one at a time instead, and
+ * searches go to MongoDB for their candidates.
+ *
+ * @author harindra
+ */
+@Service
+public class PatientCacheImpl implements PatientCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientCacheImpl.class);
+
+    @Autowired
+    private PatientMongoRepository patientMongoRepository;
+
+    /**
+     * Things that keep state derived from the patients, such as the gene index
+     */
+    @Autowired(required = false)
+    private List<PatientCacheListener> listeners = new ArrayList<>();
+
+    /**
+     * Minutes between reloading the snapshot from MongoDB, 0 or less turns it off
+     */
+    @Value("${matchbox.patient-cache.reconcile-interval-minutes:0}")
+    private long reconcileIntervalMinutes;
+
+    /**
+     * Keep no patients in memory, only what the listeners derive from them
+     */
+    @Value("${matchbox.low-memory.enabled:false}")
+    private boolean lowMemory;
+
+    private volatile PatientSnapshot snapshot = PatientSnapshot.EMPTY;
+
+    private ScheduledExecutorService reconciler;
+
+    /**
+     * Loads the patients already in the database, and starts reconciling if that is turned on
+     */
+    @PostConstruct
+    public void init() {
+        this.reload();
+        if (this.reconcileIntervalMinutes > 0) {
+            this.reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "patient-cache-reconciler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.reconciler.scheduleWithFixedDelay(this::reconcile,
+                    this.reconcileIntervalMinutes,
+                    this.reconcileIntervalMinutes,
+                    TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (this.reconciler != null) {
+            this.reconciler.shutdownNow();
+        }
+    }
+
+    @Override
+    public PatientSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    @Override
+    public synchronized void patientSaved(Patient patient) {
+        if (!this.lowMemory) {
+            this.snapshot = this.snapshot.withPatient(patient);
+        }
+        for (PatientCacheListener listener : this.listeners) {
+            listener.patientSaved(patient);
+        }
+    }
+
+    @Override
+    public synchronized void patientsSaved(Collection<Patient> patients) {
+        if (patients.isEmpty()) {
+            return;
+        }
+        if (!this.lowMemory) {
+            this.snapshot = this.snapshot.withPatients(patients);
+        }
+        for (PatientCacheListener listener : this.listeners) {
+            listener.patientsSaved(patients);
+        }
+    }
+
+    @Override
+    public synchronized void patientDeleted(String patientId) {
+        this.snapshot = this.snapshot.withoutPatient(patientId);
+        for (PatientCacheListener listener : this.listeners) {
+            listener.patientDeleted(patientId);
+        }
+    }
+
+    /**
+     * The database is read while holding the lock, so a write that lands during the reload is
+     * applied after it and is not lost
+     */
+    @Override
+    public synchronized void reload() {
+        if (this.lowMemory) {
+            this.stream();
+            return;
+        }
+        PatientSnapshot reloaded = new PatientSnapshot(this.patientMongoRepository.findAll());
+        this.snapshot = reloaded;
+        for (PatientCacheListener listener : this.listeners) {
+            listener.patientsReloaded(reloaded);
+        }
+        logger.info("patient cache loaded with {} patients", reloaded.size());
+    }
+
+    /**
+     * Tells the listeners every patient is gone, then about each patient in the database in turn
+     */
+    private void stream() {
+        this.snapshot = PatientSnapshot.EMPTY;
+        for (PatientCacheListener listener : this.listeners) {
+            listener.patientsReloaded(PatientSnapshot.EMPTY);
+        }
+        int streamed = 0;
+        try (CloseableIterator<Patient> patients = this.patientMongoRepository.streamPatients(null, 0, Collections.emptySet())) {
+            while (patients.hasNext()) {
+                Patient patient = patients.next();
+                for (PatientCacheListener listener : this.listeners) {
+                    listener.patientSaved(patient);
+                }
+                streamed++;
+            }
+        }
+        logger.info("low-memory mode, {} patients streamed to the patient cache listeners", streamed);
+    }
+
+    /**
+     * Reloads from the database, keeping the current snapshot if that fails
+     */
+    private void reconcile() {
+        try {
+            int before = this.snapshot.size();
+            this.reload();
+            if (before != this.snapshot.size()) {
+                logger.warn("patient cache was out of step with the database, it held {} patients and now holds {}", before, this.snapshot.size());
+            }
+        } catch (Exception e) {
+            logger.error("unable to reconcile patient cache with the database: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param patientMongoRepository the patientMongoRepository to set
+     */
+    public void setPatientMongoRepository(PatientMongoRepository patientMongoRepository) {
+        this.patientMongoRepository = patientMongoRepository;
+    }
+
+    /**
+     * @param lowMemory true to keep no patients in memory
+     */
+    public void setLowMemory(boolean lowMemory) {
+        this.lowMemory = lowMemory;
+    }
+
+    /**
+     * @param listeners the listeners to set
+     */
+    public void setListeners(List<PatientCacheListener> listeners) {
+        this.listeners = listeners;
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * To be told about changes to the cached patients
+ */
+package org.broadinstitute.macarthurlab.matchbox.datamodel.cache;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+
+import java.util.Collection;
+
+/**
+ * Implemented by anything that keeps state derived from the patients in this node (indexes,
+ * counts) so that state can follow the patient cache. Calls are made one at a time, in the
+ * order the changes were made to the cache.
+ *
+ * @author harindra
+ */
+public interface PatientCacheListener {
+
+    /**
+     * The cache was (re)loaded from the database
+     */
+    public void patientsReloaded(PatientSnapshot snapshot);
+
+    /**
+     * A patient was added, or replaced an existing patient with the same ID
+     */
+    public void patientSaved(Patient patient);
+
+    /**
+     * A batch of patients was added or replaced, in this order
+     */
+    public default void patientsSaved(Collection<Patient> patients) {
+        for (Patient patient : patients) {
+            this.patientSaved(patient);
+        }
+    }
+
+    /**
+     * A patient was deleted
+     */
+    public void patientDeleted(String patientId);
+}
@@ -0,0 +1,117 @@
+/**
+ * An immutable, point in time copy of the patients in this node
+ */
+package org.broadinstitute.macarthurlab.matchbox.datamodel.cache;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A snapshot is never modified once built. Changes produce a new snapshot (copy-on-write),
+ * so a reader holding a snapshot always sees a consistent set of patients.
+ *
+ * @author harindra
+ */
+public final class PatientSnapshot {
+
+    /**
+     * A snapshot with no patients in it
+     */
+    public static final PatientSnapshot EMPTY = new PatientSnapshot(Collections.emptyList());
+
+    private final Map<String, Patient> patientsById;
+    private final List<Patient> patients;
+
+    /**
+     * @param patients patients to hold, a later patient replaces an earlier one with the same ID
+     */
+    public PatientSnapshot(List<Patient> patients) {
+        Map<String, Patient> patientsById = new LinkedHashMap<>();
+        for (Patient patient : patients) {
+            patientsById.put(patient.getId(), patient);
+        }
+        this.patientsById = Collections.unmodifiableMap(patientsById);
+        this.patients = Collections.unmodifiableList(new ArrayList<>(patientsById.values()));
+    }
+
+    /**
+     * @return all the patients in this snapshot
+     */
+    public List<Patient> getPatients() {
+        return patients;
+    }
+
+    /**
+     * @param patientId ID of a patient
+     * @return the patient, or null if it is not in this snapshot
+     */
+    public Patient getPatient(String patientId) {
+        return patientsById.get(patientId);
+    }
+
+    /**
+     * @return the number of patients in this snapshot
+     */
+    public int size() {
+        return patients.size();
+    }
+
+    /**
+     * @param patient a new or updated patient
+     * @return a new snapshot that also holds this patient
+     */
+    public PatientSnapshot withPatient(Patient patient) {
+        List<Patient> updated = new ArrayList<>(patients.size() + 1);
+        for (Patient existing : patients) {
+            if (!existing.getId().equals(patient.getId())) {
+                updated.add(existing);
+            }
+        }
+        updated.add(patient);
+        return new PatientSnapshot(updated);
+    }
+
+    /**
+     * @param saved new or updated patients, a later patient replaces an earlier one with the same ID
+     * @return a new snapshot that also holds these patients, built in one pass
+     */
+    public PatientSnapshot withPatients(Collection<Patient> saved) {
+        Set<String> savedIds = new HashSet<>();
+        for (Patient patient : saved) {
+            savedIds.add(patient.getId());
+        }
+        List<Patient> updated = new ArrayList<>(patients.size() + saved.size());
+        for (Patient existing : patients) {
+            if (!savedIds.contains(existing.getId())) {
+                updated.add(existing);
+            }
+        }
+        updated.addAll(saved);
+        return new PatientSnapshot(updated);
+    }
+
+    /**
+     * @param patientId ID of a patient
+     * @return a new snapshot without this patient
+     */
+    public PatientSnapshot withoutPatient(String patientId) {
+        if (!patientsById.containsKey(patientId)) {
+            return this;
+        }
+        List<Patient> updated = new ArrayList<>(patients.size());
+        for (Patient existing : patients) {
+            if (!existing.getId().equals(patientId)) {
+                updated.add(existing);
+            }
+        }
+        return new PatientSnapshot(updated);
+    }
+}
@@ -14,7 +14,7 @@
  * @author harindra
  *
  */
-public interface PatientMongoRepository extends MongoRepository<Patient, String> {
+public interface PatientMongoRepository extends MongoRepository<Patient, String>, PatientMongoRepositoryCustom {
 	Long deletePatientById(String id);
 	List<Patient> findAll();
 }
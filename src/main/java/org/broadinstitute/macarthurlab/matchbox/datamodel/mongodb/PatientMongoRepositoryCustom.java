@@ -0,0 +1,52 @@
+/**
+ * Patient writes that Spring Data can't derive from a method name
+ */
+package org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author harindra
+ */
+public interface PatientMongoRepositoryCustom {
+
+    /**
+     * Replaces the patient with the same ID, or inserts it if there is none, in one atomic write,
+     * so the patient is never missing from the database while being replaced
+     * @param patient patient to write
+     * @return whether the patient was inserted or replaced
+     */
+    PatientUpsertResult upsert(Patient patient);
+
+    /**
+     * Replaces the patient with the same ID as each patient given, or inserts it if there is
+     * none, in one unordered bulk write. A patient that can't be written doesn't stop the others.
+     * @param patients patients to write, with distinct IDs
+     * @return what happened to each patient, in the order given
+     */
+    List<PatientUpsertResult> upsertAll(List<Patient> patients);
+
+    /**
+     * Patients in ID order, read from a cursor as they are iterated rather than all at once. The
+     * iterator has to be closed.
+     * @param afterId  only patients with an ID after this one, or null to start at the first
+     * @param limit    most patients to read, or 0 for no limit
+     * @param fields   patient fields to read, such as "id" and "contact", or empty for all of them
+     * @return the patients
+     */
+    CloseableIterator<Patient> streamPatients(String afterId, int limit, Collection<String> fields);
+
+    /**
+     * Patients with at least one genomic feature whose gene was resolved to one of these Ensembl
+     * IDs when stored, or was given as one of these identifiers. Uses the indexes on both.
+     * @param ensemblIds       Ensembl gene IDs
+     * @param geneIdentifiers  gene symbols and Ensembl gene IDs, as a patient may have given them
+     * @return the patients
+     */
+    List<Patient> findPatientsSharingGenes(Collection<String> ensemblIds, Collection<String> geneIdentifiers);
+}
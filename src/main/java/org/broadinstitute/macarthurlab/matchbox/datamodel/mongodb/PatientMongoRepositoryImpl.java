@@ -0,0 +1,169 @@
+/**
+ * Picked up by Spring Data as the implementation of PatientMongoRepositoryCustom
+ */
+package org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.BulkWriteUpsert;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Patients are written as whole documents, as the repository would write them, so an upserted
+ * patient reads back the same as an inserted one
+ *
+ * @author harindra
+ */
+public class PatientMongoRepositoryImpl implements PatientMongoRepositoryCustom {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientMongoRepositoryImpl.class);
+
+    @Autowired
+    private MongoOperations operator;
+
+    /**
+     * Create the indexes patients are searched by at startup, if they aren't there already
+     */
+    @Value("${matchbox.patient.ensure-indexes:true}")
+    private boolean ensureIndexes;
+
+    /**
+     * Multikey indexes on the genes and phenotypes of each patient. Building an index on a large
+     * collection takes a while, so it can be turned off and the indexes made by hand instead.
+     */
+    @PostConstruct
+    public void ensureIndexes() {
+        if (!this.ensureIndexes) {
+            return;
+        }
+        IndexOperations indexes = this.operator.indexOps(Patient.class);
+        indexes.ensureIndex(new Index().on("genomicFeatures.gene.id", Sort.Direction.ASC));
+        indexes.ensureIndex(new Index().on("genomicFeatures.ensemblId", Sort.Direction.ASC));
+        indexes.ensureIndex(new Index().on("features.id", Sort.Direction.ASC));
+        logger.info("patient indexes are in place");
+    }
+
+    @Override
+    public PatientUpsertResult upsert(Patient patient) {
+        DBCollection collection = this.operator.getCollection(this.operator.getCollectionName(Patient.class));
+        WriteResult writeResult = collection.update(new BasicDBObject("_id", patient.getId()), this.toDocument(patient), true, false);
+        PatientUpsertResult.Status status = writeResult.isUpdateOfExisting() ? PatientUpsertResult.Status.REPLACED : PatientUpsertResult.Status.INSERTED;
+        return new PatientUpsertResult(patient.getId(), status, null);
+    }
+
+    @Override
+    public List<PatientUpsertResult> upsertAll(List<Patient> patients) {
+        List<PatientUpsertResult> results = new ArrayList<>();
+        if (patients.isEmpty()) {
+            return results;
+        }
+        DBCollection collection = this.operator.getCollection(this.operator.getCollectionName(Patient.class));
+        BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+        for (Patient patient : patients) {
+            bulk.find(new BasicDBObject("_id", patient.getId())).upsert().replaceOne(this.toDocument(patient));
+        }
+        BulkWriteResult writeResult;
+        Map<Integer, String> errors = new HashMap<>();
+        try {
+            writeResult = bulk.execute();
+        } catch (BulkWriteException e) {
+            writeResult = e.getWriteResult();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                errors.put(error.getIndex(), error.getMessage());
+            }
+            if (e.getWriteConcernError() != null) {
+                for (int i = 0; i < patients.size(); i++) {
+                    errors.putIfAbsent(i, e.getWriteConcernError().getMessage());
+                }
+            }
+        }
+        Set<Integer> inserted = new HashSet<>();
+        for (BulkWriteUpsert upsert : writeResult.getUpserts()) {
+            inserted.add(upsert.getIndex());
+        }
+        for (int i = 0; i < patients.size(); i++) {
+            String patientId = patients.get(i).getId();
+            if (errors.containsKey(i)) {
+                results.add(new PatientUpsertResult(patientId, PatientUpsertResult.Status.FAILED, errors.get(i)));
+            } else if (inserted.contains(i)) {
+                results.add(new PatientUpsertResult(patientId, PatientUpsertResult.Status.INSERTED, null));
+            } else {
+                results.add(new PatientUpsertResult(patientId, PatientUpsertResult.Status.REPLACED, null));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public CloseableIterator<Patient> streamPatients(String afterId, int limit, Collection<String> fields) {
+        Query query = new Query();
+        if (afterId != null) {
+            query.addCriteria(Criteria.where("id").gt(afterId));
+        }
+        query.with(new Sort(Sort.Direction.ASC, "id"));
+        if (limit > 0) {
+            query.limit(limit);
+        }
+        for (String field : fields) {
+            query.fields().include(field);
+        }
+        return this.operator.stream(query, Patient.class);
+    }
+
+    @Override
+    public List<Patient> findPatientsSharingGenes(Collection<String> ensemblIds, Collection<String> geneIdentifiers) {
+        if (ensemblIds.isEmpty() && geneIdentifiers.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where("genomicFeatures.ensemblId").in(ensemblIds),
+                Criteria.where("genomicFeatures.gene.id").in(geneIdentifiers)));
+        return this.operator.find(query, Patient.class);
+    }
+
+    private DBObject toDocument(Patient patient) {
+        DBObject document = new BasicDBObject();
+        this.operator.getConverter().write(patient, document);
+        return document;
+    }
+
+    /**
+     * @param operator the operator to set
+     */
+    public void setOperator(MongoOperations operator) {
+        this.operator = operator;
+    }
+
+    /**
+     * @param ensureIndexes true to create the patient indexes at startup
+     */
+    public void setEnsureIndexes(boolean ensureIndexes) {
+        this.ensureIndexes = ensureIndexes;
+    }
+}
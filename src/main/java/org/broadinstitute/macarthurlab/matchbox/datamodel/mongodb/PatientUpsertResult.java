@@ -0,0 +1,61 @@
+/**
+ * What happened to a patient written with an upsert
+ */
+package org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb;
+
+/**
+ * @author harindra
+ */
+public final class PatientUpsertResult {
+
+    public enum Status {
+        /**
+         * There was no patient with that ID
+         */
+        INSERTED,
+        /**
+         * A patient with that ID was replaced
+         */
+        REPLACED,
+        /**
+         * The patient was not written
+         */
+        FAILED
+    }
+
+    private final String patientId;
+    private final Status status;
+    private final String errorMessage;
+
+    /**
+     * @param patientId    the ID of the patient written
+     * @param status       what happened
+     * @param errorMessage why the write failed, or null
+     */
+    public PatientUpsertResult(String patientId, Status status, String errorMessage) {
+        this.patientId = patientId;
+        this.status = status;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * @return the patientId
+     */
+    public String getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return why the write failed, or null
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
@@ -24,6 +24,18 @@ public class AuthorizedToken {
 	 * The primary contact email of the center
 	 */
 	private final String primaryContactEmail;
+	/**
+	 * Requests per second this center may send, less than 0 for the node-wide default
+	 */
+	private double requestsPerSecond = -1;
+	/**
+	 * Requests this center may send at once before being held to requestsPerSecond, less than 0 for the node-wide default
+	 */
+	private int burst = -1;
+	/**
+	 * Requests this center may have in flight, less than 0 for the node-wide default
+	 */
+	private int maxInFlight = -1;
 	
 	
 	/**
@@ -81,7 +93,53 @@ public String getCenterName() {
 	public String getPrimaryContactEmail() {
 		return primaryContactEmail;
 	}
-	
-	
+
+
+	/**
+	 * @return the requestsPerSecond
+	 */
+	public double getRequestsPerSecond() {
+		return requestsPerSecond;
+	}
+
+
+	/**
+	 * @param requestsPerSecond the requestsPerSecond to set
+	 */
+	public void setRequestsPerSecond(double requestsPerSecond) {
+		this.requestsPerSecond = requestsPerSecond;
+	}
+
+
+	/**
+	 * @return the burst
+	 */
+	public int getBurst() {
+		return burst;
+	}
+
+
+	/**
+	 * @param burst the burst to set
+	 */
+	public void setBurst(int burst) {
+		this.burst = burst;
+	}
+
+
+	/**
+	 * @return the maxInFlight
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+
+	/**
+	 * @param maxInFlight the maxInFlight to set
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
 	
 }
@@ -0,0 +1,73 @@
+/**
+ * To represent the results of searching the external matchmaker nodes
+ */
+package org.broadinstitute.macarthurlab.matchbox.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author harindra
+ *
+ */
+public class ExternalSearchResults {
+
+	/**
+	 * Results, in the order the nodes are configured
+	 */
+	private final List<MatchmakerResult> matchmakerResults;
+
+	/**
+	 * How the search of each node went, in the order the nodes are configured
+	 */
+	private final List<NodeSearchStatus> nodeStatuses;
+
+	/**
+	 * @param matchmakerResults
+	 * @param nodeStatuses
+	 */
+	public ExternalSearchResults(List<MatchmakerResult> matchmakerResults, List<NodeSearchStatus> nodeStatuses) {
+		this.matchmakerResults = matchmakerResults;
+		this.nodeStatuses = nodeStatuses;
+	}
+
+	/**
+	 * @return the results
+	 */
+	public List<MatchmakerResult> getMatchmakerResults() {
+		return matchmakerResults;
+	}
+
+	/**
+	 * @return the results as JSON, with empty fields removed
+	 */
+	public List<String> getResults() {
+		List<String> results = new ArrayList<>();
+		for (MatchmakerResult result : this.matchmakerResults) {
+			results.add(result.getEmptyFieldsRemovedJson());
+		}
+		return results;
+	}
+
+	/**
+	 * @return the nodeStatuses
+	 */
+	public List<NodeSearchStatus> getNodeStatuses() {
+		return nodeStatuses;
+	}
+
+	/**
+	 * @return the node statuses as a JSON array
+	 */
+	public String getNodeStatusesJson() {
+		StringBuilder asJson = new StringBuilder("[");
+		for (int i = 0; i < this.nodeStatuses.size(); i++) {
+			if (i > 0) {
+				asJson.append(",");
+			}
+			asJson.append(this.nodeStatuses.get(i).asJson());
+		}
+		asJson.append("]");
+		return asJson.toString();
+	}
+}
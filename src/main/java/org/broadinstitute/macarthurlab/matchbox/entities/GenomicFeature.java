@@ -4,6 +4,7 @@
 import java.util.HashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.mongodb.core.index.Indexed;
 
 /**
@@ -45,6 +46,13 @@ public class GenomicFeature {
         }
 	 */
 	private final Map<String,String> type;
+	
+	/**
+	 * The gene resolved to an Ensembl gene ID when the patient was stored, or
+	 * "UNKNOWN" if it could not be. Null for features stored before this was kept,
+	 * and for query patients, which are resolved as they are matched.
+	 */
+	private String ensemblId;
 
 	
 
@@ -106,6 +114,22 @@ public final Map<String, String> getGene() {
 		return gene;
 	}
 	
+	/**
+	 * @return the ensemblId resolved when stored, or null
+	 */
+	@JsonIgnore
+	public String getEnsemblId() {
+		return ensemblId;
+	}
+
+	/**
+	 * Keeps the gene as it was resolved, so it is stored with the patient
+	 * @param ensemblId	the Ensembl gene ID, or "UNKNOWN"
+	 */
+	public void setEnsemblId(String ensemblId) {
+		this.ensemblId = ensemblId;
+	}
+	
 	/* 
 	 * To String method(non-Javadoc)
 	 * @see java.lang.Object#toString()
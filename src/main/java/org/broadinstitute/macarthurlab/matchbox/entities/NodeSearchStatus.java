@@ -0,0 +1,115 @@
+/**
+ * To represent how a search of one external matchmaker node went
+ */
+package org.broadinstitute.macarthurlab.matchbox.entities;
+
+import org.json.simple.JSONObject;
+
+/**
+ * @author harindra
+ *
+ */
+public class NodeSearchStatus {
+
+	/**
+	 * The node answered
+	 */
+	public static final String OK = "OK";
+
+	/**
+	 * The node did not answer before its deadline, or the overall deadline
+	 */
+	public static final String TIMED_OUT = "TIMED_OUT";
+
+	/**
+	 * The node could not be reached or its answer could not be read
+	 */
+	public static final String ERROR = "ERROR";
+
+	/**
+	 * The node was not searched since too many searches were already running
+	 */
+	public static final String REJECTED = "REJECTED";
+
+	private final String nodeName;
+	private final String status;
+	private final int numberOfResults;
+	private final long elapsedMillis;
+	private final String message;
+
+	/**
+	 * @param nodeName name of the node
+	 * @param status one of OK, TIMED_OUT, ERROR or REJECTED
+	 * @param numberOfResults results returned by the node
+	 * @param elapsedMillis how long was spent on the node
+	 * @param message what went wrong, or empty
+	 */
+	public NodeSearchStatus(String nodeName, String status, int numberOfResults, long elapsedMillis, String message) {
+		this.nodeName = nodeName;
+		this.status = status;
+		this.numberOfResults = numberOfResults;
+		this.elapsedMillis = elapsedMillis;
+		this.message = message;
+	}
+
+	/**
+	 * @return the nodeName
+	 */
+	public String getNodeName() {
+		return nodeName;
+	}
+
+	/**
+	 * @return the status
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the numberOfResults
+	 */
+	public int getNumberOfResults() {
+		return numberOfResults;
+	}
+
+	/**
+	 * @return the elapsedMillis
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return the message
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Returns a JSON representation, leaving out an empty message
+	 * @return A JSON string
+	 */
+	@SuppressWarnings("unchecked")
+	public String asJson() {
+		JSONObject json = new JSONObject();
+		json.put("node", this.nodeName);
+		json.put("status", this.status);
+		json.put("results", this.numberOfResults);
+		json.put("elapsedMillis", this.elapsedMillis);
+		if (this.message != null && !this.message.isEmpty()) {
+			json.put("message", this.message);
+		}
+		return json.toJSONString();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "NodeSearchStatus [nodeName=" + nodeName + ", status=" + status + ", numberOfResults=" + numberOfResults
+				+ ", elapsedMillis=" + elapsedMillis + ", message=" + message + "]";
+	}
+}
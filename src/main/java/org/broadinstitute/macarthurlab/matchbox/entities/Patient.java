@@ -1,11 +1,14 @@
 package org.broadinstitute.macarthurlab.matchbox.entities;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection="patient")
@@ -87,6 +90,14 @@
 	 */
 	private final List<GenomicFeature> genomicFeatures;
 	
+	/**
+	 * IDs of the observed features, worked out the first time they are asked for,
+	 * since phenotype scoring needs them for every query. Not stored.
+	 */
+	@Transient
+	@JsonIgnore
+	private volatile List<String> observedPhenotypeIds;
+	
 	
 	/**
 	 * Default constructor builds empty object
@@ -204,6 +215,26 @@ public List<GenomicFeature> getGenomicFeatures() {
 	}
 
 
+	/**
+	 * @return the IDs of the features observed in this patient
+	 */
+	@JsonIgnore
+	public List<String> getObservedPhenotypeIds() {
+		List<String> observed = this.observedPhenotypeIds;
+		if (observed == null) {
+			observed = new ArrayList<>();
+			for (PhenotypeFeature feature : this.getFeatures()) {
+				if ("yes".equals(feature.getObserved())) {
+					observed.add(feature.getId());
+				}
+			}
+			observed = Collections.unmodifiableList(observed);
+			this.observedPhenotypeIds = observed;
+		}
+		return observed;
+	}
+
+
 	/* 
 	 * To String method
 	 * (non-Javadoc)
@@ -56,15 +56,16 @@ public Variant(){
 	}
 	
 	/**
-	 * Returns true if ALL fields are unpopulated
+	 * Returns true if ALL fields are unpopulated. A field left out of the record, and so null,
+	 * is unpopulated.
 	 */
 	public boolean isUnPopulated(){
-        return this.assembly.equals("") &&
-                this.referenceName.equals("") &&
-                this.start == -1 &&
-                this.end == -1 &&
-                this.referenceBases.equals("") &&
-                this.alternateBases.equals("");
+        return isUnPopulated(this.assembly) &&
+                isUnPopulated(this.referenceName) &&
+                isUnPopulated(this.start) &&
+                isUnPopulated(this.end) &&
+                isUnPopulated(this.referenceBases) &&
+                isUnPopulated(this.alternateBases);
     }
 	
 	
@@ -72,14 +73,22 @@ public boolean isUnPopulated(){
 	 * Returns true if at least one field is unpopulated
 	 */
 	public boolean isPartiallyPopulated(){
-        return this.assembly.equals("") ||
-                this.referenceName.equals("") ||
-                this.start == -1 ||
-                this.end == -1 ||
-                this.referenceBases.equals("") ||
-                this.alternateBases.equals("");
+        return isUnPopulated(this.assembly) ||
+                isUnPopulated(this.referenceName) ||
+                isUnPopulated(this.start) ||
+                isUnPopulated(this.end) ||
+                isUnPopulated(this.referenceBases) ||
+                isUnPopulated(this.alternateBases);
     }
 	
+	private static boolean isUnPopulated(String field){
+		return field == null || field.equals("");
+	}
+	
+	private static boolean isUnPopulated(Long position){
+		return position == null || position == -1;
+	}
+	
 	/**
 	 * @return the assembly
 	 */
@@ -0,0 +1,362 @@
+/**
+ * Caches the lookups of another population frequency provider
+ */
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Variant allele frequencies and gene constraint scores are kept in separate, size bounded,
+ * least recently used caches. Lookups that found nothing (an unknown variant or gene, or a
+ * failed API call) are cached too, but expire after their own, usually shorter, time. When
+ * several threads ask for the same uncached key at once only one of them does the lookup and
+ * the rest wait for its answer. Batch lookups ask the provider only for the keys not cached,
+ * all in one call. Only the keys the provider answered are cached, so when a batch lookup fails
+ * nothing is, and those keys are left out as if not found until they are asked for again.
+ * <p>
+ * If a file is given, the caches are read from it on start up and written to it on close.
+ *
+ * @author harindra
+ */
+public class CachingPopulationFrequencyProvider implements PopulationFrequencyProvider, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingPopulationFrequencyProvider.class);
+
+    private static final String VARIANT_NAMESPACE = "variant";
+    private static final String GENE_NAMESPACE = "gene";
+
+    private final PopulationFrequencyProvider delegate;
+    private final Namespace<Double> variants;
+    private final Namespace<Map<String, Double>> genes;
+    private final Path persistenceFile;
+
+    /**
+     * @param delegate          the provider that does the lookups
+     * @param maxEntries        most entries kept in each of the variant and gene caches
+     * @param ttlMillis         how long a found value is kept, 0 or less to keep it until evicted
+     * @param negativeTtlMillis how long a lookup that found nothing is kept, 0 or less to not keep it
+     * @param persistenceFile   file to load from and save to, or null to not persist
+     */
+    public CachingPopulationFrequencyProvider(PopulationFrequencyProvider delegate,
+                                              int maxEntries,
+                                              long ttlMillis,
+                                              long negativeTtlMillis,
+                                              Path persistenceFile) {
+        this.delegate = delegate;
+        this.variants = new Namespace<>(maxEntries, ttlMillis, negativeTtlMillis, alleleFrequency -> alleleFrequency < 0);
+        this.genes = new Namespace<>(maxEntries, ttlMillis, negativeTtlMillis, Map::isEmpty);
+        this.persistenceFile = persistenceFile;
+        if (persistenceFile != null && Files.exists(persistenceFile)) {
+            this.load();
+        }
+    }
+
+    @Override
+    public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases) {
+        String key = chromosome + "-" + position + "-" + referenceBases + "-" + alternateBases;
+        return this.variants.get(key, () -> this.delegate.findAlleleFrequency(chromosome, position, referenceBases, alternateBases));
+    }
+
+    @Override
+    public Map<String, Double> findGeneConstraintScores(String gene) {
+        return this.genes.get(gene, () -> Collections.unmodifiableMap(new HashMap<>(this.delegate.findGeneConstraintScores(gene))));
+    }
+
+    @Override
+    public Map<String, Double> findAlleleFrequencies(Collection<String> variantIds) {
+        return this.variants.getAll(variantIds, this.delegate::findAlleleFrequencies, -1d);
+    }
+
+    @Override
+    public Map<String, Map<String, Double>> findGeneConstraintScores(Collection<String> genes) {
+        return this.genes.getAll(genes, missing -> {
+            Map<String, Map<String, Double>> found = new HashMap<>();
+            for (Map.Entry<String, Map<String, Double>> entry : this.delegate.findGeneConstraintScores(missing).entrySet()) {
+                found.put(entry.getKey(), Collections.unmodifiableMap(new HashMap<>(entry.getValue())));
+            }
+            return found;
+        }, Collections.emptyMap());
+    }
+
+    /**
+     * @return hit, miss, eviction and size counts of the variant and gene caches. A lookup that
+     * waited on the same lookup by another thread is counted as coalesced.
+     */
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        stats.put(VARIANT_NAMESPACE, this.variants.getStats());
+        stats.put(GENE_NAMESPACE, this.genes.getStats());
+        return stats;
+    }
+
+    /**
+     * Saves the caches, if a file was given
+     */
+    @Override
+    public void close() {
+        if (this.persistenceFile != null) {
+            this.save();
+        }
+    }
+
+    /**
+     * Each line is namespace, key, expiry time and value(s), tab separated. Gene scores are
+     * written as pLI,syn_z,mis_z with an empty value for a missing score.
+     */
+    private void save() {
+        Path temp = this.persistenceFile.resolveSibling(this.persistenceFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            for (Map.Entry<String, CacheEntry<Double>> entry : this.variants.snapshot()) {
+                writer.write(VARIANT_NAMESPACE + "\t" + entry.getKey() + "\t" + entry.getValue().expiresAt + "\t" + entry.getValue().value);
+                writer.newLine();
+            }
+            for (Map.Entry<String, CacheEntry<Map<String, Double>>> entry : this.genes.snapshot()) {
+                Map<String, Double> scores = entry.getValue().value;
+                writer.write(GENE_NAMESPACE + "\t" + entry.getKey() + "\t" + entry.getValue().expiresAt + "\t"
+                        + toText(scores.get(PLI)) + "," + toText(scores.get(SYN_Z)) + "," + toText(scores.get(MIS_Z)));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            logger.error("unable to save population frequency cache to {}: {}", this.persistenceFile, e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, this.persistenceFile, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("saved population frequency cache to {}", this.persistenceFile);
+        } catch (IOException e) {
+            logger.error("unable to save population frequency cache to {}: {}", this.persistenceFile, e.getMessage());
+        }
+    }
+
+    private void load() {
+        long now = System.currentTimeMillis();
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(this.persistenceFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 4 || Long.parseLong(fields[2]) <= now) {
+                    continue;
+                }
+                long expiresAt = Long.parseLong(fields[2]);
+                if (VARIANT_NAMESPACE.equals(fields[0])) {
+                    this.variants.put(fields[1], new CacheEntry<>(Double.parseDouble(fields[3]), expiresAt));
+                    loaded++;
+                } else if (GENE_NAMESPACE.equals(fields[0])) {
+                    String[] values = fields[3].split(",", -1);
+                    Map<String, Double> scores = new HashMap<>();
+                    putScore(scores, PLI, values[0]);
+                    putScore(scores, SYN_Z, values[1]);
+                    putScore(scores, MIS_Z, values[2]);
+                    this.genes.put(fields[1], new CacheEntry<>(Collections.unmodifiableMap(scores), expiresAt));
+                    loaded++;
+                }
+            }
+            logger.info("loaded {} population frequency cache entries from {}", loaded, this.persistenceFile);
+        } catch (Exception e) {
+            logger.error("unable to load population frequency cache from {}, starting empty: {}", this.persistenceFile, e.getMessage());
+        }
+    }
+
+    private static String toText(Double value) {
+        return value == null ? "" : value.toString();
+    }
+
+    private static void putScore(Map<String, Double> scores, String name, String value) {
+        if (!value.isEmpty()) {
+            scores.put(name, Double.parseDouble(value));
+        }
+    }
+
+    /**
+     * A cached value and when it stops being valid
+     */
+    private static final class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * One bounded cache, with its own counters and lookups in flight
+     */
+    private static final class Namespace<V> {
+        private final int maxEntries;
+        private final long ttlMillis;
+        private final long negativeTtlMillis;
+        private final Function<V, Boolean> isNegative;
+        private final LinkedHashMap<String, CacheEntry<V>> entries;
+        private final ConcurrentMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+        private final AtomicLong expirations = new AtomicLong();
+
+        private Namespace(int maxEntries, long ttlMillis, long negativeTtlMillis, Function<V, Boolean> isNegative) {
+            this.maxEntries = maxEntries;
+            this.ttlMillis = ttlMillis;
+            this.negativeTtlMillis = negativeTtlMillis;
+            this.isNegative = isNegative;
+            this.entries = new LinkedHashMap<String, CacheEntry<V>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<V>> eldest) {
+                    if (size() > Namespace.this.maxEntries) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private V get(String key, Supplier<V> loader) {
+            CacheEntry<V> cached = this.getIfPresent(key);
+            if (cached != null) {
+                this.hits.incrementAndGet();
+                return cached.value;
+            }
+            CompletableFuture<V> lookup = new CompletableFuture<>();
+            CompletableFuture<V> running = this.inFlight.putIfAbsent(key, lookup);
+            if (running != null) {
+                //someone else is already looking this up, wait for their answer
+                this.coalesced.incrementAndGet();
+                return running.join();
+            }
+            try {
+                //a lookup may have finished between the first check and claiming this key
+                cached = this.getIfPresent(key);
+                if (cached != null) {
+                    this.hits.incrementAndGet();
+                    lookup.complete(cached.value);
+                    return cached.value;
+                }
+                this.misses.incrementAndGet();
+                V value = loader.get();
+                this.store(key, value);
+                lookup.complete(value);
+                return value;
+            } catch (RuntimeException e) {
+                lookup.completeExceptionally(e);
+                throw e;
+            } finally {
+                this.inFlight.remove(key, lookup);
+            }
+        }
+
+        /**
+         * Looks up every key not cached with one call to the loader. Keys being looked up by
+         * another thread are looked up again rather than waited on.
+         * @param keys    keys to find
+         * @param loader  looks up keys, leaving out those it didn't find, throwing if it failed
+         * @param missing the value of a key the loader didn't find
+         * @return each key found to its value, keys not found or not looked up are left out
+         */
+        private Map<String, V> getAll(Collection<String> keys, Function<List<String>, Map<String, V>> loader, V missing) {
+            Map<String, V> found = new HashMap<>();
+            Set<String> toLoad = new LinkedHashSet<>();
+            for (String key : keys) {
+                if (found.containsKey(key) || toLoad.contains(key)) {
+                    continue;
+                }
+                CacheEntry<V> cached = this.getIfPresent(key);
+                if (cached != null) {
+                    this.hits.incrementAndGet();
+                    found.put(key, cached.value);
+                } else {
+                    this.misses.incrementAndGet();
+                    toLoad.add(key);
+                }
+            }
+            if (!toLoad.isEmpty()) {
+                Map<String, V> loaded;
+                try {
+                    loaded = loader.apply(new ArrayList<>(toLoad));
+                } catch (RuntimeException e) {
+                    logger.error("batch lookup of {} keys failed, caching none of them: {}", toLoad.size(), e.getMessage());
+                    found.values().removeIf(this.isNegative::apply);
+                    return found;
+                }
+                for (String key : toLoad) {
+                    V value = loaded.getOrDefault(key, missing);
+                    this.store(key, value);
+                    found.put(key, value);
+                }
+            }
+            found.values().removeIf(this.isNegative::apply);
+            return found;
+        }
+
+        private synchronized CacheEntry<V> getIfPresent(String key) {
+            CacheEntry<V> cached = this.entries.get(key);
+            if (cached != null && cached.expiresAt <= System.currentTimeMillis()) {
+                this.entries.remove(key);
+                this.expirations.incrementAndGet();
+                return null;
+            }
+            return cached;
+        }
+
+        private void store(String key, V value) {
+            long ttl = this.isNegative.apply(value) ? this.negativeTtlMillis : this.ttlMillis;
+            if (this.isNegative.apply(value) && ttl <= 0) {
+                return;
+            }
+            long expiresAt = ttl > 0 ? System.currentTimeMillis() + ttl : Long.MAX_VALUE;
+            this.put(key, new CacheEntry<>(value, expiresAt));
+        }
+
+        private synchronized void put(String key, CacheEntry<V> entry) {
+            if (this.maxEntries > 0) {
+                this.entries.put(key, entry);
+            }
+        }
+
+        private synchronized List<Map.Entry<String, CacheEntry<V>>> snapshot() {
+            return new ArrayList<>(this.entries.entrySet());
+        }
+
+        private Map<String, Long> getStats() {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            synchronized (this) {
+                stats.put("size", (long) this.entries.size());
+            }
+            stats.put("maxSize", (long) this.maxEntries);
+            stats.put("hits", this.hits.get());
+            stats.put("misses", this.misses.get());
+            stats.put("coalesced", this.coalesced.get());
+            stats.put("evictions", this.evictions.get());
+            stats.put("expirations", this.expirations.get());
+            stats.put("inFlight", (long) this.inFlight.size());
+            return stats;
+        }
+    }
+}
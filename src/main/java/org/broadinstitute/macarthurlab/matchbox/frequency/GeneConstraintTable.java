@@ -0,0 +1,104 @@
+/**
+ * Gene constraint scores read from a gnomAD/ExAC constraint TSV
+ */
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columns are found by name in the header row, so both the ExAC and gnomAD constraint files can
+ * be used as they are downloaded. A "gene" column (symbol) is required, and a "gene_id" column
+ * (Ensembl ID) is used when present. When there is a "canonical" column, only canonical
+ * transcripts are read.
+ *
+ * @author harindra
+ */
+public final class GeneConstraintTable {
+
+    private final Map<String, Map<String, Double>> scoresByGene;
+
+    private GeneConstraintTable(Map<String, Map<String, Double>> scoresByGene) {
+        this.scoresByGene = scoresByGene;
+    }
+
+    /**
+     * @param path a tab separated constraint file
+     * @return the table
+     * @throws IOException if the file can't be read or has no gene column
+     */
+    public static GeneConstraintTable load(Path path) throws IOException {
+        Map<String, Map<String, Double>> scoresByGene = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("empty gene constraint file: " + path);
+            }
+            List<String> columns = Arrays.asList(header.replaceFirst("^#", "").split("\t"));
+            int gene = columns.indexOf("gene");
+            if (gene < 0) {
+                throw new IOException("gene constraint file has no 'gene' column: " + path);
+            }
+            int geneId = columns.indexOf("gene_id");
+            int canonical = columns.indexOf("canonical");
+            int pLI = columns.indexOf(PopulationFrequencyProvider.PLI);
+            int synZ = columns.indexOf(PopulationFrequencyProvider.SYN_Z);
+            int misZ = columns.indexOf(PopulationFrequencyProvider.MIS_Z);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (canonical >= 0 && !"true".equalsIgnoreCase(field(fields, canonical))) {
+                    continue;
+                }
+                Map<String, Double> scores = new HashMap<>();
+                putScore(scores, PopulationFrequencyProvider.PLI, field(fields, pLI));
+                putScore(scores, PopulationFrequencyProvider.SYN_Z, field(fields, synZ));
+                putScore(scores, PopulationFrequencyProvider.MIS_Z, field(fields, misZ));
+                if (scores.isEmpty()) {
+                    continue;
+                }
+                scores = Collections.unmodifiableMap(scores);
+                scoresByGene.putIfAbsent(field(fields, gene), scores);
+                if (geneId >= 0 && !field(fields, geneId).isEmpty()) {
+                    scoresByGene.putIfAbsent(field(fields, geneId), scores);
+                }
+            }
+        }
+        return new GeneConstraintTable(scoresByGene);
+    }
+
+    /**
+     * @param gene a gene symbol or Ensembl ID
+     * @return the scores of this gene, empty if the gene is not known
+     */
+    public Map<String, Double> findGeneConstraintScores(String gene) {
+        return this.scoresByGene.getOrDefault(gene, Collections.emptyMap());
+    }
+
+    /**
+     * @return the number of gene identifiers in this table
+     */
+    public int size() {
+        return this.scoresByGene.size();
+    }
+
+    private static String field(String[] fields, int index) {
+        return index >= 0 && index < fields.length ? fields[index].trim() : "";
+    }
+
+    private static void putScore(Map<String, Double> scores, String name, String value) {
+        try {
+            scores.put(name, Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            //NA or missing, leave it out
+        }
+    }
+}
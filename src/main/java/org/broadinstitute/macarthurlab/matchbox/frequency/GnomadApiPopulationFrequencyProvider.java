@@ -0,0 +1,297 @@
+/**
+ * Looks up population frequencies with the gnomAD GraphQL API
+ */
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import org.broadinstitute.macarthurlab.matchbox.network.Communication;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Every lookup is a blocking HTTP call to gnomad-api.broadinstitute.org. Batch lookups ask for
+ * many variants or genes in one GraphQL query, each under its own alias, and send a few of
+ * those queries at once.
+ *
+ * @author harindra
+ */
+public class GnomadApiPopulationFrequencyProvider implements PopulationFrequencyProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(GnomadApiPopulationFrequencyProvider.class);
+
+    private static final String GNOMAD_API_URL = "http://gnomad-api.broadinstitute.org";
+
+    private static final int DEFAULT_BATCH_SIZE = 50;
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * What can go inside a quoted GraphQL argument without escaping
+     */
+    private static final Pattern SAFE_ID = Pattern.compile("[\\w.\\-]+");
+
+    private final Communication httpCommunication;
+    private final int batchSize;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor
+     */
+    public GnomadApiPopulationFrequencyProvider(Communication httpCommunication) {
+        this(httpCommunication, DEFAULT_BATCH_SIZE, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param httpCommunication to post queries with
+     * @param batchSize         most variants or genes asked for in one query
+     * @param concurrency       most queries of one batch lookup sent at once
+     */
+    public GnomadApiPopulationFrequencyProvider(Communication httpCommunication, int batchSize, int concurrency) {
+        this.httpCommunication = httpCommunication;
+        this.batchSize = Math.max(1, batchSize);
+        if (concurrency > 1) {
+            this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, "gnomad-api-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    @Override
+    public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases) {
+        StringBuilder payload = new StringBuilder();
+        payload.append("{\"query\": \"query{variant(id:\\\"");
+        payload.append(chromosome);
+        payload.append("-");
+        payload.append(Long.toString(position));
+        payload.append("-");
+        payload.append(referenceBases);
+        payload.append("-");
+        payload.append(alternateBases);
+        payload.append("\\\", source: \\\"exome\\\"){allele_freq}}\"}");
+        logger.info("++++>normal population allele frequency variant query is: {}", payload.toString());
+        String reply = this.httpCommunication.postToNonAuthenticatedHttpUrl(GNOMAD_API_URL, payload.toString());
+        Map<String, Double> counts = this.parseGnomadVariantReply(reply);
+        if (counts.get("allele_freq") == null) {
+            return -1d;
+        }
+        return counts.get("allele_freq");
+    }
+
+    @Override
+    public Map<String, Double> findGeneConstraintScores(String gene) {
+        StringBuilder payload = new StringBuilder();
+        if (gene.indexOf("ENSG") == 0) {
+            payload.append("{\"query\": \"query{gene(gene_id: \\\"");
+        } else {
+            payload.append("{\"query\": \"query{gene(gene_name: \\\"");
+        }
+        payload.append(gene);
+        payload.append("\\\")");
+        payload.append("{exacv1_constraint {pLI,syn_z,mis_z}}");
+        payload.append("}\"}");
+        logger.info("query used for getting allele frequency based on gene: {} : {}", gene, payload.toString());
+        String reply = this.httpCommunication.postToNonAuthenticatedHttpUrl(GNOMAD_API_URL, payload.toString());
+        return this.parseGnomadGeneLookupReply(reply);
+    }
+
+    @Override
+    public Map<String, Double> findAlleleFrequencies(Collection<String> variantIds) {
+        return this.findInBatches(variantIds, this::findAlleleFrequencyBatch);
+    }
+
+    @Override
+    public Map<String, Map<String, Double>> findGeneConstraintScores(Collection<String> genes) {
+        return this.findInBatches(genes, this::findGeneConstraintScoreBatch);
+    }
+
+    /**
+     * Splits the keys into batches and looks each up, in parallel if there is more than one
+     * @param keys   variant IDs or genes
+     * @param lookup looks up one batch
+     * @return what was found of every batch
+     * @throws IllegalStateException if a batch could not be looked up
+     */
+    private <V> Map<String, V> findInBatches(Collection<String> keys, Function<List<String>, Map<String, V>> lookup) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            if (!SAFE_ID.matcher(key).matches()) {
+                logger.warn("not asking gnomad about: {}", key);
+                continue;
+            }
+            batch.add(key);
+            if (batch.size() == this.batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        Map<String, V> found = new HashMap<>();
+        if (this.executor == null || batches.size() < 2) {
+            for (List<String> each : batches) {
+                found.putAll(lookup.apply(each));
+            }
+            return found;
+        }
+        List<Future<Map<String, V>>> results = new ArrayList<>();
+        for (List<String> each : batches) {
+            results.add(this.executor.submit(() -> lookup.apply(each)));
+        }
+        int failed = 0;
+        for (Future<Map<String, V>> result : results) {
+            try {
+                found.putAll(result.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted waiting for batched gnomad lookups");
+            } catch (Exception e) {
+                logger.error("error in batched gnomad lookup: {}", e.getMessage());
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " of " + batches.size() + " batched gnomad lookups failed");
+        }
+        return found;
+    }
+
+    private Map<String, Double> findAlleleFrequencyBatch(List<String> variantIds) {
+        StringBuilder payload = new StringBuilder("{\"query\": \"query{");
+        for (int i = 0; i < variantIds.size(); i++) {
+            payload.append("v").append(i).append(": variant(id:\\\"").append(variantIds.get(i));
+            payload.append("\\\", source: \\\"exome\\\"){allele_freq} ");
+        }
+        payload.append("}\"}");
+        logger.info("batched gnomad variant query for {} variants", variantIds.size());
+        String reply = this.httpCommunication.postToNonAuthenticatedHttpUrl(GNOMAD_API_URL, payload.toString());
+        Map<String, Double> alleleFrequencies = new HashMap<>();
+        JSONObject dataObj = this.parseData(reply);
+        if (dataObj == null) {
+            throw new IllegalStateException("no data in batched gnomad variant reply");
+        }
+        for (int i = 0; i < variantIds.size(); i++) {
+            JSONObject variantObj = (JSONObject) dataObj.get("v" + i);
+            if (variantObj != null && variantObj.get("allele_freq") instanceof Number) {
+                alleleFrequencies.put(variantIds.get(i), ((Number) variantObj.get("allele_freq")).doubleValue());
+            }
+        }
+        return alleleFrequencies;
+    }
+
+    private Map<String, Map<String, Double>> findGeneConstraintScoreBatch(List<String> genes) {
+        StringBuilder payload = new StringBuilder("{\"query\": \"query{");
+        for (int i = 0; i < genes.size(); i++) {
+            String gene = genes.get(i);
+            payload.append("g").append(i).append(gene.indexOf("ENSG") == 0 ? ": gene(gene_id: \\\"" : ": gene(gene_name: \\\"");
+            payload.append(gene).append("\\\"){exacv1_constraint {pLI,syn_z,mis_z}} ");
+        }
+        payload.append("}\"}");
+        logger.info("batched gnomad gene query for {} genes", genes.size());
+        String reply = this.httpCommunication.postToNonAuthenticatedHttpUrl(GNOMAD_API_URL, payload.toString());
+        Map<String, Map<String, Double>> constraintScores = new HashMap<>();
+        JSONObject dataObj = this.parseData(reply);
+        if (dataObj == null) {
+            throw new IllegalStateException("no data in batched gnomad gene reply");
+        }
+        for (int i = 0; i < genes.size(); i++) {
+            JSONObject geneObj = (JSONObject) dataObj.get("g" + i);
+            JSONObject constraintObj = geneObj == null ? null : (JSONObject) geneObj.get("exacv1_constraint");
+            if (constraintObj == null) {
+                continue;
+            }
+            Map<String, Double> scores = new HashMap<>();
+            putNumber(scores, PLI, constraintObj.get("pLI"));
+            putNumber(scores, SYN_Z, constraintObj.get("syn_z"));
+            putNumber(scores, MIS_Z, constraintObj.get("mis_z"));
+            constraintScores.put(genes.get(i), scores);
+        }
+        return constraintScores;
+    }
+
+    /**
+     * @return the data of a GraphQL reply, or null if there is none, as when the call failed. An
+     * alias that wasn't found is null in the data and may also be reported in the errors, which
+     * are otherwise ignored.
+     */
+    private JSONObject parseData(String reply) {
+        try {
+            JSONObject jsonObject = (JSONObject) new JSONParser().parse(reply);
+            return (JSONObject) jsonObject.get("data");
+        } catch (Exception e) {
+            logger.error("error parsing batched gnomad reply: {} for reply: {}", e.getMessage(), reply);
+            return null;
+        }
+    }
+
+    private static void putNumber(Map<String, Double> scores, String name, Object value) {
+        if (value instanceof Number) {
+            scores.put(name, ((Number) value).doubleValue());
+        }
+    }
+
+    /**
+     * Parses a reply from Gnomad gene service and returns empty map if no values are returned from Gnomad API
+     * @param reply from gnomad API: A string reply in JSON format
+     * @return a parsed map of constraint values from Gnomad API
+     */
+    private Map<String, Double> parseGnomadGeneLookupReply(String reply) {
+        Map<String, Double> constraintScore = new HashMap<>();
+        try {
+            JSONParser parser = new JSONParser();
+            JSONObject jsonObject = (JSONObject) parser.parse(reply);
+            JSONObject dataObj = (JSONObject) jsonObject.get("data");
+            JSONObject geneObj = (JSONObject) dataObj.get("gene");
+            JSONObject exomeVariantsObj = (JSONObject) geneObj.get("exacv1_constraint");
+            if (exomeVariantsObj != null) {
+                constraintScore.put(PLI, (Double) exomeVariantsObj.get("pLI"));
+                constraintScore.put(SYN_Z, (Double) exomeVariantsObj.get("syn_z"));
+                constraintScore.put(MIS_Z, (Double) exomeVariantsObj.get("mis_z"));
+            }
+        } catch (Exception e) {
+            logger.error("error parsing gnomad gene based query reply: {} for reply: {}", e.getMessage(), reply);
+        }
+        return constraintScore;
+    }
+
+    /**
+     * Parses a reply from Gnomad variant service and return a map of the results
+     * @param reply A string reply in JSON format
+     * @return a map of values returned back from gnomad
+     */
+    private Map<String, Double> parseGnomadVariantReply(String reply) {
+        logger.info("reply back from gnomad for variant based allele frequency: {}", reply);
+        Map<String, Double> parsed = new HashMap<>();
+        try {
+            JSONParser parser = new JSONParser();
+            JSONObject jsonObject = (JSONObject) parser.parse(reply);
+            JSONObject dataObj = (JSONObject) jsonObject.get("data");
+            JSONObject variantObj = (JSONObject) dataObj.get("variant");
+            if (variantObj == null) {
+                logger.info("skipping parsing variant based gnomad query, results are unparsable: {}", reply);
+                return parsed;
+            }
+            parsed.put("allele_freq", (Double) variantObj.get("allele_freq"));
+        } catch (Exception e) {
+            logger.error("error parsing gnomad variant based reply: {}, the reply was: {}, skipping to gene based query", e.getMessage(), reply);
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Builds a variant frequency table from a gnomAD sites VCF or a TSV
+ */
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Usage,
+ * <pre>
+ * java -cp matchbox.jar -Dloader.main=org.broadinstitute.macarthurlab.matchbox.frequency.GnomadFrequencyImporter \
+ *      org.springframework.boot.loader.PropertiesLauncher &lt;input .vcf/.tsv, optionally .gz&gt; &lt;output table&gt;
+ * </pre>
+ * A VCF is recognised by its "##" meta lines. Every ALT allele with an AF value in INFO is
+ * imported, symbolic and spanning deletion alleles are skipped. A TSV needs a header row with
+ * chrom, pos, ref, alt and af columns. Variants are sorted in memory, so give the JVM enough heap
+ * for the input (or import one chromosome file at a time and keep the one that is needed).
+ * <p>
+ * Gene constraint files don't need importing, point matchbox at the TSV as downloaded.
+ *
+ * @author harindra
+ */
+public class GnomadFrequencyImporter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: GnomadFrequencyImporter <gnomad sites .vcf(.gz) or .tsv(.gz)> <output table>");
+            System.exit(1);
+        }
+        List<VariantFrequencyTable.Entry> variants = read(Paths.get(args[0]));
+        long written = VariantFrequencyTable.write(variants, Paths.get(args[1]));
+        System.out.println("wrote " + written + " variants to " + args[1]);
+    }
+
+    /**
+     * @param input a VCF or TSV file, optionally gzipped
+     * @return the variants in it
+     * @throws IOException if the file can't be read or a TSV has no usable header
+     */
+    public static List<VariantFrequencyTable.Entry> read(Path input) throws IOException {
+        try (BufferedReader reader = open(input)) {
+            String first = reader.readLine();
+            if (first == null) {
+                return new ArrayList<>();
+            }
+            if (first.startsWith("##")) {
+                return readVcf(reader);
+            }
+            return readTsv(first, reader);
+        }
+    }
+
+    private static BufferedReader open(Path input) throws IOException {
+        InputStream in = Files.newInputStream(input);
+        if (input.toString().endsWith(".gz") || input.toString().endsWith(".bgz")) {
+            //bgzip files are a series of gzip members, which GZIPInputStream reads through
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), 1 << 16);
+    }
+
+    private static List<VariantFrequencyTable.Entry> readVcf(BufferedReader reader) throws IOException {
+        List<VariantFrequencyTable.Entry> variants = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", 9);
+            if (fields.length < 8) {
+                continue;
+            }
+            String[] alleleFrequencies = findInfoValue(fields[7], "AF");
+            if (alleleFrequencies == null) {
+                continue;
+            }
+            String[] alts = fields[4].split(",");
+            for (int i = 0; i < alts.length && i < alleleFrequencies.length; i++) {
+                if (alts[i].startsWith("<") || alts[i].equals("*") || alleleFrequencies[i].equals(".")) {
+                    continue;
+                }
+                addVariant(variants, fields[0], fields[1], fields[3], alts[i], alleleFrequencies[i]);
+            }
+        }
+        return variants;
+    }
+
+    private static List<VariantFrequencyTable.Entry> readTsv(String header, BufferedReader reader) throws IOException {
+        List<String> columns = Arrays.asList(header.replaceFirst("^#", "").toLowerCase().split("\t"));
+        int chrom = columns.indexOf("chrom");
+        int pos = columns.indexOf("pos");
+        int ref = columns.indexOf("ref");
+        int alt = columns.indexOf("alt");
+        int af = columns.indexOf("af");
+        if (chrom < 0 || pos < 0 || ref < 0 || alt < 0 || af < 0) {
+            throw new IOException("TSV header needs chrom, pos, ref, alt and af columns, found: " + columns);
+        }
+        List<VariantFrequencyTable.Entry> variants = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length < columns.size()) {
+                continue;
+            }
+            addVariant(variants, fields[chrom], fields[pos], fields[ref], fields[alt], fields[af]);
+        }
+        return variants;
+    }
+
+    private static void addVariant(List<VariantFrequencyTable.Entry> variants, String chrom, String pos, String ref, String alt, String af) {
+        try {
+            variants.add(new VariantFrequencyTable.Entry(chrom, Long.parseLong(pos), ref, alt, Float.parseFloat(af)));
+        } catch (IllegalArgumentException e) {
+            //unplaced contigs, NA frequencies and the like are not looked up
+        }
+    }
+
+    /**
+     * @return the comma separated values of this INFO key, or null if it is not there
+     */
+    private static String[] findInfoValue(String info, String key) {
+        String prefix = key + "=";
+        int start = info.startsWith(prefix) ? 0 : info.indexOf(";" + prefix);
+        if (start < 0) {
+            return null;
+        }
+        if (start > 0) {
+            start += 1;
+        }
+        int end = info.indexOf(';', start);
+        return info.substring(start + prefix.length(), end < 0 ? info.length() : end).split(",");
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Looks up population frequencies in local files
+ */
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Allele frequencies come from a {@link VariantFrequencyTable} built with
+ * {@link GnomadFrequencyImporter}, and gene constraint scores from a {@link GeneConstraintTable}.
+ * Either can be left out, in which case nothing is known about variants or genes respectively.
+ *
+ * @author harindra
+ */
+public class LocalFilePopulationFrequencyProvider implements PopulationFrequencyProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalFilePopulationFrequencyProvider.class);
+
+    private final VariantFrequencyTable variantFrequencyTable;
+    private final GeneConstraintTable geneConstraintTable;
+
+    /**
+     * Constructor
+     */
+    public LocalFilePopulationFrequencyProvider(VariantFrequencyTable variantFrequencyTable, GeneConstraintTable geneConstraintTable) {
+        this.variantFrequencyTable = variantFrequencyTable;
+        this.geneConstraintTable = geneConstraintTable;
+    }
+
+    @Override
+    public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases) {
+        if (this.variantFrequencyTable == null) {
+            return -1d;
+        }
+        double alleleFrequency = this.variantFrequencyTable.findAlleleFrequency(chromosome, position, referenceBases, alternateBases);
+        logger.debug("local allele frequency of {}-{}-{}-{} is {}", chromosome, position, referenceBases, alternateBases, alleleFrequency);
+        return alleleFrequency;
+    }
+
+    @Override
+    public Map<String, Double> findGeneConstraintScores(String gene) {
+        if (this.geneConstraintTable == null) {
+            return Collections.emptyMap();
+        }
+        return this.geneConstraintTable.findGeneConstraintScores(gene);
+    }
+}
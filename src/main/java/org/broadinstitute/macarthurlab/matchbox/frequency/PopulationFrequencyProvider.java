@@ -0,0 +1,97 @@
+/**
+ * A source of normal population allele frequencies and gene constraint scores
+ */
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author harindra
+ */
+public interface PopulationFrequencyProvider {
+
+    /**
+     * Key of the probability of loss of function intolerance in a gene constraint map
+     */
+    public static final String PLI = "pLI";
+
+    /**
+     * Key of the synonymous Z score in a gene constraint map
+     */
+    public static final String SYN_Z = "syn_z";
+
+    /**
+     * Key of the missense Z score in a gene constraint map
+     */
+    public static final String MIS_Z = "mis_z";
+
+    /**
+     * Find the allele frequency of a variant in a normal population
+     *
+     * @param chromosome     chromosome of variant
+     * @param position       position of variant
+     * @param referenceBases reference base(s)
+     * @param alternateBases alternate base(s)
+     * @return the allele frequency, or -1 if the variant is not known
+     */
+    public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases);
+
+    /**
+     * Find the constraint scores of a gene
+     *
+     * @param gene a gene symbol or Ensembl ID
+     * @return a map of {@link #PLI}, {@link #SYN_Z} and {@link #MIS_Z} to their scores, empty if the gene is not known
+     */
+    public Map<String, Double> findGeneConstraintScores(String gene);
+
+    /**
+     * Find the allele frequencies of several variants. Providers that can look up many variants
+     * in one call should, this looks them up one at a time.
+     *
+     * @param variantIds variants as chromosome-position-referenceBases-alternateBases, see {@link #variantId}
+     * @return each variant found to its allele frequency, variants not known are left out
+     * @throws RuntimeException if the lookup failed, rather than leaving the variants out as not known
+     */
+    public default Map<String, Double> findAlleleFrequencies(Collection<String> variantIds) {
+        Map<String, Double> alleleFrequencies = new HashMap<>();
+        for (String variantId : variantIds) {
+            String[] parts = variantId.split("-", -1);
+            if (parts.length != 4) {
+                continue;
+            }
+            double alleleFrequency = this.findAlleleFrequency(parts[0], Long.parseLong(parts[1]), parts[2], parts[3]);
+            if (alleleFrequency >= 0) {
+                alleleFrequencies.put(variantId, alleleFrequency);
+            }
+        }
+        return alleleFrequencies;
+    }
+
+    /**
+     * Find the constraint scores of several genes. Providers that can look up many genes in one
+     * call should, this looks them up one at a time.
+     *
+     * @param genes gene symbols or Ensembl IDs
+     * @return each gene found to its constraint scores, genes not known are left out
+     * @throws RuntimeException if the lookup failed, rather than leaving the genes out as not known
+     */
+    public default Map<String, Map<String, Double>> findGeneConstraintScores(Collection<String> genes) {
+        Map<String, Map<String, Double>> constraintScores = new HashMap<>();
+        for (String gene : genes) {
+            Map<String, Double> scores = this.findGeneConstraintScores(gene);
+            if (!scores.isEmpty()) {
+                constraintScores.put(gene, scores);
+            }
+        }
+        return constraintScores;
+    }
+
+    /**
+     * @return the ID of a variant, as used by gnomAD
+     */
+    public static String variantId(String chromosome, long position, String referenceBases, String alternateBases) {
+        return chromosome + "-" + position + "-" + referenceBases + "-" + alternateBases;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Population frequencies looked up ahead of scoring
+ */
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers from what was looked up in batches before a match was scored, and asks the provider
+ * it was looked up from about anything else. Anything not found in the batch lookup is treated
+ * as unknown rather than looked up again.
+ *
+ * @author harindra
+ */
+public class PrefetchedPopulationFrequencies implements PopulationFrequencyProvider {
+
+    private final PopulationFrequencyProvider delegate;
+    private final Map<String, Double> alleleFrequencies;
+    private final Map<String, Map<String, Double>> geneConstraintScores;
+    private final Set<String> prefetchedVariantIds;
+    private final Set<String> prefetchedGenes;
+
+    /**
+     * @param delegate             the provider the frequencies were looked up from
+     * @param prefetchedVariantIds the variants that were looked up
+     * @param alleleFrequencies    the allele frequencies of the variants that were found
+     * @param prefetchedGenes      the genes that were looked up
+     * @param geneConstraintScores the constraint scores of the genes that were found
+     */
+    public PrefetchedPopulationFrequencies(PopulationFrequencyProvider delegate,
+                                           Set<String> prefetchedVariantIds,
+                                           Map<String, Double> alleleFrequencies,
+                                           Set<String> prefetchedGenes,
+                                           Map<String, Map<String, Double>> geneConstraintScores) {
+        this.delegate = delegate;
+        this.prefetchedVariantIds = prefetchedVariantIds;
+        this.alleleFrequencies = alleleFrequencies;
+        this.prefetchedGenes = prefetchedGenes;
+        this.geneConstraintScores = geneConstraintScores;
+    }
+
+    @Override
+    public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases) {
+        String variantId = PopulationFrequencyProvider.variantId(chromosome, position, referenceBases, alternateBases);
+        if (!this.prefetchedVariantIds.contains(variantId)) {
+            return this.delegate.findAlleleFrequency(chromosome, position, referenceBases, alternateBases);
+        }
+        return this.alleleFrequencies.getOrDefault(variantId, -1d);
+    }
+
+    @Override
+    public Map<String, Double> findGeneConstraintScores(String gene) {
+        if (!this.prefetchedGenes.contains(gene)) {
+            return this.delegate.findGeneConstraintScores(gene);
+        }
+        return this.geneConstraintScores.getOrDefault(gene, Collections.emptyMap());
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * A sorted, fixed width binary table of variant allele frequencies, read through memory mapping
+ */
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The file is laid out as,
+ * <pre>
+ * header:  int magic, int version, long record count
+ * records: byte chromosome, int position, float allele frequency,
+ *          long allele offset, short reference length, short alternate length
+ * alleles: reference then alternate bases of each record, in ASCII
+ * </pre>
+ * Records are sorted by chromosome, position, reference and alternate bases, so a variant is
+ * found with a binary search. Nothing is read onto the heap, the operating system pages the
+ * table in as it is used.
+ *
+ * @author harindra
+ */
+public final class VariantFrequencyTable {
+
+    private static final int MAGIC = 0x4D424146;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 21;
+
+    /**
+     * The file is mapped in segments this big, each running on for OVERLAP bytes past its end so
+     * a record or its alleles never straddle two segments
+     */
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long OVERLAP = 1L << 17;
+
+    private final MappedByteBuffer[] segments;
+    private final long recordCount;
+    private final long allelesStart;
+
+    private VariantFrequencyTable(MappedByteBuffer[] segments, long recordCount) {
+        this.segments = segments;
+        this.recordCount = recordCount;
+        this.allelesStart = HEADER_SIZE + recordCount * RECORD_SIZE;
+    }
+
+    /**
+     * Maps a table written by {@link #write(List, Path)}
+     *
+     * @param path the table file
+     * @return the table
+     * @throws IOException if the file can't be read or is not a table
+     */
+    public static VariantFrequencyTable open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int numSegments = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            MappedByteBuffer[] segments = new MappedByteBuffer[Math.max(1, numSegments)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * SEGMENT_SIZE;
+                long length = Math.min(SEGMENT_SIZE + OVERLAP, size - start);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, length));
+            }
+            if (size < HEADER_SIZE || segments[0].getInt(0) != MAGIC) {
+                throw new IOException("not a variant frequency table: " + path);
+            }
+            if (segments[0].getInt(4) != VERSION) {
+                throw new IOException("unsupported variant frequency table version " + segments[0].getInt(4) + ": " + path);
+            }
+            return new VariantFrequencyTable(segments, segments[0].getLong(8));
+        }
+    }
+
+    /**
+     * @return the number of variants in this table
+     */
+    public long size() {
+        return this.recordCount;
+    }
+
+    /**
+     * @param chromosome     chromosome of variant, with or without a "chr" prefix
+     * @param position       position of variant
+     * @param referenceBases reference base(s)
+     * @param alternateBases alternate base(s)
+     * @return the allele frequency, or -1 if the variant is not in this table
+     */
+    public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases) {
+        int chromosomeIndex = toChromosomeIndex(chromosome);
+        if (chromosomeIndex < 0 || position < 0 || position > Integer.MAX_VALUE) {
+            return -1d;
+        }
+        byte[] ref = referenceBases.toUpperCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII);
+        byte[] alt = alternateBases.toUpperCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII);
+
+        //first record at or after this chromosome and position
+        long low = 0;
+        long high = this.recordCount;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (this.compareLocus(mid, chromosomeIndex, (int) position) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (long i = low; i < this.recordCount && this.compareLocus(i, chromosomeIndex, (int) position) == 0; i++) {
+            long record = HEADER_SIZE + i * RECORD_SIZE;
+            MappedByteBuffer segment = this.segmentOf(record);
+            int offset = offsetOf(record);
+            long alleleOffset = segment.getLong(offset + 9);
+            int refLength = segment.getShort(offset + 17);
+            int altLength = segment.getShort(offset + 19);
+            if (refLength == ref.length && altLength == alt.length && this.allelesEqual(this.allelesStart + alleleOffset, ref, alt)) {
+                return segment.getFloat(offset + 5);
+            }
+        }
+        return -1d;
+    }
+
+    private int compareLocus(long index, int chromosomeIndex, int position) {
+        long record = HEADER_SIZE + index * RECORD_SIZE;
+        MappedByteBuffer segment = this.segmentOf(record);
+        int offset = offsetOf(record);
+        int cmp = Integer.compare(segment.get(offset), chromosomeIndex);
+        return cmp != 0 ? cmp : Integer.compare(segment.getInt(offset + 1), position);
+    }
+
+    private boolean allelesEqual(long start, byte[] ref, byte[] alt) {
+        MappedByteBuffer segment = this.segmentOf(start);
+        int offset = offsetOf(start);
+        for (int i = 0; i < ref.length; i++) {
+            if (segment.get(offset + i) != ref[i]) {
+                return false;
+            }
+        }
+        offset += ref.length;
+        for (int i = 0; i < alt.length; i++) {
+            if (segment.get(offset + i) != alt[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MappedByteBuffer segmentOf(long position) {
+        return this.segments[(int) (position >>> SEGMENT_SHIFT)];
+    }
+
+    private static int offsetOf(long position) {
+        return (int) (position & (SEGMENT_SIZE - 1));
+    }
+
+    /**
+     * @param chromosome 1-22, X, Y or MT, with or without a "chr" prefix
+     * @return the number the chromosome is stored as, or -1 if it is not a known chromosome
+     */
+    static int toChromosomeIndex(String chromosome) {
+        if (chromosome == null) {
+            return -1;
+        }
+        String name = chromosome.trim().toUpperCase(Locale.ROOT);
+        if (name.startsWith("CHR")) {
+            name = name.substring(3);
+        }
+        switch (name) {
+            case "X":
+                return 23;
+            case "Y":
+                return 24;
+            case "M":
+            case "MT":
+                return 25;
+            default:
+                try {
+                    int number = Integer.parseInt(name);
+                    return number >= 1 && number <= 22 ? number : -1;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+        }
+    }
+
+    /**
+     * Sorts the variants and writes them as a table. When the same variant appears more than
+     * once, the first one is kept.
+     *
+     * @param variants variants to write, this list gets sorted
+     * @param path     the table file to write
+     * @return the number of variants written
+     * @throws IOException if the file can't be written
+     */
+    public static long write(List<Entry> variants, Path path) throws IOException {
+        variants.sort(Comparator.comparingInt((Entry e) -> e.chromosomeIndex)
+                .thenComparingInt(e -> e.position)
+                .thenComparing(e -> e.referenceBases)
+                .thenComparing(e -> e.alternateBases));
+        List<Entry> unique = new ArrayList<>(variants.size());
+        Entry previous = null;
+        for (Entry entry : variants) {
+            if (previous == null || !entry.sameVariantAs(previous)) {
+                unique.add(entry);
+                previous = entry;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(unique.size());
+            long alleleOffset = 0;
+            for (Entry entry : unique) {
+                out.writeByte(entry.chromosomeIndex);
+                out.writeInt(entry.position);
+                out.writeFloat(entry.alleleFrequency);
+                out.writeLong(alleleOffset);
+                out.writeShort(entry.referenceBases.length());
+                out.writeShort(entry.alternateBases.length());
+                alleleOffset += entry.referenceBases.length() + entry.alternateBases.length();
+            }
+            for (Entry entry : unique) {
+                out.writeBytes(entry.referenceBases);
+                out.writeBytes(entry.alternateBases);
+            }
+        }
+        return unique.size();
+    }
+
+    /**
+     * A variant to be written to a table
+     */
+    public static final class Entry {
+        private final int chromosomeIndex;
+        private final int position;
+        private final String referenceBases;
+        private final String alternateBases;
+        private final float alleleFrequency;
+
+        /**
+         * @throws IllegalArgumentException if the chromosome is not known or the variant can't be stored
+         */
+        public Entry(String chromosome, long position, String referenceBases, String alternateBases, float alleleFrequency) {
+            this.chromosomeIndex = toChromosomeIndex(chromosome);
+            if (this.chromosomeIndex < 0) {
+                throw new IllegalArgumentException("unknown chromosome: " + chromosome);
+            }
+            if (position < 0 || position > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("position out of range: " + position);
+            }
+            if (referenceBases.length() > Short.MAX_VALUE || alternateBases.length() > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("alleles too long at " + chromosome + ":" + position);
+            }
+            this.position = (int) position;
+            this.referenceBases = referenceBases.toUpperCase(Locale.ROOT);
+            this.alternateBases = alternateBases.toUpperCase(Locale.ROOT);
+            this.alleleFrequency = alleleFrequency;
+        }
+
+        private boolean sameVariantAs(Entry other) {
+            return this.chromosomeIndex == other.chromosomeIndex
+                    && this.position == other.position
+                    && this.referenceBases.equals(other.referenceBases)
+                    && this.alternateBases.equals(other.alternateBases);
+        }
+    }
+}
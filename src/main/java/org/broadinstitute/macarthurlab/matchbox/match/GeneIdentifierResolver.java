@@ -0,0 +1,261 @@
+/**
+ * Resolves the gene identifiers found in genomic features
+ */
+package org.broadinstitute.macarthurlab.matchbox.match;
+
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientCacheListener;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The MME specification allows a gene to be given as a HGNC symbol, an Ensembl gene ID or an
+ * Entrez gene ID. This normalizes the first two against the gene symbol to Ensembl ID mappings
+ * loaded at startup, so that the same gene given two different ways can be compared.
+ * Each Ensembl ID also has an integer key, numbered in Ensembl ID order, so resolvers built from
+ * the same mappings hand out the same keys. The interned genes of the patients in this node
+ * follow the patient cache.
+ *
+ * @author harindra
+ */
+@Component
+public class GeneIdentifierResolver implements PatientCacheListener {
+
+    /**
+     * Returned when an identifier cannot be resolved
+     */
+    public static final String UNKNOWN = "UNKNOWN";
+
+    /**
+     * Key of a gene that cannot be resolved
+     */
+    public static final int UNKNOWN_KEY = -1;
+
+    private final Map<String, String> geneSymbolToEnsemblId;
+    private final Map<String, String> ensemblIdToGeneSymbol;
+
+    /**
+     * Gene symbol or Ensembl ID to the key of the gene
+     */
+    private final Map<String, Integer> geneKeys;
+    private final String[] ensemblIdsByKey;
+
+    /**
+     * Patient ID to the interned genes of that patient in the cache
+     */
+    private final Map<String, InternedPatient> nodePatientGenes = new ConcurrentHashMap<>();
+
+    /**
+     * The patient last interned on each thread that is not in the cache, which while matching
+     * is the query patient, scored against every candidate on that thread
+     */
+    private final ThreadLocal<InternedPatient> lastInterned = new ThreadLocal<>();
+
+    /**
+     * Keep nothing for node patients, they are not the same instances from one search to the next
+     */
+    @Value("${matchbox.low-memory.enabled:false}")
+    private boolean lowMemory;
+
+    /**
+     * Constructor
+     *
+     * @param geneSymbolToEnsemblId gene symbol to Ensembl ID mappings
+     */
+    @Autowired
+    public GeneIdentifierResolver(Map<String, String> geneSymbolToEnsemblId) {
+        this.geneSymbolToEnsemblId = geneSymbolToEnsemblId;
+        this.ensemblIdToGeneSymbol = new HashMap<>();
+        for (Map.Entry<String, String> entry : geneSymbolToEnsemblId.entrySet()) {
+            ensemblIdToGeneSymbol.put(entry.getValue(), entry.getKey());
+        }
+        this.ensemblIdsByKey = new TreeSet<>(geneSymbolToEnsemblId.values()).toArray(new String[0]);
+        this.geneKeys = new HashMap<>();
+        for (int key = 0; key < ensemblIdsByKey.length; key++) {
+            geneKeys.put(ensemblIdsByKey[key], key);
+        }
+        for (Map.Entry<String, String> entry : geneSymbolToEnsemblId.entrySet()) {
+            geneKeys.put(entry.getKey(), geneKeys.get(entry.getValue()));
+        }
+    }
+
+    /**
+     * @param identifier a gene symbol or Ensembl gene ID
+     * @return the gene symbol, or UNKNOWN if it cannot be resolved
+     */
+    public String toGeneSymbol(String identifier) {
+        //id: A gene symbol or identifier (mandatory): gene symbol from the HGNC database OR ensembl gene ID OR entrez gene ID
+        if (geneSymbolToEnsemblId.containsKey(identifier)) {
+            return identifier;
+        }
+        if (ensemblIdToGeneSymbol.containsKey(identifier)) {
+            return ensemblIdToGeneSymbol.get(identifier);
+        }
+        //Entrez gene id? This is missing. TODO: make a GeneIdentifier class where these can be stored and compared.
+        return UNKNOWN;
+    }
+
+    /**
+     * @param identifier a gene symbol or Ensembl gene ID
+     * @return the Ensembl gene ID, or UNKNOWN if it cannot be resolved
+     */
+    public String toEnsemblId(String identifier) {
+        //id: A gene symbol or identifier (mandatory): gene symbol from the HGNC database OR ensembl gene ID OR entrez gene ID
+        if (geneSymbolToEnsemblId.containsKey(identifier)) {
+            return geneSymbolToEnsemblId.get(identifier);
+        }
+        if (ensemblIdToGeneSymbol.containsKey(identifier)) {
+            return identifier;
+        }
+        //Entrez gene id? This is missing. TODO: make a GeneIdentifier class where these can be stored and compared.
+        return UNKNOWN;
+    }
+
+    /**
+     * @param identifier a gene symbol or Ensembl gene ID
+     * @return true if the identifier resolves to a known gene
+     */
+    public boolean isKnown(String identifier) {
+        return geneSymbolToEnsemblId.containsKey(identifier) || ensemblIdToGeneSymbol.containsKey(identifier);
+    }
+
+    /**
+     * @param identifier a gene symbol or Ensembl gene ID
+     * @return the key of the gene, or UNKNOWN_KEY if it cannot be resolved
+     */
+    public int toGeneKey(String identifier) {
+        Integer key = geneKeys.get(identifier);
+        return key == null ? UNKNOWN_KEY : key;
+    }
+
+    /**
+     * @param geneKey the key of a gene
+     * @return the Ensembl gene ID, or UNKNOWN if the key is UNKNOWN_KEY
+     */
+    public String toEnsemblId(int geneKey) {
+        return geneKey == UNKNOWN_KEY ? UNKNOWN : ensemblIdsByKey[geneKey];
+    }
+
+    /**
+     * @param genomicFeature a genomic feature
+     * @return the Ensembl gene ID resolved when the feature was stored, or resolved now if it
+     * was not, or could not be then, or UNKNOWN
+     */
+    public String toEnsemblId(GenomicFeature genomicFeature) {
+        if (isResolved(genomicFeature)) {
+            return genomicFeature.getEnsemblId();
+        }
+        return toEnsemblId(genomicFeature.getGene().get("id"));
+    }
+
+    /**
+     * A gene that could not be resolved when its feature was stored is tried again against the
+     * current mappings, since they may have gained it since
+     *
+     * @return true if the feature was stored with a resolved Ensembl gene ID
+     */
+    private static boolean isResolved(GenomicFeature genomicFeature) {
+        return genomicFeature.getEnsemblId() != null && !UNKNOWN.equals(genomicFeature.getEnsemblId());
+    }
+
+    /**
+     * Resolves the gene of each genomic feature of a patient about to be stored, so it is
+     * resolved once rather than every time the patient is matched
+     *
+     * @param patient a patient
+     */
+    public void normalize(Patient patient) {
+        for (GenomicFeature genomicFeature : patient.getGenomicFeatures()) {
+            genomicFeature.setEnsemblId(toEnsemblId(genomicFeature.getGene().get("id")));
+        }
+    }
+
+    /**
+     * Interns the genes of this patient, or hands back the genes interned when it was saved
+     * to the cache, or when it was last interned on this thread. Worked out from the Ensembl IDs
+     * resolved when it was stored if there are any, and again if the genomic features were added
+     * to or removed from.
+     *
+     * @param patient a patient
+     * @return the genes of this patient
+     */
+    public InternedGenes intern(Patient patient) {
+        InternedPatient interned = this.nodePatientGenes.get(patient.getId());
+        if (interned == null || !interned.isFor(patient)) {
+            interned = this.lastInterned.get();
+        }
+        if (interned == null || !interned.isFor(patient)) {
+            interned = new InternedPatient(patient, this.internGenes(patient.getGenomicFeatures()));
+            this.lastInterned.set(interned);
+        }
+        return interned.genes;
+    }
+
+    private InternedGenes internGenes(List<GenomicFeature> genomicFeatures) {
+        int[] featureKeys = new int[genomicFeatures.size()];
+        for (int i = 0; i < featureKeys.length; i++) {
+            GenomicFeature genomicFeature = genomicFeatures.get(i);
+            if (isResolved(genomicFeature)) {
+                featureKeys[i] = toGeneKey(genomicFeature.getEnsemblId());
+            } else {
+                featureKeys[i] = toGeneKey(genomicFeature.getGene().get("id"));
+            }
+        }
+        return new InternedGenes(featureKeys);
+    }
+
+    @Override
+    public void patientsReloaded(PatientSnapshot snapshot) {
+        this.nodePatientGenes.clear();
+        for (Patient patient : snapshot.getPatients()) {
+            this.patientSaved(patient);
+        }
+    }
+
+    @Override
+    public void patientSaved(Patient patient) {
+        if (this.lowMemory) {
+            return;
+        }
+        this.nodePatientGenes.put(patient.getId(), new InternedPatient(patient, this.intern(patient)));
+    }
+
+    @Override
+    public void patientDeleted(String patientId) {
+        this.nodePatientGenes.remove(patientId);
+    }
+
+    /**
+     * @param lowMemory true to keep no interned genes for node patients
+     */
+    public void setLowMemory(boolean lowMemory) {
+        this.lowMemory = lowMemory;
+    }
+
+    /**
+     * Interned genes, and the patient instance they were worked out for
+     */
+    private static final class InternedPatient {
+
+        private final Patient patient;
+        private final InternedGenes genes;
+
+        InternedPatient(Patient patient, InternedGenes genes) {
+            this.patient = patient;
+            this.genes = genes;
+        }
+
+        boolean isFor(Patient patient) {
+            return this.patient == patient && this.genes.size() == patient.getGenomicFeatures().size();
+        }
+    }
+}
@@ -5,8 +5,11 @@
 
 import org.broadinstitute.macarthurlab.matchbox.entities.GenotypeSimilarityScore;
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.frequency.PopulationFrequencyProvider;
 import org.broadinstitute.macarthurlab.matchbox.network.Communication;
 
+import java.util.List;
+
 /**
  * @author harindra
  * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
@@ -16,4 +19,23 @@ public interface GenotypeSimilarityService {
     public GenotypeSimilarityScore scoreGenotypes(Patient queryPatient, Patient nodePatients);
     void setHttpCommunication(Communication httpCommunication);
 
+    /**
+     * Looks up, in as few calls as it can, the population frequencies scoring the query patient
+     * against each of these patients will need
+     * @param queryPatient the patient queried with
+     * @param nodePatients the patients it will be scored against
+     * @return the frequencies to score with, or null to look them up as they are needed
+     */
+    public default PopulationFrequencyProvider prefetchPopulationFrequencies(Patient queryPatient, List<Patient> nodePatients) {
+        return null;
+    }
+
+    /**
+     * Scores genotypes with population frequencies from a prefetch
+     * @param populationFrequencies from {@link #prefetchPopulationFrequencies}, may be null
+     */
+    public default GenotypeSimilarityScore scoreGenotypes(Patient queryPatient, Patient nodePatient, PopulationFrequencyProvider populationFrequencies) {
+        return this.scoreGenotypes(queryPatient, nodePatient);
+    }
+
 }
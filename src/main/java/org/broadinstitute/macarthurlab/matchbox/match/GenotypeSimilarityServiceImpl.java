@@ -4,9 +4,10 @@
 package org.broadinstitute.macarthurlab.matchbox.match;
 
 import org.broadinstitute.macarthurlab.matchbox.entities.*;
+import org.broadinstitute.macarthurlab.matchbox.frequency.GnomadApiPopulationFrequencyProvider;
+import org.broadinstitute.macarthurlab.matchbox.frequency.PopulationFrequencyProvider;
+import org.broadinstitute.macarthurlab.matchbox.frequency.PrefetchedPopulationFrequencies;
 import org.broadinstitute.macarthurlab.matchbox.network.Communication;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,11 +15,6 @@
 
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-import static java.util.stream.Collectors.toList;
-
-
 
 /**
  * @author harindra
@@ -43,30 +39,21 @@ public class GenotypeSimilarityServiceImpl implements GenotypeSimilarityService
     //http://www.sequenceontology.org/browser/current_svn/term/SO:0002054
     private static final String LOSS_OF_FUNCTION_VARIANT_SOCCODE = "SO:0002054";
     
-    private final Map<String, String> geneSymbolToEnsemblId;
-    private final Map<String, String> ensemblIdToGeneSymbol;
-    
-    private static Map<String,Double> geneAlleleFreqCache = new ConcurrentHashMap<>();
+    private final GeneIdentifierResolver geneIdentifierResolver;
     
     /**
-     * A set of tools to help with make a Http call to an external node
+     * Where normal population allele frequencies and gene constraint scores come from
      */
-    @Autowired
-    private Communication httpCommunication;
+    private PopulationFrequencyProvider populationFrequencyProvider;
 
     /**
      * Constructor
+     * @param geneIdentifierResolver the resolver shared with the gene index and the patient cache,
+     *                               so gene keys agree between them
      */
     @Autowired
-    public GenotypeSimilarityServiceImpl(Map<String, String> geneSymbolToEnsemblId) {
-        this.geneSymbolToEnsemblId = geneSymbolToEnsemblId;
-        this.ensemblIdToGeneSymbol = new HashMap<>();
-
-        for (Map.Entry<String, String> entry : geneSymbolToEnsemblId.entrySet()) {
-            String geneSymbol = entry.getKey();
-            String ensemblId = entry.getValue();
-            ensemblIdToGeneSymbol.put(ensemblId, geneSymbol);
-        }
+    public GenotypeSimilarityServiceImpl(GeneIdentifierResolver geneIdentifierResolver) {
+        this.geneIdentifierResolver = geneIdentifierResolver;
     }
 
 
@@ -79,6 +66,63 @@ public GenotypeSimilarityServiceImpl(Map<String, String> geneSymbolToEnsemblId)
      * @return a representative number (described above)
      */
     public GenotypeSimilarityScore scoreGenotypes(Patient queryPatient, Patient nodePatient) {
+        return this.scoreGenotypes(queryPatient, nodePatient, this.populationFrequencyProvider);
+    }
+
+    /**
+     * The variants and genes every gene match against these patients would be scored with, looked
+     * up in batches rather than one at a time while scoring
+     */
+    @Override
+    public PopulationFrequencyProvider prefetchPopulationFrequencies(Patient queryPatient, List<Patient> nodePatients) {
+        Set<String> variantIds = new HashSet<>();
+        Set<String> genes = new HashSet<>();
+        if (!queryPatient.getGenomicFeatures().isEmpty()) {
+            for (Patient nodePatient : nodePatients) {
+                if (nodePatient.getGenomicFeatures().isEmpty()) {
+                    continue;
+                }
+                List<GenomicFeatureMatch> geneMatches = findGenomicFeatureMatches(queryPatient, nodePatient);
+                if (isPerfectMatch(queryPatient, nodePatient, geneMatches)) {
+                    continue;
+                }
+                for (GenomicFeatureMatch match : geneMatches) {
+                    genes.add(match.getGeneIdentifier());
+                    Variant variant = match.getNodeFeature().getVariant();
+                    if (!variant.isUnPopulated() && !variant.isPartiallyPopulated()) {
+                        variantIds.add(PopulationFrequencyProvider.variantId(variant.getReferenceName(),
+                                variant.getStart(), variant.getReferenceBases(), variant.getAlternateBases()));
+                    }
+                }
+            }
+        }
+        Map<String, Double> alleleFrequencies = Collections.emptyMap();
+        Map<String, Map<String, Double>> constraintScores = Collections.emptyMap();
+        try {
+            if (!variantIds.isEmpty()) {
+                alleleFrequencies = this.populationFrequencyProvider.findAlleleFrequencies(variantIds);
+            }
+            if (!genes.isEmpty()) {
+                constraintScores = this.populationFrequencyProvider.findGeneConstraintScores(genes);
+            }
+        } catch (RuntimeException e) {
+            //scored as not known, rather than looked up again one at a time
+            logger.error("unable to prefetch population frequencies: {}", e.getMessage());
+        }
+        logger.info("prefetched population frequencies of {} variants and {} genes", variantIds.size(), genes.size());
+        return new PrefetchedPopulationFrequencies(this.populationFrequencyProvider, variantIds, alleleFrequencies, genes, constraintScores);
+    }
+
+    /**
+     * Calculates a metric on similarity, as {@link #scoreGenotypes(Patient, Patient)} does
+     *
+     * @param populationFrequencies where to find population frequencies, null to use the configured provider
+     */
+    @Override
+    public GenotypeSimilarityScore scoreGenotypes(Patient queryPatient, Patient nodePatient, PopulationFrequencyProvider populationFrequencies) {
+        if (populationFrequencies == null) {
+            populationFrequencies = this.populationFrequencyProvider;
+        }
         if (nodePatient.getGenomicFeatures().isEmpty() || queryPatient.getGenomicFeatures().isEmpty()) {
             return NO_GENOTYPE_MATCH;
         }
@@ -88,21 +132,8 @@ public GenotypeSimilarityScore scoreGenotypes(Patient queryPatient, Patient node
             return NO_GENOTYPE_MATCH;
         }
 
-        if (geneMatches.size() == queryPatient.getGenomicFeatures().size() && 
-        				queryPatient.getGenomicFeatures().size() == nodePatient.getGenomicFeatures().size() ){
-        	boolean allVariantsSame=true;
-        	for (GenomicFeatureMatch gfMatch : geneMatches){
-        		if(!gfMatch.hasZygosityMatch() || 
-        		   !gfMatch.hasTypeMatch()  || 
-        		   !gfMatch.hasSameVariantPosition() ||
-        		   !gfMatch.hasVariantMatch()
-        		   ){
-        			allVariantsSame=false;
-        		}	
-        	}
-        	if (allVariantsSame){
-        		return PERFECT_GENOTYPE_MATCH;
-        	}
+        if (isPerfectMatch(queryPatient, nodePatient, geneMatches)) {
+        	return PERFECT_GENOTYPE_MATCH;
         }
 
         /**
@@ -110,7 +141,7 @@ public GenotypeSimilarityScore scoreGenotypes(Patient queryPatient, Patient node
          * of that variant. If only the gene name is given, we pick the appropriate (using SOcode)
          * constraint Z score of the gene given (since we cannot say which varaint AF to use)
          */
-        double gnomadMetric=this.findNormalPopulationProbabilitiesFromGnomad(geneMatches);
+        double gnomadMetric=this.findNormalPopulationProbabilitiesFromGnomad(geneMatches, populationFrequencies);
         
         logger.info("base genotype score (prescaled): {})", gnomadMetric );
         /**
@@ -122,6 +153,29 @@ public GenotypeSimilarityScore scoreGenotypes(Patient queryPatient, Patient node
         return new GenotypeSimilarityScore(scaled, geneMatches);
     }
 
+
+    /**
+     * @return true if every genomic feature of both patients matched another at the variant level,
+     * which needs no population frequencies to score
+     */
+    private boolean isPerfectMatch(Patient queryPatient, Patient nodePatient, List<GenomicFeatureMatch> geneMatches) {
+        if (geneMatches.size() == queryPatient.getGenomicFeatures().size() && 
+        				queryPatient.getGenomicFeatures().size() == nodePatient.getGenomicFeatures().size() ){
+        	boolean allVariantsSame=true;
+        	for (GenomicFeatureMatch gfMatch : geneMatches){
+        		if(!gfMatch.hasZygosityMatch() || 
+        		   !gfMatch.hasTypeMatch()  || 
+        		   !gfMatch.hasSameVariantPosition() ||
+        		   !gfMatch.hasVariantMatch()
+        		   ){
+        			allVariantsSame=false;
+        		}	
+        	}
+        	return allVariantsSame;
+        }
+        return false;
+    }
+
     
     /**
      * Find matches arrising from genotype similarity
@@ -133,20 +187,26 @@ protected List<GenomicFeatureMatch> findGenomicFeatureMatches(Patient queryPatie
 
         List<GenomicFeature> queryPatientGenomicFeatures = queryPatient.getGenomicFeatures();
         List<GenomicFeature> nodePatientGenomicFeatures = nodePatient.getGenomicFeatures();
+        InternedGenes queryPatientGenes = geneIdentifierResolver.intern(queryPatient);
 
         //not the greatest test for equality out there
         if (queryPatient.getId().equals(nodePatient.getId())) {
-            return samePatientGenomicFeatureMatches(queryPatientGenomicFeatures);
+            return samePatientGenomicFeatureMatches(queryPatientGenomicFeatures, queryPatientGenes);
+        }
+
+        //most node patients have no gene in common with the query
+        InternedGenes nodePatientGenes = geneIdentifierResolver.intern(nodePatient);
+        if (!queryPatientGenes.sharesGeneWith(nodePatientGenes)) {
+            return Collections.emptyList();
         }
 
         List<GenomicFeatureMatch> matches = new ArrayList<>();
-        for (GenomicFeature queryPatientGenomicFeature : queryPatientGenomicFeatures) {
-            String queryPatientEnsemblId = toEnsemblId(queryPatientGenomicFeature.getGene().get("id"));
-            if (!queryPatientEnsemblId.equals("UNKNOWN")) {
-                for (GenomicFeature nodePatientGenomicFeature : nodePatientGenomicFeatures) {
-                    String nodePatientEnsemblId = toEnsemblId(nodePatientGenomicFeature.getGene().get("id"));
-                    if (nodePatientEnsemblId.equals(queryPatientEnsemblId)) {
-                        GenomicFeatureMatch match = new GenomicFeatureMatch(queryPatientGenomicFeature, nodePatientGenomicFeature);
+        for (int i = 0; i < queryPatientGenes.size(); i++) {
+            int queryPatientGeneKey = queryPatientGenes.getFeatureKey(i);
+            if (queryPatientGeneKey != GeneIdentifierResolver.UNKNOWN_KEY) {
+                for (int j = 0; j < nodePatientGenes.size(); j++) {
+                    if (nodePatientGenes.getFeatureKey(j) == queryPatientGeneKey) {
+                        GenomicFeatureMatch match = new GenomicFeatureMatch(queryPatientGenomicFeatures.get(i), nodePatientGenomicFeatures.get(j));
                         matches.add(match);
                     }
                 }
@@ -161,23 +221,27 @@ protected List<GenomicFeatureMatch> findGenomicFeatureMatches(Patient queryPatie
      * share the real name of the patients, and users sometimes submit the same patient to multiple nodes.
      * We have to be careful not to negate a genuine good match.
      */
-    private List<GenomicFeatureMatch> samePatientGenomicFeatureMatches(List<GenomicFeature> genomicFeatures) {
-        return genomicFeatures.stream()
-                .filter(queryPatientGenomicFeature -> !toGeneSymbol(queryPatientGenomicFeature.getGene().get("id")).equals("UNKNOWN"))
-                .map(queryPatientGenomicFeature -> new GenomicFeatureMatch(queryPatientGenomicFeature, queryPatientGenomicFeature))
-                .collect(toList());
+    private List<GenomicFeatureMatch> samePatientGenomicFeatureMatches(List<GenomicFeature> genomicFeatures, InternedGenes genes) {
+        List<GenomicFeatureMatch> matches = new ArrayList<>();
+        for (int i = 0; i < genes.size(); i++) {
+            if (genes.getFeatureKey(i) != GeneIdentifierResolver.UNKNOWN_KEY) {
+                matches.add(new GenomicFeatureMatch(genomicFeatures.get(i), genomicFeatures.get(i)));
+            }
+        }
+        return matches;
     }
     
     
     /**
      * Given a list of genomic feature matches, finds population frequencies of those combinations using gnomad
      * @param geneMatches a list of gene matches between a query patient and local-db patient
+     * @param populationFrequencies where to find the frequencies
      * @return An average of allele frequencies between query and local 
      */
-    private double findNormalPopulationProbabilitiesFromGnomad(List<GenomicFeatureMatch> geneMatches) {
+    private double findNormalPopulationProbabilitiesFromGnomad(List<GenomicFeatureMatch> geneMatches, PopulationFrequencyProvider populationFrequencies) {
     	List<Double> alleleFreqs = new ArrayList<>();
         for (GenomicFeatureMatch gFeatureMatch : geneMatches) {
-        	double constraintScore = findNormPopGeneConstraintScore(gFeatureMatch.getGeneIdentifier(),gFeatureMatch.getNodeFeature().getType().get("id"));
+        	double constraintScore = findNormPopGeneConstraintScore(gFeatureMatch.getGeneIdentifier(),gFeatureMatch.getNodeFeature().getType().get("id"), populationFrequencies);
             Double localMatchAlleleFreq = 0d;
             Variant variant = gFeatureMatch.getNodeFeature().getVariant();
             if (!variant.isUnPopulated() && !variant.isPartiallyPopulated()) {
@@ -185,7 +249,8 @@ private double findNormalPopulationProbabilitiesFromGnomad(List<GenomicFeatureMa
                         variant.getReferenceName(),
                         variant.getStart(),
                         variant.getReferenceBases(),
-                        variant.getAlternateBases());
+                        variant.getAlternateBases(),
+                        populationFrequencies);
                 alleleFreqs.add(Math.pow(localMatchAlleleFreq,-1));
             }
             //if variant information is un-populated or for some reason gnomad search on variant failed (localMatchAlleleFreq is -1 in that case), 
@@ -215,35 +280,16 @@ private double findNormalPopulationProbabilitiesFromGnomad(List<GenomicFeatureMa
      * @param variantPos position of variant
      * @param refBase reference base
      * @param altBase alternate base
+     * @param populationFrequencies where to find the frequency
      * @return An allele frequency of this variant in a normal population
      */
-    //TODO use @Cacheable
-    private double findAlleFreqInNormPop(String chromosome, Long variantPos, String refBase, String altBase){
-    	String cacheKey = chromosome + "." + variantPos.toString() + "." + refBase + "." + altBase;
-    	if(GenotypeSimilarityServiceImpl.geneAlleleFreqCache.containsKey(cacheKey)){
-    		double gInfo = (double)GenotypeSimilarityServiceImpl.geneAlleleFreqCache.get(cacheKey); 
-    		logger.info("using cache for variant allele info: {}",gInfo);
-    		return  gInfo;
-    	}
-    	StringBuilder payload = new StringBuilder();
-    	payload.append("{\"query\": \"query{variant(id:\\\"");
-    	payload.append(chromosome);
-    	payload.append("-");
-    	payload.append(Long.toString(variantPos));
-    	payload.append("-");
-    	payload.append(refBase);
-    	payload.append("-");
-    	payload.append(altBase);
-    	payload.append("\\\", source: \\\"exome\\\"){allele_freq}}\"}");
-    	logger.info("++++>normal population allele frequency variant query is: {}", payload.toString());
-    	String reply = this.httpCommunication.postToNonAuthenticatedHttpUrl("http://gnomad-api.broadinstitute.org", payload.toString());
-    	Map<String,Double> counts = this.parseGnomadVariantReply(reply);
-    	if (counts.size()==0){
+    private double findAlleFreqInNormPop(String chromosome, Long variantPos, String refBase, String altBase, PopulationFrequencyProvider populationFrequencies){
+    	double alleleFreq = populationFrequencies.findAlleleFrequency(chromosome, variantPos, refBase, altBase);
+    	if (alleleFreq < 0){
     		return -1d;
     	}
-    	logger.info("normal population allele frequency based on variant is: {}",counts.get("allele_freq"));
-    	GenotypeSimilarityServiceImpl.geneAlleleFreqCache.put(cacheKey, counts.get("allele_freq"));
-    	return counts.get("allele_freq");
+    	logger.info("normal population allele frequency based on variant is: {}",alleleFreq);
+    	return alleleFreq;
     }
     
     
@@ -254,50 +300,36 @@ private double findAlleFreqInNormPop(String chromosome, Long variantPos, String
      * http://www.sequenceontology.org/browser/current_svn/term/SO:0001583
      * @param HGNC name or ENSG or ID (method differentiates automatically between the two)
      * @param variant type as SO code
+     * @param populationFrequencies where to find the constraint scores
      * @return an appropriate constraint score
      */
-    private double findNormPopGeneConstraintScore(String gene, String typeAsSOCode){
-        if(GenotypeSimilarityServiceImpl.geneAlleleFreqCache.containsKey(gene)){
-    		double gInfo = GenotypeSimilarityServiceImpl.geneAlleleFreqCache.get(gene);
-    		logger.info("using cache for gene (search by gene) allele info: {}",gInfo);
-    		return  gInfo;
-    	}
-    	 StringBuilder payload = new StringBuilder();
-    	 if (gene.indexOf("ENSG")==0){
-    		 payload.append("{\"query\": \"query{gene(gene_id: \\\"");
-    	 }
-    	 else{
-    		 payload.append("{\"query\": \"query{gene(gene_name: \\\"");
-    	 }
-    	 payload.append(gene);
-    	 payload.append("\\\")");
-    	 payload.append("{exacv1_constraint {pLI,syn_z,mis_z}}");
-    	 payload.append("}\"}");
-    	 logger.info("query used for getting allele frequency based on gene:  {}, for type: {} : {}",gene, typeAsSOCode,payload.toString());
-    	 String reply = this.httpCommunication.postToNonAuthenticatedHttpUrl("http://gnomad-api.broadinstitute.org",payload.toString());
-    	 Map<String,Double> freq = parseGnomadGeneLookupReply(reply);
+    private double findNormPopGeneConstraintScore(String gene, String typeAsSOCode, PopulationFrequencyProvider populationFrequencies){
+    	 logger.info("getting constraint scores based on gene: {}, for type: {}",gene, typeAsSOCode);
+    	 Map<String,Double> freq = populationFrequencies.findGeneConstraintScores(gene);
     	 logger.info("normal population constraint scores based on gene ID {} are:{} , {} , {}",gene, freq.get("pLI"),freq.get("syn_z"),freq.get("mis_z"));
     	 
+    	 //a gene can have some scores and not others (NA in the constraint table)
+    	 Double score = null;
     	 if (freq.size()>0 && typeAsSOCode != null){
 	    	 if (typeAsSOCode.equals(MISSENSE_VARIANT_SOCCODE)){
-	    		 GenotypeSimilarityServiceImpl.geneAlleleFreqCache.put(gene, freq.get("mis_z"));
-	    		 return freq.get("mis_z");
+	    		 score = freq.get("mis_z");
 	    	 }
 	    	 else if(typeAsSOCode.equals(SYNNONYMOUS_VARIANT_SOCCODE)){
-	    		 GenotypeSimilarityServiceImpl.geneAlleleFreqCache.put(gene, freq.get("syn_z"));
-	    		 return freq.get("syn_z");
+	    		 score = freq.get("syn_z");
 	    	 }
 	    	 else if(typeAsSOCode.equals(LOSS_OF_FUNCTION_VARIANT_SOCCODE)){
-	    		 GenotypeSimilarityServiceImpl.geneAlleleFreqCache.put(gene, freq.get("pLI"));
-	    		 return freq.get("pLI");
+	    		 score = freq.get("pLI");
 	    	 }
 	    	 else{
-	    		 //if no type is given OR other type is given, we are going to use missense, and value is not cached
-	    		 return freq.get("mis_z");
+	    		 //if no type is given OR other type is given, we are going to use missense
+	    		 score = freq.get("mis_z");
 	    	 }
     	 }
-    	 if (freq.containsKey("mis_z") && typeAsSOCode == null){
-    		 return freq.get("mis_z");
+    	 if (typeAsSOCode == null){
+    		 score = freq.get("mis_z");
+    	 }
+    	 if (score != null){
+    		 return score;
     	 }
     	 logger.info("no constrain information was found, so simply not using it via equaling it to '1.0d'");
     	 return 1.0d; //sentinel placeholder when information is missing in gnomad
@@ -305,88 +337,21 @@ else if(typeAsSOCode.equals(LOSS_OF_FUNCTION_VARIANT_SOCCODE)){
     
     
  
-    /**
-     * Parses a reply from Gnomad gene service and returns empty map if no values are returned from Gnomad API
-     * @param reply from gnomad API: A string reply in JSON format
-     * @return a parsed map of constraint values from Gnomad API
-     */
-    private Map<String,Double> parseGnomadGeneLookupReply(String reply) {
-    	Map<String,Double> constraintScore= new HashMap<>();
-    	try{
-	    	JSONParser parser = new JSONParser();
-	    	JSONObject jsonObject = (JSONObject) parser.parse(reply);
-	    	JSONObject dataObj = (JSONObject)jsonObject.get("data");
-	    	JSONObject geneObj = (JSONObject)dataObj.get("gene");
-	    	JSONObject exomeVariantsObj = (JSONObject)geneObj.get("exacv1_constraint");
-	    	if (exomeVariantsObj != null){
-	            constraintScore.put("pLI", (Double)exomeVariantsObj.get("pLI"));
-	            constraintScore.put("syn_z", (Double)exomeVariantsObj.get("syn_z"));
-	            constraintScore.put("mis_z", (Double)exomeVariantsObj.get("mis_z"));
-	    	}
-        }
-    	catch(Exception e){
-    		logger.error("error parsing gnomad gene based query reply: {} for reply: {}", e.getMessage(),reply);
-    	}
-    	return constraintScore;
-    }
-    
-    
-    
-    /**
-     * Parses a reply from Gnomad variant service and return a map of the results
-     * @param reply A string reply in JSON format
-     * @return a map of values returned back from gnomad
-     */
-    private Map<String,Double> parseGnomadVariantReply(String reply) {
-    	logger.info("reply back from gnomad for variant based allele frequency: {}",reply);
-    	Map<String,Double> parsed = new HashMap<>();
-    	try{
-	    	JSONParser parser = new JSONParser();
-	    	JSONObject jsonObject = (JSONObject) parser.parse(reply);
-	    	JSONObject dataObj = (JSONObject)jsonObject.get("data");
-	    	JSONObject variantObj = (JSONObject)dataObj.get("variant");
-	    	if (variantObj == null){
-	    		logger.info("skipping parsing variant based gnomad query, results are unparsable: {}", reply);
-	    		return parsed;
-	    	}
-	    	parsed.put("allele_freq",(Double)variantObj.get("allele_freq"));
-    	}
-    	catch(Exception e){
-    		logger.error("error parsing gnomad variant based reply: {}, the reply was: {}, skipping to gene based query", e.getMessage(),reply);
-    	}
-    	return parsed;
-    }
-
-    
-    private String toGeneSymbol(String identifier) {
-    	//id: A gene symbol or identifier (mandatory): gene symbol from the HGNC database OR ensembl gene ID OR entrez gene ID
-        if (geneSymbolToEnsemblId.containsKey(identifier)) {
-            return identifier;
-        }
-        if (ensemblIdToGeneSymbol.containsKey(identifier)) {
-            return ensemblIdToGeneSymbol.get(identifier);
-        }
-        //Entrez gene id? This is missing. TODO: make a GeneIdentifier class where these can be stored and compared.
-        return "UNKNOWN";
-    }
-
-    private String toEnsemblId(String identifier) {
-    	//id: A gene symbol or identifier (mandatory): gene symbol from the HGNC database OR ensembl gene ID OR entrez gene ID
-      if (geneSymbolToEnsemblId.containsKey(identifier)) {
-    	  return geneSymbolToEnsemblId.get(identifier);
-      }
-      if (ensemblIdToGeneSymbol.containsKey(identifier)) {
-    	  return identifier;
-      }
-      	//Entrez gene id? This is missing. TODO: make a GeneIdentifier class where these can be stored and compared.
-      return "UNKNOWN";
-  }
-
 	/**
+	 * Looks up frequencies with the gnomAD API through this Communication
 	 * @param httpCommunication the httpCommunication to set
 	 */
 	public void setHttpCommunication(Communication httpCommunication) {
-		this.httpCommunication = httpCommunication;
+		this.populationFrequencyProvider = new GnomadApiPopulationFrequencyProvider(httpCommunication);
+	}
+
+
+	/**
+	 * @param populationFrequencyProvider the populationFrequencyProvider to set
+	 */
+	@Autowired
+	public void setPopulationFrequencyProvider(PopulationFrequencyProvider populationFrequencyProvider) {
+		this.populationFrequencyProvider = populationFrequencyProvider;
 	}
 
 	
@@ -0,0 +1,220 @@
+/**
+ * The is_a hierarchy of the Human Phenotype Ontology
+ */
+package org.broadinstitute.macarthurlab.matchbox.match;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read from hp.obo as released by the HPO project. Only the term IDs, alternative IDs, is_a
+ * links and replacements of obsolete terms are kept. Alternative IDs and obsolete terms that
+ * name a replacement are looked up as the term they stand for.
+ *
+ * @author harindra
+ */
+public class HpoOntology {
+
+    private final Map<String, List<String>> parentIds;
+    private final Map<String, String> primaryIds;
+    private final Map<String, Set<String>> ancestorIds = new HashMap<>();
+    private final Map<String, Integer> depths = new HashMap<>();
+
+    private HpoOntology(Map<String, List<String>> parentIds, Map<String, String> primaryIds) {
+        this.parentIds = parentIds;
+        this.primaryIds = primaryIds;
+        for (String termId : parentIds.keySet()) {
+            this.ancestorsOf(termId);
+            this.depthOf(termId, new HashSet<>());
+        }
+    }
+
+    /**
+     * @param oboFile hp.obo
+     * @return the ontology
+     * @throws IOException if the file can't be read
+     */
+    public static HpoOntology load(Path oboFile) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(oboFile, StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * @param reader OBO text
+     * @return the ontology
+     * @throws IOException if the text can't be read
+     */
+    public static HpoOntology read(BufferedReader reader) throws IOException {
+        Map<String, List<String>> parentIds = new HashMap<>();
+        Map<String, String> primaryIds = new HashMap<>();
+        List<String[]> replacements = new ArrayList<>();
+
+        boolean inTerm = false;
+        String termId = null;
+        List<String> parents = new ArrayList<>();
+        List<String> altIds = new ArrayList<>();
+        boolean obsolete = false;
+        String replacedBy = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith("[")) {
+                addTerm(parentIds, primaryIds, replacements, termId, parents, altIds, obsolete, replacedBy);
+                inTerm = line.equals("[Term]");
+                termId = null;
+                parents = new ArrayList<>();
+                altIds = new ArrayList<>();
+                obsolete = false;
+                replacedBy = null;
+                continue;
+            }
+            if (!inTerm) {
+                continue;
+            }
+            if (line.startsWith("id:")) {
+                termId = value(line);
+            } else if (line.startsWith("is_a:")) {
+                parents.add(value(line));
+            } else if (line.startsWith("alt_id:")) {
+                altIds.add(value(line));
+            } else if (line.startsWith("is_obsolete:")) {
+                obsolete = "true".equals(value(line));
+            } else if (line.startsWith("replaced_by:")) {
+                replacedBy = value(line);
+            }
+        }
+        addTerm(parentIds, primaryIds, replacements, termId, parents, altIds, obsolete, replacedBy);
+
+        //replacements can name terms further down the file, so resolve them once all are read
+        for (String[] replacement : replacements) {
+            String replacementId = primaryIds.get(replacement[1]);
+            if (replacementId != null) {
+                primaryIds.put(replacement[0], replacementId);
+            }
+        }
+        return new HpoOntology(parentIds, primaryIds);
+    }
+
+    private static void addTerm(Map<String, List<String>> parentIds, Map<String, String> primaryIds, List<String[]> replacements,
+                                String termId, List<String> parents, List<String> altIds, boolean obsolete, String replacedBy) {
+        if (termId == null) {
+            return;
+        }
+        if (obsolete) {
+            if (replacedBy != null) {
+                replacements.add(new String[]{termId, replacedBy});
+            }
+            return;
+        }
+        parentIds.put(termId, parents);
+        primaryIds.put(termId, termId);
+        for (String altId : altIds) {
+            primaryIds.put(altId, termId);
+        }
+    }
+
+    /**
+     * @return the term ID of "HP:0000118 ! Phenotypic abnormality" style values
+     */
+    private static String value(String line) {
+        String value = line.substring(line.indexOf(':') + 1);
+        int comment = value.indexOf('!');
+        if (comment >= 0) {
+            value = value.substring(0, comment);
+        }
+        return value.trim();
+    }
+
+    /**
+     * @param termId a term ID, alternative ID or replaced obsolete ID
+     * @return the ID the term is known by, or null if it is not in the ontology
+     */
+    public String getPrimaryId(String termId) {
+        return this.primaryIds.get(termId);
+    }
+
+    /**
+     * @param termId a term ID, alternative ID or replaced obsolete ID
+     * @return the term and all its ancestors, or nothing if it is not in the ontology
+     */
+    public Set<String> getAncestorIds(String termId) {
+        String primaryId = this.getPrimaryId(termId);
+        return primaryId == null ? Collections.emptySet() : this.ancestorIds.get(primaryId);
+    }
+
+    /**
+     * @param termId a term ID, alternative ID or replaced obsolete ID
+     * @return the fewest is_a links from the term up to the root, or -1 if it is not in the ontology
+     */
+    public int getDepth(String termId) {
+        String primaryId = this.getPrimaryId(termId);
+        return primaryId == null ? -1 : this.depths.get(primaryId);
+    }
+
+    /**
+     * @return the number of (non obsolete) terms
+     */
+    public int size() {
+        return this.parentIds.size();
+    }
+
+    /**
+     * @return the IDs of the (non obsolete) terms
+     */
+    public Set<String> getTermIds() {
+        return Collections.unmodifiableSet(this.parentIds.keySet());
+    }
+
+    private Set<String> ancestorsOf(String termId) {
+        Set<String> ancestors = this.ancestorIds.get(termId);
+        if (ancestors != null) {
+            return ancestors;
+        }
+        ancestors = new HashSet<>();
+        ancestors.add(termId);
+        //marks the term as being worked out, in case of a cycle
+        this.ancestorIds.put(termId, ancestors);
+        for (String parentId : this.parentIds.getOrDefault(termId, Collections.emptyList())) {
+            if (this.parentIds.containsKey(parentId)) {
+                ancestors.addAll(this.ancestorsOf(parentId));
+            }
+        }
+        Set<String> unmodifiable = Collections.unmodifiableSet(ancestors);
+        this.ancestorIds.put(termId, unmodifiable);
+        return unmodifiable;
+    }
+
+    private int depthOf(String termId, Set<String> visiting) {
+        Integer depth = this.depths.get(termId);
+        if (depth != null) {
+            return depth;
+        }
+        if (!visiting.add(termId)) {
+            return Integer.MAX_VALUE;
+        }
+        int shallowest = Integer.MAX_VALUE;
+        for (String parentId : this.parentIds.getOrDefault(termId, Collections.emptyList())) {
+            if (this.parentIds.containsKey(parentId)) {
+                int parentDepth = this.depthOf(parentId, visiting);
+                if (parentDepth != Integer.MAX_VALUE) {
+                    shallowest = Math.min(shallowest, parentDepth + 1);
+                }
+            }
+        }
+        visiting.remove(termId);
+        depth = shallowest == Integer.MAX_VALUE ? 0 : shallowest;
+        this.depths.put(termId, depth);
+        return depth;
+    }
+}
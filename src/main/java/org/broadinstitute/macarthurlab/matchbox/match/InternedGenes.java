@@ -0,0 +1,82 @@
+/**
+ * The genes of a patient as the integer keys of a GeneIdentifierResolver
+ */
+package org.broadinstitute.macarthurlab.matchbox.match;
+
+import java.util.Arrays;
+
+/**
+ * Worked out once per patient, so genotype matching compares ints rather than resolving the
+ * gene identifier of every feature for every query. Keys are only comparable between patients
+ * interned against the same gene symbol to Ensembl ID mappings, so these are kept by the
+ * GeneIdentifierResolver that worked them out.
+ *
+ * @author harindra
+ */
+public final class InternedGenes {
+
+    /**
+     * The key of each genomic feature, in order, UNKNOWN_KEY where the gene could not be resolved
+     */
+    private final int[] featureKeys;
+
+    /**
+     * The distinct known keys, ascending
+     */
+    private final int[] sortedKeys;
+
+    /**
+     * @param featureKeys the key of each genomic feature
+     */
+    InternedGenes(int[] featureKeys) {
+        this.featureKeys = featureKeys;
+        this.sortedKeys = Arrays.stream(featureKeys)
+                .filter(key -> key != GeneIdentifierResolver.UNKNOWN_KEY)
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * @param index index of a genomic feature
+     * @return the key of its gene, or UNKNOWN_KEY
+     */
+    public int getFeatureKey(int index) {
+        return featureKeys[index];
+    }
+
+    /**
+     * @return the number of genomic features
+     */
+    public int size() {
+        return featureKeys.length;
+    }
+
+    /**
+     * @return the distinct known keys, ascending. Not to be modified.
+     */
+    public int[] getSortedKeys() {
+        return sortedKeys;
+    }
+
+    /**
+     * @param other genes of another patient
+     * @return true if at least one known gene is in both
+     */
+    public boolean sharesGeneWith(InternedGenes other) {
+        int[] otherKeys = other.sortedKeys;
+        int i = 0;
+        int j = 0;
+        while (i < sortedKeys.length && j < otherKeys.length) {
+            if (sortedKeys[i] == otherKeys[j]) {
+                return true;
+            }
+            if (sortedKeys[i] < otherKeys[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+}
@@ -6,6 +6,7 @@
 import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -16,4 +17,22 @@ public interface MatchService {
 
 	public List<MatchmakerResult> match(Patient patient, List<Patient> patients);
 
+	/**
+	 * Matches against a subset of the patients in this node. The node population size is
+	 * still needed since matchbox is used as a disease population proxy when scoring.
+	 */
+	public List<MatchmakerResult> match(Patient patient, List<Patient> candidatePatients, int nodePopulationSize);
+
+	/**
+	 * Same as above, but returns only the best scoring results, best first
+	 * @param maxResults most results to return, 0 or less to return them all
+	 */
+	public List<MatchmakerResult> match(Patient patient, List<Patient> candidatePatients, int nodePopulationSize, int maxResults);
+
+	/**
+	 * Same as above, with the candidates read a page at a time, so they needn't all be in memory
+	 * @param maxResults most results to return, 0 or less to return them all
+	 */
+	public List<MatchmakerResult> match(Patient patient, Iterator<List<Patient>> candidatePages, int nodePopulationSize, int maxResults);
+
 }
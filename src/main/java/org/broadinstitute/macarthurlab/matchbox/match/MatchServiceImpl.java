@@ -7,15 +7,20 @@
 import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
 import org.broadinstitute.macarthurlab.matchbox.entities.PhenotypeSimilarityScore;
+import org.broadinstitute.macarthurlab.matchbox.frequency.PopulationFrequencyProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * @author harindra
@@ -31,6 +36,26 @@ public class MatchServiceImpl implements MatchService {
     
     private static double PHENOTYPE_MATCH_THRESHOLD=0.7;
 
+    /**
+     * Switch to score node patients on a fork-join pool rather than on the request thread
+     */
+    @Value("${matchbox.match.parallel-scoring.enabled:false}")
+    private boolean parallelScoring;
+
+    /**
+     * Number of threads used for parallel scoring, 0 uses one per available processor
+     */
+    @Value("${matchbox.match.parallel-scoring.pool-size:0}")
+    private int parallelScoringPoolSize;
+
+    /**
+     * Largest number of node patients scored as one unit of work when scoring in parallel
+     */
+    @Value("${matchbox.match.parallel-scoring.partition-size:256}")
+    private int partitionSize = 256;
+
+    private ForkJoinPool scoringPool;
+
     private final GenotypeSimilarityService genotypeSimilarityService;
     private final PhenotypeSimilarityService phenotypeSimilarityService;
 
@@ -51,23 +76,146 @@ public MatchServiceImpl(GenotypeSimilarityService genotypeSimilarityService, Phe
      * @param patients against which to score the query patient
      */
     public List<MatchmakerResult> match(Patient queryPatient, List<Patient> patients) {
-        List<MatchmakerResult> results = new ArrayList<>();
-        
-        int numPatientsWithGoodGenotypeMatch=0;
-        
-        logger.info("Matching query patient {} against all {} patients in this node.", queryPatient.getId(), patients.size());
+        return this.match(queryPatient, patients, patients.size());
+    }
+
+    /**
+     * Do a match against only these candidate patients, typically the ones found to share a
+     * gene with the query patient.
+     *
+     * @param queryPatient a patient to match on
+     * @param patients candidate patients against which to score the query patient
+     * @param nodePopulationSize the number of patients in this node
+     */
+    public List<MatchmakerResult> match(Patient queryPatient, List<Patient> patients, int nodePopulationSize) {
+        return this.match(queryPatient, patients, nodePopulationSize, 0);
+    }
+
+    /**
+     * Do a match against these candidate patients and keep only the best scoring results.
+     * Every candidate still has to be scored, since the genotype score depends on how many
+     * candidates had a good genotype match, but only maxResults of them are kept, ranked
+     * and logged. The population frequencies the genotype scores need are looked up in
+     * batches before any candidate is scored.
+     *
+     * @param queryPatient a patient to match on
+     * @param patients candidate patients against which to score the query patient
+     * @param nodePopulationSize the number of patients in this node
+     * @param maxResults most results to return, 0 or less to return them all
+     */
+    public List<MatchmakerResult> match(Patient queryPatient, List<Patient> patients, int nodePopulationSize, int maxResults) {
+        logger.info("Matching query patient {} against {} of the {} patients in this node.", queryPatient.getId(), patients.size(), nodePopulationSize);
         
         //The final score should be in the range 0.0 - 1.0 where 1.0 is a self-match.
         PhenotypeSimilarityScorer phenotypeSimilarityScorer = phenotypeSimilarityService.buildPhenotypeSimilarityScorer(queryPatient);
-        
-        Map<Patient,Map<String,Double>> candidateNodePatientsToReturn = new HashMap<>();
-        
-        
+        ScoredCandidates scoredCandidates = this.scorePage(queryPatient, phenotypeSimilarityScorer, patients, Thread.currentThread());
+        return this.rank(queryPatient, scoredCandidates, nodePopulationSize, maxResults);
+    }
+
+    /**
+     * Do a match against candidate patients read one page at a time. Only the candidates that
+     * could be returned are kept between pages, along with the count of good genotype matches
+     * the final scores need, so a page can be dropped once it has been scored.
+     *
+     * @param queryPatient a patient to match on
+     * @param pages candidate patients, a page at a time
+     * @param nodePopulationSize the number of patients in this node
+     * @param maxResults most results to return, 0 or less to return them all
+     */
+    public List<MatchmakerResult> match(Patient queryPatient, Iterator<List<Patient>> pages, int nodePopulationSize, int maxResults) {
+        logger.info("Matching query patient {} against the {} patients in this node, a page at a time.", queryPatient.getId(), nodePopulationSize);
+        PhenotypeSimilarityScorer phenotypeSimilarityScorer = phenotypeSimilarityService.buildPhenotypeSimilarityScorer(queryPatient);
+        ScoredCandidates scoredCandidates = new ScoredCandidates();
+        Thread requester = Thread.currentThread();
+        while (pages.hasNext()) {
+            scoredCandidates.merge(this.scorePage(queryPatient, phenotypeSimilarityScorer, pages.next(), requester));
+        }
+        return this.rank(queryPatient, scoredCandidates, nodePopulationSize, maxResults);
+    }
+
+    /**
+     * Scores the query patient against these patients, in parallel when there are enough of them
+     *
+     * @param requester the thread the match was asked for on. Scoring stops if it is interrupted
+     */
+    private ScoredCandidates scorePage(Patient queryPatient, PhenotypeSimilarityScorer phenotypeSimilarityScorer, List<Patient> patients, Thread requester) {
+        PopulationFrequencyProvider populationFrequencies = genotypeSimilarityService.prefetchPopulationFrequencies(queryPatient, patients);
+        if (this.isParallelScoringUsed(patients)) {
+            return this.getScoringPool().invoke(new CandidateScoringTask(queryPatient, phenotypeSimilarityScorer, populationFrequencies, patients, 0, patients.size(), requester));
+        }
+        return this.scoreCandidates(queryPatient, phenotypeSimilarityScorer, populationFrequencies, patients, 0, patients.size(), requester);
+    }
+
+    /**
+     * Gives the scored candidates their final scores and keeps the best maxResults of them, best first
+     */
+    private List<MatchmakerResult> rank(Patient queryPatient, ScoredCandidates scoredCandidates, int nodePopulationSize, int maxResults) {
+        int numPatientsWithGoodGenotypeMatch = scoredCandidates.numPatientsWithGoodGenotypeMatch;
+        Map<Patient,Map<String,Double>> candidateNodePatientsToReturn = scoredCandidates.candidateNodePatientsToReturn;
+        logger.info("number of patients with good a genotypeMatch (without phenotype-only matches) {})", numPatientsWithGoodGenotypeMatch );
+
+        int limit = maxResults > 0 ? maxResults : Integer.MAX_VALUE;
+        //the worst kept result is at the head, ready to be replaced by a better one
+        PriorityQueue<RankedResult> best = new PriorityQueue<>(Math.min(limit, candidateNodePatientsToReturn.size()) + 1, RankedResult.WORST_FIRST);
+        int scoredOrder = 0;
+        for (Map.Entry<Patient,Map<String,Double>> candidate : candidateNodePatientsToReturn.entrySet()){
+        	RankedResult result = new RankedResult(new MatchmakerResult(calculateMatchScore(candidate.getValue(),
+        														 numPatientsWithGoodGenotypeMatch, 
+        														 nodePopulationSize),
+        				candidate.getKey()), scoredOrder++);
+        	if (best.size() < limit) {
+        		best.add(result);
+        	} else if (RankedResult.WORST_FIRST.compare(result, best.peek()) > 0) {
+        		best.poll();
+        		best.add(result);
+        	}
+        }
+        if (best.size() < candidateNodePatientsToReturn.size()) {
+        	logger.info("returning the best {} of {} matches", best.size(), candidateNodePatientsToReturn.size());
+        }
+        /**
+         * sort by score, best first. Equal scores stay in the order they were scored
+         */
+        List<MatchmakerResult> results = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+        	results.add(best.poll().result);
+        }
+        Collections.reverse(results);
+
+        logger.info("Matches for patient: {}", queryPatient.getId());
+        results.forEach(matchmakerResult ->
+                logger.info("{}-{}: {}", queryPatient.getId(), matchmakerResult.getPatient().getId(), matchmakerResult.getScore()));
+
+        return results;
+    }
+
+    
+    
+    
+    /**
+     * Scores the query patient against the node patients in the range [from, to) of this list
+     *
+     * @param queryPatient a patient to match on
+     * @param phenotypeSimilarityScorer a phenotype scorer built for the query patient
+     * @param populationFrequencies population frequencies prefetched for these patients, or null
+     * @param patients node patients
+     * @param from index of the first node patient to score
+     * @param to index after the last node patient to score
+     * @param requester the thread the match was asked for on, checked for an interrupt before each
+     *                  node patient, since parallel scoring runs on other threads
+     * @return the patients to return and the count of good genotype matches in that range
+     * @throws CancellationException if the requester was interrupted, as when its request was given up on
+     */
+    private ScoredCandidates scoreCandidates(Patient queryPatient, PhenotypeSimilarityScorer phenotypeSimilarityScorer, PopulationFrequencyProvider populationFrequencies, List<Patient> patients, int from, int to, Thread requester) {
+        ScoredCandidates scoredCandidates = new ScoredCandidates();
         //compare every patient in matchbox pairwise with the query patient, and when a gene-match happens, put it
         //aside to return. Keep the others aside for scoring probabilities. Each patient gets a separate phenotype
         //and a base genotype (using gnomad) score
-        for (Patient nodePatient : patients) {
-            GenotypeSimilarityScore genotypeSimilarityScore = genotypeSimilarityService.scoreGenotypes(queryPatient, nodePatient);
+        for (Patient nodePatient : patients.subList(from, to)) {
+            if (requester.isInterrupted()) {
+                throw new CancellationException("stopped scoring query patient " + queryPatient.getId() + ", the match was given up on");
+            }
+            GenotypeSimilarityScore genotypeSimilarityScore = genotypeSimilarityService.scoreGenotypes(queryPatient, nodePatient, populationFrequencies);
             PhenotypeSimilarityScore phenotypeSimilarityScore = phenotypeSimilarityScorer.scorePhenotypes(queryPatient, nodePatient);
             
             double genotypeScore = genotypeSimilarityScore.getScore();
@@ -86,7 +234,7 @@ public List<MatchmakerResult> match(Patient queryPatient, List<Patient> patients
              */
             if (this.ALLOW_NO_GENE_IN_COMMON_PHENOTYPE_MATCHES || queryPatient.getGenomicFeatures().isEmpty()){
             	if (genotypeSimilarityScore.hasCommonGene() || phenotypeScore >= MatchServiceImpl.PHENOTYPE_MATCH_THRESHOLD){
-                	candidateNodePatientsToReturn.put(nodePatient, score);
+                	scoredCandidates.candidateNodePatientsToReturn.put(nodePatient, score);
                 }
             }
             else{
@@ -94,7 +242,7 @@ public List<MatchmakerResult> match(Patient queryPatient, List<Patient> patients
             	 * default logic is that we return any query-patient combination with at least one gene in common
             	 */
             	if (genotypeSimilarityScore.hasCommonGene()){
-                	candidateNodePatientsToReturn.put(nodePatient, score);
+                	scoredCandidates.candidateNodePatientsToReturn.put(nodePatient, score);
                 }
             }
             
@@ -105,34 +253,117 @@ public List<MatchmakerResult> match(Patient queryPatient, List<Patient> patients
             				  && (genotypeSimilarityScore.hasAtleastOneGeneInCommonWithSameType()
             				  ||  genotypeSimilarityScore.hasAtleastOneGeneInCommonWithSameZygosity() 
             				  ||  genotypeSimilarityScore.hasAtleastOneGeneInCommonWithSameVariantPosition())){
-            	numPatientsWithGoodGenotypeMatch +=1;
+            	scoredCandidates.numPatientsWithGoodGenotypeMatch +=1;
             }
         }
-        logger.info("number of patients with good a genotypeMatch (without phenotype-only matches) {})", numPatientsWithGoodGenotypeMatch );
+        return scoredCandidates;
+    }
 
-        for (Patient localNodePatient : candidateNodePatientsToReturn.keySet()){
-        	results.add(new MatchmakerResult(calculateMatchScore(candidateNodePatientsToReturn.get(localNodePatient),
-        														 numPatientsWithGoodGenotypeMatch, 
-        														 patients.size()),
-        				localNodePatient));
-        	}
-        /**
-         * sort by score
-         */
-        results.sort(Comparator.comparingDouble(object -> {
-            MatchmakerResult matchmakerResult = (MatchmakerResult) object;
-            return matchmakerResult.getScore().get("patient");
-        }).reversed());
 
-        logger.info("Matches for patient: {}", queryPatient.getId());
-        results.forEach(matchmakerResult ->
-                logger.info("{}-{}: {}", queryPatient.getId(), matchmakerResult.getPatient().getId(), matchmakerResult.getScore()));
+    /**
+     * Parallel scoring is only worth the hand-off when there is more than one partition of patients
+     */
+    private boolean isParallelScoringUsed(List<Patient> patients) {
+        return this.parallelScoring && patients.size() > this.partitionSize;
+    }
 
-        return results;
+
+    /**
+     * Lazily starts the pool used for parallel scoring
+     */
+    private synchronized ForkJoinPool getScoringPool() {
+        if (this.scoringPool == null) {
+            int poolSize = this.parallelScoringPoolSize > 0 ? this.parallelScoringPoolSize : Runtime.getRuntime().availableProcessors();
+            logger.info("starting a pool of {} threads for parallel match scoring", poolSize);
+            this.scoringPool = new ForkJoinPool(poolSize);
+        }
+        return this.scoringPool;
+    }
+
+
+    @PreDestroy
+    public synchronized void shutdownScoringPool() {
+        if (this.scoringPool != null) {
+            this.scoringPool.shutdown();
+            this.scoringPool = null;
+        }
+    }
+
+
+    /**
+     * Patients to return, in the order they were scored, along with the number of patients
+     * that had a good genotype match. Merging the results of neighbouring partitions, left
+     * then right, gives exactly what scoring the whole range in one pass would give.
+     */
+    private static class ScoredCandidates {
+        private int numPatientsWithGoodGenotypeMatch = 0;
+        private final Map<Patient,Map<String,Double>> candidateNodePatientsToReturn = new LinkedHashMap<>();
+
+        private ScoredCandidates merge(ScoredCandidates right) {
+            this.numPatientsWithGoodGenotypeMatch += right.numPatientsWithGoodGenotypeMatch;
+            this.candidateNodePatientsToReturn.putAll(right.candidateNodePatientsToReturn);
+            return this;
+        }
+    }
+
+
+    /**
+     * A result and the order it was scored in, to break ties between equal scores
+     */
+    private static class RankedResult {
+        private static final Comparator<RankedResult> WORST_FIRST = Comparator
+                .comparingDouble((RankedResult ranked) -> ranked.score)
+                .thenComparing(Comparator.comparingInt((RankedResult ranked) -> ranked.scoredOrder).reversed());
+
+        private final MatchmakerResult result;
+        private final double score;
+        private final int scoredOrder;
+
+        private RankedResult(MatchmakerResult result, int scoredOrder) {
+            this.result = result;
+            this.score = result.getScore().get("patient");
+            this.scoredOrder = scoredOrder;
+        }
+    }
+
+
+    /**
+     * Splits a range of node patients in half until it is no larger than the partition size,
+     * scores each partition, then merges the partitions back in order.
+     */
+    private class CandidateScoringTask extends RecursiveTask<ScoredCandidates> {
+        private final Patient queryPatient;
+        private final PhenotypeSimilarityScorer phenotypeSimilarityScorer;
+        private final PopulationFrequencyProvider populationFrequencies;
+        private final List<Patient> patients;
+        private final int from;
+        private final int to;
+        private final Thread requester;
+
+        CandidateScoringTask(Patient queryPatient, PhenotypeSimilarityScorer phenotypeSimilarityScorer, PopulationFrequencyProvider populationFrequencies, List<Patient> patients, int from, int to, Thread requester) {
+            this.queryPatient = queryPatient;
+            this.phenotypeSimilarityScorer = phenotypeSimilarityScorer;
+            this.populationFrequencies = populationFrequencies;
+            this.patients = patients;
+            this.from = from;
+            this.to = to;
+            this.requester = requester;
+        }
+
+        @Override
+        protected ScoredCandidates compute() {
+            if (to - from <= Math.max(1, partitionSize)) {
+                return scoreCandidates(queryPatient, phenotypeSimilarityScorer, populationFrequencies, patients, from, to, requester);
+            }
+            int middle = from + (to - from) / 2;
+            CandidateScoringTask left = new CandidateScoringTask(queryPatient, phenotypeSimilarityScorer, populationFrequencies, patients, from, middle, requester);
+            CandidateScoringTask right = new CandidateScoringTask(queryPatient, phenotypeSimilarityScorer, populationFrequencies, patients, middle, to, requester);
+            left.fork();
+            ScoredCandidates rightScored = right.compute();
+            return left.join().merge(rightScored);
+        }
     }
 
-    
-    
     
     /**
      * Merges the phenotype and genotype scores and uses matchbox as a disease population proxy
@@ -181,6 +412,18 @@ public boolean getALLOW_NO_GENE_IN_COMMON_PHENOTYPE_MATCHES() {
 	public void setALLOW_NO_GENE_IN_COMMON_PHENOTYPE_MATCHES(String aLLOW_NO_GENE_IN_COMMON_PHENOTYPE_MATCHES) {
 		ALLOW_NO_GENE_IN_COMMON_PHENOTYPE_MATCHES = Boolean.valueOf(ALLOW_NO_GENE_IN_COMMON_PHENOTYPE_MATCHES);
 	}
+
+	/**
+	 * @param parallelScoring true to score node patients in parallel
+	 * @param poolSize number of threads to use, 0 for one per available processor
+	 * @param partitionSize largest number of node patients scored as one unit of work
+	 */
+	public synchronized void setParallelScoring(boolean parallelScoring, int poolSize, int partitionSize) {
+		this.shutdownScoringPool();
+		this.parallelScoring = parallelScoring;
+		this.parallelScoringPoolSize = poolSize;
+		this.partitionSize = partitionSize;
+	}
     
     
     
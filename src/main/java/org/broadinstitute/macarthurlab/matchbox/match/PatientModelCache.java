@@ -0,0 +1,138 @@
+/**
+ * The phenotype models of the patients in this node
+ */
+package org.broadinstitute.macarthurlab.matchbox.match;
+
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientCacheListener;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.monarchinitiative.exomiser.core.phenotype.Model;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Built when a patient is saved to the cache, so a search scores the same model for a node
+ * patient every time instead of building one per query. A model is only handed out for the
+ * patient instance it was built from; any other patient, such as a query patient, gets a new
+ * model. In low-memory mode the patients are read again for every search, so nothing is kept.
+ *
+ * @author harindra
+ */
+@Component
+public class PatientModelCache implements PatientCacheListener {
+
+    /**
+     * Patient ID to the model built from it
+     */
+    private final Map<String, CachedModel> models = new ConcurrentHashMap<>();
+
+    /**
+     * Keep nothing, node patients are not the same instances from one search to the next
+     */
+    @Value("${matchbox.low-memory.enabled:false}")
+    private boolean lowMemory;
+
+    /**
+     * @param patient a patient to score
+     * @return the model kept for this patient, or a new one if none was kept
+     */
+    public Model getModel(Patient patient) {
+        CachedModel cached = this.models.get(patient.getId());
+        if (cached != null && cached.patient == patient) {
+            return cached.model;
+        }
+        return toModel(patient);
+    }
+
+    @Override
+    public void patientsReloaded(PatientSnapshot snapshot) {
+        this.models.clear();
+        for (Patient patient : snapshot.getPatients()) {
+            this.patientSaved(patient);
+        }
+    }
+
+    @Override
+    public void patientSaved(Patient patient) {
+        if (this.lowMemory) {
+            return;
+        }
+        this.models.put(patient.getId(), new CachedModel(patient, toModel(patient)));
+    }
+
+    @Override
+    public void patientDeleted(String patientId) {
+        this.models.remove(patientId);
+    }
+
+    /**
+     * @param lowMemory true to keep no models
+     */
+    public void setLowMemory(boolean lowMemory) {
+        this.lowMemory = lowMemory;
+    }
+
+    private static Model toModel(Patient patient) {
+        List<String> phenotypes = PhenotypeSimilarityService.getObservedPhenotypeIds(patient);
+        return new PatientModel(patient.getId(), phenotypes);
+    }
+
+    private static final class CachedModel {
+
+        private final Patient patient;
+        private final Model model;
+
+        CachedModel(Patient patient, Model model) {
+            this.patient = patient;
+            this.model = model;
+        }
+    }
+
+    private static final class PatientModel implements Model {
+
+        private final String id;
+        private final List<String> phenotypes;
+
+        PatientModel(String id, List<String> phenotypes) {
+            this.id = id;
+            this.phenotypes = phenotypes;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public List<String> getPhenotypeIds() {
+            return phenotypes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PatientModel that = (PatientModel) o;
+            return Objects.equals(id, that.id) &&
+                    Objects.equals(phenotypes, that.phenotypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, phenotypes);
+        }
+
+        @Override
+        public String toString() {
+            return "PatientModel{" +
+                    "id='" + id + '\'' +
+                    ", phenotypes=" + phenotypes +
+                    '}';
+        }
+    }
+}
@@ -9,8 +9,6 @@
 import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
 
 /**
  * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
@@ -21,8 +19,18 @@ public class PhenotypeSimilarityScorerImpl implements PhenotypeSimilarityScorer
 
     private final ModelScorer phenotypeModelScorer;
 
+    private final PatientModelCache patientModelCache;
+
     public PhenotypeSimilarityScorerImpl(ModelScorer phenotypeModelScorer) {
+        this(phenotypeModelScorer, new PatientModelCache());
+    }
+
+    /**
+     * @param patientModelCache where the models of node patients are kept between queries
+     */
+    public PhenotypeSimilarityScorerImpl(ModelScorer phenotypeModelScorer, PatientModelCache patientModelCache) {
         this.phenotypeModelScorer = phenotypeModelScorer;
+        this.patientModelCache = patientModelCache;
     }
 
     @Override
@@ -32,57 +40,9 @@ public PhenotypeSimilarityScore scorePhenotypes(Patient queryPatient, Patient no
             return new PhenotypeSimilarityScore(0.6, Collections.emptyList());
         }
 
-        PatientModel nodePatientModel = toModel(nodePatient);
+        Model nodePatientModel = this.patientModelCache.getModel(nodePatient);
         ModelPhenotypeMatch modelPhenotypeMatch = phenotypeModelScorer.scoreModel(nodePatientModel);
         logger.debug("{}-{} phenotype similarity score = {}", queryPatient.getId(), nodePatient.getId(), modelPhenotypeMatch.getScore());
         return new PhenotypeSimilarityScore(modelPhenotypeMatch.getScore(), Collections.emptyList());
     }
-
-    private PatientModel toModel(Patient patient) {
-        List<String> phenotypes = PhenotypeSimilarityService.getObservedPhenotypeIds(patient);
-        return new PatientModel(patient.getId(), phenotypes);
-    }
-
-    private class PatientModel implements Model {
-
-        private final String id;
-        private final List<String> phenotypes;
-
-        PatientModel(String id, List<String> phenotypes) {
-            this.id = id;
-            this.phenotypes = phenotypes;
-        }
-
-        @Override
-        public String getId() {
-            return id;
-        }
-
-        @Override
-        public List<String> getPhenotypeIds() {
-            return phenotypes;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            PatientModel that = (PatientModel) o;
-            return Objects.equals(id, that.id) &&
-                    Objects.equals(phenotypes, that.phenotypes);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(id, phenotypes);
-        }
-
-        @Override
-        public String toString() {
-            return "PatientModel{" +
-                    "id='" + id + '\'' +
-                    ", phenotypes=" + phenotypes +
-                    '}';
-        }
-    }
 }
@@ -4,12 +4,9 @@
 package org.broadinstitute.macarthurlab.matchbox.match;
 
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
-import org.broadinstitute.macarthurlab.matchbox.entities.PhenotypeFeature;
 
 import java.util.List;
 
-import static java.util.stream.Collectors.toList;
-
 /**
  * @author harindra
  * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
@@ -18,10 +15,10 @@ public interface PhenotypeSimilarityService {
 
     public PhenotypeSimilarityScorer buildPhenotypeSimilarityScorer(Patient patient);
 
+	/**
+	 * Worked out once per patient, and kept with it
+	 */
 	public static List<String> getObservedPhenotypeIds(Patient patient) {
-		return patient.getFeatures().stream()
-				.filter(phenotypeFeature -> "yes".equals(phenotypeFeature.getObserved()))
-				.map(PhenotypeFeature::getId)
-				.collect(toList());
+		return patient.getObservedPhenotypeIds();
 	}
 }
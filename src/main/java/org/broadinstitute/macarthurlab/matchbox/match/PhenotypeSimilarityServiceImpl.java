@@ -2,6 +2,7 @@
 
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
 import org.monarchinitiative.exomiser.core.phenotype.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -14,6 +15,12 @@ public class PhenotypeSimilarityServiceImpl implements PhenotypeSimilarityServic
 
     private final PhenotypeMatchService phenotypeMatchService;
 
+    /**
+     * Models of the node patients, kept between queries
+     */
+    @Autowired
+    private PatientModelCache patientModelCache = new PatientModelCache();
+
     public PhenotypeSimilarityServiceImpl(PhenotypeMatchService phenotypeMatchService) {
         this.phenotypeMatchService = phenotypeMatchService;
     }
@@ -21,7 +28,14 @@ public PhenotypeSimilarityServiceImpl(PhenotypeMatchService phenotypeMatchServic
     @Override
     public PhenotypeSimilarityScorer buildPhenotypeSimilarityScorer(Patient patient) {
         ModelScorer modelScorer = setUpModelScorer(patient);
-        return new PhenotypeSimilarityScorerImpl(modelScorer);
+        return new PhenotypeSimilarityScorerImpl(modelScorer, this.patientModelCache);
+    }
+
+    /**
+     * @param patientModelCache models of the node patients, kept between queries
+     */
+    public void setPatientModelCache(PatientModelCache patientModelCache) {
+        this.patientModelCache = patientModelCache;
     }
 
     private ModelScorer setUpModelScorer(Patient patient) {
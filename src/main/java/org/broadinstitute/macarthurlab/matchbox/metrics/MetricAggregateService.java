@@ -0,0 +1,29 @@
+/**
+ * Keeps the counts behind the metrics up to date as patients and match queries come in
+ */
+package org.broadinstitute.macarthurlab.matchbox.metrics;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalMatchQuery;
+import org.broadinstitute.macarthurlab.matchbox.entities.PrivilegedMetric;
+import org.broadinstitute.macarthurlab.matchbox.entities.PublicMetric;
+
+/**
+ * @author harindra
+ */
+public interface MetricAggregateService {
+
+    /**
+     * @return the counts as they are now, without any per-patient or per-query work
+     */
+    public PublicMetric getPublicMetric();
+
+    /**
+     * @return the counts as they are now, with a copy of the per gene and per phenotype counts
+     */
+    public PrivilegedMetric getPrivilegedMetric();
+
+    /**
+     * Must be called once for each match query recorded
+     */
+    public void matchQuerySaved(ExternalMatchQuery externalMatchQuery);
+}
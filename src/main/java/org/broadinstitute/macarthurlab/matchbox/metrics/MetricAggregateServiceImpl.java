@@ -0,0 +1,330 @@
+/**
+ * In-memory counts behind the /metrics end points
+ */
+package org.broadinstitute.macarthurlab.matchbox.metrics;
+
+import com.mongodb.DBObject;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientCacheListener;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalMatchQuery;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.entities.PrivilegedMetric;
+import org.broadinstitute.macarthurlab.matchbox.entities.PublicMetric;
+import org.broadinstitute.macarthurlab.matchbox.match.GeneIdentifierResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.unwind;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * The patient counts follow the patient cache, and the match query counts are aggregated by
+ * MongoDB once at start up and then added to as each match query is recorded. Reading the
+ * metrics is then a matter of copying out the counts, rather than going over every patient
+ * and every match query ever made.
+ *
+ * @author harindra
+ */
+@Service
+public class MetricAggregateServiceImpl implements MetricAggregateService, PatientCacheListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricAggregateServiceImpl.class);
+
+    @Autowired
+    private MongoOperations operator;
+
+    private final GeneIdentifierResolver geneIdentifierResolver;
+
+    /**
+     * What was counted for each patient so far, so a replaced or deleted patient can be taken off
+     * the counts. Only what is counted is kept, not the patient, as in low-memory mode these are
+     * the only copies of the patients held.
+     */
+    private final Map<String, CountedPatient> countedPatients = new HashMap<>();
+
+    /**
+     * Gene ID, as given, to the number of genomic features naming it
+     */
+    private final Map<String, Integer> geneCounts = new HashMap<>();
+
+    /**
+     * HPO term ID to the number of features naming it
+     */
+    private final Map<String, Integer> phenotypeCounts = new HashMap<>();
+
+    /**
+     * Contact name to the number of patients submitted under it
+     */
+    private final Map<String, Integer> submitterCounts = new HashMap<>();
+
+    private int numberOfCasesWithDiagnosis;
+    private long numberOfGenomicFeatures;
+    private long numberOfVariants;
+    private long numberOfFeatures;
+
+    private long numberOfRequestsReceived;
+
+    /**
+     * IDs of the incoming query patients that were sent back at least one match
+     */
+    private final Set<String> matchedQueryPatientIds = new HashSet<>();
+
+    /**
+     * Ensembl IDs of the genes of every patient sent back as a match
+     */
+    private final Set<String> matchedEnsemblIds = new HashSet<>();
+
+    /**
+     * Constructor
+     */
+    @Autowired
+    public MetricAggregateServiceImpl(GeneIdentifierResolver geneIdentifierResolver) {
+        this.geneIdentifierResolver = geneIdentifierResolver;
+    }
+
+    /**
+     * Counts the match queries already in the database. The database does the counting, so only
+     * the number of queries and the distinct matched query and gene IDs are sent back, rather than
+     * every query with the full copies of the patients in it.
+     * <p>
+     * The patient counts, including the cases with a diagnosis that used to be a $where query, are
+     * not aggregated here. They are built from the patients the patient cache hands its listeners
+     * at start up, and what was counted for each patient is kept so it can be taken off again when
+     * that patient is replaced or deleted, which a one-off aggregate would not allow.
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            this.operator.indexOps(ExternalMatchQuery.class).ensureIndex(new Index().on("matchFound", Sort.Direction.ASC));
+            String collection = this.operator.getCollectionName(ExternalMatchQuery.class);
+            long requests = this.operator.count(new Query(), collection);
+            List<String> queryPatientIds = this.groupIds(newAggregation(
+                    match(where("matchFound").is(true).and("results.0").exists(true)),
+                    group("incomingQuery._id")), collection);
+            List<String> geneIds = this.groupIds(newAggregation(
+                    match(where("matchFound").is(true)),
+                    unwind("results"),
+                    unwind("results.patient.genomicFeatures"),
+                    group("results.patient.genomicFeatures.gene.id")), collection);
+            this.matchQueriesCounted(requests, queryPatientIds, geneIds);
+            logger.info("metrics counted {} match queries", requests);
+        } catch (Exception e) {
+            logger.error("unable to count the match queries in the database, match metrics will only count new ones: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs an aggregation that groups on a single field
+     * @return the value grouped on, for each group
+     */
+    private List<String> groupIds(Aggregation aggregation, String collection) {
+        List<String> ids = new ArrayList<>();
+        for (DBObject group : this.operator.aggregate(aggregation, collection, DBObject.class)) {
+            if (group.get("_id") != null) {
+                ids.add(group.get("_id").toString());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Adds match queries counted elsewhere, such as by the database
+     */
+    synchronized void matchQueriesCounted(long requests, Collection<String> queryPatientIds, Collection<String> geneIds) {
+        this.numberOfRequestsReceived += requests;
+        this.matchedQueryPatientIds.addAll(queryPatientIds);
+        for (String geneId : geneIds) {
+            String ensemblId = this.geneIdentifierResolver.toEnsemblId(geneId);
+            if (!GeneIdentifierResolver.UNKNOWN.equals(ensemblId)) {
+                this.matchedEnsemblIds.add(ensemblId);
+            }
+        }
+    }
+
+    @Override
+    public synchronized PublicMetric getPublicMetric() {
+        int numberOfCases = this.countedPatients.size();
+        return new PublicMetric(
+                this.submitterCounts.size(),
+                this.geneCounts.size(),
+                this.phenotypeCounts.size(),
+                this.numberOfCasesWithDiagnosis,
+                numberOfCases,
+                this.getPercentageOfGenesThatMatch(),
+                (double) this.numberOfGenomicFeatures / (double) numberOfCases,
+                (double) this.numberOfVariants / (double) numberOfCases,
+                (double) this.numberOfFeatures / (double) numberOfCases,
+                (int) this.numberOfRequestsReceived,
+                this.matchedQueryPatientIds.size());
+    }
+
+    @Override
+    public synchronized PrivilegedMetric getPrivilegedMetric() {
+        int numberOfCases = this.countedPatients.size();
+        return new PrivilegedMetric(
+                this.submitterCounts.size(),
+                this.geneCounts.size(),
+                this.phenotypeCounts.size(),
+                this.numberOfCasesWithDiagnosis,
+                numberOfCases,
+                this.getPercentageOfGenesThatMatch(),
+                (double) this.numberOfGenomicFeatures / (double) numberOfCases,
+                (double) this.numberOfVariants / (double) numberOfCases,
+                (double) this.numberOfFeatures / (double) numberOfCases,
+                (int) this.numberOfRequestsReceived,
+                this.matchedQueryPatientIds.size(),
+                new HashMap<>(this.geneCounts),
+                new HashMap<>(this.phenotypeCounts));
+    }
+
+    private double getPercentageOfGenesThatMatch() {
+        return (double) this.matchedEnsemblIds.size() / (double) this.geneCounts.size();
+    }
+
+    @Override
+    public synchronized void matchQuerySaved(ExternalMatchQuery externalMatchQuery) {
+        this.numberOfRequestsReceived++;
+        if (externalMatchQuery.getResults() == null) {
+            return;
+        }
+        if (externalMatchQuery.isMatchFound() && externalMatchQuery.getIncomingQuery() != null
+                && !externalMatchQuery.getResults().isEmpty()) {
+            this.matchedQueryPatientIds.add(externalMatchQuery.getIncomingQuery().getId());
+        }
+        for (MatchmakerResult result : externalMatchQuery.getResults()) {
+            for (GenomicFeature genomicFeature : result.getPatient().getGenomicFeatures()) {
+                String ensemblId = this.geneIdentifierResolver.toEnsemblId(genomicFeature);
+                if (!GeneIdentifierResolver.UNKNOWN.equals(ensemblId)) {
+                    this.matchedEnsemblIds.add(ensemblId);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void patientsReloaded(PatientSnapshot snapshot) {
+        this.countedPatients.clear();
+        this.geneCounts.clear();
+        this.phenotypeCounts.clear();
+        this.submitterCounts.clear();
+        this.numberOfCasesWithDiagnosis = 0;
+        this.numberOfGenomicFeatures = 0;
+        this.numberOfVariants = 0;
+        this.numberOfFeatures = 0;
+        for (Patient patient : snapshot.getPatients()) {
+            this.count(patient);
+        }
+    }
+
+    @Override
+    public synchronized void patientSaved(Patient patient) {
+        this.patientDeleted(patient.getId());
+        this.count(patient);
+    }
+
+    @Override
+    public synchronized void patientDeleted(String patientId) {
+        CountedPatient counted = this.countedPatients.remove(patientId);
+        if (counted != null) {
+            this.count(counted, -1);
+        }
+    }
+
+    /**
+     * Adds a patient to the counts
+     */
+    private void count(Patient patient) {
+        CountedPatient counted = new CountedPatient(patient);
+        this.countedPatients.put(patient.getId(), counted);
+        this.count(counted, 1);
+    }
+
+    /**
+     * Adds what was counted for a patient to the counts, or takes it off with a sign of -1
+     */
+    private void count(CountedPatient counted, int sign) {
+        add(this.submitterCounts, counted.submitter, sign);
+        if (counted.hasDiagnosis) {
+            this.numberOfCasesWithDiagnosis += sign;
+        }
+        for (String geneId : counted.geneIds) {
+            add(this.geneCounts, geneId, sign);
+        }
+        this.numberOfGenomicFeatures += sign * counted.geneIds.length;
+        this.numberOfVariants += sign * counted.numberOfVariants;
+        for (String phenotypeId : counted.phenotypeIds) {
+            add(this.phenotypeCounts, phenotypeId, sign);
+        }
+        this.numberOfFeatures += sign * counted.phenotypeIds.length;
+    }
+
+    /**
+     * Adds to a count, dropping it once it reaches 0 so only things still present are counted
+     */
+    private static void add(Map<String, Integer> counts, String key, int sign) {
+        int count = counts.getOrDefault(key, 0) + sign;
+        if (count > 0) {
+            counts.put(key, count);
+        } else {
+            counts.remove(key);
+        }
+    }
+
+    /**
+     * The parts of a patient that are counted
+     */
+    private static final class CountedPatient {
+        private final String submitter;
+        private final boolean hasDiagnosis;
+        private final String[] geneIds;
+        private final int numberOfVariants;
+        private final String[] phenotypeIds;
+
+        private CountedPatient(Patient patient) {
+            this.submitter = patient.getContact().get("name");
+            this.hasDiagnosis = patient.getDisorders() != null && !patient.getDisorders().isEmpty();
+            this.geneIds = new String[patient.getGenomicFeatures().size()];
+            int variants = 0;
+            for (int i = 0; i < this.geneIds.length; i++) {
+                GenomicFeature genomicFeature = patient.getGenomicFeatures().get(i);
+                this.geneIds[i] = genomicFeature.getGene().get("id");
+                if (!genomicFeature.getVariant().isUnPopulated()) {
+                    variants++;
+                }
+            }
+            this.numberOfVariants = variants;
+            this.phenotypeIds = new String[patient.getFeatures().size()];
+            for (int i = 0; i < this.phenotypeIds.length; i++) {
+                this.phenotypeIds[i] = patient.getFeatures().get(i).getId();
+            }
+        }
+    }
+
+    /**
+     * @param operator the operator to set
+     */
+    public void setOperator(MongoOperations operator) {
+        this.operator = operator;
+    }
+}
@@ -4,17 +4,10 @@
 package org.broadinstitute.macarthurlab.matchbox.metrics;
 
 
-import org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb.PatientMongoRepository;
 import org.broadinstitute.macarthurlab.matchbox.entities.Metric;
-import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
 import org.broadinstitute.macarthurlab.matchbox.entities.PrivilegedMetric;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.mongodb.core.MongoOperations;
-import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-
 /**
  * @author harindra
  *
@@ -36,24 +29,7 @@ public PrivilegedMetric getMetricsTEMP() {
 	 * Returns a seiries of metric as JSON
 	 */
 	public Metric getMetrics() {	
-		StringBuilder query = new StringBuilder("{}");
-		BasicQuery q = new BasicQuery(query.toString());
-		List<Patient> allPatients = operator.find(q,Patient.class);
-
-		return new PrivilegedMetric(
-								this.getNumberOfSubmitters(allPatients), 
-								this.countGenesInSystem(allPatients).size(), 
-								this.countPhenotypesInSystem(allPatients).size(),
-								this.getNumberOfCasesWithDiagnosis(), 
-								this.getNumOfPatientsInSystem(allPatients), 
-								this.getPercentageOfGenesThatMatch(allPatients),
-								this.getMeanNumberOfGenesPerCase(allPatients), 
-								this.getMeanNumberOfVariantsPerCase(allPatients), 
-								this.getMeanNumberOfPhenotypesPerCase(allPatients),
-								this.getNumOfIncomingMatchRequests(), 
-								this.getNumOfMatches(),
-								this.countGenesInSystem(allPatients),
-								this.countPhenotypesInSystem(allPatients));
+		return metricAggregateService.getPrivilegedMetric();
 	}
 }
 
@@ -3,23 +3,28 @@
  */
 package org.broadinstitute.macarthurlab.matchbox.network;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
 import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
 import org.broadinstitute.macarthurlab.matchbox.entities.Node;
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.search.PatientParseException;
 import org.broadinstitute.macarthurlab.matchbox.search.PatientRecordUtility;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
-import javax.net.ssl.HttpsURLConnection;
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -38,12 +43,35 @@ public class Communication {
 	 * A set of tools to parse and store patient information
 	 */
 	private PatientRecordUtility patientUtility;
+	
+	/**
+	 * Shared, pooled client for all outbound calls
+	 */
+	private final CloseableHttpClient httpClient;
+	
+	/**
+	 * Pooled client that accepts self signed certificates, ONLY for nodes configured as such
+	 */
+	private final CloseableHttpClient selfSignedCertificateHttpClient;
 
 	/**
-	 * Default constructor
+	 * Default constructor, builds its own clients with the default limits and timeouts
 	 */
 	public Communication(){
-		patientUtility = new PatientRecordUtility();
+		this(PooledHttpClients.createDefault(false), PooledHttpClients.createDefault(true));
+	}
+	
+	/**
+	 * Constructor
+	 * @param httpClient	client for all outbound calls
+	 * @param selfSignedCertificateHttpClient	client for nodes with self signed certificates
+	 */
+	@Autowired
+	public Communication(@Qualifier("httpClient") CloseableHttpClient httpClient,
+						 @Qualifier("selfSignedCertificateHttpClient") CloseableHttpClient selfSignedCertificateHttpClient){
+		this.patientUtility = new PatientRecordUtility();
+		this.httpClient = httpClient;
+		this.selfSignedCertificateHttpClient = selfSignedCertificateHttpClient;
 	}
 	
 	/**
@@ -53,87 +81,74 @@ public Communication(){
 	 * @return	results found
 	 */
 	public List<MatchmakerResult> callNode(Node matchmakerNode, Patient queryPatient) {
-		List<MatchmakerResult> allResults = new ArrayList<MatchmakerResult>();
-		HttpsURLConnection connection = null;  
 		try {
-		    //Create connection
-		    URL url = new URL(null,matchmakerNode.getUrl(),new sun.net.www.protocol.https.Handler());
-		    connection = (HttpsURLConnection)url.openConnection();
-
-		    if (matchmakerNode.isSelfSignedCertificate()){
-		    	CertificateAdjustment.install();
-		    	CertificateAdjustment.relaxHostChecking(connection);
-		    }
-		    
-		    connection.setRequestMethod("POST");
-		    
-		    //node specific attributes
-		    connection.setRequestProperty("X-Auth-Token",matchmakerNode.getToken());
-		    connection.setRequestProperty("Content-Type",matchmakerNode.getContentTypeHeader());
-		    connection.setRequestProperty("Accept",matchmakerNode.getAcceptHeader());
-		    connection.setRequestProperty("Content-Language",matchmakerNode.getContentLanguage());  	 
-		    		    
-		    connection.setUseCaches(false);
-		    connection.setDoOutput(true);	    
-		    
-		    StringBuilder payloadBuilder = new StringBuilder();
-		    payloadBuilder.append("{\"patient\":");
-		    payloadBuilder.append(queryPatient.getEmptyFieldsRemovedJson());
-		    payloadBuilder.append(",");
-		    payloadBuilder.append("\"_disclaimer\":");
-		    payloadBuilder.append("\"" + patientUtility.getDisclaimer() + "\"");
-		    payloadBuilder.append("}");
-		    
-		    //logger.info("patient being sent out to external MME node: "+payloadBuilder.toString());
-		    logger.info("patient being sent out to external MME node: "+matchmakerNode.getName());
-		    DataOutputStream wr = new DataOutputStream (connection.getOutputStream());
-		    wr.writeBytes(payloadBuilder.toString());
-		    wr.close();
-
-		    //Get Response  
-		    java.io.InputStream is = connection.getInputStream();
-		    BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-		    StringBuilder response = new StringBuilder(); 
-		    String line;
-		    while((line = rd.readLine()) != null) {
-		      response.append(line);
-		      response.append('\r');
-		    }
-		    rd.close();
-		    JSONParser parser = new JSONParser();
-		    logger.info("response back from external node: "+response.toString());
-		    JSONObject resultJsonObject = (JSONObject) parser.parse(response.toString());
-
-		    JSONArray  results = (JSONArray)resultJsonObject.get("results");
-		    logger.info("number of results from to external MME node "+matchmakerNode.getName() + " is: " + Integer.toString(results.size()));
-		    for (int i=0; i<results.size(); i++){
-				JSONObject result = (JSONObject)results.get(i);
-				
-				
-				boolean inputDataValid = patientUtility.areAllRequiredFieldsPresent(result.toString());
-				if (inputDataValid) {
-					//parse out patient data
-					Patient parsedPatient = patientUtility.parsePatientInformation(result.toString());
-					
-					//parse out score data
-					HashMap<String, Double> extMathscore = new HashMap<String, Double>();
-					JSONObject score = (JSONObject)result.get("score");
-					extMathscore.put("patient", ((Number)score.get("patient")).doubleValue());
-					
-					allResults.add(new MatchmakerResult(extMathscore,parsedPatient));
-				} else {
-					logger.error("error parsing patient from external source (required fields missing):"+
-													matchmakerNode.getName() + " : " + result);
-				}
-				
-		    }		 
-		  } catch (Exception e) {
-			  logger.error("error connecting to: " + matchmakerNode.getName() + ", moving on.. : "+e);    
-		  } finally {
-		    if(connection != null) {
-		      connection.disconnect(); 
-		    }
-		  }
+			return this.queryNode(matchmakerNode, queryPatient);
+		} catch (Exception e) {
+			logger.error("error connecting to: " + matchmakerNode.getName() + ", moving on.. : "+e);
+			return new ArrayList<MatchmakerResult>();
+		}
+	}
+	
+	
+	/**
+	 * Makes a call to an external node, and lets the caller decide what to do when it fails
+	 * @param matchmakerNode	An external MME node
+	 * @param queryPatient	A patient to query with
+	 * @return	results found
+	 * @throws Exception if the node can't be reached or its reply can't be read
+	 */
+	public List<MatchmakerResult> queryNode(Node matchmakerNode, Patient queryPatient) throws Exception {
+		List<MatchmakerResult> allResults = new ArrayList<MatchmakerResult>();
+		HttpPost post = new HttpPost(matchmakerNode.getUrl());
+
+		//node specific attributes
+		post.setHeader("X-Auth-Token",matchmakerNode.getToken());
+		post.setHeader("Content-Type",matchmakerNode.getContentTypeHeader());
+		post.setHeader("Accept",matchmakerNode.getAcceptHeader());
+		post.setHeader("Content-Language",matchmakerNode.getContentLanguage());  	 
+
+		StringBuilder payloadBuilder = new StringBuilder();
+		payloadBuilder.append("{\"patient\":");
+		payloadBuilder.append(queryPatient.getEmptyFieldsRemovedJson());
+		payloadBuilder.append(",");
+		payloadBuilder.append("\"_disclaimer\":");
+		payloadBuilder.append("\"" + patientUtility.getDisclaimer() + "\"");
+		payloadBuilder.append("}");
+
+		//logger.info("patient being sent out to external MME node: "+payloadBuilder.toString());
+		logger.info("patient being sent out to external MME node: "+matchmakerNode.getName());
+		post.setEntity(new StringEntity(payloadBuilder.toString(), StandardCharsets.UTF_8));
+
+		CloseableHttpClient client = matchmakerNode.isSelfSignedCertificate() ? this.selfSignedCertificateHttpClient : this.httpClient;
+		String response = this.execute(client, post);
+		JSONParser parser = new JSONParser();
+		logger.info("response back from external node: "+response);
+		JSONObject resultJsonObject = (JSONObject) parser.parse(response);
+
+		JSONArray  results = (JSONArray)resultJsonObject.get("results");
+		logger.info("number of results from to external MME node "+matchmakerNode.getName() + " is: " + Integer.toString(results.size()));
+		for (int i=0; i<results.size(); i++){
+			JSONObject result = (JSONObject)results.get(i);
+
+
+			//parse out patient data
+			Patient parsedPatient;
+			try {
+				parsedPatient = patientUtility.parsePatient(result.toString());
+			} catch (PatientParseException e) {
+				logger.error("error parsing patient from external source: "+
+												matchmakerNode.getName() + " : " + e.getMessage() + " : " + result);
+				continue;
+			}
+
+			//parse out score data
+			HashMap<String, Double> extMathscore = new HashMap<String, Double>();
+			JSONObject score = (JSONObject)result.get("score");
+			extMathscore.put("patient", ((Number)score.get("patient")).doubleValue());
+
+			allResults.add(new MatchmakerResult(extMathscore,parsedPatient));
+
+		}
 		return allResults;
 	}
 	
@@ -146,43 +161,37 @@ public List<MatchmakerResult> callNode(Node matchmakerNode, Patient queryPatient
 	 * @return	results found
 	 */
 	public String postToNonAuthenticatedHttpUrl(String urlToPost, String dataPayLoad) {
-		HttpURLConnection connection = null;  
-	    StringBuilder response = new StringBuilder();
+		HttpPost post = new HttpPost(urlToPost);
+		post.setHeader("Content-Type","application/json");
+		post.setHeader("Accept","application/json");
+		post.setEntity(new StringEntity(dataPayLoad, StandardCharsets.UTF_8));
 		try {
-		    //Create connection
-		    URL url = new URL(null,urlToPost,new sun.net.www.protocol.http.Handler());
-		    connection = (HttpURLConnection)url.openConnection();
-		    connection.setRequestMethod("POST");	 		    	
-		    connection.setRequestProperty("Content-Type","application/json");
-		    connection.setRequestProperty("Accept","application/json");
-		    connection.setUseCaches(false);
-		    connection.setDoOutput(true);	    
-
-		    //write POST data
 		    logger.info("fetching data from: " + urlToPost);
-		    DataOutputStream wr = new DataOutputStream (connection.getOutputStream());
-		    wr.writeBytes(dataPayLoad);
-		    wr.close();
-
-		    //Get Response  
-		    java.io.InputStream is = connection.getInputStream();
-		    BufferedReader rd = new BufferedReader(new InputStreamReader(is)); 
-		    String line;
-		    while((line = rd.readLine()) != null) {
-		      response.append(line);
-		      response.append('\r');
-		    }
-		    rd.close();
-		 
-		  } catch (Exception e) {
-			  logger.error("error connecting to: {} error: {}", urlToPost,e); 
-
-		  } finally {
-		    if(connection != null) {
-		      connection.disconnect(); 
-		    }
-		  }
-		return response.toString();
+		    return this.execute(this.httpClient, post);
+		} catch (Exception e) {
+			logger.error("error connecting to: {} error: {}", urlToPost,e); 
+			return "";
+		}
+	}
+	
+	
+	/**
+	 * Sends a request and reads the whole reply, handing the connection back to the pool
+	 * @param client	client to send with
+	 * @param post	the request
+	 * @return	the body of the reply
+	 * @throws IOException if the call fails or the reply is not a success
+	 */
+	private String execute(CloseableHttpClient client, HttpPost post) throws IOException {
+		try (CloseableHttpResponse response = client.execute(post)) {
+			HttpEntity entity = response.getEntity();
+			String body = entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+			int statusCode = response.getStatusLine().getStatusCode();
+			if (statusCode >= 400) {
+				throw new IOException("HTTP " + statusCode + " from " + post.getURI());
+			}
+			return body;
+		}
 	}
 	
 }
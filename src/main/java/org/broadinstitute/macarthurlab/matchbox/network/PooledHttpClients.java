@@ -0,0 +1,114 @@
+/**
+ * Builds pooled, keep-alive HTTP clients for calls to other MME nodes and gnomAD
+ */
+package org.broadinstitute.macarthurlab.matchbox.network;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContexts;
+
+import javax.net.ssl.SSLContext;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connections are kept open and reused between calls to the same host, so a TLS handshake
+ * is only done when a new connection is needed. A connection is kept for as long as the server
+ * asks for (Keep-Alive header), but never longer than the configured keep-alive time, and idle
+ * connections are closed in the background.
+ *
+ * @author harindra
+ */
+public final class PooledHttpClients {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 100;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
+    public static final int DEFAULT_READ_TIMEOUT_MS = 30000;
+    public static final int DEFAULT_POOL_ACQUIRE_TIMEOUT_MS = 5000;
+    public static final long DEFAULT_KEEP_ALIVE_MS = 60000;
+
+    private PooledHttpClients() {
+    }
+
+    /**
+     * @param trustSelfSignedCertificates true to accept any certificate and host name, ONLY for trusted staging servers
+     * @return a client with the default limits and timeouts
+     */
+    public static CloseableHttpClient createDefault(boolean trustSelfSignedCertificates) {
+        return create(DEFAULT_MAX_CONNECTIONS,
+                DEFAULT_MAX_CONNECTIONS_PER_ROUTE,
+                DEFAULT_CONNECT_TIMEOUT_MS,
+                DEFAULT_READ_TIMEOUT_MS,
+                DEFAULT_POOL_ACQUIRE_TIMEOUT_MS,
+                DEFAULT_KEEP_ALIVE_MS,
+                trustSelfSignedCertificates);
+    }
+
+    /**
+     * @param maxConnections              most open connections in total
+     * @param maxConnectionsPerRoute      most open connections to one host
+     * @param connectTimeoutMs            how long to wait to connect
+     * @param readTimeoutMs               how long to wait for data once connected
+     * @param poolAcquireTimeoutMs        how long to wait for a free connection from the pool
+     * @param keepAliveMs                 longest an idle connection is kept for reuse
+     * @param trustSelfSignedCertificates true to accept any certificate and host name, ONLY for trusted staging servers
+     * @return a new client, to be closed when no longer needed
+     */
+    public static CloseableHttpClient create(int maxConnections,
+                                             int maxConnectionsPerRoute,
+                                             int connectTimeoutMs,
+                                             int readTimeoutMs,
+                                             int poolAcquireTimeoutMs,
+                                             long keepAliveMs,
+                                             boolean trustSelfSignedCertificates) {
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", trustSelfSignedCertificates ? trustingSocketFactory() : SSLConnectionSocketFactory.getSocketFactory())
+                .build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactories);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        //a pooled connection the server may have closed is checked before it is reused
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .setConnectionRequestTimeout(poolAcquireTimeoutMs)
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMs) : keepAliveMs;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * IMPORTANT NOTE: TO BE ONLY USED WITH TRUSTED STAGING SERVERS AND NOT IN PRODUCTION
+     */
+    private static SSLConnectionSocketFactory trustingSocketFactory() {
+        try {
+            SSLContext sslContext = SSLContexts.custom()
+                    .loadTrustMaterial(null, (chain, authType) -> true)
+                    .build();
+            return new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed setting up all trusting certificate manager.", e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * To represent an index of the genes carried by the patients in this node
+ */
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author harindra
+ */
+public interface GeneIndexService {
+
+    /**
+     * Adds a patient to the index, replacing any earlier entry with the same ID
+     */
+    public void indexPatient(Patient patient);
+
+    /**
+     * Removes a patient from the index
+     */
+    public void removePatient(String patientId);
+
+    /**
+     * Throws away the current index and rebuilds it from these patients
+     */
+    public void rebuild(List<Patient> patients);
+
+    /**
+     * Returns the IDs of the node patients that could make a genotype match with this query patient
+     */
+    public Set<String> findPatientIdsSharingGenes(Patient queryPatient);
+}
@@ -0,0 +1,131 @@
+/**
+ * An in-memory inverted index of Ensembl gene ID to the patients that carry it
+ */
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientCacheListener;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.match.GeneIdentifierResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Gene identifiers are normalized to Ensembl IDs the same way the genotype scorer normalizes
+ * them, so a patient is only returned as a candidate when the genotype scorer would find at
+ * least one gene in common with the query patient. The index follows the patient cache.
+ *
+ * @author harindra
+ */
+@Service
+public class GeneIndexServiceImpl implements GeneIndexService, PatientCacheListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeneIndexServiceImpl.class);
+
+    private final GeneIdentifierResolver geneIdentifierResolver;
+
+    /**
+     * Ensembl gene ID to the IDs of the patients carrying it
+     */
+    private final Map<String, Set<String>> ensemblIdToPatientIds = new HashMap<>();
+
+    /**
+     * Patient ID to the Ensembl gene IDs it was indexed under. Holds every patient
+     * with at least one genomic feature, even if none of its genes could be resolved.
+     */
+    private final Map<String, Set<String>> patientIdToEnsemblIds = new HashMap<>();
+
+    /**
+     * Constructor
+     */
+    @Autowired
+    public GeneIndexServiceImpl(GeneIdentifierResolver geneIdentifierResolver) {
+        this.geneIdentifierResolver = geneIdentifierResolver;
+    }
+
+    @Override
+    public void patientsReloaded(PatientSnapshot snapshot) {
+        this.rebuild(snapshot.getPatients());
+    }
+
+    @Override
+    public void patientSaved(Patient patient) {
+        this.indexPatient(patient);
+    }
+
+    @Override
+    public void patientDeleted(String patientId) {
+        this.removePatient(patientId);
+    }
+
+    @Override
+    public synchronized void indexPatient(Patient patient) {
+        this.removePatient(patient.getId());
+        if (patient.getGenomicFeatures().isEmpty()) {
+            return;
+        }
+        Set<String> ensemblIds = this.toEnsemblIds(patient);
+        this.patientIdToEnsemblIds.put(patient.getId(), ensemblIds);
+        for (String ensemblId : ensemblIds) {
+            this.ensemblIdToPatientIds.computeIfAbsent(ensemblId, k -> new HashSet<>()).add(patient.getId());
+        }
+    }
+
+    @Override
+    public synchronized void removePatient(String patientId) {
+        Set<String> ensemblIds = this.patientIdToEnsemblIds.remove(patientId);
+        if (ensemblIds == null) {
+            return;
+        }
+        for (String ensemblId : ensemblIds) {
+            Set<String> patientIds = this.ensemblIdToPatientIds.get(ensemblId);
+            patientIds.remove(patientId);
+            if (patientIds.isEmpty()) {
+                this.ensemblIdToPatientIds.remove(ensemblId);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void rebuild(List<Patient> patients) {
+        this.ensemblIdToPatientIds.clear();
+        this.patientIdToEnsemblIds.clear();
+        for (Patient patient : patients) {
+            this.indexPatient(patient);
+        }
+        logger.info("gene index built with {} genes across {} patients", this.ensemblIdToPatientIds.size(), this.patientIdToEnsemblIds.size());
+    }
+
+    /**
+     * A node patient with the same ID as the query patient is also returned, as long as the query
+     * has a resolvable gene, since the genotype scorer treats that pair as the same patient
+     */
+    @Override
+    public synchronized Set<String> findPatientIdsSharingGenes(Patient queryPatient) {
+        Set<String> candidateIds = new HashSet<>();
+        Set<String> queryEnsemblIds = this.toEnsemblIds(queryPatient);
+        for (String ensemblId : queryEnsemblIds) {
+            candidateIds.addAll(this.ensemblIdToPatientIds.getOrDefault(ensemblId, Collections.emptySet()));
+        }
+        if (!queryEnsemblIds.isEmpty() && this.patientIdToEnsemblIds.containsKey(queryPatient.getId())) {
+            candidateIds.add(queryPatient.getId());
+        }
+        return candidateIds;
+    }
+
+    /**
+     * @return the resolvable Ensembl gene IDs of this patient
+     */
+    private Set<String> toEnsemblIds(Patient patient) {
+        Set<String> ensemblIds = new HashSet<>();
+        //the resolver follows the patient cache too, so this interning is kept for the genotype scorer
+        for (int geneKey : this.geneIdentifierResolver.intern(patient).getSortedKeys()) {
+            ensemblIds.add(this.geneIdentifierResolver.toEnsemblId(geneKey));
+        }
+        return ensemblIds;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Runs expensive match requests off the servlet container's threads
+ */
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * @author harindra
+ */
+public interface MatchRequestExecutor {
+
+    /**
+     * Runs a request's work on the match pool, or on the calling thread if requests aren't
+     * run asynchronously
+     * @param endpoint the endpoint the work is for, such as "/match", to count it under
+     * @param work     the work
+     * @return the result of the work, when it is done. Cancelling it skips work still waiting on
+     * the queue and interrupts work already running, which then has to notice the interrupt to
+     * stop early
+     * @throws RejectedExecutionException if the pool and its queue are full
+     */
+    <T> CompletableFuture<T> submit(String endpoint, Supplier<T> work);
+
+    /**
+     * @return how long, in milliseconds, a request waits for its work before it is given up on
+     */
+    long getTimeoutMs();
+
+    /**
+     * @return how many seconds a client told the node is busy should wait before trying again
+     */
+    int getRetryAfterSeconds();
+
+    /**
+     * @return in flight, most in flight, completed, rejected and timed out counts of each
+     * endpoint, and the depth of the queue
+     */
+    Map<String, Map<String, Long>> getStats();
+
+    /**
+     * Counts a request given up on before its work was done
+     * @param endpoint the endpoint the request was for
+     */
+    void timedOut(String endpoint);
+}
@@ -0,0 +1,242 @@
+/**
+ * Runs expensive match requests on a bounded pool
+ */
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Work is run by pool-size threads, with up to queue-capacity more requests waiting their turn.
+ * Past that a request is turned away at once, rather than tying up a servlet container thread
+ * while it waits, so cheap endpoints like /patient/add and /metrics still have threads to run
+ * on when partners send bursts of match queries.
+ *
+ * @author harindra
+ */
+@Service
+public class MatchRequestExecutorImpl implements MatchRequestExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchRequestExecutorImpl.class);
+
+    /**
+     * Run match requests on their own pool. When false they run on the servlet container thread
+     * that took the request, as they used to.
+     */
+    @Value("${matchbox.match.async.enabled:true}")
+    private boolean async;
+
+    @Value("${matchbox.match.async.pool-size:8}")
+    private int poolSize;
+
+    /**
+     * Most requests waiting for a thread before more are turned away
+     */
+    @Value("${matchbox.match.async.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${matchbox.match.async.timeout-ms:60000}")
+    private long timeoutMs;
+
+    @Value("${matchbox.match.async.retry-after-seconds:5}")
+    private int retryAfterSeconds;
+
+    private ThreadPoolExecutor pool;
+
+    private final ConcurrentMap<String, EndpointCounts> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Starts the pool, if running asynchronously
+     */
+    @PostConstruct
+    public void init() {
+        if (!this.async) {
+            return;
+        }
+        int threads = Math.max(1, this.poolSize);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, this.queueCapacity)),
+                r -> {
+                    Thread thread = new Thread(r, "match-request-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        logger.info("running match requests on {} threads with {} more queued", threads, this.queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(String endpoint, Supplier<T> work) {
+        EndpointCounts counts = this.endpoints.computeIfAbsent(endpoint, e -> new EndpointCounts());
+        if (this.pool == null) {
+            counts.started();
+            try {
+                return CompletableFuture.completedFuture(work.get());
+            } finally {
+                counts.finished();
+            }
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        FutureTask<T> task = new FutureTask<T>(work::get) {
+            @Override
+            protected void done() {
+                if (this.isCancelled()) {
+                    result.cancel(false);
+                    return;
+                }
+                try {
+                    result.complete(this.get());
+                } catch (ExecutionException e) {
+                    result.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.completeExceptionally(e);
+                }
+            }
+        };
+        try {
+            this.pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            counts.rejected();
+            logger.warn("turned away a {} request, {} queued", endpoint, this.pool.getQueue().size());
+            throw e;
+        }
+        //counted once taken, whenComplete still runs if the work is already done
+        counts.started();
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                //a FutureTask interrupts its thread if it is running, or is skipped if still queued
+                task.cancel(true);
+            }
+            counts.finished();
+        });
+        return result;
+    }
+
+    @Override
+    public void timedOut(String endpoint) {
+        this.endpoints.computeIfAbsent(endpoint, e -> new EndpointCounts()).timedOut.incrementAndGet();
+    }
+
+    @Override
+    public long getTimeoutMs() {
+        return this.timeoutMs;
+    }
+
+    @Override
+    public int getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        Map<String, Long> queue = new LinkedHashMap<>();
+        queue.put("poolSize", this.pool == null ? 0L : this.pool.getMaximumPoolSize());
+        queue.put("active", this.pool == null ? 0L : this.pool.getActiveCount());
+        queue.put("queued", this.pool == null ? 0L : this.pool.getQueue().size());
+        queue.put("queueCapacity", this.pool == null ? 0L : this.queueCapacity);
+        stats.put("queue", queue);
+        for (Map.Entry<String, EndpointCounts> endpoint : this.endpoints.entrySet()) {
+            stats.put(endpoint.getKey(), endpoint.getValue().toMap());
+        }
+        return stats;
+    }
+
+    /**
+     * Requests to one endpoint
+     */
+    private static final class EndpointCounts {
+        private final AtomicLong inFlight = new AtomicLong();
+        private final AtomicLong maxInFlight = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+
+        private void started() {
+            long now = this.inFlight.incrementAndGet();
+            this.maxInFlight.accumulateAndGet(now, Math::max);
+        }
+
+        private void finished() {
+            this.inFlight.decrementAndGet();
+            this.completed.incrementAndGet();
+        }
+
+        private void rejected() {
+            this.rejected.incrementAndGet();
+        }
+
+        private Map<String, Long> toMap() {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            counts.put("inFlight", this.inFlight.get());
+            counts.put("maxInFlight", this.maxInFlight.get());
+            counts.put("completed", this.completed.get());
+            counts.put("rejected", this.rejected.get());
+            counts.put("timedOut", this.timedOut.get());
+            return counts;
+        }
+    }
+
+    /**
+     * @param async true to run requests on their own pool
+     */
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    /**
+     * @param poolSize threads running requests
+     */
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @param queueCapacity most requests waiting for a thread
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param timeoutMs how long a request waits for its work
+     */
+    public void setTimeoutMs(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * @param retryAfterSeconds how long a client turned away should wait
+     */
+    public void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Writes match results as MME JSON straight to an output stream
+ */
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.NodeSearchStatus;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.entities.PhenotypeFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Variant;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Leaves out empty fields the same way the getEmptyFieldsRemovedJson methods of the entities
+ * do, but every value is escaped, and nothing is built up in memory first: each result is
+ * encoded into the stream as it is written. The disclaimer, which is the same in every
+ * response, is encoded once.
+ *
+ * @author harindra
+ */
+public class MatchmakerResultWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static final SerializedString RESULTS = new SerializedString("results");
+    private static final SerializedString NODE_STATUS = new SerializedString("_nodeStatus");
+    private static final SerializedString DISCLAIMER_FIELD = new SerializedString("_disclaimer");
+    private static final SerializedString DISCLAIMER = new SerializedString(new PatientRecordUtility().getDisclaimer());
+
+    static {
+        //encode the disclaimer now rather than in the first response
+        DISCLAIMER.asQuotedUTF8();
+    }
+
+    /**
+     * Writes {"results":[...],"_disclaimer":"..."}
+     *
+     * @param out     where to write, left open
+     * @param results the results
+     * @throws IOException if the stream can't be written to
+     */
+    public void writeResults(OutputStream out, List<MatchmakerResult> results) throws IOException {
+        this.writeResults(out, results, null);
+    }
+
+    /**
+     * Writes {"results":[...],"_nodeStatus":[...],"_disclaimer":"..."}
+     *
+     * @param out          where to write, left open
+     * @param results      the results
+     * @param nodeStatuses how the search of each node went, or null to leave them out
+     * @throws IOException if the stream can't be written to
+     */
+    public void writeResults(OutputStream out, List<MatchmakerResult> results, List<NodeSearchStatus> nodeStatuses) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeFieldName(RESULTS);
+            generator.writeStartArray();
+            for (MatchmakerResult result : results) {
+                writeResult(generator, result);
+            }
+            generator.writeEndArray();
+            if (nodeStatuses != null) {
+                generator.writeFieldName(NODE_STATUS);
+                generator.writeStartArray();
+                for (NodeSearchStatus nodeStatus : nodeStatuses) {
+                    writeNodeStatus(generator, nodeStatus);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeFieldName(DISCLAIMER_FIELD);
+            generator.writeString(DISCLAIMER);
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes [{...},{...}], each patient as it is written in a result. This is how the MME
+     * test data set is laid out.
+     *
+     * @param out      where to write, left open
+     * @param patients the patients, which are written as they come
+     * @throws IOException if the stream can't be written to
+     */
+    public void writePatients(OutputStream out, Iterator<Patient> patients) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartArray();
+            while (patients.hasNext()) {
+                writePatient(generator, patients.next());
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * @param result a result
+     * @return the result as JSON, with empty fields removed
+     */
+    public String toJson(MatchmakerResult result) {
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(json)) {
+            writeResult(generator, result);
+        } catch (IOException e) {
+            //a StringWriter doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    private static void writeResult(JsonGenerator generator, MatchmakerResult result) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("score");
+        for (Map.Entry<String, Double> score : result.getScore().entrySet()) {
+            if (score.getValue() != null) {
+                generator.writeNumberField(score.getKey(), score.getValue());
+            }
+        }
+        generator.writeEndObject();
+        generator.writeFieldName("patient");
+        writePatient(generator, result.getPatient());
+        generator.writeEndObject();
+    }
+
+    private static void writePatient(JsonGenerator generator, Patient patient) throws IOException {
+        generator.writeStartObject();
+        //REQUIRED
+        generator.writeStringField("id", patient.getId());
+        writeIfPresent(generator, "label", patient.getLabel());
+        //REQUIRED
+        generator.writeObjectFieldStart("contact");
+        for (Map.Entry<String, String> contact : patient.getContact().entrySet()) {
+            writeIfPresent(generator, contact.getKey(), contact.getValue());
+        }
+        generator.writeEndObject();
+        writeIfPresent(generator, "species", patient.getSpecies());
+        writeIfPresent(generator, "sex", patient.getSex());
+        writeIfPresent(generator, "ageOfOnset", patient.getAgeOfOnset());
+        writeIfPresent(generator, "inheritanceMode", patient.getInheritanceMode());
+        if (!patient.getDisorders().isEmpty()) {
+            generator.writeArrayFieldStart("disorders");
+            for (Map<String, String> disorder : patient.getDisorders()) {
+                generator.writeStartObject();
+                for (Map.Entry<String, String> field : disorder.entrySet()) {
+                    writeIfPresent(generator, field.getKey(), field.getValue());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        if (!patient.getFeatures().isEmpty()) {
+            generator.writeArrayFieldStart("features");
+            for (PhenotypeFeature feature : patient.getFeatures()) {
+                generator.writeStartObject();
+                writeIfPresent(generator, "id", feature.getId());
+                writeIfPresent(generator, "observed", feature.getObserved());
+                //named as PhenotypeFeature.getEmptyFieldsRemovedJson has always sent it
+                writeIfPresent(generator, "start", feature.getAgeOfOnset());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        if (!patient.getGenomicFeatures().isEmpty()) {
+            generator.writeArrayFieldStart("genomicFeatures");
+            for (GenomicFeature genomicFeature : patient.getGenomicFeatures()) {
+                writeGenomicFeature(generator, genomicFeature);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeGenomicFeature(JsonGenerator generator, GenomicFeature genomicFeature) throws IOException {
+        generator.writeStartObject();
+        if (!genomicFeature.getGene().isEmpty()) {
+            generator.writeObjectFieldStart("gene");
+            generator.writeStringField("id", genomicFeature.getGene().get("id"));
+            generator.writeEndObject();
+        }
+        Variant variant = genomicFeature.getVariant();
+        if (variant.shareVariantLevelData() && isPopulated(variant)) {
+            generator.writeObjectFieldStart("variant");
+            writeIfPresent(generator, "assembly", variant.getAssembly());
+            writeIfPresent(generator, "referenceName", variant.getReferenceName());
+            writeIfPresent(generator, "start", variant.getStart());
+            writeIfPresent(generator, "end", variant.getEnd());
+            writeIfPresent(generator, "referenceBases", variant.getReferenceBases());
+            writeIfPresent(generator, "alternateBases", variant.getAlternateBases());
+            generator.writeEndObject();
+        }
+        writeIfPresent(generator, "zygosity", genomicFeature.getZygosity());
+        boolean hasType = false;
+        for (String value : genomicFeature.getType().values()) {
+            hasType |= isPresent(value);
+        }
+        if (hasType) {
+            generator.writeObjectFieldStart("type");
+            for (Map.Entry<String, String> type : genomicFeature.getType().entrySet()) {
+                writeIfPresent(generator, type.getKey(), type.getValue());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeNodeStatus(JsonGenerator generator, NodeSearchStatus nodeStatus) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("node", nodeStatus.getNodeName());
+        generator.writeStringField("status", nodeStatus.getStatus());
+        generator.writeNumberField("results", nodeStatus.getNumberOfResults());
+        generator.writeNumberField("elapsedMillis", nodeStatus.getElapsedMillis());
+        writeIfPresent(generator, "message", nodeStatus.getMessage());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Same test as Variant.isUnPopulated, without failing on missing fields
+     */
+    private static boolean isPopulated(Variant variant) {
+        return isPresent(variant.getAssembly())
+                || isPresent(variant.getReferenceName())
+                || isPresent(variant.getStart())
+                || isPresent(variant.getEnd())
+                || isPresent(variant.getReferenceBases())
+                || isPresent(variant.getAlternateBases());
+    }
+
+    private static boolean isPresent(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    /**
+     * 0 and -1 stand for not given
+     */
+    private static boolean isPresent(Long value) {
+        return value != null && value != 0L && value != -1L;
+    }
+
+    private static void writeIfPresent(JsonGenerator generator, String name, String value) throws IOException {
+        if (isPresent(value)) {
+            generator.writeStringField(name, value);
+        }
+    }
+
+    private static void writeIfPresent(JsonGenerator generator, String name, Long value) throws IOException {
+        if (isPresent(value)) {
+            generator.writeNumberField(name, value);
+        }
+    }
+}
@@ -5,22 +5,45 @@
 
 
 import org.apache.commons.mail.HtmlEmail;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.audit.MatchQueryAuditService;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientCache;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
 import org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb.PatientMongoRepository;
 import org.broadinstitute.macarthurlab.matchbox.entities.ExternalMatchQuery;
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalSearchResults;
 import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
 import org.broadinstitute.macarthurlab.matchbox.entities.Node;
+import org.broadinstitute.macarthurlab.matchbox.entities.NodeSearchStatus;
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.match.GeneIdentifierResolver;
 import org.broadinstitute.macarthurlab.matchbox.match.MatchService;
 import org.broadinstitute.macarthurlab.matchbox.network.Communication;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
-import java.net.MalformedURLException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author harindra
@@ -43,13 +66,58 @@ public class MatchmakerSearchImpl implements SearchService {
     private MatchService matchService;
 
     /**
-     * A connection to MongoDB for queries
+     * The patients in this node, held in memory
+     */
+    @Autowired
+    private PatientCache patientCache;
+
+    /**
+     * Keeps a record of each match query and the results sent back
+     */
+    @Autowired
+    private MatchQueryAuditService matchQueryAuditService;
+
+    /**
+     * An index of the genes carried by the patients in this node
+     */
+    @Autowired
+    private GeneIndexService geneIndexService;
+
+    /**
+     * An index of the phenotypes observed in the patients in this node
+     */
+    @Autowired
+    private PhenotypeIndexService phenotypeIndexService;
+
+    /**
+     * Where candidates are read from in low-memory mode
      */
     @Autowired
     private PatientMongoRepository patientMongoRepository;
 
     @Autowired
-    private MongoOperations operator;
+    private GeneIdentifierResolver geneIdentifierResolver;
+
+    /**
+     * Patients are not held in memory, so candidates are read from MongoDB for each search
+     */
+    @Value("${matchbox.low-memory.enabled:false}")
+    private boolean lowMemory;
+
+    /**
+     * Patients read from MongoDB at a time in low-memory mode, when every patient has to be scored
+     */
+    @Value("${matchbox.low-memory.page-size:500}")
+    private int lowMemoryPageSize;
+
+    @Value("${allow.no-gene-in-common.matches}")
+    private boolean ALLOW_NO_GENE_IN_COMMON_PHENOTYPE_MATCHES;
+
+    /**
+     * Most results returned by a local match, best first, 0 for no limit
+     */
+    @Value("${matchbox.match.max-results:0}")
+    private int maxResults;
 
     /**
      * A set of tools to parse and store patient information
@@ -63,27 +131,224 @@ public class MatchmakerSearchImpl implements SearchService {
     @Autowired
     private Communication httpCommunication;
 
+    /**
+     * Search all the external nodes at once rather than one after the other
+     */
+    @Value("${matchbox.external-search.concurrent:false}")
+    private boolean concurrentExternalSearch;
+
+    /**
+     * Most node searches running at once, across all requests
+     */
+    @Value("${matchbox.external-search.pool-size:16}")
+    private int externalSearchPoolSize;
+
+    /**
+     * How long a single node gets to answer when searching concurrently, counted from when its
+     * search starts running, which may be after waiting for a thread
+     */
+    @Value("${matchbox.external-search.node-timeout-ms:20000}")
+    private long nodeTimeoutMillis;
+
+    /**
+     * How long a whole concurrent search of the external nodes may take, counted from when it
+     * started. Bounds the wait for every node, including one still waiting for a thread
+     */
+    @Value("${matchbox.external-search.overall-timeout-ms:30000}")
+    private long overallTimeoutMillis;
+
+    private ExecutorService externalSearchExecutor;
+
+    /**
+     * How often a node search waiting for a thread is checked on, to learn when its time starts
+     */
+    private static final long QUEUED_NODE_SEARCH_POLL_MILLIS = 50;
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
 
+    /**
+     * The queue is bounded too, so a burst of searches is turned away (and reported per node)
+     * rather than piling up behind slow nodes
+     */
+    @PostConstruct
+    public void init() {
+        if (this.concurrentExternalSearch) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.externalSearchExecutor = new ThreadPoolExecutor(
+                    this.externalSearchPoolSize,
+                    this.externalSearchPoolSize,
+                    60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(this.externalSearchPoolSize * 4),
+                    r -> {
+                        Thread thread = new Thread(r, "external-search-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (this.externalSearchExecutor != null) {
+            this.externalSearchExecutor.shutdownNow();
+        }
+    }
+
+
     /**
      * Search in matchmaker node network only (not in Beamr data model)
      *
      * @param    A Patient object
      */
     public List<String> searchInExternalMatchmakerNodesOnly(Patient patient) {
+        return this.searchExternalMatchmakerNodes(patient).getResults();
+    }
+
+
+    /**
+     * Search in matchmaker node network only, and report how each node went. When searching
+     * concurrently, nodes that don't answer in time are left out of the results.
+     *
+     * @param    A Patient object
+     */
+    public ExternalSearchResults searchExternalMatchmakerNodes(Patient patient) {
         List<MatchmakerResult> allResults = new ArrayList<MatchmakerResult>();
-        List<String> scrubbedResults = new ArrayList<String>();
+        List<NodeSearchStatus> nodeStatuses;
+        if (this.concurrentExternalSearch) {
+            nodeStatuses = this.searchNodesConcurrently(patient, allResults);
+        } else {
+            nodeStatuses = this.searchNodesOneByOne(patient, allResults);
+        }
+        return new ExternalSearchResults(allResults, nodeStatuses);
+    }
+
+
+    private List<NodeSearchStatus> searchNodesOneByOne(Patient patient, List<MatchmakerResult> allResults) {
+        List<NodeSearchStatus> nodeStatuses = new ArrayList<>();
         for (Node n : this.matchmakerNodes) {
-            allResults.addAll(this.searchNode(n, patient));
+            long start = System.currentTimeMillis();
+            try {
+                List<MatchmakerResult> nodeResults = this.searchNode(n, patient);
+                allResults.addAll(nodeResults);
+                nodeStatuses.add(new NodeSearchStatus(n.getName(), NodeSearchStatus.OK, nodeResults.size(), System.currentTimeMillis() - start, ""));
+            } catch (Exception e) {
+                logger.error("error connecting to: " + n.getName() + ", moving on.. : " + e);
+                nodeStatuses.add(new NodeSearchStatus(n.getName(), NodeSearchStatus.ERROR, 0, System.currentTimeMillis() - start, e.toString()));
+            }
         }
-        for (MatchmakerResult r : allResults) {
-            scrubbedResults.add(r.getEmptyFieldsRemovedJson());
-            logger.info("found and scrubbed empty results off external match result: " + r.getPatient().getId());
+        return nodeStatuses;
+    }
+
+
+    /**
+     * Every node is given node-timeout-ms from when its search starts running, but no node is
+     * waited on past the overall deadline, counted from when this search started. When the pool
+     * is busy a node may wait for a thread, so its own deadline can come after the overall one
+     */
+    private List<NodeSearchStatus> searchNodesConcurrently(Patient patient, List<MatchmakerResult> allResults) {
+        long start = System.currentTimeMillis();
+        long overallDeadline = start + this.overallTimeoutMillis;
+        List<NodeSearch> nodeSearches = new ArrayList<>();
+        List<Future<List<MatchmakerResult>>> searches = new ArrayList<>();
+        for (Node n : this.matchmakerNodes) {
+            NodeSearch nodeSearch = new NodeSearch(n, patient);
+            nodeSearches.add(nodeSearch);
+            try {
+                searches.add(this.externalSearchExecutor.submit(nodeSearch));
+            } catch (RejectedExecutionException e) {
+                searches.add(null);
+            }
         }
-        return scrubbedResults;
+
+        List<NodeSearchStatus> nodeStatuses = new ArrayList<>();
+        for (int i = 0; i < searches.size(); i++) {
+            Node n = this.matchmakerNodes.get(i);
+            Future<List<MatchmakerResult>> search = searches.get(i);
+            if (search == null) {
+                logger.warn("too many external searches running, skipping node: " + n.getName());
+                nodeStatuses.add(new NodeSearchStatus(n.getName(), NodeSearchStatus.REJECTED, 0, 0, "too many external searches running"));
+                continue;
+            }
+            try {
+                List<MatchmakerResult> nodeResults = this.await(search, nodeSearches.get(i), overallDeadline);
+                allResults.addAll(nodeResults);
+                nodeStatuses.add(new NodeSearchStatus(n.getName(), NodeSearchStatus.OK, nodeResults.size(), System.currentTimeMillis() - start, ""));
+            } catch (TimeoutException e) {
+                search.cancel(true);
+                logger.warn("external node did not answer in time, moving on: " + n.getName());
+                nodeStatuses.add(new NodeSearchStatus(n.getName(), NodeSearchStatus.TIMED_OUT, 0, System.currentTimeMillis() - start, "no answer in time"));
+            } catch (ExecutionException e) {
+                logger.error("error connecting to: " + n.getName() + ", moving on.. : " + e.getCause());
+                nodeStatuses.add(new NodeSearchStatus(n.getName(), NodeSearchStatus.ERROR, 0, System.currentTimeMillis() - start, String.valueOf(e.getCause())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                search.cancel(true);
+                nodeStatuses.add(new NodeSearchStatus(n.getName(), NodeSearchStatus.ERROR, 0, System.currentTimeMillis() - start, "search interrupted"));
+            }
+        }
+        return nodeStatuses;
     }
 
+
+    /**
+     * Waits for a node search until its deadline. While the search is still waiting for a thread
+     * its deadline isn't known yet, so the wait is made in short steps until it starts
+     *
+     * @throws TimeoutException if the node search isn't done by its deadline
+     */
+    private List<MatchmakerResult> await(Future<List<MatchmakerResult>> search, NodeSearch nodeSearch, long overallDeadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        while (true) {
+            long wait = nodeSearch.getDeadline(overallDeadline) - System.currentTimeMillis();
+            if (!nodeSearch.isStarted()) {
+                wait = Math.min(wait, QUEUED_NODE_SEARCH_POLL_MILLIS);
+            }
+            try {
+                return search.get(Math.max(0, wait), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (System.currentTimeMillis() >= nodeSearch.getDeadline(overallDeadline)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * A search of one node, which notes when it starts running so it can be timed from then
+     */
+    private final class NodeSearch implements Callable<List<MatchmakerResult>> {
+        private final Node node;
+        private final Patient patient;
+        private volatile long startedAt;
+
+        private NodeSearch(Node node, Patient patient) {
+            this.node = node;
+            this.patient = patient;
+        }
+
+        @Override
+        public List<MatchmakerResult> call() throws Exception {
+            this.startedAt = System.currentTimeMillis();
+            return searchNode(this.node, this.patient);
+        }
+
+        private boolean isStarted() {
+            return this.startedAt != 0;
+        }
+
+        /**
+         * @return the earlier of this node's own deadline and the overall deadline, or the overall
+         * deadline while it hasn't started
+         */
+        private long getDeadline(long overallDeadline) {
+            long started = this.startedAt;
+            return started == 0 ? overallDeadline : Math.min(overallDeadline, started + nodeTimeoutMillis);
+        }
+    }
+
+
     /**
      * Search in local matchmaker node ONLY, not in the large matchmaker network. Log the results
      * and the query that was used for those hits
@@ -91,13 +356,47 @@ public List<String> searchInExternalMatchmakerNodesOnly(Patient patient) {
      * @param    A patient
      */
     public List<String> searchInLocalDatabaseOnly(Patient queryPatient, String hostNameOfRequestOrigin) {
-        List<Patient> nodePatients = patientMongoRepository.findAll();
-
-        List<MatchmakerResult> results = matchService.match(queryPatient, nodePatients);
         List<String> scrubbedResults = new ArrayList<>();
+        for (MatchmakerResult r : this.findLocalMatches(queryPatient, hostNameOfRequestOrigin, 0)) {
+            scrubbedResults.add(r.getEmptyFieldsRemovedJson());
+        }
+        return scrubbedResults;
+    }
+
+
+    /**
+     * Search in local matchmaker node ONLY, and return the results as they are, for the caller
+     * to serialize. Logs the results and the query the same way searchInLocalDatabaseOnly does.
+     *
+     * @param    A patient
+     * @param maxResults most results wanted by the caller, 0 or less for the configured maximum.
+     *                   Can only lower the configured maximum.
+     */
+    public List<MatchmakerResult> findLocalMatches(Patient queryPatient, String hostNameOfRequestOrigin, int maxResults) {
+        int limit = this.resolveMaxResults(maxResults);
+        //one extra, in case the query patient is in this node and matches itself
+        int scoringLimit = limit > 0 ? limit + 1 : 0;
+        List<MatchmakerResult> results;
+        PatientSnapshot snapshot = patientCache.getSnapshot();
+        if (this.lowMemory) {
+            results = this.matchFromDatabase(queryPatient, scoringLimit);
+        } else if (this.isGeneMatchRequired(queryPatient)) {
+            //only patients with a gene in common can be returned, so only score those
+            Set<String> candidateIds = geneIndexService.findPatientIdsSharingGenes(queryPatient);
+            results = matchService.match(queryPatient, this.toPatients(candidateIds, snapshot), snapshot.size(), scoringLimit);
+        } else if (phenotypeIndexService.isAvailable()) {
+            //a gene in common, or phenotypes close enough to share an informative term, are needed to be returned
+            Set<String> candidateIds = new HashSet<>(geneIndexService.findPatientIdsSharingGenes(queryPatient));
+            candidateIds.addAll(phenotypeIndexService.findPatientIdsSharingPhenotypes(queryPatient));
+            logger.info("{} of {} patients share a gene or phenotype term with the query patient", candidateIds.size(), snapshot.size());
+            results = matchService.match(queryPatient, this.toPatients(candidateIds, snapshot), snapshot.size(), scoringLimit);
+        } else {
+            results = matchService.match(queryPatient, snapshot.getPatients(), snapshot.size(), scoringLimit);
+        }
+        List<MatchmakerResult> matches = new ArrayList<>();
         for (MatchmakerResult r : results) {
             if (!r.getPatient().getId().equals(queryPatient.getId())) {
-                scrubbedResults.add(r.getEmptyFieldsRemovedJson());
+                matches.add(r);
             } else {
                 logger.info("ignoring this result since it is the same as query patient (same ID)");
             }
@@ -125,8 +424,118 @@ public List<String> searchInLocalDatabaseOnly(Patient queryPatient, String hostN
                     false);
         }
         //**************************************************
-        operator.save(externalQueryMatch);
-        return scrubbedResults;
+        matchQueryAuditService.record(externalQueryMatch);
+        if (limit > 0 && matches.size() > limit) {
+            return new ArrayList<>(matches.subList(0, limit));
+        }
+        return matches;
+    }
+
+
+    /**
+     * Scores candidates read from MongoDB rather than the patient cache. When a gene in common is
+     * needed, only the patients sharing a gene are read, through the gene indexes, so the cost
+     * follows the number of candidates rather than the number of patients in this node. When any
+     * patient could be returned on phenotypes alone and there is no phenotype index to narrow them
+     * down, every patient is scored, but a page at a time, so they are never all in memory at once.
+     */
+    private List<MatchmakerResult> matchFromDatabase(Patient queryPatient, int scoringLimit) {
+        int nodePopulationSize = (int) patientMongoRepository.count();
+        List<Patient> candidates;
+        if (this.isGeneMatchRequired(queryPatient)) {
+            Set<String> ensemblIds = new HashSet<>();
+            Set<String> geneIdentifiers = new HashSet<>();
+            for (int geneKey : geneIdentifierResolver.intern(queryPatient).getSortedKeys()) {
+                String ensemblId = geneIdentifierResolver.toEnsemblId(geneKey);
+                ensemblIds.add(ensemblId);
+                geneIdentifiers.add(ensemblId);
+                geneIdentifiers.add(geneIdentifierResolver.toGeneSymbol(ensemblId));
+            }
+            candidates = patientMongoRepository.findPatientsSharingGenes(ensemblIds, geneIdentifiers);
+        } else if (phenotypeIndexService.isAvailable()) {
+            Set<String> candidateIds = new HashSet<>(geneIndexService.findPatientIdsSharingGenes(queryPatient));
+            candidateIds.addAll(phenotypeIndexService.findPatientIdsSharingPhenotypes(queryPatient));
+            candidates = new ArrayList<>();
+            for (Patient patient : patientMongoRepository.findAll(candidateIds)) {
+                candidates.add(patient);
+            }
+        } else {
+            //any patient could match on phenotypes alone, so score them all, a page at a time
+            logger.info("scoring all {} patients in the database, {} at a time", nodePopulationSize, this.lowMemoryPageSize);
+            try (CloseableIterator<Patient> patients = patientMongoRepository.streamPatients(null, 0, Collections.emptySet())) {
+                return matchService.match(queryPatient, pages(patients, this.lowMemoryPageSize), nodePopulationSize, scoringLimit);
+            }
+        }
+        logger.info("{} of {} patients read from the database as candidates", candidates.size(), nodePopulationSize);
+        return matchService.match(queryPatient, candidates, nodePopulationSize, scoringLimit);
+    }
+
+
+    /**
+     * @return these patients, in lists of at most pageSize, read only as each list is asked for
+     */
+    static Iterator<List<Patient>> pages(Iterator<Patient> patients, int pageSize) {
+        int size = Math.max(1, pageSize);
+        return new Iterator<List<Patient>>() {
+            @Override
+            public boolean hasNext() {
+                return patients.hasNext();
+            }
+
+            @Override
+            public List<Patient> next() {
+                if (!patients.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<Patient> page = new ArrayList<>(size);
+                while (page.size() < size && patients.hasNext()) {
+                    page.add(patients.next());
+                }
+                return page;
+            }
+        };
+    }
+
+
+    /**
+     * @return the patients with these IDs that are in this snapshot
+     */
+    private List<Patient> toPatients(Set<String> patientIds, PatientSnapshot snapshot) {
+        List<Patient> patients = new ArrayList<>();
+        for (String patientId : patientIds) {
+            Patient patient = snapshot.getPatient(patientId);
+            if (patient != null) {
+                patients.add(patient);
+            }
+        }
+        return patients;
+    }
+
+
+    /**
+     * @param requested most results asked for, 0 or less if not asked
+     * @return most results to return, 0 for no limit
+     */
+    private int resolveMaxResults(int requested) {
+        if (requested <= 0) {
+            return Math.max(0, this.maxResults);
+        }
+        if (this.maxResults <= 0) {
+            return requested;
+        }
+        return Math.min(requested, this.maxResults);
+    }
+
+
+    /**
+     * Phenotype-only matches are returned when that switch is turned on, or when the query has no
+     * genotypes. Otherwise a node patient needs at least one gene in common with the query patient.
+     *
+     * @param queryPatient A patient
+     * @return true if only patients sharing a gene with the query patient can be matched
+     */
+    private boolean isGeneMatchRequired(Patient queryPatient) {
+        return !this.ALLOW_NO_GENE_IN_COMMON_PHENOTYPE_MATCHES && !queryPatient.getGenomicFeatures().isEmpty();
     }
 
 
@@ -135,13 +544,112 @@ public List<String> searchInLocalDatabaseOnly(Patient queryPatient, String hostN
      *
      * @param matchmakerNode A matchmaker node/center
      * @param patient        A patient
-     * @throws MalformedURLException
+     * @throws Exception if the node can't be reached or its reply can't be read
      * @return The results found for this patient
      */
-    private List<MatchmakerResult> searchNode(Node matchmakerNode, Patient queryPatient) {
+    private List<MatchmakerResult> searchNode(Node matchmakerNode, Patient queryPatient) throws Exception {
         logger.info("searching in external node: " + matchmakerNode.getName());
-        return httpCommunication.callNode(matchmakerNode, queryPatient);
+        return httpCommunication.queryNode(matchmakerNode, queryPatient);
     }
 
 
+    /**
+     * @param concurrent true to search all external nodes at once
+     * @param poolSize most node searches running at once
+     * @param nodeTimeoutMillis how long a single node gets to answer, once its search is running
+     * @param overallTimeoutMillis how long the whole search may take, from when it started
+     */
+    public synchronized void setExternalSearch(boolean concurrent, int poolSize, long nodeTimeoutMillis, long overallTimeoutMillis) {
+        this.shutdown();
+        this.externalSearchExecutor = null;
+        this.concurrentExternalSearch = concurrent;
+        this.externalSearchPoolSize = poolSize;
+        this.nodeTimeoutMillis = nodeTimeoutMillis;
+        this.overallTimeoutMillis = overallTimeoutMillis;
+        this.init();
+    }
+
+    /**
+     * @param matchmakerNodes the matchmakerNodes to set
+     */
+    public void setMatchmakerNodes(List<Node> matchmakerNodes) {
+        this.matchmakerNodes = matchmakerNodes;
+    }
+
+    /**
+     * @param httpCommunication the httpCommunication to set
+     */
+    public void setHttpCommunication(Communication httpCommunication) {
+        this.httpCommunication = httpCommunication;
+    }
+
+    /**
+     * @param maxResults most results returned by a local match, 0 for no limit
+     */
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * @param matchService the matchService to set
+     */
+    public void setMatchService(MatchService matchService) {
+        this.matchService = matchService;
+    }
+
+    /**
+     * @param patientCache the patientCache to set
+     */
+    public void setPatientCache(PatientCache patientCache) {
+        this.patientCache = patientCache;
+    }
+
+    /**
+     * @param geneIndexService the geneIndexService to set
+     */
+    public void setGeneIndexService(GeneIndexService geneIndexService) {
+        this.geneIndexService = geneIndexService;
+    }
+
+    /**
+     * @param phenotypeIndexService the phenotypeIndexService to set
+     */
+    public void setPhenotypeIndexService(PhenotypeIndexService phenotypeIndexService) {
+        this.phenotypeIndexService = phenotypeIndexService;
+    }
+
+    /**
+     * @param matchQueryAuditService the matchQueryAuditService to set
+     */
+    public void setMatchQueryAuditService(MatchQueryAuditService matchQueryAuditService) {
+        this.matchQueryAuditService = matchQueryAuditService;
+    }
+
+    /**
+     * @param patientMongoRepository the patientMongoRepository to set
+     */
+    public void setPatientMongoRepository(PatientMongoRepository patientMongoRepository) {
+        this.patientMongoRepository = patientMongoRepository;
+    }
+
+    /**
+     * @param geneIdentifierResolver the geneIdentifierResolver to set
+     */
+    public void setGeneIdentifierResolver(GeneIdentifierResolver geneIdentifierResolver) {
+        this.geneIdentifierResolver = geneIdentifierResolver;
+    }
+
+    /**
+     * @param lowMemory true to read candidates from MongoDB for each search
+     */
+    public void setLowMemory(boolean lowMemory) {
+        this.lowMemory = lowMemory;
+    }
+
+    /**
+     * @param lowMemoryPageSize patients read from MongoDB at a time when every patient is scored
+     */
+    public void setLowMemoryPageSize(int lowMemoryPageSize) {
+        this.lowMemoryPageSize = lowMemoryPageSize;
+    }
 }
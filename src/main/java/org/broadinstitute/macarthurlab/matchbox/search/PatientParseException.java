@@ -0,0 +1,70 @@
+/**
+ * Thrown when an incoming patient record can't be read
+ */
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Carries where in the record the problem was found, so it can be passed back to the submitter
+ *
+ * @author harindra
+ */
+public class PatientParseException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+    private final int column;
+
+    /**
+     * @param message what is wrong
+     * @param line    line of the record the problem was found on, or -1 if not known
+     * @param column  column of the record the problem was found on, or -1 if not known
+     */
+    public PatientParseException(String message, int line, int column) {
+        super(message + (line > 0 ? " (line " + line + ", column " + column + ")" : ""));
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * @param message what is wrong
+     * @param line    line of the record the problem was found on, or -1 if not known
+     * @param column  column of the record the problem was found on, or -1 if not known
+     * @param cause   the underlying error
+     */
+    public PatientParseException(String message, int line, int column, Throwable cause) {
+        this(message, line, column);
+        this.initCause(cause);
+    }
+
+    /**
+     * @return the line
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the column
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the error as a JSON message to send back to the submitter
+     */
+    @SuppressWarnings("unchecked")
+    public String asJson() {
+        JSONObject json = new JSONObject();
+        json.put("message", "invalid patient record: " + this.getMessage());
+        json.put("status_code", 400);
+        if (this.line > 0) {
+            json.put("line", this.line);
+            json.put("column", this.column);
+        }
+        return json.toJSONString();
+    }
+}
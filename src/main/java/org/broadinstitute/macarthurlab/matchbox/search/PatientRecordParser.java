@@ -0,0 +1,403 @@
+/**
+ * Reads an MME patient record in a single streaming pass
+ */
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.entities.PhenotypeFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Variant;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the required fields and builds the Patient while reading the record, so the record is
+ * only read once and no intermediate JSON tree is built. Takes the same record
+ * {"patient":{...}} as {@link PatientRecordUtility#parsePatientInformation(String)}, with the
+ * same defaults for optional fields, but a record that can't be read is reported with what is
+ * wrong and where rather than turned into an empty Patient. Fields that are not part of the
+ * record are skipped.
+ *
+ * @author harindra
+ */
+public class PatientRecordParser {
+
+    /**
+     * Thread safe, and holds the symbol tables shared by all parsers it creates
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * @param json a patient record as UTF-8 (or UTF-16/32, which is detected) bytes
+     * @return the patient
+     * @throws PatientParseException if the record is not JSON, or is not a valid patient
+     */
+    public Patient parse(byte[] json) throws PatientParseException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return this.readRecord(parser);
+        } catch (JsonParseException e) {
+            throw new PatientParseException("malformed JSON: " + e.getOriginalMessage(), e.getLocation().getLineNr(), e.getLocation().getColumnNr(), e);
+        } catch (IOException e) {
+            throw new PatientParseException("unable to read patient record: " + e.getMessage(), -1, -1, e);
+        }
+    }
+
+    /**
+     * @param json a patient record
+     * @return the patient
+     * @throws PatientParseException if the record is not JSON, or is not a valid patient
+     */
+    public Patient parse(String json) throws PatientParseException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return this.readRecord(parser);
+        } catch (JsonParseException e) {
+            throw new PatientParseException("malformed JSON: " + e.getOriginalMessage(), e.getLocation().getLineNr(), e.getLocation().getColumnNr(), e);
+        } catch (IOException e) {
+            throw new PatientParseException("unable to read patient record: " + e.getMessage(), -1, -1, e);
+        }
+    }
+
+    /**
+     * Reads patient records one after another, from either a JSON array of records or records
+     * written one after the other, such as one per line (NDJSON)
+     * @param in the records, which are read as they are asked for
+     * @return a reader of the records
+     * @throws IOException if the stream can't be read
+     */
+    public PatientRecordReader readAll(InputStream in) throws IOException {
+        return new PatientRecordReader(JSON_FACTORY.createParser(in), this);
+    }
+
+    private Patient readRecord(JsonParser parser) throws IOException, PatientParseException {
+        parser.nextToken();
+        return this.readRecordObject(parser);
+    }
+
+    /**
+     * Reads the record the parser is on, leaving the parser on its closing brace
+     */
+    Patient readRecordObject(JsonParser parser) throws IOException, PatientParseException {
+        expect(parser, JsonToken.START_OBJECT, "the patient record");
+        Patient patient = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("patient".equals(name)) {
+                patient = this.readPatient(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (patient == null) {
+            throw error(parser.getTokenLocation(), "patient is required");
+        }
+        return patient;
+    }
+
+    private Patient readPatient(JsonParser parser) throws IOException, PatientParseException {
+        expect(parser, JsonToken.START_OBJECT, "patient");
+        JsonLocation start = parser.getTokenLocation();
+        String id = null;
+        boolean hasId = false;
+        Map<String, String> contact = null;
+        String label = "";
+        String species = "";
+        String sex = "";
+        String ageOfOnset = "";
+        String inheritanceMode = "";
+        List<Map<String, String>> disorders = new ArrayList<>();
+        List<PhenotypeFeature> features = new ArrayList<>();
+        boolean hasFeatures = false;
+        List<GenomicFeature> genomicFeatures = new ArrayList<>();
+        boolean hasGenomicFeatures = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "id":
+                    id = readString(parser, "patient.id");
+                    hasId = true;
+                    break;
+                case "contact":
+                    contact = this.readContact(parser);
+                    break;
+                case "label":
+                    label = readString(parser, "patient.label");
+                    break;
+                case "species":
+                    species = readString(parser, "patient.species");
+                    break;
+                case "sex":
+                    sex = readString(parser, "patient.sex");
+                    break;
+                case "ageOfOnset":
+                    ageOfOnset = readString(parser, "patient.ageOfOnset");
+                    break;
+                case "inheritanceMode":
+                    inheritanceMode = readString(parser, "patient.inheritanceMode");
+                    break;
+                case "disorders":
+                    disorders = this.readDisorders(parser);
+                    break;
+                case "features":
+                    features = this.readFeatures(parser);
+                    hasFeatures = true;
+                    break;
+                case "genomicFeatures":
+                    genomicFeatures = this.readGenomicFeatures(parser);
+                    hasGenomicFeatures = true;
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (!hasId) {
+            throw error(start, "patient.id is required");
+        }
+        if (contact == null) {
+            throw error(start, "patient.contact is required");
+        }
+        if (!hasFeatures && !hasGenomicFeatures) {
+            throw error(start, "patient.features or patient.genomicFeatures is required");
+        }
+        return new Patient(id, label, contact, species, sex, ageOfOnset, inheritanceMode, disorders, features, genomicFeatures);
+    }
+
+    private Map<String, String> readContact(JsonParser parser) throws IOException, PatientParseException {
+        expect(parser, JsonToken.START_OBJECT, "patient.contact");
+        Map<String, String> contact = new HashMap<>();
+        contact.put("name", null);
+        contact.put("institution", null);
+        contact.put("href", null);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (contact.containsKey(name)) {
+                contact.put(name, readString(parser, "patient.contact." + name));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return contact;
+    }
+
+    private List<Map<String, String>> readDisorders(JsonParser parser) throws IOException, PatientParseException {
+        expect(parser, JsonToken.START_ARRAY, "patient.disorders");
+        List<Map<String, String>> disorders = new ArrayList<>();
+        for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+            String path = "patient.disorders[" + i + "]";
+            expect(parser, JsonToken.START_OBJECT, path);
+            Map<String, String> disorder = new HashMap<>();
+            disorder.put("id", null);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if ("id".equals(name)) {
+                    disorder.put("id", readString(parser, path + ".id"));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            disorders.add(disorder);
+        }
+        return disorders;
+    }
+
+    private List<PhenotypeFeature> readFeatures(JsonParser parser) throws IOException, PatientParseException {
+        expect(parser, JsonToken.START_ARRAY, "patient.features");
+        List<PhenotypeFeature> features = new ArrayList<>();
+        for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+            String path = "patient.features[" + i + "]";
+            expect(parser, JsonToken.START_OBJECT, path);
+            String id = null;
+            String observed = null;
+            String ageOfOnset = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                switch (name) {
+                    case "id":
+                        id = readString(parser, path + ".id");
+                        break;
+                    case "observed":
+                        observed = readString(parser, path + ".observed");
+                        break;
+                    case "ageOfOnset":
+                        ageOfOnset = readString(parser, path + ".ageOfOnset");
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            features.add(new PhenotypeFeature(id, observed, ageOfOnset));
+        }
+        return features;
+    }
+
+    private List<GenomicFeature> readGenomicFeatures(JsonParser parser) throws IOException, PatientParseException {
+        expect(parser, JsonToken.START_ARRAY, "patient.genomicFeatures");
+        List<GenomicFeature> genomicFeatures = new ArrayList<>();
+        for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+            String path = "patient.genomicFeatures[" + i + "]";
+            expect(parser, JsonToken.START_OBJECT, path);
+            JsonLocation start = parser.getTokenLocation();
+            Map<String, String> gene = null;
+            Variant variant = new Variant("", "", -1L, -1L, "", "", true);
+            Long zygosity = -1L;
+            Map<String, String> type = new HashMap<>();
+            type.put("id", "");
+            type.put("label", "");
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                switch (name) {
+                    case "gene":
+                        gene = this.readGene(parser, path + ".gene");
+                        break;
+                    case "variant":
+                        variant = this.readVariant(parser, path + ".variant");
+                        break;
+                    case "zygosity":
+                        zygosity = readLong(parser, path + ".zygosity");
+                        break;
+                    case "type":
+                        type = this.readType(parser, path + ".type");
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (gene == null) {
+                throw error(start, path + ".gene is required");
+            }
+            genomicFeatures.add(new GenomicFeature(gene, variant, zygosity, type));
+        }
+        return genomicFeatures;
+    }
+
+    private Map<String, String> readGene(JsonParser parser, String path) throws IOException, PatientParseException {
+        expect(parser, JsonToken.START_OBJECT, path);
+        JsonLocation start = parser.getTokenLocation();
+        Map<String, String> gene = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("id".equals(name)) {
+                gene.put("id", readString(parser, path + ".id"));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (gene.get("id") == null) {
+            throw error(start, path + ".id is required");
+        }
+        return gene;
+    }
+
+    private Variant readVariant(JsonParser parser, String path) throws IOException, PatientParseException {
+        expect(parser, JsonToken.START_OBJECT, path);
+        String assembly = null;
+        String referenceName = null;
+        Long start = null;
+        Long end = -1L;
+        String referenceBases = "";
+        String alternateBases = "";
+        //sharing by default for transparency
+        boolean shareVariantLevelData = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name) {
+                case "assembly":
+                    assembly = readString(parser, path + ".assembly");
+                    break;
+                case "referenceName":
+                    referenceName = readString(parser, path + ".referenceName");
+                    break;
+                case "start":
+                    start = readLong(parser, path + ".start");
+                    break;
+                case "end":
+                    end = readLong(parser, path + ".end");
+                    break;
+                case "referenceBases":
+                    referenceBases = readString(parser, path + ".referenceBases");
+                    break;
+                case "alternateBases":
+                    alternateBases = readString(parser, path + ".alternateBases");
+                    break;
+                case "_share":
+                    if (!parser.currentToken().isBoolean()) {
+                        throw error(parser.getTokenLocation(), "expected true or false for " + path + "._share");
+                    }
+                    shareVariantLevelData = parser.getBooleanValue();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new Variant(assembly, referenceName, start, end, referenceBases, alternateBases, shareVariantLevelData);
+    }
+
+    private Map<String, String> readType(JsonParser parser, String path) throws IOException, PatientParseException {
+        expect(parser, JsonToken.START_OBJECT, path);
+        Map<String, String> type = new HashMap<>();
+        type.put("id", null);
+        type.put("label", "");
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (type.containsKey(name)) {
+                type.put(name, readString(parser, path + "." + name));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return type;
+    }
+
+    private static String readString(JsonParser parser, String path) throws IOException, PatientParseException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        throw error(parser.getTokenLocation(), "expected a string for " + path);
+    }
+
+    private static Long readLong(JsonParser parser, String path) throws IOException, PatientParseException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        throw error(parser.getTokenLocation(), "expected a whole number for " + path);
+    }
+
+    private static void expect(JsonParser parser, JsonToken expected, String path) throws PatientParseException {
+        if (parser.currentToken() != expected) {
+            String what = expected == JsonToken.START_OBJECT ? "an object" : "an array";
+            throw error(parser.getTokenLocation(), "expected " + what + " for " + path);
+        }
+    }
+
+    private static PatientParseException error(JsonLocation location, String message) {
+        return new PatientParseException(message, location.getLineNr(), location.getColumnNr());
+    }
+}
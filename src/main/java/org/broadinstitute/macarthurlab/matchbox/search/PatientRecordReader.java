@@ -0,0 +1,101 @@
+/**
+ * Reads a stream of MME patient records, one record at a time
+ */
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Takes either a JSON array of {"patient":{...}} records or the records one after the other,
+ * such as one per line (NDJSON). Only the record being read is held in memory. A record that
+ * is not a valid patient is reported and skipped, so the records after it can still be read,
+ * but once the JSON itself is malformed nothing more can be read.
+ *
+ * @author harindra
+ */
+public class PatientRecordReader implements Closeable {
+
+    private final JsonParser parser;
+    private final PatientRecordParser recordParser;
+
+    private boolean inArray;
+    private boolean finished;
+    private int index = -1;
+
+    PatientRecordReader(JsonParser parser, PatientRecordParser recordParser) {
+        this.parser = parser;
+        this.recordParser = recordParser;
+    }
+
+    /**
+     * @return the next patient, or null once there are no more records
+     * @throws PatientParseException if the next record is not a valid patient, or the JSON is
+     *                               malformed
+     */
+    public Patient next() throws PatientParseException {
+        if (this.finished) {
+            return null;
+        }
+        this.index++;
+        try {
+            JsonToken token = this.parser.nextToken();
+            if (this.index == 0 && token == JsonToken.START_ARRAY) {
+                this.inArray = true;
+                token = this.parser.nextToken();
+            }
+            if (token == null || (this.inArray && token == JsonToken.END_ARRAY)) {
+                this.finished = true;
+                this.index--;
+                return null;
+            }
+            int recordDepth = depth(this.parser.getParsingContext());
+            try {
+                return this.recordParser.readRecordObject(this.parser);
+            } catch (PatientParseException e) {
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    //skip to just past the end of this record
+                    while (depth(this.parser.getParsingContext()) >= recordDepth) {
+                        if (this.parser.nextToken() == null) {
+                            break;
+                        }
+                    }
+                }
+                throw e;
+            }
+        } catch (JsonParseException e) {
+            this.finished = true;
+            throw new PatientParseException("malformed JSON: " + e.getOriginalMessage(), e.getLocation().getLineNr(), e.getLocation().getColumnNr(), e);
+        } catch (IOException e) {
+            this.finished = true;
+            throw new PatientParseException("unable to read patient record: " + e.getMessage(), -1, -1, e);
+        }
+    }
+
+    /**
+     * @return where the record last read was in the stream, starting from 0
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.parser.close();
+    }
+
+    private static int depth(JsonStreamContext context) {
+        int depth = 0;
+        while (context != null) {
+            depth++;
+            context = context.getParent();
+        }
+        return depth;
+    }
+}
@@ -15,6 +15,11 @@
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -28,6 +33,8 @@
 @Component
 public class PatientRecordUtility {
 	
+	private static final PatientRecordParser RECORD_PARSER = new PatientRecordParser();
+	
 	private final Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	public boolean areAllRequiredFieldsPresent(String patientJsonString){
@@ -260,6 +267,59 @@ public Patient parsePatientInformation(String patientJsonString){
 	}
 	
 	
+	/**
+	 * Reads and checks a patient record sent in a request in a single pass. Unlike
+	 * parsePatientInformation, a record that isn't a valid patient is reported, with where
+	 * the problem is, rather than turned into an empty Patient.
+	 * @param requestBody	the request body, either the JSON record itself or the URL encoded
+	 * 						JSON record some clients send
+	 * @return	A Patient object that encloses the JSON data
+	 * @throws PatientParseException	if the record is not a valid patient
+	 */
+	public Patient parsePatient(byte[] requestBody) throws PatientParseException{
+		int first=0;
+		while (first<requestBody.length && Character.isWhitespace(requestBody[first])){
+			first++;
+		}
+		if (first<requestBody.length && requestBody[first]=='{'){
+			return RECORD_PARSER.parse(requestBody);
+		}
+		String decodedRequestString;
+		try{
+			decodedRequestString = URLDecoder.decode(new String(requestBody, StandardCharsets.UTF_8), "UTF-8");
+		}
+		catch(UnsupportedEncodingException | IllegalArgumentException e){
+			throw new PatientParseException("unable to URL decode patient record: " + e.getMessage(), -1, -1, e);
+		}
+		if (decodedRequestString.endsWith("=")){
+			decodedRequestString = decodedRequestString.substring(0, decodedRequestString.length() - 1);
+		}
+		return RECORD_PARSER.parse(decodedRequestString);
+	}
+	
+	
+	/**
+	 * Reads and checks a patient record in a single pass
+	 * @param patientJsonString	A JSON string of data about the patient (structure expected)
+	 * @return	A Patient object that encloses the JSON data
+	 * @throws PatientParseException	if the record is not a valid patient
+	 */
+	public Patient parsePatient(String patientJsonString) throws PatientParseException{
+		return RECORD_PARSER.parse(patientJsonString);
+	}
+	
+	
+	/**
+	 * Reads and checks patient records sent together, one record at a time
+	 * @param in	a JSON array of patient records, or the records one per line (NDJSON)
+	 * @return	a reader that gives each Patient, or reports why a record isn't valid
+	 * @throws IOException	if the stream can't be read
+	 */
+	public PatientRecordReader readPatients(InputStream in) throws IOException{
+		return RECORD_PARSER.readAll(in);
+	}
+	
+	
 	/**
 	 * Parsed json payload from a delete call. The payload looks like {"id":"idToDelete"}
 	 * @param jsonString	json string
@@ -0,0 +1,41 @@
+/**
+ * To represent an index of the phenotypes observed in the patients in this node
+ */
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author harindra
+ */
+public interface PhenotypeIndexService {
+
+    /**
+     * Returns true if the index can be used. Without an ontology to relate terms it can't say
+     * which patients could make a phenotype match, and every patient has to be scored.
+     */
+    public boolean isAvailable();
+
+    /**
+     * Adds a patient to the index, replacing any earlier entry with the same ID
+     */
+    public void indexPatient(Patient patient);
+
+    /**
+     * Removes a patient from the index
+     */
+    public void removePatient(String patientId);
+
+    /**
+     * Throws away the current index and rebuilds it from these patients
+     */
+    public void rebuild(List<Patient> patients);
+
+    /**
+     * Returns the IDs of the node patients that could make a phenotype match with this query patient
+     */
+    public Set<String> findPatientIdsSharingPhenotypes(Patient queryPatient);
+}
@@ -0,0 +1,184 @@
+/**
+ * An in-memory inverted index of HPO term to the patients observed with it, or with a descendant of it
+ */
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientCacheListener;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.match.HpoOntology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Each patient is indexed under its observed terms and under the ancestors of those terms that
+ * are at least minTermDepth is_a links below the root. Ancestors nearer the root, such as
+ * "Phenotypic abnormality" and the organ system terms under it, are shared by nearly every
+ * patient and say nothing about whether two patients could make a phenotype match, so they are
+ * left out. A query patient is looked up the same way, so a node patient is a candidate when
+ * the two share an observed term or an informative ancestor.
+ * <p>
+ * Without an ontology (matchbox.phenotype-index.hpo-obo-file not set) the index is not
+ * available. The index follows the patient cache.
+ *
+ * @author harindra
+ */
+@Service
+public class PhenotypeIndexServiceImpl implements PhenotypeIndexService, PatientCacheListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhenotypeIndexServiceImpl.class);
+
+    private final HpoOntology hpoOntology;
+    private final int minTermDepth;
+
+    /**
+     * HPO term ID to the IDs of the patients indexed under it
+     */
+    private final Map<String, Set<String>> termIdToPatientIds = new HashMap<>();
+
+    /**
+     * Patient ID to the HPO term IDs it was indexed under
+     */
+    private final Map<String, Set<String>> patientIdToTermIds = new HashMap<>();
+
+    /**
+     * Constructor, reads the ontology if one is configured
+     */
+    @Autowired
+    public PhenotypeIndexServiceImpl(@Value("${matchbox.phenotype-index.hpo-obo-file:}") String hpoOboFile,
+                                     @Value("${matchbox.phenotype-index.min-term-depth:3}") int minTermDepth) {
+        this(loadOntology(hpoOboFile), minTermDepth);
+    }
+
+    /**
+     * @param hpoOntology  the ontology, or null if there is none
+     * @param minTermDepth fewest is_a links from the root for an ancestor term to be indexed
+     */
+    public PhenotypeIndexServiceImpl(HpoOntology hpoOntology, int minTermDepth) {
+        this.hpoOntology = hpoOntology;
+        this.minTermDepth = minTermDepth;
+    }
+
+    private static HpoOntology loadOntology(String hpoOboFile) {
+        if (hpoOboFile.isEmpty()) {
+            logger.info("no HPO ontology configured, phenotype-only matches will score every patient");
+            return null;
+        }
+        try {
+            HpoOntology hpoOntology = HpoOntology.load(Paths.get(hpoOboFile));
+            logger.info("Loaded {} HPO terms from {}", hpoOntology.size(), hpoOboFile);
+            return hpoOntology;
+        } catch (IOException e) {
+            logger.error("error reading HPO ontology: " + e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return this.hpoOntology != null;
+    }
+
+    @Override
+    public void patientsReloaded(PatientSnapshot snapshot) {
+        this.rebuild(snapshot.getPatients());
+    }
+
+    @Override
+    public void patientSaved(Patient patient) {
+        this.indexPatient(patient);
+    }
+
+    @Override
+    public void patientDeleted(String patientId) {
+        this.removePatient(patientId);
+    }
+
+    @Override
+    public synchronized void indexPatient(Patient patient) {
+        if (!this.isAvailable()) {
+            return;
+        }
+        this.removePatient(patient.getId());
+        Set<String> termIds = this.toIndexedTermIds(patient);
+        if (termIds.isEmpty()) {
+            return;
+        }
+        this.patientIdToTermIds.put(patient.getId(), termIds);
+        for (String termId : termIds) {
+            this.termIdToPatientIds.computeIfAbsent(termId, k -> new HashSet<>()).add(patient.getId());
+        }
+    }
+
+    @Override
+    public synchronized void removePatient(String patientId) {
+        Set<String> termIds = this.patientIdToTermIds.remove(patientId);
+        if (termIds == null) {
+            return;
+        }
+        for (String termId : termIds) {
+            Set<String> patientIds = this.termIdToPatientIds.get(termId);
+            patientIds.remove(patientId);
+            if (patientIds.isEmpty()) {
+                this.termIdToPatientIds.remove(termId);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void rebuild(List<Patient> patients) {
+        this.termIdToPatientIds.clear();
+        this.patientIdToTermIds.clear();
+        if (!this.isAvailable()) {
+            return;
+        }
+        for (Patient patient : patients) {
+            this.indexPatient(patient);
+        }
+        logger.info("phenotype index built with {} terms across {} patients", this.termIdToPatientIds.size(), this.patientIdToTermIds.size());
+    }
+
+    @Override
+    public synchronized Set<String> findPatientIdsSharingPhenotypes(Patient queryPatient) {
+        Set<String> candidateIds = new HashSet<>();
+        for (String termId : this.toIndexedTermIds(queryPatient)) {
+            candidateIds.addAll(this.termIdToPatientIds.getOrDefault(termId, Collections.emptySet()));
+        }
+        return candidateIds;
+    }
+
+    /**
+     * @return the observed terms of this patient and their informative ancestors. Terms
+     * that are not in the ontology are indexed as they are.
+     */
+    private Set<String> toIndexedTermIds(Patient patient) {
+        Set<String> termIds = new HashSet<>();
+        if (!this.isAvailable()) {
+            return termIds;
+        }
+        for (String observedId : patient.getObservedPhenotypeIds()) {
+            if (observedId == null) {
+                continue;
+            }
+            String primaryId = this.hpoOntology.getPrimaryId(observedId);
+            if (primaryId == null) {
+                termIds.add(observedId);
+                continue;
+            }
+            termIds.add(primaryId);
+            for (String ancestorId : this.hpoOntology.getAncestorIds(primaryId)) {
+                if (this.hpoOntology.getDepth(ancestorId) >= this.minTermDepth) {
+                    termIds.add(ancestorId);
+                }
+            }
+        }
+        return termIds;
+    }
+}
@@ -6,6 +6,8 @@
  */
 package org.broadinstitute.macarthurlab.matchbox.search;
 
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalSearchResults;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
 
 import java.util.List;
@@ -16,5 +18,9 @@
 public interface SearchService {
     public List<String> searchInExternalMatchmakerNodesOnly(Patient patient);
 
+    public ExternalSearchResults searchExternalMatchmakerNodes(Patient patient);
+
     public List<String> searchInLocalDatabaseOnly(Patient patient, String requestOriginHostname);
+
+    public List<MatchmakerResult> findLocalMatches(Patient patient, String requestOriginHostname, int maxResults);
 }
@@ -0,0 +1,400 @@
+/**
+ * Makes up MME patients for load, scale and benchmark testing
+ */
+package org.broadinstitute.macarthurlab.matchbox.synthetic;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+import org.broadinstitute.macarthurlab.matchbox.config.GeneSymbolMappingConfig;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.entities.PhenotypeFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Variant;
+import org.broadinstitute.macarthurlab.matchbox.match.HpoOntology;
+import org.broadinstitute.macarthurlab.matchbox.search.MatchmakerResultWriter;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Usage,
+ * <pre>
+ * java -cp matchbox.jar -Dloader.main=org.broadinstitute.macarthurlab.matchbox.synthetic.SyntheticPatientGenerator \
+ *      org.springframework.boot.loader.PropertiesLauncher &lt;number of patients&gt; &lt;output .json or mongodb:// URI&gt; \
+ *      [seed] [hp.obo]
+ * </pre>
+ * Patients are written as a JSON array laid out like the MME test data set, or inserted into
+ * the patient collection of the database named in a mongodb:// URI. A running matchbox picks
+ * up inserted patients when its patient cache is next reloaded.
+ * <p>
+ * Patients come from a single seeded random sequence, so the same seed always gives the same
+ * patients, and the first n patients of a larger set are the same as a set of n. Genes are
+ * taken from the gene symbol to ID mappings file, a few of them in many patients and most in
+ * very few, the way diagnoses spread across genes in rare disease cohorts. Phenotype terms
+ * are skewed the same way, from hp.obo if it is given (only terms at least
+ * {@value #MIN_HPO_TERM_DEPTH} is_a links below the root) or else from a list of terms common
+ * in MME submissions. About half the variants are positioned, some of them without bases, and
+ * the rest are gene only.
+ *
+ * @author harindra
+ */
+public class SyntheticPatientGenerator implements Iterator<Patient> {
+
+    public static final long DEFAULT_SEED = 20181126L;
+
+    private static final String GENE_SYMBOL_TO_ID_MAPPINGS = "config/gene_symbol_to_ensembl_id_map.txt";
+
+    private static final int MIN_HPO_TERM_DEPTH = 4;
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    /**
+     * Genes behind the most diagnoses in large developmental disorder cohorts, most common
+     * first. The rest of the genes follow in a seeded shuffled order.
+     */
+    public static final List<String> COMMON_GENES = Collections.unmodifiableList(Arrays.asList(
+            "ARID1B", "ANKRD11", "DDX3X", "ADNP", "MECP2", "KMT2A", "SCN2A", "STXBP1", "SYNGAP1", "KCNQ2",
+            "DYRK1A", "SCN1A", "CHD8", "PURA", "CTNNB1", "MED13L", "FOXP1", "EHMT1", "CREBBP", "KAT6B",
+            "TCF4", "CDKL5", "GRIN2B", "SETD5", "SON", "NSD1", "EP300", "PACS1", "FOXG1", "SMARCA2"));
+
+    /**
+     * Phenotype terms common in MME submissions, most common first
+     */
+    public static final List<String> COMMON_HPO_TERMS = Collections.unmodifiableList(Arrays.asList(
+            "HP:0001263", "HP:0001249", "HP:0001250", "HP:0001252", "HP:0000252", "HP:0004322", "HP:0000750",
+            "HP:0000729", "HP:0001508", "HP:0001270", "HP:0000256", "HP:0000486", "HP:0002650", "HP:0000365",
+            "HP:0001290", "HP:0002079", "HP:0001629", "HP:0001631", "HP:0000316", "HP:0000175", "HP:0001251",
+            "HP:0001257", "HP:0007018", "HP:0000407", "HP:0000505", "HP:0000639", "HP:0000047", "HP:0000028",
+            "HP:0001511", "HP:0002376", "HP:0001382", "HP:0000343", "HP:0000431", "HP:0000494", "HP:0000508",
+            "HP:0000272", "HP:0000347", "HP:0000369", "HP:0001156", "HP:0001762", "HP:0002119", "HP:0001274",
+            "HP:0001332", "HP:0003128", "HP:0001638", "HP:0003198", "HP:0003236", "HP:0000083", "HP:0000107",
+            "HP:0002240", "HP:0000964", "HP:0002019", "HP:0011451", "HP:0000522", "HP:0100026", "HP:0003561"));
+
+    /**
+     * SO ID, label and relative frequency of the variant types given
+     */
+    private static final String[][] TYPES = {
+            {"SO:0001583", "MISSENSE", "45"},
+            {"SO:0001587", "STOPGAIN", "15"},
+            {"SO:0001589", "FRAMESHIFT", "15"},
+            {"SO:0001575", "SPLICE_DONOR", "5"},
+            {"SO:0001574", "SPLICE_ACCEPTOR", "5"},
+            {"SO:0001822", "INFRAME_DELETION", "5"},
+            {"SO:0002054", "LOSS_OF_FUNCTION", "5"},
+            {"SO:0001819", "SYNONYMOUS", "5"}};
+
+    /**
+     * Lengths of chromosomes 1-22 and X in GRCh37, in megabases
+     */
+    private static final int[] CHROMOSOME_MEGABASES = {
+            249, 243, 198, 191, 181, 171, 159, 146, 141, 135, 135, 133, 115, 107, 102, 90, 81, 78, 59, 63, 48, 51, 155};
+
+    private static final String[] BASES = {"A", "C", "G", "T"};
+
+    private static final String[] INSTITUTIONS = {
+            "Synthetic Children's Hospital", "Synthetic Genomics Center", "Synthetic University Medical Center",
+            "Synthetic Rare Disease Clinic", "Synthetic Institute of Genetics"};
+
+    private final Random random;
+    private final List<String> geneSymbols;
+    private final double[] geneWeights;
+    private final List<String> hpoTermIds;
+    private final double[] hpoTermWeights;
+    private final double[] typeWeights;
+    private final String idPrefix;
+    private long nextIndex;
+    private long remaining = Long.MAX_VALUE;
+
+    /**
+     * @param geneSymbols gene symbols, the most common first
+     * @param hpoTermIds  HPO term IDs, the most common first
+     * @param seed        where the random sequence starts
+     * @param idPrefix    put in front of the number of each patient to make its ID
+     */
+    public SyntheticPatientGenerator(List<String> geneSymbols, List<String> hpoTermIds, long seed, String idPrefix) {
+        if (geneSymbols.isEmpty() || hpoTermIds.isEmpty()) {
+            throw new IllegalArgumentException("patients need genes and HPO terms to be made from");
+        }
+        this.random = new Random(seed);
+        this.geneSymbols = new ArrayList<>(geneSymbols);
+        this.geneWeights = zipf(geneSymbols.size(), 0.8);
+        this.hpoTermIds = new ArrayList<>(hpoTermIds);
+        this.hpoTermWeights = zipf(hpoTermIds.size(), 0.7);
+        this.typeWeights = new double[TYPES.length];
+        double total = 0;
+        for (int i = 0; i < TYPES.length; i++) {
+            total += Double.parseDouble(TYPES[i][2]);
+            this.typeWeights[i] = total;
+        }
+        this.idPrefix = idPrefix;
+    }
+
+    /**
+     * @param geneSymbolToEnsemblId gene symbol to Ensembl ID, as read from the mappings file
+     * @param hpoOntology           where to take phenotype terms from, or null for the common ones
+     * @param seed                  where the random sequence starts
+     * @param idPrefix              put in front of the number of each patient to make its ID
+     * @return a generator of patients
+     */
+    public static SyntheticPatientGenerator create(Map<String, String> geneSymbolToEnsemblId, HpoOntology hpoOntology, long seed, String idPrefix) {
+        return new SyntheticPatientGenerator(rankGenes(geneSymbolToEnsemblId.keySet(), seed), rankHpoTerms(hpoOntology, seed), seed, idPrefix);
+    }
+
+    /**
+     * @return the common genes first, then the others that look like protein coding genes in a
+     * seeded shuffled order
+     */
+    static List<String> rankGenes(Set<String> geneSymbols, long seed) {
+        List<String> ranked = new ArrayList<>();
+        for (String commonGene : COMMON_GENES) {
+            if (geneSymbols.contains(commonGene)) {
+                ranked.add(commonGene);
+            }
+        }
+        List<String> others = new ArrayList<>();
+        for (String geneSymbol : geneSymbols) {
+            if (!COMMON_GENES.contains(geneSymbol) && looksProteinCoding(geneSymbol)) {
+                others.add(geneSymbol);
+            }
+        }
+        Collections.sort(others);
+        Collections.shuffle(others, new Random(seed));
+        ranked.addAll(others);
+        return ranked;
+    }
+
+    private static boolean looksProteinCoding(String geneSymbol) {
+        return !geneSymbol.contains("-") && !geneSymbol.startsWith("LINC") && !geneSymbol.startsWith("MIR")
+                && !geneSymbol.startsWith("SNOR") && !geneSymbol.startsWith("RNU") && !geneSymbol.startsWith("LOC");
+    }
+
+    /**
+     * @return the common terms first, then the other informative terms of the ontology in a
+     * seeded shuffled order
+     */
+    static List<String> rankHpoTerms(HpoOntology hpoOntology, long seed) {
+        if (hpoOntology == null) {
+            return COMMON_HPO_TERMS;
+        }
+        List<String> ranked = new ArrayList<>();
+        for (String commonTerm : COMMON_HPO_TERMS) {
+            if (hpoOntology.getTermIds().contains(commonTerm)) {
+                ranked.add(commonTerm);
+            }
+        }
+        List<String> others = new ArrayList<>();
+        for (String termId : hpoOntology.getTermIds()) {
+            if (!COMMON_HPO_TERMS.contains(termId) && hpoOntology.getDepth(termId) >= MIN_HPO_TERM_DEPTH) {
+                others.add(termId);
+            }
+        }
+        Collections.sort(others);
+        Collections.shuffle(others, new Random(seed));
+        ranked.addAll(others);
+        return ranked;
+    }
+
+    /**
+     * @return cumulative weights of ranks 1..n under Zipf's law with this exponent
+     */
+    private static double[] zipf(int n, double exponent) {
+        double[] cumulative = new double[n];
+        double total = 0;
+        for (int rank = 1; rank <= n; rank++) {
+            total += 1.0 / Math.pow(rank, exponent);
+            cumulative[rank - 1] = total;
+        }
+        return cumulative;
+    }
+
+    /**
+     * @return an index picked with the weights behind these cumulative weights
+     */
+    private int pick(double[] cumulative) {
+        double target = this.random.nextDouble() * cumulative[cumulative.length - 1];
+        int index = Arrays.binarySearch(cumulative, target);
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+
+    private boolean chance(double probability) {
+        return this.random.nextDouble() < probability;
+    }
+
+    /**
+     * @param count number of patients
+     * @return the next count patients
+     */
+    public List<Patient> generate(int count) {
+        List<Patient> patients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            patients.add(this.next());
+        }
+        return patients;
+    }
+
+    /**
+     * @param count number of patients to stop after
+     * @return this generator
+     */
+    public SyntheticPatientGenerator limit(long count) {
+        this.remaining = count;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.remaining > 0;
+    }
+
+    @Override
+    public Patient next() {
+        if (this.remaining <= 0) {
+            throw new NoSuchElementException();
+        }
+        this.remaining--;
+        String id = this.idPrefix + String.format("%07d", this.nextIndex++);
+
+        Map<String, String> contact = new HashMap<>();
+        contact.put("name", "Synthetic Contact " + this.random.nextInt(1000));
+        contact.put("institution", INSTITUTIONS[this.random.nextInt(INSTITUTIONS.length)]);
+        contact.put("href", "mailto:synthetic@example.org");
+
+        String sex = chance(0.04) ? "" : this.random.nextBoolean() ? "MALE" : "FEMALE";
+        String ageOfOnset = chance(0.2) ? "HP:0003577" : chance(0.25) ? "HP:0003593" : "";
+
+        //a few patients are submitted with genes only, and a few with phenotypes only
+        List<PhenotypeFeature> features = chance(0.05) ? new ArrayList<>() : this.features();
+        List<GenomicFeature> genomicFeatures = features.isEmpty() || !chance(0.05) ? this.genomicFeatures() : new ArrayList<>();
+
+        return new Patient(id, "synthetic-" + id, contact, "NCBITaxon:9606", sex, ageOfOnset, "",
+                new ArrayList<>(), features, genomicFeatures);
+    }
+
+    /**
+     * @return around 6 terms, as few as 1 and rarely more than 20
+     */
+    private List<PhenotypeFeature> features() {
+        int count = Math.min(1 + (int) (Math.log(1 - this.random.nextDouble()) / Math.log(1 - 1.0 / 6)), 50);
+        Set<String> termIds = new LinkedHashSet<>();
+        //a patient has each term once, so stop looking if the common ones keep coming up
+        for (int tries = 0; termIds.size() < count && tries < count * 10; tries++) {
+            termIds.add(this.hpoTermIds.get(pick(this.hpoTermWeights)));
+        }
+        List<PhenotypeFeature> features = new ArrayList<>(termIds.size());
+        for (String termId : termIds) {
+            features.add(new PhenotypeFeature(termId, chance(0.05) ? "no" : "yes", ""));
+        }
+        return features;
+    }
+
+    /**
+     * @return mostly one gene, sometimes two or three candidates
+     */
+    private List<GenomicFeature> genomicFeatures() {
+        int count = chance(0.75) ? 1 : chance(0.8) ? 2 : 3;
+        Set<String> genes = new HashSet<>();
+        List<GenomicFeature> genomicFeatures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String geneSymbol = this.geneSymbols.get(pick(this.geneWeights));
+            if (!genes.add(geneSymbol)) {
+                continue;
+            }
+            Map<String, String> gene = new HashMap<>();
+            gene.put("id", geneSymbol);
+            Long zygosity = chance(0.65) ? 1L : chance(0.7) ? 2L : -1L;
+            Map<String, String> type = new HashMap<>();
+            if (!chance(0.25)) {
+                String[] picked = TYPES[pick(this.typeWeights)];
+                type.put("id", picked[0]);
+                type.put("label", picked[1]);
+            }
+            genomicFeatures.add(new GenomicFeature(gene, this.variant(), zygosity, type));
+        }
+        return genomicFeatures;
+    }
+
+    /**
+     * @return a gene only (unpopulated) variant, a position without bases, or a full variant
+     */
+    private Variant variant() {
+        double kind = this.random.nextDouble();
+        if (kind < 0.35) {
+            return new Variant("", "", -1L, -1L, "", "", true);
+        }
+        String assembly = chance(0.8) ? "GRCh37" : "GRCh38";
+        int chromosome = this.random.nextInt(CHROMOSOME_MEGABASES.length);
+        String referenceName = chromosome == 22 ? "X" : Integer.toString(chromosome + 1);
+        long start = 1 + (long) (this.random.nextDouble() * CHROMOSOME_MEGABASES[chromosome] * 1_000_000L);
+        if (kind < 0.55) {
+            return new Variant(assembly, referenceName, start, -1L, "", "", true);
+        }
+        String referenceBases = BASES[this.random.nextInt(BASES.length)];
+        String alternateBases = BASES[this.random.nextInt(BASES.length)];
+        if (alternateBases.equals(referenceBases)) {
+            alternateBases = BASES[(Arrays.asList(BASES).indexOf(referenceBases) + 1) % BASES.length];
+        }
+        if (chance(0.15)) {
+            //a small deletion
+            StringBuilder deleted = new StringBuilder(referenceBases);
+            int length = 1 + this.random.nextInt(5);
+            for (int i = 0; i < length; i++) {
+                deleted.append(BASES[this.random.nextInt(BASES.length)]);
+            }
+            alternateBases = referenceBases;
+            referenceBases = deleted.toString();
+        }
+        return new Variant(assembly, referenceName, start, start + referenceBases.length() - 1, referenceBases, alternateBases, true);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("usage: SyntheticPatientGenerator <number of patients> <output .json or mongodb://host:port/database> [seed] [hp.obo]");
+            System.exit(1);
+        }
+        long count = Long.parseLong(args[0]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        HpoOntology hpoOntology = args.length > 3 ? HpoOntology.load(Paths.get(args[3])) : null;
+        SyntheticPatientGenerator generator = create(
+                GeneSymbolMappingConfig.readGeneSymbolToEnsemblId(Paths.get(GENE_SYMBOL_TO_ID_MAPPINGS)), hpoOntology, seed, "SYN").limit(count);
+
+        if (args[1].startsWith("mongodb://")) {
+            MongoClientURI uri = new MongoClientURI(args[1]);
+            MongoClient mongoClient = new MongoClient(uri);
+            try {
+                MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, uri.getDatabase());
+                long inserted = 0;
+                while (generator.hasNext()) {
+                    List<Patient> batch = generator.generate((int) Math.min(INSERT_BATCH_SIZE, count - inserted));
+                    mongoTemplate.insert(batch, Patient.class);
+                    inserted += batch.size();
+                }
+                System.out.println("inserted " + inserted + " patients into " + uri.getDatabase());
+            } finally {
+                mongoClient.close();
+            }
+        } else {
+            Path output = Paths.get(args[1]);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), 1 << 16)) {
+                new MatchmakerResultWriter().writePatients(out, generator);
+            }
+            System.out.println("wrote " + count + " patients to " + output);
+        }
+    }
+}
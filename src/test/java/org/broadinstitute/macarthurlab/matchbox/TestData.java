@@ -4,7 +4,11 @@
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
 import org.broadinstitute.macarthurlab.matchbox.entities.PhenotypeFeature;
 import org.broadinstitute.macarthurlab.matchbox.entities.Variant;
+import org.broadinstitute.macarthurlab.matchbox.match.HpoOntology;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -325,4 +329,29 @@ public static Map<String, String> geneIdentifiers() {
         geneSymbolToEnsemblId.put("FGFR2", "ENSG00000066468");
         return geneSymbolToEnsemblId;
     }
+
+    /**
+     * A small part of the HPO, as it appears in hp.obo. Depths are,
+     * All 0, Phenotypic abnormality 1, the organ system terms 2 and their children 3.
+     */
+    public static HpoOntology hpoOntology() {
+        String obo = "format-version: 1.2\n"
+                + "ontology: hp\n\n"
+                + "[Term]\nid: HP:0000001\nname: All\n\n"
+                + "[Term]\nid: HP:0000118\nname: Phenotypic abnormality\nis_a: HP:0000001 ! All\n\n"
+                + "[Term]\nid: HP:0000707\nname: Abnormality of the nervous system\nis_a: HP:0000118 ! Phenotypic abnormality\n\n"
+                + "[Term]\nid: HP:0012638\nname: Abnormal nervous system physiology\nis_a: HP:0000707 ! Abnormality of the nervous system\n\n"
+                + "[Term]\nid: HP:0001250\nname: Seizure\nalt_id: HP:0002279\nis_a: HP:0012638 ! Abnormal nervous system physiology\n\n"
+                + "[Term]\nid: HP:0002373\nname: Febrile seizure\nis_a: HP:0001250 ! Seizure\n\n"
+                + "[Term]\nid: HP:0001263\nname: Global developmental delay\nis_a: HP:0012638 ! Abnormal nervous system physiology\n\n"
+                + "[Term]\nid: HP:0000478\nname: Abnormality of the eye\nis_a: HP:0000118 ! Phenotypic abnormality\n\n"
+                + "[Term]\nid: HP:0000522\nname: Alacrima\nis_a: HP:0000478 ! Abnormality of the eye\n\n"
+                + "[Term]\nid: HP:0009999\nname: obsolete Convulsions\nis_obsolete: true\nreplaced_by: HP:0001250\n\n"
+                + "[Typedef]\nid: part_of\nname: part of\n";
+        try {
+            return HpoOntology.read(new BufferedReader(new StringReader(obo)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,85 @@
+package org.broadinstitute.macarthurlab.matchbox.authentication;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class NodeRequestLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private NodeRequestLimiter limiter(double requestsPerSecond, int burst, int maxInFlight) {
+        NodeRequestLimiter limiter = new NodeRequestLimiter(now::get);
+        limiter.setRequestsPerSecond(requestsPerSecond);
+        limiter.setBurst(burst);
+        limiter.setMaxInFlight(maxInFlight);
+        return limiter;
+    }
+
+    private void advanceMillis(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void testNoLimitsAdmitsEverything() {
+        NodeRequestLimiter limiter = limiter(0, 0, 0);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.ADMITTED));
+        }
+        assertThat(limiter.getStats().get("Node A").get("inFlight"), equalTo(1000L));
+    }
+
+    @Test
+    public void testBucketRefillsAtTheRate() {
+        NodeRequestLimiter limiter = limiter(2, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.ADMITTED));
+            limiter.release("Node A");
+        }
+        assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.RATE_LIMITED));
+        assertThat(limiter.getRetryAfterSeconds("Node A"), equalTo(1));
+
+        advanceMillis(500);
+        assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.ADMITTED));
+        assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.RATE_LIMITED));
+        assertThat(limiter.getStats().get("Node A").get("admitted"), equalTo(4L));
+        assertThat(limiter.getStats().get("Node A").get("rateLimited"), equalTo(2L));
+    }
+
+    @Test
+    public void testOneNodeDoesNotUseUpAnothersLimits() {
+        NodeRequestLimiter limiter = limiter(1, 1, 0);
+        assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.ADMITTED));
+        assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.RATE_LIMITED));
+        assertThat(limiter.tryAcquire("Node B"), equalTo(NodeRequestLimiter.Decision.ADMITTED));
+    }
+
+    @Test
+    public void testInFlightQuotaIsGivenBackOnRelease() {
+        NodeRequestLimiter limiter = limiter(0, 0, 2);
+        assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.ADMITTED));
+        assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.ADMITTED));
+        assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.TOO_MANY_IN_FLIGHT));
+        limiter.release("Node A");
+        assertThat(limiter.tryAcquire("Node A"), equalTo(NodeRequestLimiter.Decision.ADMITTED));
+        assertThat(limiter.getStats().get("Node A").get("tooManyInFlight"), equalTo(1L));
+    }
+
+    @Test
+    public void testNodeLimitsOverrideTheDefaults() {
+        NodeRequestLimiter limiter = limiter(1, 1, 0);
+        limiter.setNodeLimits("Bulk Node", 0, -1, 1);
+        assertThat(limiter.tryAcquire("Bulk Node"), equalTo(NodeRequestLimiter.Decision.ADMITTED));
+        assertThat(limiter.tryAcquire("Bulk Node"), equalTo(NodeRequestLimiter.Decision.TOO_MANY_IN_FLIGHT));
+        limiter.release("Bulk Node");
+        //no rate limit of its own
+        assertThat(limiter.tryAcquire("Bulk Node"), equalTo(NodeRequestLimiter.Decision.ADMITTED));
+    }
+}
@@ -0,0 +1,183 @@
+package org.broadinstitute.macarthurlab.matchbox.controllers;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.search.MatchRequestExecutor;
+import org.broadinstitute.macarthurlab.matchbox.search.MatchRequestExecutorImpl;
+import org.broadinstitute.macarthurlab.matchbox.search.SearchService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author harindra
+ */
+public class MatchControllerTest {
+
+    private static final byte[] QUERY = ("{\"patient\":{\"id\":\"query\",\"contact\":{\"name\":\"Test Contact\",\"href\":\"mailto:test@test.com\"},"
+            + "\"features\":[{\"id\":\"HP:0000118\",\"observed\":\"yes\"}]}}").getBytes(StandardCharsets.UTF_8);
+
+    private MatchController controller;
+    private SearchService searcher;
+    private MatchRequestExecutorImpl executor;
+
+    @Before
+    public void setUp() {
+        controller = new MatchController();
+        searcher = mock(SearchService.class);
+        controller.setSearcher(searcher);
+        executor = new MatchRequestExecutorImpl();
+        executor.setPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setTimeoutMs(60000);
+        executor.setRetryAfterSeconds(7);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    private HttpServletRequest request() {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getAttribute("originMatchmakerNodeName")).thenReturn("partner");
+        when(request.getRequestURI()).thenReturn("/match");
+        return request;
+    }
+
+    private void assertBusy(ResponseEntity<?> response) {
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER), equalTo("7"));
+    }
+
+    /**
+     * Hands the deferred result to Spring's async handling, as the dispatcher would, and then
+     * has the container time the request out
+     */
+    private void timeOut(HttpServletRequest request, DeferredResult<?> deferred) throws Exception {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        AsyncContext asyncContext = mock(AsyncContext.class);
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync(request, response)).thenReturn(asyncContext);
+        StandardServletAsyncWebRequest asyncWebRequest = new StandardServletAsyncWebRequest(request, response);
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setAsyncWebRequest(asyncWebRequest);
+        asyncManager.startDeferredResultProcessing(deferred);
+        when(request.isAsyncStarted()).thenReturn(true);
+        asyncWebRequest.onTimeout(new AsyncEvent(asyncContext));
+    }
+
+    @Test
+    public void testFullPoolIsAnsweredBusyWithRetryAfter() {
+        MatchRequestExecutor fullExecutor = mock(MatchRequestExecutor.class);
+        when(fullExecutor.getTimeoutMs()).thenReturn(60000L);
+        when(fullExecutor.getRetryAfterSeconds()).thenReturn(7);
+        when(fullExecutor.submit(anyString(), any())).thenThrow(new RejectedExecutionException("full"));
+        controller.setMatchRequestExecutor(fullExecutor);
+
+        DeferredResult<ResponseEntity<StreamingResponseBody>> deferred = controller.match(QUERY, 0, request());
+
+        assertBusy((ResponseEntity<?>) deferred.getResult());
+    }
+
+    @Test
+    public void testTimedOutRequestIsAnsweredBusyAndItsQueuedWorkNeverRuns() throws Exception {
+        executor.setAsync(true);
+        executor.init();
+        controller.setMatchRequestExecutor(executor);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(searcher.findLocalMatches(any(Patient.class), anyString(), anyInt())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return Collections.<MatchmakerResult>emptyList();
+        });
+
+        //the first request takes the only thread, the second waits on the queue
+        DeferredResult<ResponseEntity<StreamingResponseBody>> running = controller.match(QUERY, 0, request());
+        assertThat(started.await(10, TimeUnit.SECONDS), equalTo(true));
+        HttpServletRequest queuedRequest = request();
+        DeferredResult<ResponseEntity<StreamingResponseBody>> queued = controller.match(QUERY, 0, queuedRequest);
+
+        timeOut(queuedRequest, queued);
+        assertBusy((ResponseEntity<?>) queued.getResult());
+        assertThat(executor.getStats().get("/match").get("timedOut"), equalTo(1L));
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!running.hasResult() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        ResponseEntity<StreamingResponseBody> answered = (ResponseEntity<StreamingResponseBody>) running.getResult();
+        assertThat(answered.getStatusCode(), equalTo(HttpStatus.OK));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        answered.getBody().writeTo(body);
+        assertThat(body.toString("UTF-8").startsWith("{\"results\":[]"), equalTo(true));
+        //the queued request was cancelled, so only the running one was matched
+        Thread.sleep(100);
+        verify(searcher, times(1)).findLocalMatches(any(Patient.class), anyString(), anyInt());
+        assertBusy((ResponseEntity<?>) queued.getResult());
+    }
+
+    @Test
+    public void testTimedOutRequestThatIsRunningIsInterrupted() throws Exception {
+        executor.setAsync(true);
+        executor.init();
+        controller.setMatchRequestExecutor(executor);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(searcher.findLocalMatches(any(Patient.class), anyString(), anyInt())).thenAnswer(invocation -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return Collections.<MatchmakerResult>emptyList();
+        });
+
+        HttpServletRequest request = request();
+        DeferredResult<ResponseEntity<StreamingResponseBody>> deferred = controller.match(QUERY, 0, request);
+        assertThat(started.await(10, TimeUnit.SECONDS), equalTo(true));
+        timeOut(request, deferred);
+
+        assertBusy((ResponseEntity<?>) deferred.getResult());
+        //the thread was handed back rather than held until the match finished
+        assertThat(interrupted.await(5, TimeUnit.SECONDS), equalTo(true));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getStats().get("/match").get("inFlight") != 0L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(executor.getStats().get("/match").get("inFlight"), equalTo(0L));
+    }
+}
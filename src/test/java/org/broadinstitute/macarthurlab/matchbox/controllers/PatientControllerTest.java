@@ -0,0 +1,355 @@
+package org.broadinstitute.macarthurlab.matchbox.controllers;
+
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientCache;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb.PatientMongoRepository;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb.PatientUpsertResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.match.GeneIdentifierResolver;
+import org.broadinstitute.macarthurlab.matchbox.search.PatientRecordUtility;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author harindra
+ */
+public class PatientControllerTest {
+
+    private PatientController controller;
+    private PatientMongoRepository patientMongoRepository;
+    private PatientCache patientCache;
+
+    /**
+     * Batches the repository was asked to write, as patient IDs
+     */
+    private List<List<String>> batches;
+
+    /**
+     * Whether the patient cursor was closed
+     */
+    private boolean closed;
+
+    @Before
+    public void setUp() {
+        patientMongoRepository = mock(PatientMongoRepository.class);
+        patientCache = mock(PatientCache.class);
+        batches = new ArrayList<>();
+        //P3 fails to write, patients with IDs starting with R are already there
+        when(patientMongoRepository.upsertAll(anyListOf(Patient.class))).thenAnswer(invocation -> {
+            List<String> batch = new ArrayList<>();
+            List<PatientUpsertResult> results = new ArrayList<>();
+            for (Object argument : (List<?>) invocation.getArguments()[0]) {
+                String id = ((Patient) argument).getId();
+                batch.add(id);
+                if (id.equals("P3")) {
+                    results.add(new PatientUpsertResult(id, PatientUpsertResult.Status.FAILED, "write failed"));
+                } else if (id.startsWith("R")) {
+                    results.add(new PatientUpsertResult(id, PatientUpsertResult.Status.REPLACED, null));
+                } else {
+                    results.add(new PatientUpsertResult(id, PatientUpsertResult.Status.INSERTED, null));
+                }
+            }
+            batches.add(batch);
+            return results;
+        });
+        when(patientMongoRepository.upsert(any(Patient.class))).thenAnswer(invocation -> {
+            String id = ((Patient) invocation.getArguments()[0]).getId();
+            PatientUpsertResult.Status status = id.startsWith("R") ? PatientUpsertResult.Status.REPLACED : PatientUpsertResult.Status.INSERTED;
+            return new PatientUpsertResult(id, status, null);
+        });
+        controller = new PatientController();
+        controller.setPatientMongoRepository(patientMongoRepository);
+        controller.setPatientCache(patientCache);
+        controller.setBulkAddBatchSize(2);
+        controller.setObjectMapper(new ObjectMapper());
+        controller.setGeneIdentifierResolver(new GeneIdentifierResolver(TestData.geneIdentifiers()));
+    }
+
+    private static String record(String id) {
+        return "{\"patient\":{\"id\":\"" + id + "\",\"contact\":{\"name\":\"Test Contact\",\"href\":\"mailto:test@test.com\"},"
+                + "\"features\":[{\"id\":\"HP:0000118\",\"observed\":\"yes\"}]}}";
+    }
+
+    private JSONObject bulkAdd(String body) throws Exception {
+        ByteArrayInputStream in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getInputStream()).thenReturn(new ServletInputStream() {
+            @Override
+            public int read() {
+                return in.read();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return in.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        controller.bulkAdd(request, response(out));
+        return (JSONObject) new JSONParser().parse(new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static HttpServletResponse response(ByteArrayOutputStream out) throws IOException {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Serves patients P1 and P2 from a cursor, closing it when asked
+     */
+    private CloseableIterator<Patient> cursor() throws Exception {
+        Iterator<Patient> patients = Arrays.asList(
+                new PatientRecordUtility().parsePatient(record("P1").getBytes(StandardCharsets.UTF_8)),
+                new PatientRecordUtility().parsePatient(record("P2").getBytes(StandardCharsets.UTF_8))).iterator();
+        return new CloseableIterator<Patient>() {
+            @Override
+            public boolean hasNext() {
+                return patients.hasNext();
+            }
+
+            @Override
+            public Patient next() {
+                return patients.next();
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+            }
+        };
+    }
+
+    private String view(String after, int limit, String fields, String format, HttpServletResponse response,
+                        ByteArrayOutputStream out) throws IOException {
+        controller.view(after, limit, fields, format, response);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> statuses(JSONObject json) {
+        List<String> statuses = new ArrayList<>();
+        for (Object result : (JSONArray) json.get("results")) {
+            JSONObject status = (JSONObject) result;
+            statuses.add(status.get("index") + ":" + status.get("id") + ":" + status.get("status"));
+        }
+        return statuses;
+    }
+
+    @Test
+    public void testBulkAddWritesInBatchesAndReportsEachRecord() throws Exception {
+        String invalid = "{\"patient\":{\"id\":\"P2\"}}";
+        JSONObject json = bulkAdd(record("P1") + "\n" + invalid + "\n" + record("R1") + "\n" + record("P3") + "\n" + record("P4") + "\n");
+
+        assertThat(batches, equalTo(Arrays.asList(Arrays.asList("P1", "R1"), Arrays.asList("P3", "P4"))));
+        assertThat(statuses(json), equalTo(Arrays.asList(
+                "1:null:invalid", "0:P1:inserted", "2:R1:replaced", "3:P3:failed", "4:P4:inserted")));
+        assertThat(json.get("inserted"), equalTo(2L));
+        assertThat(json.get("replaced"), equalTo(1L));
+        assertThat(json.get("invalid"), equalTo(1L));
+        assertThat(json.get("failed"), equalTo(1L));
+        //all but the patient that failed to write, once per batch
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Patient>> saved = (ArgumentCaptor) ArgumentCaptor.forClass(Collection.class);
+        verify(patientCache, times(2)).patientsSaved(saved.capture());
+        verify(patientCache, never()).patientSaved(any(Patient.class));
+        List<List<String>> savedIds = new ArrayList<>();
+        for (Collection<Patient> batch : saved.getAllValues()) {
+            List<String> ids = new ArrayList<>();
+            batch.forEach(patient -> ids.add(patient.getId()));
+            savedIds.add(ids);
+        }
+        assertThat(savedIds, equalTo(Arrays.asList(Arrays.asList("P1", "R1"), Arrays.asList("P4"))));
+    }
+
+    @Test
+    public void testSamePatientTwiceIsWrittenInSeparateBatches() throws Exception {
+        controller.setBulkAddBatchSize(10);
+        bulkAdd("[" + record("P1") + "," + record("P1") + "," + record("P4") + "]");
+
+        assertThat(batches, equalTo(Arrays.asList(Arrays.asList("P1"), Arrays.asList("P1", "P4"))));
+    }
+
+    @Test
+    public void testMalformedJsonKeepsTheRecordsBeforeIt() throws Exception {
+        JSONObject json = bulkAdd(record("P1") + "\n{\"patient\":\n" + record("P4"));
+
+        assertThat(batches, equalTo(Arrays.asList(Arrays.asList("P1"))));
+        assertThat(json.get("inserted"), equalTo(1L));
+        assertThat(json.get("invalid"), equalTo(1L));
+    }
+
+    @Test
+    public void testAddNewPatientIsOk() {
+        ResponseEntity<String> response = controller.add(record("P1").getBytes(StandardCharsets.UTF_8));
+
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
+        verify(patientCache).patientSaved(any(Patient.class));
+    }
+
+    @Test
+    public void testAddExistingPatientIsReplacedInOneWrite() {
+        ResponseEntity<String> response = controller.add(record("R1").getBytes(StandardCharsets.UTF_8));
+
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.CONFLICT));
+        verify(patientMongoRepository).upsert(any(Patient.class));
+        verify(patientMongoRepository, never()).findOne(anyString());
+        verify(patientMongoRepository, never()).delete(any(Patient.class));
+        verify(patientCache).patientSaved(any(Patient.class));
+    }
+
+    @Test
+    public void testViewWritesPatientsAsAJsonArray() throws Exception {
+        when(patientMongoRepository.streamPatients(null, 0, Collections.emptySet())).thenReturn(cursor());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        JSONArray patients = (JSONArray) new JSONParser().parse(view(null, 0, null, "json", response(out), out));
+
+        assertThat(patients.size(), equalTo(2));
+        assertThat(((JSONObject) patients.get(1)).get("id"), equalTo("P2"));
+        assertThat(((JSONObject) patients.get(1)).containsKey("features"), equalTo(true));
+        assertThat(closed, equalTo(true));
+    }
+
+    @Test
+    public void testViewWritesAPageOfProjectedPatientsOnePerLine() throws Exception {
+        when(patientMongoRepository.streamPatients(eq("P0"), eq(2), any())).thenReturn(cursor());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        String[] lines = view("P0", 2, "id, contact", "ndjson", response(out), out).split("\n");
+
+        verify(patientMongoRepository).streamPatients("P0", 2, new HashSet<>(Arrays.asList("id", "contact")));
+        assertThat(lines.length, equalTo(2));
+        JSONObject first = (JSONObject) new JSONParser().parse(lines[0]);
+        assertThat(first.keySet(), equalTo(new HashSet<>(Arrays.asList("id", "contact"))));
+        assertThat(first.get("id"), equalTo("P1"));
+    }
+
+    @Test
+    public void testViewRejectsUnknownFields() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServletResponse response = response(out);
+
+        view(null, 0, "id,password", "json", response, out);
+
+        verify(response).setStatus(HttpStatus.BAD_REQUEST.value());
+        verify(patientMongoRepository, never()).streamPatients(any(), anyInt(), any());
+    }
+
+    /**
+     * A gene-only genomic feature, with a variant that leaves out assembly and start
+     */
+    private static String recordWithSparseVariant(String id) {
+        return "{\"patient\":{\"id\":\"" + id + "\",\"contact\":{\"name\":\"Test Contact\",\"href\":\"mailto:test@test.com\"},"
+                + "\"genomicFeatures\":[{\"gene\":{\"id\":\"FGFR2\"},\"variant\":{\"referenceName\":\"10\"}}]}}";
+    }
+
+    @Test
+    public void testGeneOnlyFeatureWithASparseVariantIsAdded() throws Exception {
+        ResponseEntity<String> response = controller.add(recordWithSparseVariant("P1").getBytes(StandardCharsets.UTF_8));
+        assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
+
+        JSONObject json = bulkAdd(recordWithSparseVariant("P4") + "\n" + record("P5") + "\n");
+        assertThat(statuses(json), equalTo(Arrays.asList("0:P4:inserted", "1:P5:inserted")));
+        assertThat(json.get("failed"), equalTo(0L));
+    }
+
+    @Test
+    public void testRecordThatCantBeResolvedIsReportedOnItsOwn() throws Exception {
+        GeneIdentifierResolver resolver = mock(GeneIdentifierResolver.class);
+        doAnswer(invocation -> {
+            if (((Patient) invocation.getArguments()[0]).getId().equals("P4")) {
+                throw new IllegalStateException("bad feature");
+            }
+            return null;
+        }).when(resolver).normalize(any(Patient.class));
+        controller.setGeneIdentifierResolver(resolver);
+
+        JSONObject json = bulkAdd(record("P1") + "\n" + record("P4") + "\n" + record("P5") + "\n");
+
+        assertThat(statuses(json), equalTo(Arrays.asList("1:P4:failed", "0:P1:inserted", "2:P5:inserted")));
+        assertThat(json.get("inserted"), equalTo(2L));
+        assertThat(json.get("failed"), equalTo(1L));
+        assertThat(batches, equalTo(Arrays.asList(Arrays.asList("P1", "P5"))));
+    }
+
+    @Test
+    public void testAddStoresResolvedGenes() {
+        String withGenes = "{\"patient\":{\"id\":\"P1\",\"contact\":{\"name\":\"Test Contact\",\"href\":\"mailto:test@test.com\"},"
+                + "\"genomicFeatures\":[{\"gene\":{\"id\":\"FGFR2\"},\"variant\":{\"assembly\":\"GRCh37.p13\",\"referenceName\":\"chr10\","
+                + "\"start\":123256215,\"end\":123256215,\"referenceBases\":\"t\",\"alternateBases\":\"G\"}},"
+                + "{\"gene\":{\"id\":\"NOT_A_GENE\"}}]}}";
+        ArgumentCaptor<Patient> stored = ArgumentCaptor.forClass(Patient.class);
+
+        controller.add(withGenes.getBytes(StandardCharsets.UTF_8));
+
+        verify(patientMongoRepository).upsert(stored.capture());
+        GenomicFeature fgfr2 = stored.getValue().getGenomicFeatures().get(0);
+        assertThat(fgfr2.getEnsemblId(), equalTo("ENSG00000066468"));
+        GenomicFeature unknown = stored.getValue().getGenomicFeatures().get(1);
+        assertThat(unknown.getEnsemblId(), equalTo(GeneIdentifierResolver.UNKNOWN));
+    }
+}
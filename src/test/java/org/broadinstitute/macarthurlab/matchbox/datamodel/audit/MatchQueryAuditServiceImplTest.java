@@ -0,0 +1,259 @@
+package org.broadinstitute.macarthurlab.matchbox.datamodel.audit;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalMatchQuery;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.metrics.MetricAggregateService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author harindra
+ */
+public class MatchQueryAuditServiceImplTest {
+
+    private MongoOperations operator;
+    private MetricAggregateService metricAggregateService;
+    private MatchQueryAuditServiceImpl audit;
+    private Path spillFile;
+    private DBCollection collection;
+
+    /**
+     * Documents of each bulk insert executed, in order
+     */
+    private List<List<DBObject>> executed;
+
+    /**
+     * Thrown by the next bulk inserts executed, in turn
+     */
+    private List<RuntimeException> failures;
+
+    /**
+     * When set, bulk inserts wait for it once executed
+     */
+    private volatile CountDownLatch insertsHeld;
+
+    @Before
+    public void setUp() throws IOException {
+        operator = mock(MongoOperations.class);
+        metricAggregateService = mock(MetricAggregateService.class);
+        spillFile = Files.createTempFile("match-audit", ".json");
+        Files.delete(spillFile);
+
+        executed = new CopyOnWriteArrayList<>();
+        failures = new CopyOnWriteArrayList<>();
+        when(operator.getConverter()).thenReturn(new MappingMongoConverter(mock(DbRefResolver.class), new MongoMappingContext()));
+        when(operator.getCollectionName(ExternalMatchQuery.class)).thenReturn("externalMatchQuery");
+        collection = mock(DBCollection.class);
+        when(operator.getCollection("externalMatchQuery")).thenReturn(collection);
+        when(collection.initializeUnorderedBulkOperation()).thenAnswer(invocation -> {
+            List<DBObject> documents = new ArrayList<>();
+            BulkWriteOperation bulk = mock(BulkWriteOperation.class);
+            doAnswer(insert -> documents.add((DBObject) insert.getArguments()[0])).when(bulk).insert(any(DBObject.class));
+            when(bulk.execute()).thenAnswer(execute -> {
+                executed.add(documents);
+                if (insertsHeld != null) {
+                    insertsHeld.await();
+                }
+                if (!failures.isEmpty()) {
+                    throw failures.remove(0);
+                }
+                return null;
+            });
+            return bulk;
+        });
+
+        audit = new MatchQueryAuditServiceImpl();
+        audit.setOperator(operator);
+        audit.setMetricAggregateService(metricAggregateService);
+        audit.setWriteBehind(true);
+        audit.setQueueCapacity(100);
+        audit.setBatchSize(2);
+        audit.setOfferTimeoutMs(50);
+        audit.setSpillFileName(spillFile.toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        audit.shutdown();
+        Files.deleteIfExists(spillFile);
+        Files.deleteIfExists(spillFile.resolveSibling(spillFile.getFileName() + ".replaying"));
+    }
+
+    /**
+     * Waits for the writer to spill this many records
+     */
+    private void waitForSpilledLines(int lines) throws Exception {
+        for (int i = 0; i < 100 && (!Files.exists(spillFile) || Files.readAllLines(spillFile).size() < lines); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(Files.readAllLines(spillFile).size(), equalTo(lines));
+    }
+
+    private static BulkWriteException bulkWriteException(BulkWriteError... errors) {
+        BulkWriteException exception = mock(BulkWriteException.class);
+        when(exception.getWriteErrors()).thenReturn(Arrays.asList(errors));
+        return exception;
+    }
+
+    private ExternalMatchQuery matchQuery() {
+        List<Patient> patients = TestData.getTwoTestPatients();
+        MatchmakerResult result = new MatchmakerResult(Collections.singletonMap("patient", 0.9), patients.get(1));
+        return new ExternalMatchQuery(patients.get(0), Collections.singletonList(result), "node", "Broad", true);
+    }
+
+    @Test
+    public void testRecordsAreInsertedInBatches() {
+        audit.init();
+        for (int i = 0; i < 5; i++) {
+            audit.record(matchQuery());
+        }
+        audit.shutdown();
+
+        int inserted = 0;
+        for (List<DBObject> batch : executed) {
+            assertThat(batch.size() <= 2, equalTo(true));
+            inserted += batch.size();
+        }
+        assertThat(inserted, equalTo(5));
+        verify(metricAggregateService, times(5)).matchQuerySaved(any(ExternalMatchQuery.class));
+        verify(operator, never()).save(any());
+    }
+
+    @Test
+    public void testSavedOnTheRequestThreadWhenNotWritingBehind() {
+        audit.setWriteBehind(false);
+        audit.init();
+        ExternalMatchQuery matchQuery = matchQuery();
+        audit.record(matchQuery);
+
+        verify(operator).save(matchQuery);
+        verify(metricAggregateService).matchQuerySaved(matchQuery);
+    }
+
+    @Test
+    public void testFailedBatchIsSpilledAndWrittenOnceMongoIsBack() throws Exception {
+        failures.add(new RuntimeException("MongoDB is down"));
+        audit.init();
+
+        audit.record(matchQuery());
+        waitForSpilledLines(1);
+
+        audit.record(matchQuery());
+        audit.shutdown();
+
+        //the second record, then the spilled one, written with the same ID it was first tried with
+        assertThat(executed.size(), equalTo(3));
+        DBObject spilled = executed.get(2).get(0);
+        assertThat(((DBObject) spilled.get("incomingQuery")).get("_id"), equalTo("testPatient1Id"));
+        assertThat(spilled.get("_id"), equalTo(executed.get(0).get(0).get("_id")));
+        assertThat(Files.exists(spillFile), equalTo(false));
+    }
+
+    @Test
+    public void testOnlyTheRecordsNotWrittenAreSpilled() throws Exception {
+        //the first of the batch is already there from an earlier try, the second fails
+        failures.add(bulkWriteException(new BulkWriteError(11000, "duplicate key", new BasicDBObject(), 0),
+                new BulkWriteError(121, "document failed validation", new BasicDBObject(), 1)));
+        audit.setWriteBehind(false);
+        audit.init();
+
+        audit.write(Arrays.asList(matchQuery(), matchQuery()));
+        assertThat(Files.readAllLines(spillFile).size(), equalTo(1));
+
+        //the next batch written replays only the record that failed
+        audit.write(Collections.singletonList(matchQuery()));
+        assertThat(executed.size(), equalTo(3));
+        assertThat(executed.get(2).size(), equalTo(1));
+        assertThat(executed.get(2).get(0).get("_id"), equalTo(executed.get(0).get(1).get("_id")));
+        assertThat(Files.exists(spillFile), equalTo(false));
+    }
+
+    @Test
+    public void testRecordIsSpilledWithoutWaitingForTheReplay() throws Exception {
+        Files.write(spillFile, Collections.singletonList("{ \"_id\" : \"spilled\" }"));
+        insertsHeld = new CountDownLatch(1);
+        audit.setQueueCapacity(1);
+        audit.init();
+        for (int i = 0; i < 100 && executed.isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(executed.size(), equalTo(1));
+
+        //the writer is held up replaying, so the second record finds the queue full
+        Thread requests = new Thread(() -> {
+            audit.record(matchQuery());
+            audit.record(matchQuery());
+        });
+        requests.start();
+        requests.join(5000);
+        assertThat(requests.isAlive(), equalTo(false));
+        assertThat(Files.readAllLines(spillFile).size(), equalTo(1));
+
+        insertsHeld.countDown();
+        audit.shutdown();
+
+        //the first spilled record, the queued record, then the record spilled during the replay
+        assertThat(executed.size(), equalTo(3));
+        assertThat(executed.get(0).get(0).get("_id"), equalTo("spilled"));
+        assertThat(Files.exists(spillFile), equalTo(false));
+        assertThat(Files.exists(spillFile.resolveSibling(spillFile.getFileName() + ".replaying")), equalTo(false));
+    }
+
+    @Test
+    public void testFailedRecordsAreSavedOneAtATimeWithNoSpillFile() {
+        audit.setSpillFileName("");
+        failures.add(new RuntimeException("MongoDB is down"));
+        audit.init();
+        audit.record(matchQuery());
+        audit.shutdown();
+
+        verify(collection).save(any(DBObject.class));
+    }
+
+    @Test
+    public void testCompactRecordKeepsResultIdsGenesAndScores() {
+        ExternalMatchQuery compact = MatchQueryAuditServiceImpl.compact(matchQuery());
+
+        MatchmakerResult result = compact.getResults().get(0);
+        assertThat(compact.getIncomingQuery().getId(), equalTo("testPatient1Id"));
+        assertThat(result.getPatient().getId(), equalTo("testPatient2Id"));
+        assertThat(result.getScore().get("patient"), equalTo(0.9));
+        assertThat(result.getPatient().getGenomicFeatures().size(), equalTo(2));
+        assertThat(result.getPatient().getGenomicFeatures().get(1).getGene().get("id"), equalTo("ENSG00000124356"));
+        assertThat(result.getPatient().getGenomicFeatures().get(0).getVariant().isUnPopulated(), equalTo(true));
+        assertThat(result.getPatient().getLabel(), equalTo(""));
+    }
+}
@@ -0,0 +1,149 @@
+package org.broadinstitute.macarthurlab.matchbox.datamodel.cache;
+
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb.PatientMongoRepository;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.search.GeneIndexServiceImpl;
+import org.broadinstitute.macarthurlab.matchbox.match.GeneIdentifierResolver;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author harindra
+ */
+public class PatientCacheImplTest {
+
+    private PatientMongoRepository patientMongoRepository;
+    private GeneIndexServiceImpl geneIndex;
+    private PatientCacheImpl patientCache;
+
+    @Before
+    public void setUp() {
+        patientMongoRepository = mock(PatientMongoRepository.class);
+        when(patientMongoRepository.findAll()).thenReturn(TestData.getTwoTestPatients());
+        geneIndex = new GeneIndexServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers()));
+
+        patientCache = new PatientCacheImpl();
+        patientCache.setPatientMongoRepository(patientMongoRepository);
+        patientCache.setListeners(Arrays.asList(geneIndex));
+        patientCache.init();
+    }
+
+    @Test
+    public void testReloadLoadsPatientsAndTellsListeners() {
+        assertThat(patientCache.getSnapshot().size(), equalTo(2));
+        assertThat(patientCache.getSnapshot().getPatient("testPatient2Id").getId(), equalTo("testPatient2Id"));
+        assertThat(geneIndex.findPatientIdsSharingGenes(TestData.getTwoTestPatients().get(1)).contains("testPatient2Id"), equalTo(true));
+    }
+
+    @Test
+    public void testSaveAndDeleteLeaveEarlierSnapshotsUnchanged() {
+        PatientSnapshot before = patientCache.getSnapshot();
+        Patient patient = TestData.getTestPatient();
+        Patient copy = new Patient("newPatientId", patient.getLabel(), patient.getContact(), patient.getSpecies(), patient.getSex(),
+                patient.getAgeOfOnset(), patient.getInheritanceMode(), patient.getDisorders(), patient.getFeatures(), patient.getGenomicFeatures());
+
+        patientCache.patientSaved(copy);
+        assertThat(patientCache.getSnapshot().size(), equalTo(3));
+        assertThat(before.size(), equalTo(2));
+        assertThat(before.getPatient("newPatientId"), nullValue());
+
+        //saving again replaces rather than adds
+        patientCache.patientSaved(copy);
+        assertThat(patientCache.getSnapshot().size(), equalTo(3));
+
+        PatientSnapshot afterSave = patientCache.getSnapshot();
+        patientCache.patientDeleted("newPatientId");
+        assertThat(patientCache.getSnapshot().size(), equalTo(2));
+        assertThat(afterSave.getPatient("newPatientId").getId(), equalTo("newPatientId"));
+        assertThat(geneIndex.findPatientIdsSharingGenes(copy).contains("newPatientId"), equalTo(false));
+    }
+
+    @Test
+    public void testBatchIsSavedAsOneSnapshot() {
+        Patient patient = TestData.getTestPatient();
+        Patient first = new Patient("first", patient.getLabel(), patient.getContact(), patient.getSpecies(), patient.getSex(),
+                patient.getAgeOfOnset(), patient.getInheritanceMode(), patient.getDisorders(), patient.getFeatures(), patient.getGenomicFeatures());
+        Patient replacement = TestData.getTwoTestPatients().get(1);
+        List<Integer> batchSizes = new ArrayList<>();
+        patientCache.setListeners(Arrays.asList(geneIndex, new PatientCacheListener() {
+            @Override
+            public void patientsReloaded(PatientSnapshot snapshot) {
+            }
+
+            @Override
+            public void patientSaved(Patient saved) {
+                batchSizes.add(1);
+            }
+
+            @Override
+            public void patientsSaved(Collection<Patient> saved) {
+                batchSizes.add(saved.size());
+            }
+
+            @Override
+            public void patientDeleted(String patientId) {
+            }
+        }));
+
+        patientCache.patientsSaved(Arrays.asList(first, replacement));
+        assertThat(patientCache.getSnapshot().size(), equalTo(3));
+        assertThat(patientCache.getSnapshot().getPatient("testPatient2Id") == replacement, equalTo(true));
+        assertThat(batchSizes, equalTo(Arrays.asList(2)));
+        assertThat(geneIndex.findPatientIdsSharingGenes(first).contains("first"), equalTo(true));
+    }
+
+    @Test
+    public void testReloadReplacesSnapshot() {
+        List<Patient> none = Collections.emptyList();
+        when(patientMongoRepository.findAll()).thenReturn(none);
+        patientCache.reload();
+        assertThat(patientCache.getSnapshot().size(), equalTo(0));
+    }
+
+    @Test
+    public void testLowMemoryModeStreamsPatientsToListenersWithoutKeepingThem() {
+        List<Patient> patients = TestData.getTwoTestPatients();
+        Iterator<Patient> iterator = patients.iterator();
+        when(patientMongoRepository.streamPatients(null, 0, Collections.emptySet())).thenReturn(new CloseableIterator<Patient>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Patient next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        patientCache.setLowMemory(true);
+
+        patientCache.reload();
+        assertThat(patientCache.getSnapshot().size(), equalTo(0));
+        assertThat(geneIndex.findPatientIdsSharingGenes(patients.get(1)).contains("testPatient2Id"), equalTo(true));
+
+        patientCache.patientDeleted("testPatient2Id");
+        assertThat(geneIndex.findPatientIdsSharingGenes(patients.get(1)).contains("testPatient2Id"), equalTo(false));
+        patientCache.patientSaved(patients.get(1));
+        assertThat(patientCache.getSnapshot().size(), equalTo(0));
+        assertThat(geneIndex.findPatientIdsSharingGenes(patients.get(1)).contains("testPatient2Id"), equalTo(true));
+    }
+}
@@ -0,0 +1,220 @@
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class CachingPopulationFrequencyProviderTest {
+
+    @Test
+    public void testRepeatedLookupsAreServedFromCache() {
+        CountingProvider source = new CountingProvider();
+        CachingPopulationFrequencyProvider cache = new CachingPopulationFrequencyProvider(source, 10, 0, 60000, null);
+
+        assertThat(cache.findAlleleFrequency("7", 100L, "G", "A"), equalTo(0.01));
+        assertThat(cache.findAlleleFrequency("7", 100L, "G", "A"), equalTo(0.01));
+        assertThat(cache.findGeneConstraintScores("FGFR2").get(PopulationFrequencyProvider.MIS_Z), equalTo(3.0));
+        assertThat(cache.findGeneConstraintScores("FGFR2").get(PopulationFrequencyProvider.MIS_Z), equalTo(3.0));
+        assertThat(source.variantLookups.get(), equalTo(1));
+        assertThat(source.geneLookups.get(), equalTo(1));
+
+        Map<String, Long> variantStats = cache.getStats().get("variant");
+        assertThat(variantStats.get("hits"), equalTo(1L));
+        assertThat(variantStats.get("misses"), equalTo(1L));
+    }
+
+    @Test
+    public void testVariantAndGeneKeysDoNotMix() {
+        CountingProvider source = new CountingProvider();
+        CachingPopulationFrequencyProvider cache = new CachingPopulationFrequencyProvider(source, 10, 0, 60000, null);
+
+        cache.findGeneConstraintScores("7-100-G-A");
+        cache.findAlleleFrequency("7", 100L, "G", "A");
+        assertThat(source.variantLookups.get(), equalTo(1));
+        assertThat(source.geneLookups.get(), equalTo(1));
+    }
+
+    @Test
+    public void testNegativeLookupsAreCachedOnlyWhenTheyHaveATtl() {
+        CountingProvider source = new CountingProvider();
+        CachingPopulationFrequencyProvider cache = new CachingPopulationFrequencyProvider(source, 10, 0, 60000, null);
+        cache.findAlleleFrequency("1", 1L, "A", "T");
+        cache.findAlleleFrequency("1", 1L, "A", "T");
+        cache.findGeneConstraintScores("NOT_A_GENE");
+        cache.findGeneConstraintScores("NOT_A_GENE");
+        assertThat(source.variantLookups.get(), equalTo(1));
+        assertThat(source.geneLookups.get(), equalTo(1));
+
+        CountingProvider uncachedSource = new CountingProvider();
+        CachingPopulationFrequencyProvider noNegativeCache = new CachingPopulationFrequencyProvider(uncachedSource, 10, 0, 0, null);
+        noNegativeCache.findAlleleFrequency("1", 1L, "A", "T");
+        noNegativeCache.findAlleleFrequency("1", 1L, "A", "T");
+        assertThat(uncachedSource.variantLookups.get(), equalTo(2));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        CountingProvider source = new CountingProvider();
+        CachingPopulationFrequencyProvider cache = new CachingPopulationFrequencyProvider(source, 2, 0, 60000, null);
+        cache.findAlleleFrequency("7", 1L, "G", "A");
+        cache.findAlleleFrequency("7", 2L, "G", "A");
+        cache.findAlleleFrequency("7", 1L, "G", "A");
+        cache.findAlleleFrequency("7", 3L, "G", "A");
+        //7-2 was least recently used
+        cache.findAlleleFrequency("7", 1L, "G", "A");
+        assertThat(source.variantLookups.get(), equalTo(3));
+        cache.findAlleleFrequency("7", 2L, "G", "A");
+        assertThat(source.variantLookups.get(), equalTo(4));
+        assertThat(cache.getStats().get("variant").get("evictions"), equalTo(2L));
+    }
+
+    @Test
+    public void testConcurrentLookupsOfTheSameKeyAreDoneOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountingProvider source = new CountingProvider() {
+            @Override
+            public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.findAlleleFrequency(chromosome, position, referenceBases, alternateBases);
+            }
+        };
+        CachingPopulationFrequencyProvider cache = new CachingPopulationFrequencyProvider(source, 10, 0, 60000, null);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Double>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> cache.findAlleleFrequency("7", 100L, "G", "A")));
+        }
+        while (cache.getStats().get("variant").get("coalesced") + cache.getStats().get("variant").get("misses") < 8) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<Double> result : results) {
+            assertThat(result.get(), equalTo(0.01));
+        }
+        executor.shutdown();
+        assertThat(source.variantLookups.get(), equalTo(1));
+    }
+
+    @Test
+    public void testBatchLookupAsksOnlyForWhatIsNotCached() {
+        CountingProvider source = new CountingProvider();
+        CachingPopulationFrequencyProvider cache = new CachingPopulationFrequencyProvider(source, 10, 0, 60000, null);
+        cache.findAlleleFrequency("7", 100L, "G", "A");
+
+        Map<String, Double> alleleFrequencies = cache.findAlleleFrequencies(Arrays.asList("7-100-G-A", "7-200-C-T", "1-1-A-T", "7-200-C-T"));
+        assertThat(alleleFrequencies.get("7-100-G-A"), equalTo(0.01));
+        assertThat(alleleFrequencies.get("7-200-C-T"), equalTo(0.01));
+        assertThat(alleleFrequencies.containsKey("1-1-A-T"), equalTo(false));
+        assertThat(source.batches, equalTo(Collections.singletonList(Arrays.asList("7-200-C-T", "1-1-A-T"))));
+
+        //everything, including what wasn't found, is cached now
+        cache.findAlleleFrequencies(Arrays.asList("7-100-G-A", "7-200-C-T", "1-1-A-T"));
+        assertThat(source.batches.size(), equalTo(1));
+        assertThat(cache.getStats().get("variant").get("hits"), equalTo(4L));
+
+        Map<String, Map<String, Double>> scores = cache.findGeneConstraintScores(Arrays.asList("FGFR2", "NOT_A_GENE"));
+        assertThat(scores.keySet(), equalTo(Collections.singleton("FGFR2")));
+        assertThat(cache.findGeneConstraintScores("FGFR2").get(PopulationFrequencyProvider.PLI), equalTo(0.9));
+        assertThat(source.geneLookups.get(), equalTo(2));
+    }
+
+    @Test
+    public void testNothingIsCachedWhenABatchLookupFails() {
+        CountingProvider source = new CountingProvider();
+        CachingPopulationFrequencyProvider cache = new CachingPopulationFrequencyProvider(source, 10, 0, 60000, null);
+        cache.findAlleleFrequency("7", 100L, "G", "A");
+        List<String> variantIds = Arrays.asList("7-100-G-A", "7-200-C-T", "1-1-A-T");
+
+        source.down = true;
+        assertThat(cache.findAlleleFrequencies(variantIds).keySet(), equalTo(Collections.singleton("7-100-G-A")));
+
+        //asked again once the provider answers, and only what it answered as not known is kept as not known
+        source.down = false;
+        Map<String, Double> alleleFrequencies = cache.findAlleleFrequencies(variantIds);
+        assertThat(alleleFrequencies.get("7-200-C-T"), equalTo(0.01));
+        assertThat(alleleFrequencies.containsKey("1-1-A-T"), equalTo(false));
+        cache.findAlleleFrequencies(variantIds);
+        assertThat(source.batches, equalTo(Arrays.asList(Arrays.asList("7-200-C-T", "1-1-A-T"), Arrays.asList("7-200-C-T", "1-1-A-T"))));
+    }
+
+    @Test
+    public void testCacheIsSavedAndLoaded() throws Exception {
+        Path file = Files.createTempFile("population-frequency-cache", ".tsv");
+        try {
+            CachingPopulationFrequencyProvider cache = new CachingPopulationFrequencyProvider(new CountingProvider(), 10, 0, 60000, file);
+            cache.findAlleleFrequency("7", 100L, "G", "A");
+            cache.findGeneConstraintScores("FGFR2");
+            cache.close();
+
+            CountingProvider source = new CountingProvider();
+            CachingPopulationFrequencyProvider restarted = new CachingPopulationFrequencyProvider(source, 10, 0, 60000, file);
+            assertThat(restarted.findAlleleFrequency("7", 100L, "G", "A"), equalTo(0.01));
+            assertThat(restarted.findGeneConstraintScores("FGFR2").get(PopulationFrequencyProvider.PLI), equalTo(0.9));
+            assertThat(restarted.findGeneConstraintScores("FGFR2").containsKey(PopulationFrequencyProvider.SYN_Z), equalTo(false));
+            assertThat(source.variantLookups.get(), equalTo(0));
+            assertThat(source.geneLookups.get(), equalTo(0));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Knows one variant on chromosome 7 and one gene, FGFR2
+     */
+    private static class CountingProvider implements PopulationFrequencyProvider {
+        final AtomicInteger variantLookups = new AtomicInteger();
+        final AtomicInteger geneLookups = new AtomicInteger();
+        final List<List<String>> batches = new ArrayList<>();
+        volatile boolean down;
+
+        @Override
+        public Map<String, Double> findAlleleFrequencies(Collection<String> variantIds) {
+            batches.add(new ArrayList<>(variantIds));
+            if (down) {
+                throw new IllegalStateException("lookup failed");
+            }
+            return PopulationFrequencyProvider.super.findAlleleFrequencies(variantIds);
+        }
+
+        @Override
+        public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases) {
+            variantLookups.incrementAndGet();
+            return "7".equals(chromosome) ? 0.01 : -1d;
+        }
+
+        @Override
+        public Map<String, Double> findGeneConstraintScores(String gene) {
+            geneLookups.incrementAndGet();
+            if (!"FGFR2".equals(gene)) {
+                return Collections.emptyMap();
+            }
+            Map<String, Double> scores = new HashMap<>();
+            scores.put(PopulationFrequencyProvider.PLI, 0.9);
+            scores.put(PopulationFrequencyProvider.MIS_Z, 3.0);
+            return scores;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import org.broadinstitute.macarthurlab.matchbox.network.Communication;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author harindra
+ */
+public class GnomadApiPopulationFrequencyProviderTest {
+
+    @Test
+    public void testVariantsAreLookedUpInBatches() {
+        StubCommunication communication = new StubCommunication(
+                "{\"data\":{\"v0\":{\"allele_freq\":0.25},\"v1\":null}}",
+                "{\"data\":{\"v0\":{\"allele_freq\":0}}}");
+        GnomadApiPopulationFrequencyProvider provider = new GnomadApiPopulationFrequencyProvider(communication, 2, 1);
+
+        Map<String, Double> alleleFrequencies = provider.findAlleleFrequencies(Arrays.asList("7-100-G-A", "7-200-C-T", "1-1-A-T", "bad\"id"));
+        assertThat(communication.payloads.size(), equalTo(2));
+        assertThat(communication.payloads.get(0).contains("v1: variant(id:\\\"7-200-C-T\\\""), equalTo(true));
+        assertThat(communication.payloads.get(1).contains("bad"), equalTo(false));
+        assertThat(alleleFrequencies.get("7-100-G-A"), equalTo(0.25));
+        assertThat(alleleFrequencies.containsKey("7-200-C-T"), equalTo(false));
+        assertThat(alleleFrequencies.get("1-1-A-T"), equalTo(0d));
+    }
+
+    @Test
+    public void testGenesAreLookedUpByIdOrName() {
+        StubCommunication communication = new StubCommunication(
+                "{\"data\":{\"g0\":{\"exacv1_constraint\":{\"pLI\":0.9,\"syn_z\":1,\"mis_z\":3.5}},\"g1\":{\"exacv1_constraint\":null}}}");
+        GnomadApiPopulationFrequencyProvider provider = new GnomadApiPopulationFrequencyProvider(communication, 50, 4);
+
+        Map<String, Map<String, Double>> scores = provider.findGeneConstraintScores(Arrays.asList("ENSG00000066468", "NOT_A_GENE"));
+        assertThat(communication.payloads.size(), equalTo(1));
+        assertThat(communication.payloads.get(0).contains("g0: gene(gene_id: \\\"ENSG00000066468\\\")"), equalTo(true));
+        assertThat(communication.payloads.get(0).contains("g1: gene(gene_name: \\\"NOT_A_GENE\\\")"), equalTo(true));
+        assertThat(scores.keySet(), equalTo(Collections.singleton("ENSG00000066468")));
+        assertThat(scores.get("ENSG00000066468").get(PopulationFrequencyProvider.SYN_Z), equalTo(1.0));
+        assertThat(scores.get("ENSG00000066468").get(PopulationFrequencyProvider.MIS_Z), equalTo(3.5));
+    }
+
+    @Test
+    public void testFailedBatchLookupIsNotTakenForNothingFound() {
+        //the second batch gets no reply, as when the call fails
+        StubCommunication communication = new StubCommunication("{\"data\":{\"v0\":{\"allele_freq\":0.25},\"v1\":null}}");
+        GnomadApiPopulationFrequencyProvider provider = new GnomadApiPopulationFrequencyProvider(communication, 2, 4);
+
+        try {
+            provider.findAlleleFrequencies(Arrays.asList("7-100-G-A", "7-200-C-T", "1-1-A-T"));
+            fail("the failed batch was reported");
+        } catch (IllegalStateException e) {
+            assertThat(communication.payloads.size(), equalTo(2));
+        }
+    }
+
+    /**
+     * Replies to each post in turn with the next reply given
+     */
+    private static class StubCommunication extends Communication {
+        final List<String> payloads = new ArrayList<>();
+        private final List<String> replies;
+
+        StubCommunication(String... replies) {
+            this.replies = new ArrayList<>(Arrays.asList(replies));
+        }
+
+        @Override
+        public synchronized String postToNonAuthenticatedHttpUrl(String urlToPost, String dataPayLoad) {
+            payloads.add(dataPayLoad);
+            return replies.isEmpty() ? "" : replies.remove(0);
+        }
+    }
+}
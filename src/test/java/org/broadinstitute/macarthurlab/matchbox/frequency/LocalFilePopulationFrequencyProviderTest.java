@@ -0,0 +1,81 @@
+package org.broadinstitute.macarthurlab.matchbox.frequency;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class LocalFilePopulationFrequencyProviderTest {
+
+    private Path vcf;
+    private Path table;
+    private Path constraints;
+    private PopulationFrequencyProvider provider;
+
+    @Before
+    public void setUp() throws IOException {
+        vcf = Files.createTempFile("gnomad-sites", ".vcf");
+        table = Files.createTempFile("gnomad-sites", ".maf");
+        constraints = Files.createTempFile("constraint", ".txt");
+        //deliberately out of order, with a multi-allelic site and a symbolic allele
+        Files.write(vcf, Arrays.asList(
+                "##fileformat=VCFv4.2",
+                "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO",
+                "X\t100\t.\tA\tG\t.\tPASS\tAC=1;AF=0.5;AN=2",
+                "7\t64438667\t.\tG\tA,T\t.\tPASS\tAC=3,1;AF=0.00025,0.0001;AN=12000",
+                "1\t12345\t.\tC\t<DEL>\t.\tPASS\tAF=0.3",
+                "chr1\t12345\t.\tCAT\tC\t.\tPASS\tAF=0.125"));
+        Files.write(constraints, Arrays.asList(
+                "gene\tgene_id\tcanonical\tpLI\tsyn_z\tmis_z",
+                "FGFR2\tENSG00000066468\tfalse\t0.1\t0.1\t0.1",
+                "FGFR2\tENSG00000066468\ttrue\t0.99\t-0.5\t3.25",
+                "STAMBP\tENSG00000124356\ttrue\tNA\t1.0\t2.0"));
+        VariantFrequencyTable.write(GnomadFrequencyImporter.read(vcf), table);
+        provider = new LocalFilePopulationFrequencyProvider(VariantFrequencyTable.open(table), GeneConstraintTable.load(constraints));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(vcf);
+        Files.deleteIfExists(table);
+        Files.deleteIfExists(constraints);
+    }
+
+    @Test
+    public void testFindsImportedVariants() {
+        assertThat((float) provider.findAlleleFrequency("7", 64438667L, "G", "A"), equalTo(0.00025f));
+        assertThat((float) provider.findAlleleFrequency("7", 64438667L, "G", "T"), equalTo(0.0001f));
+        assertThat((float) provider.findAlleleFrequency("chrX", 100L, "a", "g"), equalTo(0.5f));
+        assertThat((float) provider.findAlleleFrequency("1", 12345L, "CAT", "C"), equalTo(0.125f));
+    }
+
+    @Test
+    public void testUnknownVariantsAreMinusOne() {
+        assertThat(provider.findAlleleFrequency("7", 64438667L, "G", "C"), equalTo(-1d));
+        assertThat(provider.findAlleleFrequency("7", 64438668L, "G", "A"), equalTo(-1d));
+        assertThat(provider.findAlleleFrequency("1", 12345L, "C", "<DEL>"), equalTo(-1d));
+        assertThat(provider.findAlleleFrequency("GL000192.1", 1L, "A", "T"), equalTo(-1d));
+    }
+
+    @Test
+    public void testFindsGeneConstraintsBySymbolOrEnsemblId() {
+        Map<String, Double> bySymbol = provider.findGeneConstraintScores("FGFR2");
+        assertThat(bySymbol.get(PopulationFrequencyProvider.MIS_Z), equalTo(3.25));
+        assertThat(provider.findGeneConstraintScores("ENSG00000066468"), equalTo(bySymbol));
+
+        Map<String, Double> missingPLI = provider.findGeneConstraintScores("STAMBP");
+        assertThat(missingPLI.containsKey(PopulationFrequencyProvider.PLI), equalTo(false));
+        assertThat(provider.findGeneConstraintScores("PDE4DIP").isEmpty(), equalTo(true));
+    }
+}
@@ -0,0 +1,154 @@
+package org.broadinstitute.macarthurlab.matchbox.match;
+
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.entities.Variant;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class GeneIdentifierResolverTest {
+
+    private final GeneIdentifierResolver resolver = new GeneIdentifierResolver(TestData.geneIdentifiers());
+
+    private Patient patientWithGenes(String id, String... genes) {
+        List<GenomicFeature> genomicFeatures = new ArrayList<>();
+        for (String gene : genes) {
+            genomicFeatures.add(new GenomicFeature(Collections.singletonMap("id", gene), new Variant(), -1L, Collections.emptyMap()));
+        }
+        return new Patient(id, id, Collections.emptyMap(), "9606", "M", "", "", Collections.emptyList(), Collections.emptyList(), genomicFeatures);
+    }
+
+    @Test
+    public void testGeneSymbolAndEnsemblIdHaveTheSameKey() {
+        int key = resolver.toGeneKey("STAMBP");
+        assertThat(resolver.toGeneKey("ENSG00000124356"), equalTo(key));
+        assertThat(resolver.toEnsemblId(key), equalTo("ENSG00000124356"));
+        assertThat(resolver.toGeneKey("NOT_A_GENE"), equalTo(GeneIdentifierResolver.UNKNOWN_KEY));
+        assertThat(resolver.toEnsemblId(GeneIdentifierResolver.UNKNOWN_KEY), equalTo(GeneIdentifierResolver.UNKNOWN));
+    }
+
+    @Test
+    public void testKeysAreTheSameForResolversWithTheSameMappings() {
+        GeneIdentifierResolver other = new GeneIdentifierResolver(TestData.geneIdentifiers());
+        for (String gene : Arrays.asList("PDE4DIP", "STAMBP", "FGFR2")) {
+            assertThat(other.toGeneKey(gene), equalTo(resolver.toGeneKey(gene)));
+        }
+    }
+
+    @Test
+    public void testInternedGenesAreKeptForNodePatients() {
+        Patient patient = patientWithGenes("P1", "FGFR2", "NOT_A_GENE", "ENSG00000066468");
+        resolver.patientSaved(patient);
+        InternedGenes genes = resolver.intern(patient);
+        resolver.intern(patientWithGenes("Q", "STAMBP"));
+
+        assertThat(resolver.intern(patient) == genes, equalTo(true));
+        assertThat(genes.size(), equalTo(3));
+        assertThat(genes.getFeatureKey(1), equalTo(GeneIdentifierResolver.UNKNOWN_KEY));
+        assertThat(genes.getSortedKeys().length, equalTo(1));
+    }
+
+    @Test
+    public void testInternedGenesAreKeptForTheLastPatientNotInTheCache() {
+        Patient query = patientWithGenes("Q", "FGFR2");
+        InternedGenes genes = resolver.intern(query);
+
+        assertThat(resolver.intern(query) == genes, equalTo(true));
+        resolver.intern(patientWithGenes("Q2", "STAMBP"));
+        assertThat(resolver.intern(query) == genes, equalTo(false));
+    }
+
+    @Test
+    public void testNodePatientGenesAreOnlyUsedForThatPatient() {
+        Patient saved = patientWithGenes("P1", "FGFR2");
+        resolver.patientSaved(saved);
+
+        Patient sameId = patientWithGenes("P1", "STAMBP");
+        assertThat(resolver.intern(sameId).getFeatureKey(0), equalTo(resolver.toGeneKey("STAMBP")));
+
+        Patient replacement = patientWithGenes("P1", "PDE4DIP");
+        resolver.patientSaved(replacement);
+        assertThat(resolver.intern(replacement).getFeatureKey(0), equalTo(resolver.toGeneKey("PDE4DIP")));
+        assertThat(resolver.intern(saved).getFeatureKey(0), equalTo(resolver.toGeneKey("FGFR2")));
+    }
+
+    @Test
+    public void testNodePatientGenesAreDroppedWhenThePatientIsDeleted() {
+        Patient patient = patientWithGenes("P1", "FGFR2");
+        resolver.patientSaved(patient);
+        InternedGenes genes = resolver.intern(patient);
+
+        resolver.patientDeleted("P1");
+        resolver.intern(patientWithGenes("Q", "STAMBP"));
+        assertThat(resolver.intern(patient) == genes, equalTo(false));
+    }
+
+    @Test
+    public void testNothingIsKeptForNodePatientsInLowMemoryMode() {
+        resolver.setLowMemory(true);
+        Patient patient = patientWithGenes("P1", "FGFR2");
+        resolver.patientSaved(patient);
+        InternedGenes genes = resolver.intern(patient);
+
+        resolver.intern(patientWithGenes("Q", "STAMBP"));
+        assertThat(resolver.intern(patient) == genes, equalTo(false));
+    }
+
+    @Test
+    public void testGenesAreInternedAgainWhenFeaturesChange() {
+        Patient patient = patientWithGenes("P1", "FGFR2");
+        resolver.patientSaved(patient);
+        InternedGenes genes = resolver.intern(patient);
+        patient.getGenomicFeatures().clear();
+
+        assertThat(resolver.intern(patient).size(), equalTo(0));
+        assertThat(genes.size(), equalTo(1));
+    }
+
+    @Test
+    public void testSharesGeneWith() {
+        InternedGenes query = resolver.intern(patientWithGenes("Q", "PDE4DIP", "ENSG00000066468"));
+
+        assertThat(query.sharesGeneWith(resolver.intern(patientWithGenes("P1", "STAMBP", "FGFR2"))), equalTo(true));
+        assertThat(query.sharesGeneWith(resolver.intern(patientWithGenes("P2", "STAMBP", "NOT_A_GENE"))), equalTo(false));
+        assertThat(query.sharesGeneWith(resolver.intern(patientWithGenes("P3"))), equalTo(false));
+    }
+
+    @Test
+    public void testGenesResolvedWhenStoredAreUsed() {
+        Patient patient = patientWithGenes("P1", "FGFR2", "STAMBP");
+        resolver.normalize(patient);
+        //as if the STAMBP feature had been stored resolved to a different gene
+        patient.getGenomicFeatures().get(1).setEnsemblId("ENSG00000066468");
+
+        InternedGenes genes = resolver.intern(patient);
+        assertThat(genes.getFeatureKey(0), equalTo(resolver.toGeneKey("FGFR2")));
+        assertThat(genes.getFeatureKey(1), equalTo(resolver.toGeneKey("FGFR2")));
+        assertThat(resolver.toEnsemblId(patient.getGenomicFeatures().get(1)), equalTo("ENSG00000066468"));
+    }
+
+    @Test
+    public void testGenesStoredAsUnknownAreResolvedAgain() {
+        Patient patient = patientWithGenes("P1", "FGFR2", "NOT_A_GENE");
+        //stored when the mappings did not have FGFR2
+        new GeneIdentifierResolver(Collections.singletonMap("STAMBP", "ENSG00000124356")).normalize(patient);
+        assertThat(patient.getGenomicFeatures().get(0).getEnsemblId(), equalTo(GeneIdentifierResolver.UNKNOWN));
+
+        InternedGenes genes = resolver.intern(patient);
+        assertThat(genes.getFeatureKey(0), equalTo(resolver.toGeneKey("FGFR2")));
+        assertThat(genes.getFeatureKey(1), equalTo(GeneIdentifierResolver.UNKNOWN_KEY));
+        assertThat(resolver.toEnsemblId(patient.getGenomicFeatures().get(0)), equalTo(resolver.toEnsemblId("FGFR2")));
+        assertThat(resolver.toEnsemblId(patient.getGenomicFeatures().get(1)), equalTo(GeneIdentifierResolver.UNKNOWN));
+    }
+}
@@ -2,6 +2,7 @@
 
 import org.broadinstitute.macarthurlab.matchbox.TestData;
 import org.broadinstitute.macarthurlab.matchbox.entities.*;
+import org.broadinstitute.macarthurlab.matchbox.frequency.PopulationFrequencyProvider;
 import org.broadinstitute.macarthurlab.matchbox.network.Communication;
 import org.junit.Test;
 
@@ -23,7 +24,7 @@ public void testNoMatchingGeneIdentifierInCache() {
         List<Patient> patients = Arrays.asList(TestData.getTestPatient(), TestData.getTestPatient());
         Patient patient = patients.get(0);
 
-        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(Collections.emptyMap());
+        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(Collections.emptyMap()));
 
         List<Double> matches = patients.stream()
                 .map(nodePatient -> genotypeSimilarityService.scoreGenotypes(patient, nodePatient))
@@ -40,7 +41,7 @@ public void testMatchWhenQueryPatientHasNoGenotype() {
         Patient queryPatientWithoutGenomicFeatures = TestData.getTestPatient();
         queryPatientWithoutGenomicFeatures.getGenomicFeatures().clear();
 
-        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(TestData.geneIdentifiers());
+        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers()));
 
         List<Double> matches = patients.stream()
                 .map(nodePatient -> genotypeSimilarityService.scoreGenotypes(queryPatientWithoutGenomicFeatures, nodePatient))
@@ -55,7 +56,7 @@ public void testMatchWhenNodePatientHasNoGenotype() {
         List<Patient> patients = TestData.getTwoTestPatients();
         Patient queryPatientWithoutGenomicFeatures = TestData.getTestPatient();
 
-        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(TestData.geneIdentifiers());
+        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers()));
 
         List<Double> matches = patients.stream()
                 .map(nodePatient -> {nodePatient.getGenomicFeatures().clear(); return nodePatient;})
@@ -71,7 +72,7 @@ public void testExactMatch() {
         List<Patient> patients = Arrays.asList(TestData.getTestPatient(), TestData.getTestPatient());
         Patient patient = patients.get(0);
 
-        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(TestData.geneIdentifiers());
+        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers()));
 
         List<Double> matches = patients.stream()
                 .map(nodePatient -> genotypeSimilarityService.scoreGenotypes(patient, nodePatient))
@@ -99,7 +100,7 @@ public void testMatchingGeneSymbolOnlyNodeMatchHigerSpecified() {
         geneIdentifiers.put("GENE1", "ENSG00000152926");
         geneIdentifiers.put("GENE2", "ENSG00000170558");
 
-        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(geneIdentifiers);
+        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(geneIdentifiers));
         genotypeSimilarityService.setHttpCommunication(new Communication());
         
         GenotypeSimilarityScore genotypeSimilarityScore = genotypeSimilarityService.scoreGenotypes(queryPatient, nodePatient);
@@ -127,7 +128,7 @@ public void testGeneSymbolMatchOnly() {
         geneIdentifiers.put("GENE1", "ENSG00000152926");
         geneIdentifiers.put("GENE2", "ENSG00000170558");
 
-        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(geneIdentifiers);
+        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(geneIdentifiers));
         genotypeSimilarityService.setHttpCommunication(new Communication());
         
         GenotypeSimilarityScore genotypeSimilarityScore = genotypeSimilarityService.scoreGenotypes(patient1, patient2);
@@ -136,6 +137,85 @@ public void testGeneSymbolMatchOnly() {
         assertThat(df.format(genotypeSimilarityScore.getScore()), equalTo("0.27"));
     }
 
+    @Test
+    public void testPrefetchLooksUpEachMatchOnceInABatch() {
+        Variant variantOne = new Variant("GRCh37","7", 64438667L, 64438667L, "G", "A",true);
+        GenomicFeature geneOne = new GenomicFeature(Collections.singletonMap("id", "ENSG00000152926"), variantOne, -1L, Collections.singletonMap("id", "SO:0001583"));
+        GenomicFeature geneTwo = new GenomicFeature(Collections.singletonMap("id", "ENSG00000170558"), new Variant(), -1L, Collections.emptyMap());
+        Patient queryPatient = new Patient("query", "query", Collections.emptyMap(), "9606", "M", "", "", Collections.emptyList(), Collections.emptyList(), Arrays.asList(geneOne));
+        Patient partialMatch = new Patient("partial", "partial", Collections.emptyMap(), "9606", "M", "", "", Collections.emptyList(), Collections.emptyList(), Arrays.asList(geneTwo, geneOne));
+        Patient perfectMatch = new Patient("perfect", "perfect", Collections.emptyMap(), "9606", "M", "", "", Collections.emptyList(), Collections.emptyList(), Arrays.asList(geneOne));
+
+        List<String> lookups = new ArrayList<>();
+        PopulationFrequencyProvider source = new PopulationFrequencyProvider() {
+            @Override
+            public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases) {
+                lookups.add("variant");
+                return 0.5;
+            }
+
+            @Override
+            public Map<String, Double> findGeneConstraintScores(String gene) {
+                lookups.add("gene");
+                return Collections.singletonMap(MIS_Z, 2.0);
+            }
+
+            @Override
+            public Map<String, Double> findAlleleFrequencies(Collection<String> variantIds) {
+                lookups.add("variants " + variantIds);
+                return Collections.singletonMap("7-64438667-G-A", 0.5);
+            }
+
+            @Override
+            public Map<String, Map<String, Double>> findGeneConstraintScores(Collection<String> genes) {
+                lookups.add("genes " + genes);
+                return Collections.singletonMap("ENSG00000152926", Collections.singletonMap(MIS_Z, 2.0));
+            }
+        };
+        GenotypeSimilarityServiceImpl genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(Collections.singletonMap("GENE1", "ENSG00000152926")));
+        genotypeSimilarityService.setPopulationFrequencyProvider(source);
+
+        PopulationFrequencyProvider prefetched = genotypeSimilarityService.prefetchPopulationFrequencies(queryPatient, Arrays.asList(partialMatch, perfectMatch, partialMatch));
+        assertThat(lookups, equalTo(Arrays.asList("variants [7-64438667-G-A]", "genes [ENSG00000152926]")));
+
+        double prefetchedScore = genotypeSimilarityService.scoreGenotypes(queryPatient, partialMatch, prefetched).getScore();
+        assertThat(lookups.size(), equalTo(2));
+        assertThat(prefetchedScore, equalTo(genotypeSimilarityService.scoreGenotypes(queryPatient, partialMatch).getScore()));
+    }
+
+    @Test
+    public void testGeneMissingAConstraintScoreIsScoredWithTheOthers() {
+        Map<String, Double> stambpScores = new HashMap<>();
+        //pLI is NA for STAMBP
+        stambpScores.put(PopulationFrequencyProvider.SYN_Z, 1.0);
+        stambpScores.put(PopulationFrequencyProvider.MIS_Z, 2.0);
+        PopulationFrequencyProvider source = new PopulationFrequencyProvider() {
+            @Override
+            public double findAlleleFrequency(String chromosome, long position, String referenceBases, String alternateBases) {
+                return -1d;
+            }
+
+            @Override
+            public Map<String, Double> findGeneConstraintScores(String gene) {
+                return stambpScores;
+            }
+        };
+        GenotypeSimilarityServiceImpl genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(Collections.singletonMap("STAMBP", "ENSG00000124356")));
+        genotypeSimilarityService.setPopulationFrequencyProvider(source);
+
+        DecimalFormat df = new DecimalFormat("#.##");
+        //no pLI to score a loss of function variant with, so the 1.0 placeholder is used
+        assertThat(df.format(scoreStambpFeatures(genotypeSimilarityService, "SO:0002054")), equalTo("0.73"));
+        assertThat(df.format(scoreStambpFeatures(genotypeSimilarityService, "SO:0001583")), equalTo("0.88"));
+    }
+
+    private static double scoreStambpFeatures(GenotypeSimilarityService genotypeSimilarityService, String soCode) {
+        GenomicFeature stambp = new GenomicFeature(Collections.singletonMap("id", "STAMBP"), new Variant(), -1L, Collections.singletonMap("id", soCode));
+        Patient patient1 = new Patient("patient1", "patient1", Collections.emptyMap(), "9606", "M", "", "", Collections.emptyList(), Collections.emptyList(), Arrays.asList(stambp));
+        Patient patient2 = new Patient("patient2", "patient2", Collections.emptyMap(), "9606", "M", "", "", Collections.emptyList(), Collections.emptyList(), Arrays.asList(stambp));
+        return genotypeSimilarityService.scoreGenotypes(patient1, patient2).getScore();
+    }
+
     @Test
     public void testGeneSymbolWithNoVariantInfoMatchOnly() {
         long unintialisedZygosityValue = -1L;
@@ -149,7 +229,7 @@ public void testGeneSymbolWithNoVariantInfoMatchOnly() {
         Map<String, String> geneIdentifiers = new HashMap<>();
         geneIdentifiers.put("GENE1", "ENSG00000069667");
 
-        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(geneIdentifiers);
+        GenotypeSimilarityService genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(geneIdentifiers));
         genotypeSimilarityService.setHttpCommunication(new Communication());
         
         GenotypeSimilarityScore genotypeSimilarityScore = genotypeSimilarityService.scoreGenotypes(patient1, patient2);
@@ -164,7 +244,7 @@ public void testFindGenomicFeatureMatches() {
         Patient testP1 = testPatients.get(0);
         Patient testP2 = testPatients.get(1);
 
-        GenotypeSimilarityServiceImpl genotypeSimilarityService = new GenotypeSimilarityServiceImpl(TestData.geneIdentifiers());
+        GenotypeSimilarityServiceImpl genotypeSimilarityService = new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers()));
         List<GenomicFeatureMatch> commonGenes = genotypeSimilarityService.findGenomicFeatureMatches(testP1, testP2);
         GenomicFeature genomicFeature = testP1.getGenomicFeatures().get(0);
         List<GenomicFeatureMatch> expected = Collections.singletonList(new GenomicFeatureMatch(genomicFeature, genomicFeature));
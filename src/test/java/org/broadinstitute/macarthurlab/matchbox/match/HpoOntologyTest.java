@@ -0,0 +1,52 @@
+package org.broadinstitute.macarthurlab.matchbox.match;
+
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class HpoOntologyTest {
+
+    private final HpoOntology hpoOntology = TestData.hpoOntology();
+
+    @Test
+    public void testObsoleteTermsAreNotCounted() {
+        assertThat(hpoOntology.size(), equalTo(9));
+    }
+
+    @Test
+    public void testAncestorsIncludeTheTermItself() {
+        assertThat(hpoOntology.getAncestorIds("HP:0002373"), equalTo(new HashSet<>(Arrays.asList(
+                "HP:0002373", "HP:0001250", "HP:0012638", "HP:0000707", "HP:0000118", "HP:0000001"))));
+    }
+
+    @Test
+    public void testDepthIsCountedFromTheRoot() {
+        assertThat(hpoOntology.getDepth("HP:0000001"), equalTo(0));
+        assertThat(hpoOntology.getDepth("HP:0000707"), equalTo(2));
+        assertThat(hpoOntology.getDepth("HP:0002373"), equalTo(5));
+        assertThat(hpoOntology.getDepth("HP:1234567"), equalTo(-1));
+    }
+
+    @Test
+    public void testAlternativeAndReplacedIdsResolveToTheCurrentTerm() {
+        assertThat(hpoOntology.getPrimaryId("HP:0002279"), equalTo("HP:0001250"));
+        assertThat(hpoOntology.getPrimaryId("HP:0009999"), equalTo("HP:0001250"));
+        assertThat(hpoOntology.getAncestorIds("HP:0009999"), equalTo(hpoOntology.getAncestorIds("HP:0001250")));
+    }
+
+    @Test
+    public void testUnknownTerms() {
+        assertThat(hpoOntology.getPrimaryId("HP:1234567"), nullValue());
+        assertThat(hpoOntology.getAncestorIds("HP:1234567"), equalTo(Collections.emptySet()));
+    }
+}
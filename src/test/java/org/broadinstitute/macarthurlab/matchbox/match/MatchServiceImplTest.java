@@ -1,6 +1,8 @@
 package org.broadinstitute.macarthurlab.matchbox.match;
 
 import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeatureMatch;
 import org.broadinstitute.macarthurlab.matchbox.entities.GenotypeSimilarityScore;
 import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
@@ -12,10 +14,12 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
@@ -69,7 +73,7 @@ public void testMatchWithNoGeneMatchNoPhenoMatchReturnsEmptyResults() {
     @Test
     public void testMatchWithNoGeneMatchPerfectPhenoMatch() {
     	if (this.getALLOW_NO_GENE_IN_COMMON_PHENOTYPE_MATCHES()){	    	
-	        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(TestData.geneIdentifiers()), new MockPhenotypeMatchService(1.0));
+	        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers())), new MockPhenotypeMatchService(1.0));
 	
 	        Patient patient = TestData.getTestPatient();
 	        patient.getGenomicFeatures().clear();
@@ -92,7 +96,7 @@ public void testMatchWithNoGeneMatchPerfectPhenoMatch() {
 
     @Test
     public void testMatchWithNoGeneMatchPhenoMatchUnderCutoffReturnsEmptyResults() {
-        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(TestData.geneIdentifiers()), new MockPhenotypeMatchService(0.0));
+        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers())), new MockPhenotypeMatchService(0.0));
 
         Patient patient = TestData.getTestPatient();
         patient.getGenomicFeatures().clear();
@@ -108,7 +112,7 @@ public void testMatchWithNoGeneMatchPhenoMatchUnderCutoffReturnsEmptyResults() {
      * A perfect match should give a 1.0
      */
     public void testPerfectMatch() {
-        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(TestData.geneIdentifiers()), new MockPhenotypeMatchService(1.0));
+        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers())), new MockPhenotypeMatchService(1.0));
 
         Patient patient = TestData.getTestPatient();
         List<Patient> patients = new ArrayList<Patient>();
@@ -128,7 +132,7 @@ public void testMatchWithNoGeneMatchPhenoMatchAtCutoffReturnsResults() {
 	        double noGenotypeScore = 0.6;
 	        double phenotypeCutoffScore = 0.7;
 	
-	        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(TestData.geneIdentifiers()), new MockPhenotypeMatchService(phenotypeCutoffScore));
+	        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers())), new MockPhenotypeMatchService(phenotypeCutoffScore));
 	
 	        Patient patient = TestData.getTestPatient();
 	        patient.getGenomicFeatures().clear();
@@ -150,7 +154,7 @@ public void testMatchWithNoGeneMatchPhenoMatchAtCutoffReturnsResults() {
      * have no phenotypes and resulting in a zero phenotype score. 
      */
     public void testMatchWithPerfectGeneMatchNoPhenoMatch() {
-        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(TestData.geneIdentifiers()), new MockPhenotypeMatchService(0.0));
+        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers())), new MockPhenotypeMatchService(0.0));
 
         Patient patientWithHpos =  TestData.getTestPatientWithPhenotypes();
         List<Patient> patients = new ArrayList<Patient>();
@@ -170,7 +174,7 @@ public void testMatchWithPerfectGeneMatchNoPhenoMatch() {
      * and if BOTH of them have no phenotypes resulting in a zero phenotype score. 
      */
     public void testMatchWithPerfectGeneMatchWithNoPhenotypesGiven() {
-        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(TestData.geneIdentifiers()), new MockPhenotypeMatchService(0.0));
+        MatchService instance = new MatchServiceImpl(new GenotypeSimilarityServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers())), new MockPhenotypeMatchService(0.0));
 
         Patient patient = TestData.getTestPatientWithNoPhenotypes();
         List<Patient> patients = new ArrayList<Patient>();
@@ -215,6 +219,116 @@ public void testMatchWithHugeGeneMatchScorePerfectPhenoMatch() {
 
 
 
+    @Test
+    public void testParallelScoringGivesSameResultsAsSerialScoring() {
+        Patient queryPatient = TestData.getTestPatient();
+        List<Patient> patients = manyPatients(500);
+
+        MatchServiceImpl serial = new MatchServiceImpl(new PatientDependentGenotypeMatchService(), new MockPhenotypeMatchService(0.8));
+        MatchServiceImpl parallel = new MatchServiceImpl(new PatientDependentGenotypeMatchService(), new MockPhenotypeMatchService(0.8));
+        parallel.setParallelScoring(true, 4, 16);
+
+        List<MatchmakerResult> serialResults = serial.match(queryPatient, patients);
+        List<MatchmakerResult> parallelResults = parallel.match(queryPatient, patients);
+        parallel.shutdownScoringPool();
+
+        assertThat(parallelResults.size(), equalTo(serialResults.size()));
+        for (int i = 0; i < serialResults.size(); i++) {
+            assertThat(parallelResults.get(i).getPatient().getId(), equalTo(serialResults.get(i).getPatient().getId()));
+            assertThat(parallelResults.get(i).getScore(), equalTo(serialResults.get(i).getScore()));
+        }
+    }
+
+
+    @Test
+    public void testMaxResultsKeepsTheBestResultsInOrder() {
+        Patient queryPatient = TestData.getTestPatient();
+        List<Patient> patients = manyPatients(100);
+        MatchService instance = new MatchServiceImpl(new PatientDependentGenotypeMatchService(), new MockPhenotypeMatchService(0.8));
+
+        List<MatchmakerResult> allResults = instance.match(queryPatient, patients);
+        List<MatchmakerResult> bestResults = instance.match(queryPatient, patients, patients.size(), 10);
+
+        assertThat(allResults.size() > 10, is(true));
+        assertThat(bestResults.size(), equalTo(10));
+        for (int i = 0; i < bestResults.size(); i++) {
+            assertThat(bestResults.get(i).getPatient().getId(), equalTo(allResults.get(i).getPatient().getId()));
+            assertThat(bestResults.get(i).getScore(), equalTo(allResults.get(i).getScore()));
+        }
+    }
+
+
+    @Test
+    public void testMatchingAPageAtATimeGivesSameResultsAsMatchingAll() {
+        Patient queryPatient = TestData.getTestPatient();
+        List<Patient> patients = manyPatients(50);
+        List<List<Patient>> pages = new ArrayList<>();
+        for (int from = 0; from < patients.size(); from += 7) {
+            pages.add(patients.subList(from, Math.min(from + 7, patients.size())));
+        }
+        MatchService instance = new MatchServiceImpl(new PatientDependentGenotypeMatchService(), new MockPhenotypeMatchService(0.8));
+
+        List<MatchmakerResult> allResults = instance.match(queryPatient, patients, patients.size(), 10);
+        List<MatchmakerResult> pagedResults = instance.match(queryPatient, pages.iterator(), patients.size(), 10);
+
+        assertThat(pagedResults.size(), equalTo(allResults.size()));
+        for (int i = 0; i < allResults.size(); i++) {
+            assertThat(pagedResults.get(i).getPatient().getId(), equalTo(allResults.get(i).getPatient().getId()));
+            assertThat(pagedResults.get(i).getScore(), equalTo(allResults.get(i).getScore()));
+        }
+    }
+
+
+    @Test
+    public void testScoringStopsWhenTheRequestingThreadIsInterrupted() {
+        MatchService instance = new MatchServiceImpl(new MockGenotypeMatchService(0.6), new MockPhenotypeMatchService(0.7));
+        Thread.currentThread().interrupt();
+        try {
+            instance.match(TestData.getTestPatient(), TestData.getTwoTestPatients());
+            fail("the match was given up on");
+        } catch (CancellationException e) {
+            //expected
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+
+    /**
+     * @return n patients with their own IDs, alternating between the two test patients
+     */
+    private static List<Patient> manyPatients(int n) {
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Patient template = TestData.getTwoTestPatients().get(i % 2);
+            patients.add(new Patient("patient" + i, template.getLabel(), template.getContact(), template.getSpecies(), template.getSex(),
+                    template.getAgeOfOnset(), template.getInheritanceMode(), template.getDisorders(), template.getFeatures(), template.getGenomicFeatures()));
+        }
+        return patients;
+    }
+
+
+    /**
+     * Gives every third patient no gene in common and varies the score by patient, so that ranking
+     * and the good genotype match count both depend on every patient being scored.
+     */
+    private class PatientDependentGenotypeMatchService implements GenotypeSimilarityService {
+
+        @Override
+        public GenotypeSimilarityScore scoreGenotypes(Patient queryPatient, Patient nodePatient) {
+            int patientNumber = Integer.parseInt(nodePatient.getId().substring("patient".length()));
+            if (patientNumber % 3 == 0) {
+                return new GenotypeSimilarityScore(0.0, Collections.emptyList());
+            }
+            GenomicFeature genomicFeature = nodePatient.getGenomicFeatures().get(0);
+            return new GenotypeSimilarityScore((patientNumber % 7) / 10.0, Collections.singletonList(new GenomicFeatureMatch(genomicFeature, genomicFeature)));
+        }
+
+		@Override
+		public void setHttpCommunication(Communication httpCommunication) {
+		}
+    }
+
     private class MockGenotypeMatchService implements GenotypeSimilarityService {
 
         private final double returnScore;
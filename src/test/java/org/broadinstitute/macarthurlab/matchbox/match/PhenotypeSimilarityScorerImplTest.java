@@ -1,6 +1,7 @@
 package org.broadinstitute.macarthurlab.matchbox.match;
 
 import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
 import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
 import org.broadinstitute.macarthurlab.matchbox.entities.PhenotypeSimilarityScore;
 import org.junit.Test;
@@ -8,6 +9,7 @@
 import org.monarchinitiative.exomiser.core.phenotype.ModelPhenotypeMatch;
 import org.monarchinitiative.exomiser.core.phenotype.ModelScorer;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -59,10 +61,59 @@ public void testGoodPhenotypeMatchReturnsPhenotypeSimilarityScore() {
         assertThat(instance.scorePhenotypes(queryPatient, nodePatients.get(0)), equalTo(new PhenotypeSimilarityScore(0.7, Collections.emptyList())));
     }
 
+    @Test
+    public void testNodePatientModelIsReusedAcrossQueries() {
+        List<Patient> nodePatients = TestData.getTwoTestPatients();
+        PatientModelCache patientModelCache = new PatientModelCache();
+        patientModelCache.patientsReloaded(new PatientSnapshot(nodePatients));
+        MockPhenotypeModelScorer modelScorer = new MockPhenotypeModelScorer(0.7);
+
+        new PhenotypeSimilarityScorerImpl(modelScorer, patientModelCache).scorePhenotypes(TestData.getTestPatient(), nodePatients.get(0));
+        new PhenotypeSimilarityScorerImpl(modelScorer, patientModelCache).scorePhenotypes(TestData.getTestPatient(), nodePatients.get(0));
+
+        assertThat(modelScorer.scored.size(), equalTo(2));
+        assertThat(modelScorer.scored.get(0) == modelScorer.scored.get(1), equalTo(true));
+    }
+
+    @Test
+    public void testNodePatientModelIsRebuiltWhenThePatientIsSaved() {
+        List<Patient> nodePatients = TestData.getTwoTestPatients();
+        PatientModelCache patientModelCache = new PatientModelCache();
+        patientModelCache.patientsReloaded(new PatientSnapshot(nodePatients));
+        MockPhenotypeModelScorer modelScorer = new MockPhenotypeModelScorer(0.7);
+        PhenotypeSimilarityScorer instance = new PhenotypeSimilarityScorerImpl(modelScorer, patientModelCache);
+
+        instance.scorePhenotypes(TestData.getTestPatient(), nodePatients.get(0));
+        Patient saved = TestData.getTwoTestPatients().get(0);
+        saved.getFeatures().remove(0);
+        patientModelCache.patientSaved(saved);
+        instance.scorePhenotypes(TestData.getTestPatient(), saved);
+
+        assertThat(modelScorer.scored.get(0) == modelScorer.scored.get(1), equalTo(false));
+        assertThat(modelScorer.scored.get(1).getPhenotypeIds(), equalTo(PhenotypeSimilarityService.getObservedPhenotypeIds(saved)));
+    }
+
+    @Test
+    public void testPatientNotInTheCacheIsStillScored() {
+        List<Patient> nodePatients = TestData.getTwoTestPatients();
+        PatientModelCache patientModelCache = new PatientModelCache();
+        patientModelCache.patientsReloaded(new PatientSnapshot(nodePatients));
+        MockPhenotypeModelScorer modelScorer = new MockPhenotypeModelScorer(0.7);
+        PhenotypeSimilarityScorer instance = new PhenotypeSimilarityScorerImpl(modelScorer, patientModelCache);
+
+        Patient sameIdOtherPatient = TestData.getTwoTestPatients().get(0);
+        sameIdOtherPatient.getFeatures().remove(0);
+        instance.scorePhenotypes(TestData.getTestPatient(), sameIdOtherPatient);
+
+        assertThat(modelScorer.scored.get(0).getPhenotypeIds(), equalTo(PhenotypeSimilarityService.getObservedPhenotypeIds(sameIdOtherPatient)));
+    }
+
     private class MockPhenotypeModelScorer implements ModelScorer {
 
         private final double returnScore;
 
+        private final List<Model> scored = new ArrayList<>();
+
         MockPhenotypeModelScorer(double returnScore) {
             this.returnScore = returnScore;
         }
@@ -70,6 +121,7 @@ private class MockPhenotypeModelScorer implements ModelScorer {
         @Override
         public ModelPhenotypeMatch scoreModel(Model model) {
             System.out.println("Scoring model " + model);
+            scored.add(model);
             return ModelPhenotypeMatch.of(returnScore, model, Collections.emptyList());
         }
     }
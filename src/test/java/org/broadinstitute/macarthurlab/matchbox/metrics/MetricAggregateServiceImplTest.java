@@ -0,0 +1,147 @@
+package org.broadinstitute.macarthurlab.matchbox.metrics;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalMatchQuery;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.entities.PrivilegedMetric;
+import org.broadinstitute.macarthurlab.matchbox.entities.PublicMetric;
+import org.broadinstitute.macarthurlab.matchbox.entities.Variant;
+import org.broadinstitute.macarthurlab.matchbox.match.GeneIdentifierResolver;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author harindra
+ */
+public class MetricAggregateServiceImplTest {
+
+    private MetricAggregateServiceImpl metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new MetricAggregateServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers()));
+        metrics.patientsReloaded(new PatientSnapshot(TestData.getTwoTestPatients()));
+    }
+
+    private Patient patientWithGene(String id, String submitter, String gene) {
+        GenomicFeature genomicFeature = new GenomicFeature(Collections.singletonMap("id", gene), new Variant(), -1L, Collections.emptyMap());
+        return new Patient(id, id, Collections.singletonMap("name", submitter), "9606", "M", "", "",
+                Collections.emptyList(), Collections.emptyList(), Arrays.asList(genomicFeature));
+    }
+
+    @Test
+    public void testCountsMatchAFullCountOverTheSamePatients() {
+        List<Patient> patients = TestData.getTwoTestPatients();
+        BaseMetric fullCount = new BaseMetric();
+        PrivilegedMetric metric = metrics.getPrivilegedMetric();
+
+        assertThat(metric.getGeneCounts(), equalTo(fullCount.countGenesInSystem(patients)));
+        assertThat(metric.getPhenotypeCounts(), equalTo(fullCount.countPhenotypesInSystem(patients)));
+        assertThat(metric.getNumberOfCases(), equalTo(2));
+        assertThat(metric.getNumberOfSubmitters(), equalTo(1));
+        assertThat(metric.getMeanNumberOfGenesPerCase(), equalTo(1.5));
+        assertThat(metric.getMeanNumberOfPhenotypesPerCase(), equalTo(1.5));
+    }
+
+    @Test
+    public void testReplacedPatientIsOnlyCountedOnce() {
+        metrics.patientSaved(patientWithGene("new", "someone", "FGFR2"));
+        metrics.patientSaved(patientWithGene("new", "someone else", "STAMBP"));
+
+        PrivilegedMetric metric = metrics.getPrivilegedMetric();
+        assertThat(metric.getNumberOfCases(), equalTo(3));
+        assertThat(metric.getNumberOfSubmitters(), equalTo(2));
+        assertThat(metric.getGeneCounts().containsKey("FGFR2"), equalTo(false));
+        assertThat(metric.getGeneCounts().get("STAMBP"), equalTo(1));
+    }
+
+    @Test
+    public void testDeletedPatientIsTakenOffTheCounts() {
+        metrics.patientDeleted("testPatient1Id");
+        metrics.patientDeleted("not a patient");
+
+        PrivilegedMetric metric = metrics.getPrivilegedMetric();
+        Map<String, Integer> geneCounts = new HashMap<>();
+        geneCounts.put("ENSG00000178104", 1);
+        geneCounts.put("ENSG00000124356", 1);
+        assertThat(metric.getNumberOfCases(), equalTo(1));
+        assertThat(metric.getGeneCounts(), equalTo(geneCounts));
+        assertThat(metric.getPhenotypeCounts().isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testReloadStartsTheCountsAgain() {
+        metrics.patientSaved(patientWithGene("new", "someone", "FGFR2"));
+        metrics.patientsReloaded(new PatientSnapshot(Collections.singletonList(patientWithGene("only", "someone", "FGFR2"))));
+
+        PublicMetric metric = metrics.getPublicMetric();
+        assertThat(metric.getNumberOfCases(), equalTo(1));
+        assertThat(metric.getNumberOfUniqueGenes(), equalTo(1));
+    }
+
+    @Test
+    public void testMatchQueriesAreCountedByQueryPatientAndMatchedGene() {
+        Patient query = patientWithGene("query", "someone", "FGFR2");
+        MatchmakerResult bySymbol = new MatchmakerResult(Collections.singletonMap("patient", 1.0), patientWithGene("a", "someone", "STAMBP"));
+        MatchmakerResult byEnsemblId = new MatchmakerResult(Collections.singletonMap("patient", 1.0), patientWithGene("b", "someone", "ENSG00000124356"));
+        metrics.matchQuerySaved(new ExternalMatchQuery(query, Arrays.asList(bySymbol, byEnsemblId), "node", "Broad", true));
+        metrics.matchQuerySaved(new ExternalMatchQuery(query, Arrays.asList(bySymbol), "node", "Broad", true));
+        metrics.matchQuerySaved(new ExternalMatchQuery(null, Collections.emptyList(), "node", "Broad", false));
+
+        PublicMetric metric = metrics.getPublicMetric();
+        assertThat(metric.getNumberOfRequestsReceived(), equalTo(3));
+        assertThat(metric.getNumberOfPotentialMatchesSent(), equalTo(1));
+        //STAMBP, however it was named, out of the 2 genes in the system
+        assertThat(metric.getPercentageOfGenesThatMatch(), equalTo(0.5));
+    }
+
+    @Test
+    public void testStartUpCountsComeFromTheDatabase() {
+        MongoOperations operator = mock(MongoOperations.class);
+        when(operator.indexOps(ExternalMatchQuery.class)).thenReturn(mock(IndexOperations.class));
+        when(operator.getCollectionName(ExternalMatchQuery.class)).thenReturn("externalMatchQuery");
+        when(operator.count(any(Query.class), eq("externalMatchQuery"))).thenReturn(4L);
+        when(operator.aggregate(any(Aggregation.class), eq("externalMatchQuery"), eq(DBObject.class))).thenReturn(
+                groups("query1", "query2"),
+                groups("STAMBP", "ENSG00000124356", "NOT_A_GENE"));
+        metrics.setOperator(operator);
+
+        metrics.init();
+        PublicMetric metric = metrics.getPublicMetric();
+        assertThat(metric.getNumberOfRequestsReceived(), equalTo(4));
+        assertThat(metric.getNumberOfPotentialMatchesSent(), equalTo(2));
+        assertThat(metric.getPercentageOfGenesThatMatch(), equalTo(0.5));
+    }
+
+    private AggregationResults<DBObject> groups(String... ids) {
+        List<DBObject> groups = new ArrayList<>();
+        for (String id : ids) {
+            groups.add(new BasicDBObject("_id", id));
+        }
+        return new AggregationResults<>(groups, new BasicDBObject());
+    }
+}
@@ -0,0 +1,84 @@
+package org.broadinstitute.macarthurlab.matchbox.network;
+
+import com.sun.net.httpserver.HttpServer;
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerNode;
+import org.broadinstitute.macarthurlab.matchbox.entities.Node;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class CommunicationTest {
+
+    private HttpServer server;
+    private Set<Integer> clientPorts;
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        clientPorts = Collections.synchronizedSet(new HashSet<>());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/gnomad", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            reply(exchange, 200, "{\"data\":{}}");
+        });
+        server.createContext("/match", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            reply(exchange, 200, "{\"results\":[]}");
+        });
+        server.createContext("/down", exchange -> reply(exchange, 503, "{}"));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static void reply(com.sun.net.httpserver.HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Node node(String path) {
+        return new MatchmakerNode("local", "token", baseUrl + path, "application/json", "application/json", "en-US", false);
+    }
+
+    @Test
+    public void testConnectionIsReusedAcrossCalls() throws Exception {
+        Communication communication = new Communication();
+        for (int i = 0; i < 5; i++) {
+            assertThat(communication.postToNonAuthenticatedHttpUrl(baseUrl + "/gnomad", "{}"), equalTo("{\"data\":{}}"));
+            assertThat(communication.queryNode(node("/match"), TestData.getTestPatient()).isEmpty(), equalTo(true));
+        }
+        assertThat(clientPorts.size(), equalTo(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testErrorReplyFromNodeIsThrown() throws Exception {
+        new Communication().queryNode(node("/down"), TestData.getTestPatient());
+    }
+
+    @Test
+    public void testErrorReplyFromNodeGivesNoResultsWhenCalledSafely() {
+        assertThat(new Communication().callNode(node("/down"), TestData.getTestPatient()).isEmpty(), equalTo(true));
+    }
+}
@@ -0,0 +1,72 @@
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.entities.Variant;
+import org.broadinstitute.macarthurlab.matchbox.match.GeneIdentifierResolver;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class GeneIndexServiceImplTest {
+
+    private GeneIndexServiceImpl newIndex(List<Patient> patients) {
+        GeneIndexServiceImpl index = new GeneIndexServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers()));
+        index.rebuild(patients);
+        return index;
+    }
+
+    private Patient patientWithGene(String id, String gene) {
+        GenomicFeature genomicFeature = new GenomicFeature(Collections.singletonMap("id", gene), new Variant(), -1L, Collections.emptyMap());
+        return new Patient(id, id, Collections.emptyMap(), "9606", "M", "", "", Collections.emptyList(), Collections.emptyList(), Arrays.asList(genomicFeature));
+    }
+
+    @Test
+    public void testGeneSymbolFindsPatientsIndexedByEnsemblId() {
+        GeneIndexService index = newIndex(TestData.getTwoTestPatients());
+
+        //STAMBP is ENSG00000124356, which only testPatient2Id carries
+        Set<String> candidates = index.findPatientIdsSharingGenes(patientWithGene("query", "STAMBP"));
+        assertThat(candidates, equalTo(Collections.singleton("testPatient2Id")));
+    }
+
+    @Test
+    public void testUnknownGeneFindsNoPatients() {
+        GeneIndexService index = newIndex(TestData.getTwoTestPatients());
+
+        Set<String> candidates = index.findPatientIdsSharingGenes(patientWithGene("query", "NOT_A_GENE"));
+        assertThat(candidates.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testSamePatientIdIsACandidate() {
+        GeneIndexService index = newIndex(Arrays.asList(patientWithGene("patient1", "NOT_A_GENE")));
+
+        Set<String> candidates = index.findPatientIdsSharingGenes(patientWithGene("patient1", "FGFR2"));
+        assertThat(candidates, equalTo(Collections.singleton("patient1")));
+    }
+
+    @Test
+    public void testIndexFollowsAddAndDelete() {
+        GeneIndexService index = newIndex(new ArrayList<>());
+        Patient query = patientWithGene("query", "FGFR2");
+
+        index.indexPatient(patientWithGene("patient1", "ENSG00000066468"));
+        assertThat(index.findPatientIdsSharingGenes(query), equalTo(Collections.singleton("patient1")));
+
+        //an update to the patient replaces what it was indexed under
+        index.indexPatient(patientWithGene("patient1", "STAMBP"));
+        assertThat(index.findPatientIdsSharingGenes(query).isEmpty(), equalTo(true));
+
+        index.indexPatient(patientWithGene("patient2", "FGFR2"));
+        index.removePatient("patient2");
+        assertThat(index.findPatientIdsSharingGenes(query).isEmpty(), equalTo(true));
+    }
+}
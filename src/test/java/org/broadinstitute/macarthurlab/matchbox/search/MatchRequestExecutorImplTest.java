@@ -0,0 +1,88 @@
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author harindra
+ */
+public class MatchRequestExecutorImplTest {
+
+    private MatchRequestExecutorImpl executor;
+
+    private MatchRequestExecutorImpl executor(boolean async, int poolSize, int queueCapacity) {
+        executor = new MatchRequestExecutorImpl();
+        executor.setAsync(async);
+        executor.setPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.init();
+        return executor;
+    }
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWorkRunsOffTheCallingThread() throws Exception {
+        MatchRequestExecutorImpl executor = executor(true, 2, 2);
+        Thread caller = Thread.currentThread();
+        assertThat(executor.submit("/match", () -> Thread.currentThread() != caller).get(), equalTo(true));
+        assertThat(executor.submit("/match", () -> Thread.currentThread().getName()).get().matches("match-request-[0-9]+"), equalTo(true));
+        assertThat(executor.getStats().get("/match").get("completed"), equalTo(2L));
+        assertThat(executor.getStats().get("/match").get("inFlight"), equalTo(0L));
+    }
+
+    @Test
+    public void testRequestsPastTheQueueAreRejected() throws Exception {
+        MatchRequestExecutorImpl executor = executor(true, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<String> first = executor.submit("/match", () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "first";
+        });
+        running.await();
+        CompletableFuture<String> queued = executor.submit("/match/external", () -> "queued");
+        try {
+            executor.submit("/match", () -> "rejected");
+            fail("the pool and its queue were full");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+        assertThat(executor.getStats().get("/match").get("inFlight"), equalTo(1L));
+        assertThat(executor.getStats().get("/match").get("rejected"), equalTo(1L));
+        assertThat(executor.getStats().get("/match/external").get("inFlight"), equalTo(1L));
+        assertThat(executor.getStats().get("queue").get("queued"), equalTo(1L));
+
+        release.countDown();
+        assertThat(first.get(), equalTo("first"));
+        assertThat(queued.get(), equalTo("queued"));
+        assertThat(executor.getStats().get("/match").get("maxInFlight"), equalTo(1L));
+    }
+
+    @Test
+    public void testWorkRunsOnTheCallingThreadWhenNotAsync() throws Exception {
+        MatchRequestExecutorImpl executor = executor(false, 2, 2);
+        Thread caller = Thread.currentThread();
+        CompletableFuture<Boolean> result = executor.submit("/match", () -> Thread.currentThread() == caller);
+        assertThat(result.isDone(), equalTo(true));
+        assertThat(result.get(), equalTo(true));
+    }
+}
@@ -0,0 +1,83 @@
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.NodeSearchStatus;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class MatchmakerResultWriterTest {
+
+    private final MatchmakerResultWriter writer = new MatchmakerResultWriter();
+
+    private MatchmakerResult result(Patient patient, double score) {
+        return new MatchmakerResult(Collections.singletonMap("patient", score), patient);
+    }
+
+    @Test
+    public void testSameJsonAsEntities() throws Exception {
+        MatchmakerResult result = result(TestData.getTestPatient(), 0.75);
+        JSONParser parser = new JSONParser();
+        assertThat(parser.parse(writer.toJson(result)), equalTo(parser.parse(result.getEmptyFieldsRemovedJson())));
+    }
+
+    @Test
+    public void testValuesAreEscaped() throws Exception {
+        Map<String, String> contact = new HashMap<>();
+        contact.put("name", "Jane \"JD\" Doe");
+        contact.put("institution", "Back\\slash\nInstitute");
+        Patient patient = new Patient("P0001", "label with \"quotes\"", contact, "", "", "", "",
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+        JSONObject parsed = (JSONObject) new JSONParser().parse(writer.toJson(result(patient, 0.5)));
+        JSONObject writtenPatient = (JSONObject) parsed.get("patient");
+        assertThat(writtenPatient.get("label"), equalTo("label with \"quotes\""));
+        assertThat(((JSONObject) writtenPatient.get("contact")).get("name"), equalTo("Jane \"JD\" Doe"));
+        assertThat(((JSONObject) writtenPatient.get("contact")).get("institution"), equalTo("Back\\slash\nInstitute"));
+    }
+
+    @Test
+    public void testResponseHasResultsStatusesAndDisclaimer() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeResults(out,
+                Arrays.asList(result(TestData.getTestPatient(), 0.9), result(TestData.getTestPatientWithPhenotypes(), 0.4)),
+                Collections.singletonList(new NodeSearchStatus("node1", NodeSearchStatus.OK, 2, 120, "")));
+
+        JSONObject response = (JSONObject) new JSONParser().parse(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertThat(((JSONArray) response.get("results")).size(), equalTo(2));
+        JSONObject nodeStatus = (JSONObject) ((JSONArray) response.get("_nodeStatus")).get(0);
+        assertThat(nodeStatus.get("status"), equalTo("OK"));
+        assertThat(nodeStatus.containsKey("message"), equalTo(false));
+        assertThat(response.get("_disclaimer"), equalTo(new PatientRecordUtility().getDisclaimer()));
+    }
+
+    @Test
+    public void testWrittenResultsCanBeParsedBack() throws Exception {
+        Patient patient = TestData.getTestPatient();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeResults(out, Collections.singletonList(result(patient, 0.9)));
+
+        JSONObject response = (JSONObject) new JSONParser().parse(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertThat(response.containsKey("_nodeStatus"), equalTo(false));
+        JSONObject written = (JSONObject) ((JSONArray) response.get("results")).get(0);
+        Patient parsed = new PatientRecordParser().parse(written.toJSONString());
+        assertThat(parsed.getId(), equalTo(patient.getId()));
+        assertThat(parsed.getGenomicFeatures().size(), equalTo(patient.getGenomicFeatures().size()));
+    }
+}
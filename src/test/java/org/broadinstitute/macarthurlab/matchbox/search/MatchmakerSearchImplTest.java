@@ -0,0 +1,306 @@
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.audit.MatchQueryAuditService;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientCache;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.cache.PatientSnapshot;
+import org.broadinstitute.macarthurlab.matchbox.datamodel.mongodb.PatientMongoRepository;
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalMatchQuery;
+import org.broadinstitute.macarthurlab.matchbox.entities.ExternalSearchResults;
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerNode;
+import org.broadinstitute.macarthurlab.matchbox.entities.MatchmakerResult;
+import org.broadinstitute.macarthurlab.matchbox.entities.Node;
+import org.broadinstitute.macarthurlab.matchbox.entities.NodeSearchStatus;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.entities.PhenotypeFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Variant;
+import org.broadinstitute.macarthurlab.matchbox.match.GeneIdentifierResolver;
+import org.broadinstitute.macarthurlab.matchbox.match.HpoOntology;
+import org.broadinstitute.macarthurlab.matchbox.match.MatchService;
+import org.broadinstitute.macarthurlab.matchbox.network.Communication;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.util.CloseableIterator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author harindra
+ */
+public class MatchmakerSearchImplTest {
+
+    private MatchmakerSearchImpl searcher;
+
+    private MatchQueryAuditService matchQueryAuditService;
+
+    @Before
+    public void setUp() {
+        searcher = new MatchmakerSearchImpl();
+        searcher.setHttpCommunication(new StubCommunication());
+        searcher.setMatchmakerNodes(Arrays.asList(node("fast"), node("slow"), node("down")));
+        searcher.setGeneIndexService(new GeneIndexServiceImpl(new GeneIdentifierResolver(TestData.geneIdentifiers())));
+        searcher.setPhenotypeIndexService(new PhenotypeIndexServiceImpl((HpoOntology) null, 3));
+        matchQueryAuditService = mock(MatchQueryAuditService.class);
+        searcher.setMatchQueryAuditService(matchQueryAuditService);
+    }
+
+    @After
+    public void tearDown() {
+        searcher.shutdown();
+    }
+
+    private Node node(String name) {
+        return new MatchmakerNode(name, "token", "https://" + name, "application/json", "application/json", "en-US", false);
+    }
+
+    private List<String> statuses(ExternalSearchResults results) {
+        List<String> statuses = new ArrayList<>();
+        for (NodeSearchStatus nodeStatus : results.getNodeStatuses()) {
+            statuses.add(nodeStatus.getNodeName() + ":" + nodeStatus.getStatus());
+        }
+        return statuses;
+    }
+
+    @Test
+    public void testConcurrentSearchReturnsPartialResultsAtDeadline() {
+        searcher.setExternalSearch(true, 4, 300, 2000);
+
+        long start = System.currentTimeMillis();
+        ExternalSearchResults results = searcher.searchExternalMatchmakerNodes(TestData.getTestPatient());
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(results.getResults().size(), equalTo(1));
+        assertThat(statuses(results), equalTo(Arrays.asList("fast:OK", "slow:TIMED_OUT", "down:ERROR")));
+        assertThat(elapsed < 2000, equalTo(true));
+    }
+
+    @Test
+    public void testOverallDeadlineCapsNodeDeadline() {
+        searcher.setExternalSearch(true, 4, 60000, 300);
+
+        long start = System.currentTimeMillis();
+        ExternalSearchResults results = searcher.searchExternalMatchmakerNodes(TestData.getTestPatient());
+
+        assertThat(System.currentTimeMillis() - start < 2000, equalTo(true));
+        assertThat(statuses(results), equalTo(Arrays.asList("fast:OK", "slow:TIMED_OUT", "down:ERROR")));
+    }
+
+    @Test
+    public void testNodeWaitingForAThreadGetsItsOwnNodeTimeout() {
+        //one thread, so "fast" only starts once "slow" has used up its node timeout
+        searcher.setMatchmakerNodes(Arrays.asList(node("slow"), node("fast")));
+        searcher.setExternalSearch(true, 1, 300, 5000);
+
+        ExternalSearchResults results = searcher.searchExternalMatchmakerNodes(TestData.getTestPatient());
+
+        assertThat(statuses(results), equalTo(Arrays.asList("slow:TIMED_OUT", "fast:OK")));
+        assertThat(results.getResults().size(), equalTo(1));
+    }
+
+    @Test
+    public void testOverallDeadlineBoundsTheTotalWaitAcrossNodes() {
+        //one thread, so the second node only starts once the first has used up its node timeout
+        searcher.setMatchmakerNodes(Arrays.asList(node("slow"), node("slow")));
+        searcher.setExternalSearch(true, 1, 1000, 1500);
+
+        long start = System.currentTimeMillis();
+        ExternalSearchResults results = searcher.searchExternalMatchmakerNodes(TestData.getTestPatient());
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(statuses(results), equalTo(Arrays.asList("slow:TIMED_OUT", "slow:TIMED_OUT")));
+        //the second node's own deadline is 2000ms in, the overall deadline cuts it short
+        assertThat(elapsed >= 1500 && elapsed < 1900, equalTo(true));
+    }
+
+    @Test
+    public void testOneByOneSearchReportsEachNode() {
+        searcher.setMatchmakerNodes(Arrays.asList(node("fast"), node("down")));
+        searcher.setExternalSearch(false, 4, 300, 2000);
+
+        ExternalSearchResults results = searcher.searchExternalMatchmakerNodes(TestData.getTestPatient());
+        assertThat(results.getResults().size(), equalTo(1));
+        assertThat(statuses(results), equalTo(Arrays.asList("fast:OK", "down:ERROR")));
+        assertThat(results.getNodeStatusesJson().contains("\"status\":\"ERROR\""), equalTo(true));
+    }
+
+    @Test
+    public void testLocalMatchesAreCappedAfterDroppingTheQueryPatient() {
+        Patient queryPatient = patient("query");
+        List<MatchmakerResult> scored = Arrays.asList(result(queryPatient, 1.0), result(patient("a"), 0.9), result(patient("b"), 0.8));
+        MatchService matchService = mock(MatchService.class);
+        when(matchService.match(any(Patient.class), anyListOf(Patient.class), anyInt(), anyInt())).thenReturn(scored);
+        PatientCache patientCache = mock(PatientCache.class);
+        when(patientCache.getSnapshot()).thenReturn(PatientSnapshot.EMPTY);
+        searcher.setMatchService(matchService);
+        searcher.setPatientCache(patientCache);
+        searcher.setMaxResults(5);
+
+        List<MatchmakerResult> matches = searcher.findLocalMatches(queryPatient, "node", 2);
+
+        //asked for one more than wanted, to make up for the query patient matching itself
+        verify(matchService).match(queryPatient, Collections.emptyList(), 0, 3);
+        assertThat(matches.size(), equalTo(2));
+        assertThat(matches.get(0).getPatient().getId(), equalTo("a"));
+        assertThat(matches.get(1).getPatient().getId(), equalTo("b"));
+        verify(matchQueryAuditService).record(any(ExternalMatchQuery.class));
+    }
+
+    @Test
+    public void testRequestCanOnlyLowerTheConfiguredMaxResults() {
+        MatchService matchService = mock(MatchService.class);
+        PatientCache patientCache = mock(PatientCache.class);
+        when(patientCache.getSnapshot()).thenReturn(PatientSnapshot.EMPTY);
+        searcher.setMatchService(matchService);
+        searcher.setPatientCache(patientCache);
+        searcher.setMaxResults(5);
+        Patient queryPatient = patient("query");
+
+        searcher.findLocalMatches(queryPatient, "node", 50);
+        verify(matchService).match(queryPatient, Collections.emptyList(), 0, 6);
+    }
+
+    @Test
+    public void testPhenotypeOnlyMatchScoresPatientsSharingATerm() {
+        Patient related = patientWithPhenotype("related", "HP:0002373");
+        Patient unrelated = patientWithPhenotype("unrelated", "HP:0000522");
+        PhenotypeIndexServiceImpl phenotypeIndex = new PhenotypeIndexServiceImpl(TestData.hpoOntology(), 3);
+        phenotypeIndex.rebuild(Arrays.asList(related, unrelated));
+        MatchService matchService = mock(MatchService.class);
+        PatientCache patientCache = mock(PatientCache.class);
+        when(patientCache.getSnapshot()).thenReturn(PatientSnapshot.EMPTY.withPatient(related).withPatient(unrelated));
+        searcher.setMatchService(matchService);
+        searcher.setPatientCache(patientCache);
+        searcher.setPhenotypeIndexService(phenotypeIndex);
+
+        //no genomic features, so only phenotypes can match
+        Patient queryPatient = patientWithPhenotype("query", "HP:0001250");
+        searcher.findLocalMatches(queryPatient, "node", 0);
+        verify(matchService).match(queryPatient, Collections.singletonList(related), 2, 0);
+    }
+
+    @Test
+    public void testLowMemoryModeReadsPatientsSharingAGeneFromTheDatabase() {
+        MatchService matchService = mock(MatchService.class);
+        PatientMongoRepository patientMongoRepository = mock(PatientMongoRepository.class);
+        List<Patient> sharing = TestData.getTwoTestPatients();
+        when(patientMongoRepository.count()).thenReturn(1000L);
+        when(patientMongoRepository.findPatientsSharingGenes(anyCollectionOf(String.class), anyCollectionOf(String.class))).thenReturn(sharing);
+        searcher.setMatchService(matchService);
+        searcher.setPatientCache(mock(PatientCache.class));
+        searcher.setPatientMongoRepository(patientMongoRepository);
+        searcher.setGeneIdentifierResolver(new GeneIdentifierResolver(TestData.geneIdentifiers()));
+        searcher.setLowMemory(true);
+
+        //STAMBP, given by its Ensembl ID, and a gene that can't be resolved
+        GenomicFeature stambp = new GenomicFeature(Collections.singletonMap("id", "ENSG00000124356"), new Variant(), -1L, Collections.emptyMap());
+        GenomicFeature unknown = new GenomicFeature(Collections.singletonMap("id", "NOT_A_GENE"), new Variant(), -1L, Collections.emptyMap());
+        Patient queryPatient = new Patient("query", "", Collections.singletonMap("institution", "Broad"), "", "", "", "",
+                Collections.emptyList(), Collections.emptyList(), Arrays.asList(stambp, unknown));
+        searcher.findLocalMatches(queryPatient, "node", 0);
+
+        verify(patientMongoRepository).findPatientsSharingGenes(
+                Collections.singleton("ENSG00000124356"), new HashSet<>(Arrays.asList("ENSG00000124356", "STAMBP")));
+        verify(patientMongoRepository, never()).findAll();
+        verify(matchService).match(queryPatient, sharing, 1000, 0);
+    }
+
+    @Test
+    public void testLowMemoryModeScoresEveryPatientAPageAtATimeWithoutAPhenotypeIndex() {
+        MatchService matchService = mock(MatchService.class);
+        PatientMongoRepository patientMongoRepository = mock(PatientMongoRepository.class);
+        Iterator<Patient> patients = Arrays.asList(patient("a"), patient("b"), patient("c")).iterator();
+        when(patientMongoRepository.count()).thenReturn(3L);
+        when(patientMongoRepository.streamPatients(null, 0, Collections.emptySet())).thenReturn(new CloseableIterator<Patient>() {
+            @Override
+            public boolean hasNext() {
+                return patients.hasNext();
+            }
+
+            @Override
+            public Patient next() {
+                return patients.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        List<List<String>> pages = new ArrayList<>();
+        when(matchService.match(any(Patient.class), any(Iterator.class), anyInt(), anyInt())).thenAnswer(invocation -> {
+            Iterator<List<Patient>> candidatePages = (Iterator<List<Patient>>) invocation.getArguments()[1];
+            while (candidatePages.hasNext()) {
+                List<String> ids = new ArrayList<>();
+                for (Patient patient : candidatePages.next()) {
+                    ids.add(patient.getId());
+                }
+                pages.add(ids);
+            }
+            return Collections.emptyList();
+        });
+        searcher.setMatchService(matchService);
+        searcher.setPatientCache(mock(PatientCache.class));
+        searcher.setPatientMongoRepository(patientMongoRepository);
+        searcher.setLowMemory(true);
+        searcher.setLowMemoryPageSize(2);
+
+        //no genomic features and no phenotype index, so any patient could match on phenotypes
+        Patient queryPatient = patientWithPhenotype("query", "HP:0001250");
+        searcher.findLocalMatches(queryPatient, "node", 0);
+
+        verify(patientMongoRepository, never()).findAll();
+        verify(matchService).match(any(Patient.class), any(Iterator.class), anyInt(), anyInt());
+        assertThat(pages, equalTo(Arrays.asList(Arrays.asList("a", "b"), Collections.singletonList("c"))));
+    }
+
+    private Patient patientWithPhenotype(String id, String hpoId) {
+        return new Patient(id, "", Collections.singletonMap("institution", "Broad"), "", "", "", "",
+                Collections.emptyList(), Collections.singletonList(new PhenotypeFeature(hpoId, "yes", "")), Collections.emptyList());
+    }
+
+    private Patient patient(String id) {
+        return new Patient(id, "", Collections.singletonMap("institution", "Broad"), "", "", "", "",
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    }
+
+    private MatchmakerResult result(Patient patient, double score) {
+        return new MatchmakerResult(Collections.singletonMap("patient", score), patient);
+    }
+
+    /**
+     * "fast" answers with one result, "slow" takes far longer than any deadline in these tests
+     * and "down" can't be reached
+     */
+    private static class StubCommunication extends Communication {
+        @Override
+        public List<MatchmakerResult> queryNode(Node matchmakerNode, Patient queryPatient) throws Exception {
+            switch (matchmakerNode.getName()) {
+                case "fast":
+                    return Collections.singletonList(new MatchmakerResult(Collections.singletonMap("patient", 0.5), TestData.getTestPatient()));
+                case "slow":
+                    Thread.sleep(10000);
+                    return Collections.emptyList();
+                default:
+                    throw new IOException("connection refused");
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.junit.Test;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author harindra
+ */
+public class PatientRecordParserTest {
+
+    private static final String FULL_RECORD = "{\"patient\":{\"id\":\"P0001\",\"label\":\"proband\","
+            + "\"contact\":{\"name\":\"Jane Doe\",\"institution\":\"Broad\",\"href\":\"mailto:jdoe@example.edu\",\"roles\":[\"clinician\"]},"
+            + "\"species\":\"NCBITaxon:9606\",\"sex\":\"FEMALE\",\"ageOfOnset\":\"HP:0003577\",\"inheritanceMode\":\"HP:0000006\","
+            + "\"disorders\":[{\"id\":\"MIM:615273\",\"label\":\"ignored\"}],"
+            + "\"features\":[{\"id\":\"HP:0000522\",\"observed\":\"yes\"},{\"id\":\"HP:0001250\",\"observed\":\"no\",\"ageOfOnset\":\"HP:0003593\"}],"
+            + "\"genomicFeatures\":[{\"gene\":{\"id\":\"NGLY1\"},"
+            + "\"variant\":{\"assembly\":\"GRCh37\",\"referenceName\":\"3\",\"start\":25775422,\"end\":25775423,\"referenceBases\":\"A\",\"alternateBases\":\"G\",\"_share\":false},"
+            + "\"zygosity\":2,\"type\":{\"id\":\"SO:0001587\",\"label\":\"STOPGAIN\"}},"
+            + "{\"gene\":{\"id\":\"ENSG00000124356\"}}],"
+            + "\"test\":true},\"_disclaimer\":\"ignored\"}";
+
+    private final PatientRecordParser parser = new PatientRecordParser();
+
+    @Test
+    public void testFullRecordIsParsed() throws PatientParseException {
+        Patient patient = parser.parse(FULL_RECORD.getBytes(StandardCharsets.UTF_8));
+        assertThat(patient.getId(), equalTo("P0001"));
+        assertThat(patient.getContact().get("institution"), equalTo("Broad"));
+        assertThat(patient.getInheritanceMode(), equalTo("HP:0000006"));
+        assertThat(patient.getDisorders().get(0).get("id"), equalTo("MIM:615273"));
+        assertThat(patient.getFeatures().size(), equalTo(2));
+        assertThat(patient.getFeatures().get(1).getAgeOfOnset(), equalTo("HP:0003593"));
+
+        GenomicFeature withVariant = patient.getGenomicFeatures().get(0);
+        assertThat(withVariant.getGene().get("id"), equalTo("NGLY1"));
+        assertThat(withVariant.getVariant().getStart(), equalTo(25775422L));
+        assertThat(withVariant.getVariant().getAlternateBases(), equalTo("G"));
+        assertThat(withVariant.getVariant().shareVariantLevelData(), equalTo(false));
+        assertThat(withVariant.getZygosity(), equalTo(2L));
+        assertThat(withVariant.getType().get("label"), equalTo("STOPGAIN"));
+
+        GenomicFeature geneOnly = patient.getGenomicFeatures().get(1);
+        assertThat(geneOnly.getVariant().getEnd(), equalTo(-1L));
+        assertThat(geneOnly.getVariant().shareVariantLevelData(), equalTo(true));
+        assertThat(geneOnly.getZygosity(), equalTo(-1L));
+    }
+
+    @Test
+    public void testSameAsLegacyParser() throws PatientParseException {
+        Patient legacy = new PatientRecordUtility().parsePatientInformation(FULL_RECORD);
+        Patient streamed = parser.parse(FULL_RECORD);
+        assertThat(streamed.getEmptyFieldsRemovedJson(), equalTo(legacy.getEmptyFieldsRemovedJson()));
+    }
+
+    @Test
+    public void testUrlEncodedRequestBody() throws Exception {
+        String encoded = URLEncoder.encode(FULL_RECORD, "UTF-8") + "=";
+        Patient patient = new PatientRecordUtility().parsePatient(encoded.getBytes(StandardCharsets.UTF_8));
+        assertThat(patient.getId(), equalTo("P0001"));
+        assertThat(patient.getContact().get("name"), equalTo("Jane Doe"));
+    }
+
+    @Test
+    public void testMissingContactReportsWhere() {
+        String record = "{\"patient\":\n  {\"id\":\"P0002\",\n   \"features\":[{\"id\":\"HP:0000522\"}]}}";
+        try {
+            parser.parse(record);
+            fail("a patient without contact details should not parse");
+        } catch (PatientParseException e) {
+            assertThat(e.getMessage().startsWith("patient.contact is required"), equalTo(true));
+            assertThat(e.getLine(), equalTo(2));
+            assertThat(e.getColumn(), equalTo(3));
+        }
+    }
+
+    @Test
+    public void testWrongTypeReportsPath() {
+        String record = "{\"patient\":{\"id\":\"P0003\",\"contact\":{\"name\":\"Jane Doe\"},"
+                + "\"genomicFeatures\":[{\"gene\":{\"id\":\"NGLY1\"},\"variant\":{\"start\":\"25775422\"}}]}}";
+        try {
+            parser.parse(record);
+            fail("a non numeric variant start should not parse");
+        } catch (PatientParseException e) {
+            assertThat(e.getMessage().startsWith("expected a whole number for patient.genomicFeatures[0].variant.start"), equalTo(true));
+            assertThat(e.getLine(), equalTo(1));
+        }
+    }
+
+    @Test(expected = PatientParseException.class)
+    public void testMissingGeneIdIsRejected() throws PatientParseException {
+        parser.parse("{\"patient\":{\"id\":\"P0004\",\"contact\":{},\"genomicFeatures\":[{\"gene\":{\"label\":\"NGLY1\"}}]}}");
+    }
+
+    @Test(expected = PatientParseException.class)
+    public void testMalformedJsonIsRejected() throws PatientParseException {
+        parser.parse("{\"patient\":{\"id\":\"P0005\",");
+    }
+}
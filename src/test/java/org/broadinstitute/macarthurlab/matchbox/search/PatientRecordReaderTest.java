@@ -0,0 +1,90 @@
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class PatientRecordReaderTest {
+
+    private static String record(String id) {
+        return "{\"patient\":{\"id\":\"" + id + "\",\"contact\":{\"name\":\"Test Contact\",\"href\":\"mailto:test@test.com\"},"
+                + "\"features\":[{\"id\":\"HP:0000118\",\"observed\":\"yes\"}],"
+                + "\"genomicFeatures\":[{\"gene\":{\"id\":\"ENSG00000128573\"}}]}}";
+    }
+
+    private static PatientRecordReader reader(String body) throws IOException {
+        return new PatientRecordUtility().readPatients(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reads every record, with the error message in place of each invalid one
+     */
+    private static List<String> readAll(PatientRecordReader reader) {
+        List<String> read = new ArrayList<>();
+        while (true) {
+            try {
+                Patient patient = reader.next();
+                if (patient == null) {
+                    return read;
+                }
+                read.add(reader.getIndex() + ":" + patient.getId());
+            } catch (PatientParseException e) {
+                read.add(reader.getIndex() + ":" + e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testReadsAJsonArrayOfRecords() throws IOException {
+        PatientRecordReader reader = reader("[" + record("P1") + ",\n" + record("P2") + "]");
+        assertThat(readAll(reader), equalTo(Arrays.asList("0:P1", "1:P2")));
+    }
+
+    @Test
+    public void testReadsOneRecordPerLine() throws IOException {
+        PatientRecordReader reader = reader(record("P1") + "\n" + record("P2") + "\n" + record("P3") + "\n");
+        assertThat(readAll(reader), equalTo(Arrays.asList("0:P1", "1:P2", "2:P3")));
+    }
+
+    @Test
+    public void testInvalidRecordIsSkipped() throws IOException {
+        String missingContact = "{\"patient\":{\"id\":\"P2\",\"features\":[{\"id\":\"HP:0000118\"}]}}";
+        String objectForId = "{\"patient\":{\"id\":{\"nested\":[1,2,{\"a\":\"b\"}]},\"contact\":{}},\"other\":[{}]}";
+        PatientRecordReader reader = reader(record("P1") + "\n" + missingContact + "\n" + objectForId + "\n" + record("P4"));
+
+        assertThat(readAll(reader), equalTo(Arrays.asList(
+                "0:P1",
+                "1:patient.contact is required (line 2, column 12)",
+                "2:expected a string for patient.id (line 3, column 18)",
+                "3:P4")));
+    }
+
+    @Test
+    public void testMalformedJsonStopsReading() throws IOException {
+        PatientRecordReader reader = reader(record("P1") + "\n{\"patient\":{\"id\":\"P2\",,}}\n" + record("P3"));
+
+        List<String> read = readAll(reader);
+        assertThat(read.size(), equalTo(2));
+        assertThat(read.get(0), equalTo("0:P1"));
+        assertThat(read.get(1).startsWith("1:malformed JSON"), equalTo(true));
+    }
+
+    @Test
+    public void testEmptyBodyHasNoRecords() throws Exception {
+        assertThat(reader("").next(), nullValue());
+        assertThat(reader("[]").next(), nullValue());
+    }
+}
@@ -0,0 +1,83 @@
+package org.broadinstitute.macarthurlab.matchbox.search;
+
+import org.broadinstitute.macarthurlab.matchbox.TestData;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.entities.PhenotypeFeature;
+import org.broadinstitute.macarthurlab.matchbox.match.HpoOntology;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class PhenotypeIndexServiceImplTest {
+
+    private PhenotypeIndexServiceImpl newIndex(int minTermDepth) {
+        PhenotypeIndexServiceImpl index = new PhenotypeIndexServiceImpl(TestData.hpoOntology(), minTermDepth);
+        index.rebuild(Arrays.asList(
+                patientWithPhenotypes("febrileSeizure", "HP:0002373"),
+                patientWithPhenotypes("developmentalDelay", "HP:0001263"),
+                patientWithPhenotypes("alacrima", "HP:0000522"),
+                patientWithPhenotypes("notObserved", "HP:0001250", "no")));
+        return index;
+    }
+
+    private Patient patientWithPhenotypes(String id, String hpoId) {
+        return patientWithPhenotypes(id, hpoId, "yes");
+    }
+
+    private Patient patientWithPhenotypes(String id, String hpoId, String observed) {
+        List<PhenotypeFeature> features = Collections.singletonList(new PhenotypeFeature(hpoId, observed, ""));
+        return new Patient(id, id, Collections.emptyMap(), "9606", "M", "", "", Collections.emptyList(), features, Collections.emptyList());
+    }
+
+    @Test
+    public void testSharedInformativeAncestorFindsPatients() {
+        PhenotypeIndexService index = newIndex(3);
+
+        //Seizure is an ancestor of Febrile seizure, and shares Abnormal nervous system physiology with Global developmental delay
+        Set<String> candidates = index.findPatientIdsSharingPhenotypes(patientWithPhenotypes("query", "HP:0001250"));
+        assertThat(candidates, equalTo(new HashSet<>(Arrays.asList("febrileSeizure", "developmentalDelay"))));
+    }
+
+    @Test
+    public void testAncestorsNearTheRootAreNotIndexed() {
+        PhenotypeIndexService index = newIndex(4);
+
+        Set<String> candidates = index.findPatientIdsSharingPhenotypes(patientWithPhenotypes("query", "HP:0001250"));
+        assertThat(candidates, equalTo(Collections.singleton("febrileSeizure")));
+    }
+
+    @Test
+    public void testAlternativeIdFindsTheSamePatients() {
+        PhenotypeIndexService index = newIndex(4);
+
+        Set<String> candidates = index.findPatientIdsSharingPhenotypes(patientWithPhenotypes("query", "HP:0002279"));
+        assertThat(candidates, equalTo(Collections.singleton("febrileSeizure")));
+    }
+
+    @Test
+    public void testSavedAndDeletedPatientsAreFollowed() {
+        PhenotypeIndexServiceImpl index = newIndex(4);
+        Patient query = patientWithPhenotypes("query", "HP:0000522");
+
+        index.patientSaved(patientWithPhenotypes("alacrima2", "HP:0000522"));
+        assertThat(index.findPatientIdsSharingPhenotypes(query), equalTo(new HashSet<>(Arrays.asList("alacrima", "alacrima2"))));
+
+        index.patientDeleted("alacrima");
+        assertThat(index.findPatientIdsSharingPhenotypes(query), equalTo(Collections.singleton("alacrima2")));
+    }
+
+    @Test
+    public void testNotAvailableWithoutAnOntology() {
+        PhenotypeIndexServiceImpl index = new PhenotypeIndexServiceImpl((HpoOntology) null, 3);
+        index.rebuild(Collections.singletonList(patientWithPhenotypes("febrileSeizure", "HP:0002373")));
+
+        assertThat(index.isAvailable(), equalTo(false));
+        assertThat(index.findPatientIdsSharingPhenotypes(patientWithPhenotypes("query", "HP:0002373")), equalTo(Collections.emptySet()));
+    }
+}
@@ -0,0 +1,95 @@
+package org.broadinstitute.macarthurlab.matchbox.synthetic;
+
+import org.broadinstitute.macarthurlab.matchbox.entities.GenomicFeature;
+import org.broadinstitute.macarthurlab.matchbox.entities.Patient;
+import org.broadinstitute.macarthurlab.matchbox.search.MatchmakerResultWriter;
+import org.broadinstitute.macarthurlab.matchbox.search.PatientRecordParser;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author harindra
+ */
+public class SyntheticPatientGeneratorTest {
+
+    private static List<String> genes() {
+        List<String> genes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            genes.add("GENE" + i);
+        }
+        return genes;
+    }
+
+    private static SyntheticPatientGenerator generator(long seed) {
+        return new SyntheticPatientGenerator(genes(), SyntheticPatientGenerator.COMMON_HPO_TERMS, seed, "SYN");
+    }
+
+    private static List<String> asJson(List<Patient> patients) {
+        List<String> json = new ArrayList<>();
+        for (Patient patient : patients) {
+            json.add(patient.getEmptyFieldsRemovedJson());
+        }
+        return json;
+    }
+
+    @Test
+    public void testSameSeedGivesSamePatients() {
+        assertThat(asJson(generator(7).generate(200)), equalTo(asJson(generator(7).generate(200))));
+        assertThat(asJson(generator(7).generate(200)).equals(asJson(generator(8).generate(200))), equalTo(false));
+    }
+
+    @Test
+    public void testSmallerSetIsTheStartOfALargerOne() {
+        assertThat(asJson(generator(7).generate(1000)).subList(0, 100), equalTo(asJson(generator(7).generate(100))));
+    }
+
+    @Test
+    public void testCommonGenesAreInMorePatients() {
+        Map<String, Integer> patientsWithGene = new HashMap<>();
+        for (Patient patient : generator(7).generate(5000)) {
+            for (GenomicFeature genomicFeature : patient.getGenomicFeatures()) {
+                patientsWithGene.merge(genomicFeature.getGene().get("id"), 1, Integer::sum);
+            }
+        }
+        int mostCommon = patientsWithGene.getOrDefault("GENE0", 0);
+        int leastCommon = patientsWithGene.getOrDefault("GENE199", 0);
+        assertThat(mostCommon > 5 * leastCommon, equalTo(true));
+    }
+
+    @Test
+    public void testPatientsAreValidMmeRecords() throws Exception {
+        List<Patient> patients = generator(7).generate(500);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MatchmakerResultWriter().writePatients(out, patients.iterator());
+
+        JSONArray written = (JSONArray) new JSONParser().parse(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertThat(written.size(), equalTo(500));
+        PatientRecordParser parser = new PatientRecordParser();
+        for (int i = 0; i < written.size(); i++) {
+            Patient parsed = parser.parse("{\"patient\":" + ((JSONObject) written.get(i)).toJSONString() + "}");
+            assertThat(parsed.getId(), equalTo(patients.get(i).getId()));
+            assertThat(parsed.getFeatures().isEmpty() && parsed.getGenomicFeatures().isEmpty(), equalTo(false));
+            assertThat(new HashSet<>(patients.get(i).getObservedPhenotypeIds()).size(), equalTo(patients.get(i).getObservedPhenotypeIds().size()));
+        }
+    }
+
+    @Test
+    public void testRankedGenesStartWithTheCommonOnesAndLeaveOutNonCoding() {
+        List<String> ranked = SyntheticPatientGenerator.rankGenes(new HashSet<>(Arrays.asList("NGLY1", "LINC00115", "A1BG-AS1", "ANKRD11", "ARID1B")), 7);
+        assertThat(ranked, equalTo(Arrays.asList("ARID1B", "ANKRD11", "NGLY1")));
+    }
+}